@@ -13,5 +13,6 @@ public interface FileSource {
   File file();
   void read(Variable variable) throws IOException;
   void reset();
+  void close() throws IOException;
 
 }
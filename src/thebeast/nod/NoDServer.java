@@ -51,8 +51,81 @@ public interface NoDServer {
    */
   Interpreter interpreter();
 
+  /**
+   * Creates a new interpreter for this server. Interpreters are not thread safe; a thread other than the main thread
+   * can use its own interpreter to work on variables no other thread accesses at the same time.
+   *
+   * @return a new interpreter.
+   */
+  Interpreter createInterpreter();
+
+  /**
+   * Binds an interpreter and an expression builder to the calling thread: until {@link #unbind()} is called,
+   * {@link #interpreter()} and {@link #expressionBuilder()} return these on this thread instead of the singletons. All
+   * objects created on the thread in the meantime thus work with their own interpreter.
+   *
+   * @param interpreter the interpreter for the current thread.
+   * @param builder     the expression builder for the current thread.
+   */
+  void bind(Interpreter interpreter, ExpressionBuilder builder);
+
+  /**
+   * Lets {@link #interpreter()} and {@link #expressionBuilder()} return the singletons on the calling thread again.
+   */
+  void unbind();
+
+  /**
+   * Marks the start of work in which several threads use variables of this server at the same time. Until the
+   * matching {@link #endParallel()} no interpreter defragments its variables automatically (see {@link
+   * Interpreter#setAutoDefragment(double)}). Threads with a bound interpreter count as parallel work, too.
+   */
+  void beginParallel();
+
+  /**
+   * Marks the end of work started with {@link #beginParallel()}.
+   */
+  void endParallel();
+
+  /**
+   * Checks whether there is parallel work going on right now.
+   *
+   * @return true iff some {@link #beginParallel()} has no matching {@link #endParallel()} yet or some thread has a
+   *         bound interpreter.
+   */
+  boolean isParallel();
+
   FileSink createSink(File file, int bufferSizeInKb);  
   FileSource createSource(File file, int bufferSizeInKb);
 
+  /**
+   * Returns the number of bytes this server has allocated for table data in the calling thread so far. This is a
+   * running total, the difference of two calls gives the allocations of the calling thread in between.
+   *
+   * @return an estimate of the bytes allocated for table data by the calling thread.
+   */
+  long getAllocatedBytes();
+
+  /**
+   * Switches the collection of per query execution statistics (calls, time, rows scanned and written, index usage)
+   * on or off. It is off by default.
+   *
+   * @param collect true if statistics should be collected.
+   */
+  void setCollectQueryStatistics(boolean collect);
+
+  boolean isCollectQueryStatistics();
+
+  /**
+   * Forgets all query statistics collected so far.
+   */
+  void resetQueryStatistics();
+
+  /**
+   * Returns a table with the statistics of all queries run since the last reset, most expensive first.
+   *
+   * @return a human readable table of query statistics.
+   */
+  String getQueryStatistics();
+
 
 }
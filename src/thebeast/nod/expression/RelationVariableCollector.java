@@ -0,0 +1,170 @@
+package thebeast.nod.expression;
+
+import thebeast.nod.variable.RelationVariable;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+/**
+ * Collects all relation variables an expression refers to, no matter where in the expression (from lists, conditions,
+ * nested queries, operator bodies, etc.).
+ *
+ * @author Sebastian Riedel
+ */
+public class RelationVariableCollector extends DepthFirstExpressionVisitor {
+
+  private LinkedHashSet<RelationVariable> variables = new LinkedHashSet<RelationVariable>();
+  private HashSet<Operator<?>> operators = new HashSet<Operator<?>>();
+
+  /**
+   * Collects the relation variables of the given expression.
+   *
+   * @param expression the expression to search.
+   * @return the relation variables, in the order they appear in the expression.
+   */
+  public static LinkedHashSet<RelationVariable> collect(Expression<?> expression) {
+    RelationVariableCollector collector = new RelationVariableCollector();
+    if (expression != null) expression.acceptExpressionVisitor(collector);
+    return collector.variables;
+  }
+
+  public LinkedHashSet<RelationVariable> getVariables() {
+    return variables;
+  }
+
+  private void visit(Iterable<?> expressions) {
+    for (Object expression : expressions)
+      ((Expression<?>) expression).acceptExpressionVisitor(this);
+  }
+
+  private void visitOperator(Operator<?> operator, Iterable<?> args) {
+    visit(args);
+    if (operators.add(operator)) operator.result().acceptExpressionVisitor(this);
+  }
+
+  public void visitRelationVariable(RelationVariable relationVariable) {
+    variables.add(relationVariable);
+  }
+
+  public void visitUnion(Union union) {
+    visitNAryExpression(union);
+  }
+
+  public void visitQueryInsert(QueryInsert queryInsert) {
+    visit(queryInsert.relations());
+    queryInsert.where().acceptExpressionVisitor(this);
+    queryInsert.insert().acceptExpressionVisitor(this);
+  }
+
+  public void visitJoin(Join join) {
+    visit(join.relations());
+  }
+
+  public void visitRestrict(Restrict restrict) {
+    restrict.relation().acceptExpressionVisitor(this);
+    restrict.where().acceptExpressionVisitor(this);
+  }
+
+  public void visitSummarize(Summarize summarize) {
+    summarize.relation().acceptExpressionVisitor(this);
+    visit(summarize.add());
+  }
+
+  public void visitRelationMinus(RelationMinus relationMinus) {
+    relationMinus.leftHandSide().acceptExpressionVisitor(this);
+    relationMinus.rightHandSide().acceptExpressionVisitor(this);
+  }
+
+  public void visitSparseAdd(SparseAdd sparseAdd) {
+    sparseAdd.leftHandSide().acceptExpressionVisitor(this);
+    sparseAdd.rightHandSide().acceptExpressionVisitor(this);
+    sparseAdd.scale().acceptExpressionVisitor(this);
+  }
+
+  public void visitRelationSelector(RelationSelector relationSelector) {
+    visit(relationSelector.tupleExpressions());
+  }
+
+  public void visitTupleSelector(TupleSelector tupleSelector) {
+    visit(tupleSelector.expressions());
+  }
+
+  public void visitGet(Get get) {
+    get.argument().acceptExpressionVisitor(this);
+    get.relation().acceptExpressionVisitor(this);
+    if (get.backoff() != null) get.backoff().acceptExpressionVisitor(this);
+  }
+
+  public void visitContains(Contains contains) {
+    contains.relation().acceptExpressionVisitor(this);
+    contains.tuple().acceptExpressionVisitor(this);
+  }
+
+  public void visitCount(Count count) {
+    count.relation().acceptExpressionVisitor(this);
+  }
+
+  public void visitTupleFrom(TupleFrom tupleFrom) {
+    tupleFrom.relation().acceptExpressionVisitor(this);
+  }
+
+  public void visitGroup(Group group) {
+    group.relation().acceptExpressionVisitor(this);
+  }
+
+  public void visitCycles(Cycles cycles) {
+    cycles.graph().acceptExpressionVisitor(this);
+  }
+
+  public void visitIndexCollector(IndexCollector indexCollector) {
+    indexCollector.grouped().acceptExpressionVisitor(this);
+  }
+
+  public void visitIndexedSum(IndexedSum indexedSum) {
+    indexedSum.array().acceptExpressionVisitor(this);
+    indexedSum.indexRelation().acceptExpressionVisitor(this);
+  }
+
+  public void visitArrayCreator(ArrayCreator arrayCreator) {
+    visit(arrayCreator.elements());
+  }
+
+  public void visitIntArrayAccess(IntArrayAccess arrayAccess) {
+    arrayAccess.array().acceptExpressionVisitor(this);
+    arrayAccess.index().acceptExpressionVisitor(this);
+  }
+
+  public void visitDoubleArrayAccess(DoubleArrayAccess doubleArrayAccess) {
+    doubleArrayAccess.array().acceptExpressionVisitor(this);
+    doubleArrayAccess.index().acceptExpressionVisitor(this);
+  }
+
+  public void visitIntExtractComponent(IntExtractComponent intExtractComponent) {
+    intExtractComponent.tuple().acceptExpressionVisitor(this);
+  }
+
+  public void visitDoubleExtractComponent(DoubleExtractComponent doubleExtractComponent) {
+    doubleExtractComponent.tuple().acceptExpressionVisitor(this);
+  }
+
+  public void visitDoubleCast(DoubleCast doubleCast) {
+    doubleCast.intExpression().acceptExpressionVisitor(this);
+  }
+
+  public void visitNot(Not not) {
+    not.expression().acceptExpressionVisitor(this);
+  }
+
+  public void visitIntOperatorInvocation(IntOperatorInvocation intOperatorInvocation) {
+    visitOperator(intOperatorInvocation.operator(), intOperatorInvocation.args());
+  }
+
+  public void visitRelationOperatorInvocation(RelationOperatorInvocation relationOperatorInvocation) {
+    visitOperator(relationOperatorInvocation.operator(), relationOperatorInvocation.args());
+  }
+
+  public void visitTupleOperatorInvocation(TupleOperatorInvocation tupleOperatorInvocation) {
+    visitOperator(tupleOperatorInvocation.operator(), tupleOperatorInvocation.args());
+  }
+
+}
@@ -0,0 +1,17 @@
+package thebeast.nod.statement;
+
+import thebeast.nod.expression.BoolExpression;
+import thebeast.nod.variable.RelationVariable;
+
+/**
+ * Removes all tuples of a relation variable that fulfill a condition.
+ *
+ * @author Sebastian Riedel
+ */
+public interface Delete extends Statement {
+
+  RelationVariable target();
+
+  BoolExpression where();
+
+}
@@ -68,6 +68,15 @@ public interface Interpreter {
 
   RelationVariable createRelationVariable(Heading heading, String countAttribute);  
 
+  /**
+   * Creates a view that stores the result of the given expression in a relation variable and maintains it
+   * incrementally when the variables the expression refers to receive new tuples (see {@link MaterializedView}).
+   *
+   * @param definition the expression to materialize.
+   * @return a view that is up to date with the current values of the variables in the expression.
+   */
+  MaterializedView createMaterializedView(RelationExpression definition);
+
   CategoricalVariable createCategoricalVariable(CategoricalExpression categorical);
 
   BoolVariable createBoolVariable();
@@ -84,6 +93,16 @@ public interface Interpreter {
 
   void update(RelationVariable relationVariable, AttributeAssign assign);
 
+  /**
+   * Removes all tuples of the variable for which the condition holds. The attributes of the variable can be
+   * referred to without prefix in the condition (as in updates). Indices of the variable are updated incrementally
+   * unless a large part of the tuples is deleted.
+   *
+   * @param relationVariable the variable to delete from.
+   * @param where            the condition tuples to delete fulfill.
+   */
+  void delete(RelationVariable relationVariable, BoolExpression where);
+
 
   BoolValue evaluateBool(BoolExpression expr);
 
@@ -120,5 +139,25 @@ public interface Interpreter {
 
   void compactify(RelationVariable var);
 
-  void defragment();
+  /**
+   * Compacts all relation variables of this interpreter in memory: capacities are trimmed to the number of tuples,
+   * indices that are much larger than the number of their keys are shrunk, and nested data of removed tuples is
+   * released. Variables that share their data with other variables are left alone.
+   *
+   * @return the number of bytes freed (as measured by {@link RelationVariable#byteSize()}).
+   */
+  int defragment();
+
+  /**
+   * Makes the interpreter check its relation variables every few thousand statements and compact those that have
+   * more unused than the given fraction of their capacity.
+   *
+   * <p>Compacting replaces the buffers of variables, so this is only safe while no other thread reads them. The check
+   * therefore only runs for statements interpreted on the thread that created the interpreter, and never while the
+   * server does parallel work (see {@link thebeast.nod.NoDServer#beginParallel()}).
+   *
+   * @param maxOverhead the fraction of unused capacity (between 0 and 1) above which a variable is compacted; 0
+   *                    switches the automatic defragmentation off (the default).
+   */
+  void setAutoDefragment(double maxOverhead);
 }
@@ -28,5 +28,7 @@ public interface StatementFactory {
 
   RelationUpdate createRelationUpdate(RelationVariable variable, AttributeAssign assign);
 
+  Delete createDelete(RelationVariable variable, BoolExpression where);
+
 
 }
@@ -23,4 +23,6 @@ public interface StatementVisitor {
   void visitArrayAdd(ArrayAdd arrayAdd);
 
   void visitRelationAppend(RelationAppend relationAppend);
+
+  void visitDelete(Delete delete);
 }
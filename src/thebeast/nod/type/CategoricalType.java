@@ -20,6 +20,29 @@ public interface CategoricalType extends ScalarType {
 
   int index(String represenation);
 
+  /**
+   * Returns the index of the representation given by a slice of utf-8 encoded bytes (e.g. a token in the line
+   * buffer of a corpus file) without creating a string for it.
+   *
+   * @param bytes  the array containing the representation.
+   * @param offset the first byte of the representation.
+   * @param length the number of bytes of the representation.
+   * @return the index of the representation, -1 if the type doesn't contain it (and has no unknowns).
+   */
+  int index(byte[] bytes, int offset, int length);
+
+  String representation(int index);
+
+  /**
+   * @return the number of (known) values of this type.
+   */
+  int size();
+
+  /**
+   * @return the number of bytes used to store the representations of this type.
+   */
+  int byteSize();
+
   boolean contains(String representation);
 
   boolean unknowns();
@@ -5,6 +5,7 @@ import thebeast.nod.value.ArrayValue;
 import thebeast.nod.type.RelationType;
 import thebeast.nod.type.ArrayType;
 import thebeast.nod.expression.ArrayExpression;
+import thebeast.nod.statement.ArraySparseAdd;
 
 /**
  * @author Sebastian Riedel
@@ -20,5 +21,16 @@ public interface ArrayVariable extends Variable<ArrayValue,ArrayType>, ArrayExpr
 
   void enforceBound(int[] indices, boolean lower, double value);
 
+  /**
+   * Adds a scaled sparse vector given by primitive arrays to this (double) array.
+   *
+   * @param indices the indices of the sparse vector.
+   * @param values  the values of the sparse vector.
+   * @param size    the number of valid entries in indices and values.
+   * @param scale   the scale of the sparse vector.
+   * @param sign    whether results that are negative (NONNEGATIVE) or positive (NONPOSITIVE) should be set to zero.
+   */
+  void add(int[] indices, double[] values, int size, double scale, ArraySparseAdd.Sign sign);
+
   int nonZeroCount(double eps);
 }
@@ -0,0 +1,42 @@
+package thebeast.nod.variable;
+
+import thebeast.nod.expression.RelationExpression;
+
+/**
+ * A MaterializedView keeps the result of a relation expression in a relation variable. When the relation variables
+ * the expression refers to have only received new tuples since the last refresh, the view only evaluates the
+ * expression for these new tuples (using delta rules for queries, restrictions, unions and summaries) instead of
+ * recomputing it from scratch. Any other change of a base variable (assignment, update, deletion, ...) leads to a
+ * full recomputation.
+ *
+ * @author Sebastian Riedel
+ */
+public interface MaterializedView {
+
+  /**
+   * @return the variable that holds the result of the view definition (as of the last refresh). It must not be
+   *         changed by anyone but this view.
+   */
+  RelationVariable variable();
+
+  /**
+   * @return the expression this view materializes.
+   */
+  RelationExpression definition();
+
+  /**
+   * Brings the view variable up to date with the current content of the variables the definition refers to.
+   */
+  void refresh();
+
+  /**
+   * @return the number of refreshes that only processed new tuples.
+   */
+  int getIncrementalRefreshCount();
+
+  /**
+   * @return the number of refreshes that recomputed the whole view.
+   */
+  int getFullRefreshCount();
+
+}
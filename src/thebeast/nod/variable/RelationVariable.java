@@ -24,6 +24,43 @@ public interface RelationVariable extends Variable<RelationValue,RelationType>,
 
   int byteSize();
 
+  /**
+   * Makes sure the variable can hold the given number of tuples without further allocation. Useful when the same
+   * variable is filled over and over again with tables of similar size.
+   *
+   * @param tupleCount the number of tuples the variable should have space for.
+   */
+  void ensureCapacity(int tupleCount);
+
   public boolean hasIndex(String name);
 
+  /**
+   * Additionally keeps the int and double attributes of this variable in column-major order (one contiguous array per
+   * attribute). This speeds up column extraction, sequential indices and queries that filter the variable by
+   * attribute constants, at the cost of one more copy of the data.
+   *
+   * @param columnar true iff the variable should keep a columnar copy.
+   */
+  void setColumnar(boolean columnar);
+
+  boolean isColumnar();
+
+  /**
+   * Moves the int and double attributes of this variable out of the Java heap (into direct buffers), so that large
+   * relations which are rarely used don't slow down garbage collection. The data is moved back automatically the next
+   * time the variable is used. Values of this variable obtained before must not be used while it is off heap.
+   *
+   * @return true iff the data has been moved, false if the variable has relation valued attributes or shares its data
+   *         with other variables.
+   */
+  boolean moveOffHeap();
+
+  boolean isOffHeap();
+
+  /**
+   * Brings everything that is built lazily on reads (indices, columnar copy, heap data) up to date, so that several
+   * threads can read this variable at the same time. The variable must not be changed afterwards.
+   */
+  void prepareConcurrentReads();
+
 }
@@ -9,7 +9,6 @@ import thebeast.nodmem.variable.MemRelationVariable;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
@@ -30,12 +29,17 @@ public class MemFileSource implements FileSource {
 
   public void reset() {
     try {
+      if (deserializer != null) deserializer.close();
       deserializer = new MemDeserializer(new FileInputStream(file).getChannel(), readBuffer);
-    } catch (FileNotFoundException e) {
+    } catch (IOException e) {
       e.printStackTrace();
     }
   }
 
+  public void close() throws IOException {
+    if (deserializer != null) deserializer.close();
+  }
+
 
   public File file() {
     return file;
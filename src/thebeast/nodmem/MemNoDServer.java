@@ -13,11 +13,14 @@ import thebeast.nod.util.ExpressionBuilder;
 import thebeast.nodmem.expression.MemExpressionFactory;
 import thebeast.nodmem.identifier.MemIdentifierFactory;
 import thebeast.nodmem.identifier.MemName;
+import thebeast.nodmem.mem.MemChunk;
+import thebeast.nodmem.mem.MemSearchStatistics;
 import thebeast.nodmem.statement.MemInterpreter;
 import thebeast.nodmem.statement.MemStatementFactory;
 import thebeast.nodmem.type.MemTypeFactory;
 
 import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Sebastian Riedel
@@ -30,6 +33,9 @@ public class MemNoDServer implements NoDServer {
   private IdentifierFactory identifierFactory = new MemIdentifierFactory();
   private MemInterpreter memInterpreter = new MemInterpreter(this);
   private ExpressionBuilder expressionBuilder = new ExpressionBuilder(this);
+  private ThreadLocal<Interpreter> boundInterpreter = new ThreadLocal<Interpreter>();
+  private ThreadLocal<ExpressionBuilder> boundBuilder = new ThreadLocal<ExpressionBuilder>();
+  private AtomicInteger parallel = new AtomicInteger(0);
 
 
   public TypeFactory typeFactory() {
@@ -45,6 +51,8 @@ public class MemNoDServer implements NoDServer {
   }
 
   public ExpressionBuilder expressionBuilder() {
+    ExpressionBuilder bound = boundBuilder.get();
+    if (bound != null) return bound;
     return expressionBuilder;
   }
 
@@ -53,9 +61,39 @@ public class MemNoDServer implements NoDServer {
   }
 
   public Interpreter interpreter() {
+    Interpreter bound = boundInterpreter.get();
+    if (bound != null) return bound;
     return memInterpreter;
   }
 
+  public Interpreter createInterpreter() {
+    return new MemInterpreter(this);
+  }
+
+  public void bind(Interpreter interpreter, ExpressionBuilder builder) {
+    if (boundInterpreter.get() == null) beginParallel();
+    boundInterpreter.set(interpreter);
+    boundBuilder.set(builder);
+  }
+
+  public void unbind() {
+    if (boundInterpreter.get() != null) endParallel();
+    boundInterpreter.remove();
+    boundBuilder.remove();
+  }
+
+  public void beginParallel() {
+    parallel.incrementAndGet();
+  }
+
+  public void endParallel() {
+    parallel.decrementAndGet();
+  }
+
+  public boolean isParallel() {
+    return parallel.get() > 0;
+  }
+
   public FileSink createSink(File file, int bufferSizeInKb) {
     return new MemFileSink(file, bufferSizeInKb);
   }
@@ -64,6 +102,26 @@ public class MemNoDServer implements NoDServer {
     return new MemFileSource(file, bufferSizeInKb);
   }
 
+  public long getAllocatedBytes() {
+    return MemChunk.getAllocatedBytes();
+  }
+
+  public void setCollectQueryStatistics(boolean collect) {
+    MemSearchStatistics.setEnabled(collect);
+  }
+
+  public boolean isCollectQueryStatistics() {
+    return MemSearchStatistics.isEnabled();
+  }
+
+  public void resetQueryStatistics() {
+    MemSearchStatistics.reset();
+  }
+
+  public String getQueryStatistics() {
+    return MemSearchStatistics.toTable(200);
+  }
+
   public Name createIdentifier(String identifier) {
     return new MemName(identifier);
   }
@@ -23,12 +23,18 @@ public abstract class AbstractMemExpression<T extends Type> implements Expressio
 
   protected T type;
   protected MemFunction function;
-  protected static final MemExpressionCompiler compiler = new MemExpressionCompiler();
+  //the compiler keeps state while compiling, so each thread gets its own
+  private static final ThreadLocal<MemExpressionCompiler> compiler = new ThreadLocal<MemExpressionCompiler>() {
+    protected MemExpressionCompiler initialValue() {
+      return new MemExpressionCompiler();
+    }
+  };
   private LinkedList<MemHashIndex> dependendIndices = new LinkedList<MemHashIndex>();
 
   private static LinkedList<WeakReference<Expression>> references = new LinkedList<WeakReference<Expression>>();
   private static ReferenceQueue<Expression> queue = new ReferenceQueue<Expression>();
   protected ArrayList<MemRelationVariable> sideEffected = new ArrayList<MemRelationVariable>();
+  protected ArrayList<MemRelationVariable> referenced = new ArrayList<MemRelationVariable>();
 
   protected AbstractMemExpression(T type) {
     this.type = type;
@@ -67,10 +73,15 @@ public abstract class AbstractMemExpression<T extends Type> implements Expressio
   public MemFunction compile() {
     if (function == null) {
       dependendIndices.clear();
-      function = compiler.compile(this);
+      function = compiler.get().compile(this);
     }
 //    else
 //      function.clear();
+    //variables changed by the expression must not share their data (and indices) with others
+    for (MemRelationVariable var : sideEffected)
+      var.own();
+    for (MemRelationVariable var : referenced)
+      var.moveOnHeap();
     for (MemHashIndex depIndex : dependendIndices)
       depIndex.update();
     return function;
@@ -79,13 +90,37 @@ public abstract class AbstractMemExpression<T extends Type> implements Expressio
   public MemFunction compile(MemHeading context) {
     if (function == null) {
       dependendIndices.clear();
-      function = compiler.compile(this,context);
+      function = compiler.get().compile(this,context);
     }
+    for (MemRelationVariable var : sideEffected)
+      var.own();
+    for (MemRelationVariable var : referenced)
+      var.moveOnHeap();
     for (MemHashIndex depIndex : dependendIndices)
       depIndex.update();
     return function;
   }
 
+  /**
+   * Remembers that the compiled function of this expression accesses the data of the given variable (which then needs
+   * to be on the heap whenever the function is evaluated).
+   *
+   * @param var a variable the compiled function refers to.
+   */
+  public void addReferencedVariable(MemRelationVariable var) {
+    if (!referenced.contains(var)) referenced.add(var);
+  }
+
+  /**
+   * Remembers that the compiled function of this expression changes the given variable (which then must own its data
+   * whenever the function is evaluated).
+   *
+   * @param var a variable the compiled function writes to.
+   */
+  public void addSideEffectedVariable(MemRelationVariable var) {
+    if (!sideEffected.contains(var)) sideEffected.add(var);
+  }
+
   public int byteSize(){
     return function != null ? function.bytesize() : 0;
   }
@@ -139,7 +139,8 @@ public class MemExpressionCompiler implements ExpressionVisitor {
     prefix2heading.clear();
     for (RelationExpression expr : query.relations()) {
       expr.acceptExpressionVisitor(this);
-      indexInformations[index] = indexInformation;
+      //only variables have indices, other relations are calculated on the fly
+      indexInformations[index] = expr instanceof RelationVariable ? indexInformation : null;
       chunkPointer[index] = new MemVector(0, 0, index);
       prefix2heading.put(query.prefixes().get(index), (MemHeading) expr.type().heading());
       chunkFunctions[index++] = function;
@@ -188,6 +189,7 @@ public class MemExpressionCompiler implements ExpressionVisitor {
     MemDim resultDim = ((MemHeading) query.select().type().heading()).getDim();
 
     MemSearchPlan plan = new MemSearchPlan(resultDim, query.unify(), actions);
+    plan.setSource(query);
 
     //voila
     function = new MemFunction(plan, chunkFunction, null);
@@ -203,7 +205,7 @@ public class MemExpressionCompiler implements ExpressionVisitor {
       HashMap<String, Equality> available = equalities.get(prefix);
       if (available != null) {
         ArrayList<String> names = new ArrayList<String>(available.keySet());
-        String bestIndex = info.getMostCovering(names);
+        String bestIndex = info == null ? null : info.getMostCovering(names);
         if (bestIndex != null) {
           MemHashIndex memIndex = (MemHashIndex) info.getIndex(bestIndex);
           List<String> attributes = memIndex.attributes();
@@ -233,7 +235,7 @@ public class MemExpressionCompiler implements ExpressionVisitor {
                   bestIndexId, cols, select);
           actions[relation] = action;
         } else {
-          actions[relation] = new MemSearchAction(MemSearchAction.Type.ALL);
+          actions[relation] = createHashJoin(relation, prefix, names);
         }
       } else {
         actions[relation] = new MemSearchAction(MemSearchAction.Type.ALL);
@@ -241,6 +243,68 @@ public class MemExpressionCompiler implements ExpressionVisitor {
     }
   }
 
+  /**
+   * Creates a hash join action for a relation without a suitable index, or a full scan if there are no attributes the
+   * relation can be joined on with the preceding relations.
+   *
+   * @param relation the position of the relation in the from list.
+   * @param prefix   the prefix of the relation.
+   * @param names    the attributes of the relation that appear in equalities.
+   * @return a HASH_JOIN or ALL search action.
+   */
+  private MemSearchAction createHashJoin(int relation, String prefix, List<String> names) {
+    if (relation == 0) return new MemSearchAction(MemSearchAction.Type.ALL);
+    MemHeading heading = prefix2heading.get(prefix);
+    ArrayList<MemPointer> keys = new ArrayList<MemPointer>();
+    ArrayList<MemFunction> args = new ArrayList<MemFunction>();
+    ArrayList<MemVector> pointers = new ArrayList<MemVector>();
+    MemVector dim = new MemVector();
+    for (String name : names) {
+      MemPointer key = heading.pointerForAttribute(name);
+      if (key.type == MemChunk.DataType.CHUNK) continue;
+      Expression<?> result = extractor.getPrefix2Attribute2Result().get(prefix).get(name);
+      //the key must be known before the relation is visited
+      if (!refersToEarlierRelationsOnly(result, relation)) continue;
+      result.acceptExpressionVisitor(this);
+      keys.add(key);
+      pointers.add(new MemVector(dim));
+      dim.add(function.getReturnDim());
+      args.add(function);
+    }
+    if (keys.size() == 0) return new MemSearchAction(MemSearchAction.Type.ALL);
+    MemFunction select = new MemFunction(new MemChunk(1, 1, MemDim.create(dim)),
+            pointers.toArray(new MemVector[pointers.size()]), args.toArray(new MemFunction[args.size()]));
+    return new MemSearchAction(new MemColumnSelector(keys.toArray(new MemPointer[keys.size()])),
+            new MemColumnSelector(dim.xInt, dim.xDouble, dim.xChunk), select);
+  }
+
+  private boolean refersToEarlierRelationsOnly(Expression<?> expression, final int relation) {
+    final boolean[] result = new boolean[]{true};
+    expression.acceptExpressionVisitor(new DepthFirstExpressionVisitor() {
+      private void check(String prefix) {
+        Integer index = prefix2index.get(prefix);
+        if (index == null || index >= relation) result[0] = false;
+      }
+
+      public void visitIntAttribute(IntAttribute intAttribute) {
+        check(intAttribute.prefix());
+      }
+
+      public void visitDoubleAttribute(DoubleAttribute doubleAttribute) {
+        check(doubleAttribute.prefix());
+      }
+
+      public void visitCategoricalAttribute(CategoricalAttribute categoricalAttribute) {
+        check(categoricalAttribute.prefix());
+      }
+
+      public void visitRelationAttribute(RelationAttribute relationAttribute) {
+        check(relationAttribute.prefix());
+      }
+    });
+    return result[0];
+  }
+
   public void visitQueryInsert(QueryInsert query) {
     int index = 0;
     prefix2index.clear();
@@ -257,7 +321,8 @@ public class MemExpressionCompiler implements ExpressionVisitor {
     prefix2heading.clear();
     for (RelationExpression expr : query.relations()) {
       expr.acceptExpressionVisitor(this);
-      indexInformations[index] = indexInformation;
+      //only variables have indices, other relations are calculated on the fly
+      indexInformations[index] = expr instanceof RelationVariable ? indexInformation : null;
       chunkPointer[index] = new MemVector(0, 0, index);
       prefix2heading.put(query.prefixes().get(index), (MemHeading) expr.type().heading());
       chunkFunctions[index++] = function;
@@ -298,6 +363,7 @@ public class MemExpressionCompiler implements ExpressionVisitor {
     MemDim resultDim = ((MemHeading) query.insert().type().heading()).getDim();
 
     MemSearchPlan plan = new MemSearchPlan(resultDim, actions);
+    plan.setSource(query);
 
     //voila
     function = new MemFunction(plan, chunkFunction, null);
@@ -400,6 +466,7 @@ public class MemExpressionCompiler implements ExpressionVisitor {
 
   public void visitRelationVariable(RelationVariable relationVariable) {
     MemRelationVariable var = (MemRelationVariable) relationVariable;
+    root.addReferencedVariable(var);
     function = new MemFunction(MemFunction.Type.CHUNK_VARIABLE, var.getContainerChunk(), var.getPointer());
     indexInformation = var.indexInformation();
   }
@@ -873,6 +940,8 @@ public class MemExpressionCompiler implements ExpressionVisitor {
     MemHeading headingResult = (MemHeading) get.type().heading();
     MemHeading headingArgs = (MemHeading) get.argument().type().heading();
     MemRelationVariable relVar = (MemRelationVariable) get.relation();
+    if (get.put()) root.addSideEffectedVariable(relVar);
+    root.addReferencedVariable(relVar);
     //to get the dependend indices right etc.
     //relVar.acceptExpressionVisitor(this);
     MemChunk rel = relVar.getContainerChunk().chunkData[relVar.getPointer().xChunk];
@@ -29,16 +29,43 @@ public final class MemChunk extends MemHolder {
   public MemShallowMultiIndex[] indices;
   public MemShallowIndex rowIndex;
   public int rowIndexedSoFar = 0;
+  //optional column-major copy of the int and double attributes, see MemColumns.
+  public MemColumns columns;
+  //holds the data while the chunk is off heap, see moveOffHeap().
+  private MemOffHeapStore offHeapStore;
+  private boolean offHeap = false;
 
   private static final double MAXLOADFACTOR = 3.0;
 
   private static LinkedList<WeakReference<MemChunk>> references = new LinkedList<WeakReference<MemChunk>>();
   private static ReferenceQueue<MemChunk> queue = new ReferenceQueue<MemChunk>();
 
+  //one counter per thread, so the difference of two calls only contains the allocations of the calling thread
+  private static final ThreadLocal<long[]> allocatedBytes = new ThreadLocal<long[]>() {
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
   public static List<WeakReference<MemChunk>> references() {
     return references;
   }
 
+  /**
+   * Returns the number of bytes the calling thread has allocated for row data of chunks so far (by constructors that
+   * allocate their own arrays and by capacity increases). Take the difference of two calls to measure the allocations
+   * of an operation; allocations of other threads don't show up.
+   *
+   * @return the number of bytes allocated for chunk data by the calling thread since it started.
+   */
+  public static long getAllocatedBytes() {
+    return allocatedBytes.get()[0];
+  }
+
+  private static void countAllocation(int rows, MemDim dim) {
+    allocatedBytes.get()[0] += (long) rows * (dim.xInt * INTSIZE + dim.xDouble * DOUBLESIZE + dim.xChunk * POINTERSIZE);
+  }
+
   //private static final int INCREMENTSCALE = 1;
 
   public void copyFrom(MemChunk other) {
@@ -59,6 +86,7 @@ public final class MemChunk extends MemHolder {
       size = other.size;
     }
     rowIndexedSoFar = 0;
+    if (columns != null) columns.invalidate();
     if (indices != null) for (MemShallowMultiIndex index : indices)
       if (index != null) {
         index.indexedSoFar = 0;
@@ -98,6 +126,7 @@ public final class MemChunk extends MemHolder {
     MemDim dim = MemDim.create(dims[0], dims[1], dims[2]);
     MemHolder.deserializeInPlace(deserializer, dim, dst);
     dst.rowIndexedSoFar = dims[3];
+    if (dst.columns != null) dst.columns.invalidate();
     int[] buffer = new int[1];
     deserializer.read(buffer, 1);
     if (buffer[0] == 1) {
@@ -160,6 +189,7 @@ public final class MemChunk extends MemHolder {
     if (dim.xInt > 0) intData = new int[capacity * dim.xInt];
     if (dim.xDouble > 0) doubleData = new double[capacity * dim.xDouble];
     if (dim.xChunk > 0) chunkData = new MemChunk[capacity * dim.xChunk];
+    countAllocation(capacity, dim);
     //rowIndex = new MemShallowIndex(capacity == 0 ? 1 : capacity, dim);
     //dim.allCols = new MemColumnSelector(numIntCols, dim.xDouble, dim.xChunk);
     if (STORE_REFERENCES) references.add(new WeakReference<MemChunk>(this, queue));
@@ -229,6 +259,7 @@ public final class MemChunk extends MemHolder {
     if (chunkData != null) System.arraycopy(chunkData, 0, newChunkData, 0, chunkData.length);
     chunkData = newChunkData;
     if (rowIndex != null) rowIndex.increaseCapacity(howMuch);
+    countAllocation(capacity, dim);
     //dim.allCols = new MemColumnSelector(numIntCols, dim.xDouble, dim.xChunk);
 
     //if (capacity > 10000) throw new RuntimeException("Lots of capacity, man!");
@@ -238,6 +269,64 @@ public final class MemChunk extends MemHolder {
     super.compactify(dim);
   }
 
+  /**
+   * Trims the capacity of this chunk and its nested chunks to their sizes, drops the references to nested chunks in
+   * unused rows, and shrinks the row index and the multi indices if their capacity is more than twice the number of
+   * their keys. Note that this replaces the data arrays, so chunks that share arrays with this chunk are not affected.
+   */
+  public void compact() {
+    if (capacity > size) compactify();
+    if (columns != null) columns = new MemColumns(dim);
+    if (rowIndex != null) {
+      if (rowIndexedSoFar == 0)
+        rowIndex = null;
+      else if (rowIndex.getCapacity() > 2 * rowIndex.getNumKeys())
+        rowIndex.increaseCapacity(Math.max(rowIndex.getNumKeys(), 1) - rowIndex.getCapacity());
+    }
+    if (indices != null) for (MemShallowMultiIndex index : indices)
+      if (index != null) index.compactify();
+    if (chunkData != null) for (MemChunk nested : chunkData)
+      if (nested != null) nested.compact();
+  }
+
+
+  /**
+   * Moves the int and double data of this chunk into a {@link MemOffHeapStore} and releases the heap arrays (and the
+   * columnar copy). Indices are kept. Nobody must access the data of the chunk until {@link #moveOnHeap()} is called.
+   *
+   * @return true iff the data is off heap now, false if the chunk has nested chunks (these stay on the heap).
+   */
+  public boolean moveOffHeap() {
+    if (offHeap) return true;
+    if (dim.xChunk > 0) return false;
+    offHeapStore = new MemOffHeapStore();
+    offHeapStore.store(this);
+    if (columns != null) columns = new MemColumns(dim);
+    offHeap = true;
+    return true;
+  }
+
+  /**
+   * Moves the data of this chunk back onto the heap if it has been moved off heap before (otherwise nothing happens).
+   * The off heap store is dropped, so its direct memory can be freed while the chunk lives on.
+   */
+  public void moveOnHeap() {
+    if (!offHeap) return;
+    offHeapStore.load(this);
+    offHeapStore = null;
+    offHeap = false;
+  }
+
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  /**
+   * @return the number of bytes this chunk has allocated outside of the heap.
+   */
+  public long offHeapByteSize() {
+    return offHeapStore == null ? 0 : offHeapStore.byteSize();
+  }
 
   public void buildRowIndex() {
     if (rowIndex == null)
@@ -256,6 +345,7 @@ public final class MemChunk extends MemHolder {
   }
 
   public void unify() {
+    if (columns != null) columns.truncate(rowIndexedSoFar);
     MemVector srcPointer = new MemVector(rowIndexedSoFar, dim);
     MemVector dstPointer = new MemVector(rowIndexedSoFar, dim);
     if (rowIndex == null)
@@ -369,6 +459,7 @@ public final class MemChunk extends MemHolder {
     this.chunkData = chunk.chunkData;
     this.size = chunk.size;
     this.capacity = chunk.capacity;
+    if (columns != null) columns.invalidate();
   }
 
   public MemChunk copy() {
@@ -398,6 +489,7 @@ public final class MemChunk extends MemHolder {
     chunkData = newChunkData;
 
     rowIndexedSoFar = 0;
+    if (columns != null) columns.invalidate();
     //buildRowIndex();
 
   }
@@ -469,6 +561,7 @@ public final class MemChunk extends MemHolder {
     }
     if (indices != null) for (MemShallowMultiIndex index : indices)
       size += index.byteSize();
+    if (columns != null) size += columns.byteSize();
     return size;
   }
 
@@ -587,6 +680,7 @@ public final class MemChunk extends MemHolder {
 
   public void clear() {
     rowIndexedSoFar = 0;
+    if (columns != null) columns.invalidate();
     if (rowIndex != null)
       rowIndex.clear();
     if (indices != null) {
@@ -14,13 +14,15 @@ public final class MemChunkSequentialIndex {
     int numIntCols = chunk.dim.xInt;
     int[] tmpValues = new int[chunk.size];
     sortedRows = new int[chunk.size];
-    int index = column;
+    if (chunk.columns != null)
+      System.arraycopy(chunk.columns.getIntColumn(chunk, column), 0, tmpValues, 0, chunk.size);
+    else
+      for (int row = 0, index = column; row < chunk.size; ++row, index += numIntCols)
+        tmpValues[row] = chunk.intData[index];
     boolean ordered = true;
     for (int row = 0; row < chunk.size; ++row) {
-      tmpValues[row] = chunk.intData[index];
       sortedRows[row] = row;
       if (ordered && row > 0) ordered = tmpValues[row - 1] <= tmpValues[row];
-      index += numIntCols;
     }
     if (!ordered) {
       HeapIntSorter sorter = new HeapIntSorter();
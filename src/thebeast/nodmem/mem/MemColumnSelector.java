@@ -43,6 +43,13 @@ public class MemColumnSelector {
     this.intCols = newIntCols;
   }
 
+  public void removeDoubleCol(int col){
+    int[] newDoubleCols = new int[doubleCols.length-1];
+    int i = 0;
+    for (int c: doubleCols) if (c != col) newDoubleCols[i++] = c;
+    this.doubleCols = newDoubleCols;
+  }
+
   public MemColumnSelector(MemPointer ... pointers){
     ArrayList<Integer> intCols = new ArrayList<Integer>();
     ArrayList<Integer> doubleCols = new ArrayList<Integer>();
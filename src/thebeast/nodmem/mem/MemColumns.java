@@ -0,0 +1,139 @@
+package thebeast.nodmem.mem;
+
+/**
+ * MemColumns holds a column-major (struct-of-arrays) copy of the int and double attributes of a {@link MemChunk}: each
+ * attribute gets its own contiguous array. Scans over a single attribute (building sequential indices, extracting
+ * columns, filtering by a constant) then run over consecutive memory instead of striding across rows.
+ *
+ * <p>The columns are maintained incrementally: {@link #update(MemChunk)} only transposes the rows that were added since
+ * the last update. Whoever changes rows in place has to call {@link #invalidate()} or {@link #truncate(int)}.
+ *
+ * @author Sebastian Riedel
+ */
+public final class MemColumns {
+
+  private int[][] intColumns;
+  private double[][] doubleColumns;
+  private int builtSoFar;
+
+  public MemColumns(MemDim dim) {
+    intColumns = new int[dim.xInt][0];
+    doubleColumns = new double[dim.xDouble][0];
+  }
+
+  /**
+   * Transposes all rows of the chunk that have not been transposed yet.
+   *
+   * @param chunk the chunk this object mirrors.
+   */
+  public void update(MemChunk chunk) {
+    int size = chunk.size;
+    if (builtSoFar > size) builtSoFar = 0;
+    if (builtSoFar == size) return;
+    int numIntCols = chunk.dim.xInt;
+    for (int col = 0; col < numIntCols; ++col) {
+      int[] column = intColumns[col];
+      if (column.length < size) {
+        int[] newColumn = new int[size + (size >> 1)];
+        System.arraycopy(column, 0, newColumn, 0, builtSoFar);
+        intColumns[col] = column = newColumn;
+      }
+      for (int row = builtSoFar, index = builtSoFar * numIntCols + col; row < size; ++row, index += numIntCols)
+        column[row] = chunk.intData[index];
+    }
+    int numDoubleCols = chunk.dim.xDouble;
+    for (int col = 0; col < numDoubleCols; ++col) {
+      double[] column = doubleColumns[col];
+      if (column.length < size) {
+        double[] newColumn = new double[size + (size >> 1)];
+        System.arraycopy(column, 0, newColumn, 0, builtSoFar);
+        doubleColumns[col] = column = newColumn;
+      }
+      for (int row = builtSoFar, index = builtSoFar * numDoubleCols + col; row < size; ++row, index += numDoubleCols)
+        column[row] = chunk.doubleData[index];
+    }
+    builtSoFar = size;
+  }
+
+  /**
+   * Forgets all transposed rows, the next update will transpose the whole chunk again.
+   */
+  public void invalidate() {
+    builtSoFar = 0;
+  }
+
+  /**
+   * Forgets all transposed rows from the given row on.
+   *
+   * @param row the first row that may have changed.
+   */
+  public void truncate(int row) {
+    if (row < builtSoFar) builtSoFar = row;
+  }
+
+  /**
+   * Returns the values of an int attribute. Only the first {@link MemChunk#size} entries are valid.
+   *
+   * @param chunk the chunk this object mirrors.
+   * @param col   the int column.
+   * @return the backing array of the column (do not change it).
+   */
+  public int[] getIntColumn(MemChunk chunk, int col) {
+    update(chunk);
+    return intColumns[col];
+  }
+
+  /**
+   * Returns the values of a double attribute. Only the first {@link MemChunk#size} entries are valid.
+   *
+   * @param chunk the chunk this object mirrors.
+   * @param col   the double column.
+   * @return the backing array of the column (do not change it).
+   */
+  public double[] getDoubleColumn(MemChunk chunk, int col) {
+    update(chunk);
+    return doubleColumns[col];
+  }
+
+  /**
+   * Collects the rows whose int attributes have the given values.
+   *
+   * @param chunk      the chunk this object mirrors.
+   * @param cols       the int columns to test.
+   * @param values     the value each column has to have.
+   * @param targetCell the cell of the row holder to write the rows to.
+   * @param rows       the row holder (the cell is replaced if it is too small).
+   * @return the number of matching rows.
+   */
+  public int select(MemChunk chunk, int[] cols, int[] values, int targetCell, int[][] rows) {
+    update(chunk);
+    int size = chunk.size;
+    int[] dst = rows[targetCell];
+    if (dst == null || dst.length < size) {
+      dst = new int[size];
+      rows[targetCell] = dst;
+    }
+    int[] column = intColumns[cols[0]];
+    int value = values[0];
+    int count = 0;
+    for (int row = 0; row < size; ++row)
+      if (column[row] == value) dst[count++] = row;
+    for (int i = 1; i < cols.length && count > 0; ++i) {
+      column = intColumns[cols[i]];
+      value = values[i];
+      int kept = 0;
+      for (int j = 0; j < count; ++j)
+        if (column[dst[j]] == value) dst[kept++] = dst[j];
+      count = kept;
+    }
+    return count;
+  }
+
+  public int byteSize() {
+    int size = 0;
+    for (int[] column : intColumns) size += column.length * MemHolder.INTSIZE;
+    for (double[] column : doubleColumns) size += column.length * MemHolder.DOUBLESIZE;
+    return size;
+  }
+
+}
@@ -0,0 +1,103 @@
+package thebeast.nodmem.mem;
+
+/**
+ * Removes the rows of a chunk that fulfill a condition. Small deletions fill the holes with the last rows of the chunk
+ * and update the row index and the multi indices of the chunk accordingly, so these don't need to be rebuilt. Larger
+ * deletions keep the order of the remaining rows and leave it to the caller to invalidate all indices.
+ *
+ * @author Sebastian Riedel
+ */
+public class MemDeleter {
+
+  //deletions of more than this fraction of rows are not done incrementally
+  private static final double MAX_INCREMENTAL_FRACTION = 0.25;
+
+  /**
+   * Deletes all rows for which the given condition holds.
+   *
+   * @param chunk the chunk to delete rows from.
+   * @param where a boolean function evaluated with the chunk as only argument chunk.
+   * @return true iff the indices of the chunk have been maintained, false if they need to be invalidated.
+   */
+  public static boolean delete(MemChunk chunk, MemFunction where) {
+    int size = chunk.size;
+    int[] deleted = new int[size];
+    int count = 0;
+    MemChunk condition = new MemChunk(1, 1, MemDim.INT_DIM);
+    MemChunk[] chunks = new MemChunk[]{chunk};
+    int[] rows = new int[]{0};
+    MemVector zero = new MemVector(0, 0, 0);
+    for (int row = 0; row < size; ++row) {
+      rows[0] = row;
+      MemEvaluator.evaluate(where, chunks, rows, condition, zero);
+      if (condition.intData[0] == 1) deleted[count++] = row;
+    }
+    if (count == 0) return true;
+    if (chunk.columns != null) chunk.columns.truncate(deleted[0]);
+    int newSize = size - count;
+    if (count > MAX_INCREMENTAL_FRACTION * size) {
+      int dst = deleted[0];
+      for (int row = deleted[0], next = 0; row < size; ++row) {
+        if (next < count && deleted[next] == row) ++next;
+        else copyRow(chunk, row, dst++);
+      }
+      release(chunk, newSize, size);
+      chunk.size = newSize;
+      return false;
+    }
+
+    for (int i = 0; i < count; ++i) {
+      int row = deleted[i];
+      if (chunk.rowIndex != null && row < chunk.rowIndexedSoFar) chunk.rowIndex.remove(row, chunk.dim.allCols);
+      if (chunk.indices != null) for (MemShallowMultiIndex index : chunk.indices)
+        if (index != null && row < index.indexedSoFar) index.remove(row);
+    }
+    //fill the holes with the last rows that are not deleted
+    int source = size - 1;
+    int lastDeleted = count - 1;
+    for (int i = 0; i < count && deleted[i] < newSize; ++i) {
+      while (lastDeleted >= 0 && deleted[lastDeleted] == source) {
+        --lastDeleted;
+        --source;
+      }
+      int hole = deleted[i];
+      if (chunk.rowIndex != null) {
+        if (source < chunk.rowIndexedSoFar)
+          chunk.rowIndex.move(source, hole, chunk.dim.allCols);
+        else if (hole < chunk.rowIndexedSoFar)
+          chunk.rowIndex.put(chunk, new MemVector(source, chunk.dim), chunk.dim.allCols, hole, true);
+      }
+      if (chunk.indices != null) for (MemShallowMultiIndex index : chunk.indices) {
+        if (index == null) continue;
+        if (source < index.indexedSoFar) index.move(source, hole);
+        else if (hole < index.indexedSoFar) index.add(source, hole);
+      }
+      copyRow(chunk, source, hole);
+      --source;
+    }
+    release(chunk, newSize, size);
+    chunk.size = newSize;
+    if (chunk.rowIndexedSoFar > newSize) chunk.rowIndexedSoFar = newSize;
+    if (chunk.indices != null) for (MemShallowMultiIndex index : chunk.indices)
+      if (index != null && index.indexedSoFar > newSize) index.indexedSoFar = newSize;
+    return true;
+  }
+
+  private static void copyRow(MemChunk chunk, int from, int to) {
+    MemDim dim = chunk.dim;
+    if (dim.xInt > 0)
+      System.arraycopy(chunk.intData, from * dim.xInt, chunk.intData, to * dim.xInt, dim.xInt);
+    if (dim.xDouble > 0)
+      System.arraycopy(chunk.doubleData, from * dim.xDouble, chunk.doubleData, to * dim.xDouble, dim.xDouble);
+    if (dim.xChunk > 0)
+      System.arraycopy(chunk.chunkData, from * dim.xChunk, chunk.chunkData, to * dim.xChunk, dim.xChunk);
+  }
+
+  private static void release(MemChunk chunk, int from, int to) {
+    //moved nested chunks must not be shared with the unused rows (which may be reused by copyFrom)
+    if (chunk.dim.xChunk > 0)
+      for (int i = from * chunk.dim.xChunk; i < to * chunk.dim.xChunk; ++i)
+        chunk.chunkData[i] = null;
+  }
+
+}
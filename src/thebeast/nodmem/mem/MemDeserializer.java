@@ -27,6 +27,10 @@ public class MemDeserializer {
     this.doubleBuffer = byteBuffer.asDoubleBuffer();
   }
 
+  public void close() throws IOException {
+    channel.close();
+  }
+
   public void read(int[] data, int howmany) throws IOException {
     if (!initialized) {
       init();
@@ -1,13 +1,14 @@
 package thebeast.nodmem.mem;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Sebastian Riedel
  */
 public class MemDim extends MemVector {
 
-  private static HashMap<MemDim, MemDim> cache = new HashMap<MemDim, MemDim>();
+  //concurrent because chunks are also deserialized on prefetching threads
+  private static ConcurrentHashMap<MemDim, MemDim> cache = new ConcurrentHashMap<MemDim, MemDim>();
 
   public final MemColumnSelector allCols;
 
@@ -30,10 +31,8 @@ public class MemDim extends MemVector {
 
   public static MemDim create(int xInt, int xDouble, int xChunk) {
     MemDim dim = new MemDim(xInt, xDouble, xChunk);
-    MemDim old = cache.get(dim);
-    if (old != null) return old;
-    cache.put(dim, dim);
-    return dim;
+    MemDim old = cache.putIfAbsent(dim, dim);
+    return old != null ? old : dim;
   }
 
   public static MemDim create(MemVector vector) {
@@ -852,12 +852,12 @@ public class MemEvaluator {
     }
     if (foundRow == -1) {
       ptr = new MemVector(chunk.size, dim);
-      if (chunk.size == chunk.capacity)
-        chunk.increaseCapacity(100);
       //evaluate the back off into the solution
       MemEvaluator.evaluate(f.backoffFunction, chunks, rows, dst, dstVct);
       //copy the backoff
       if (f.put) {
+        if (chunk.size == chunk.capacity)
+          chunk.increaseCapacity(100);
         for (int col = 0; col < f.resultCols.intCols.length; ++col)
           chunk.intData[ptr.xInt + f.resultCols.intCols[col]] = dst.chunkData[dstVct.xChunk].intData[col];
         for (int col = 0; col < f.resultCols.doubleCols.length; ++col)
@@ -0,0 +1,134 @@
+package thebeast.nodmem.mem;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A MemOffHeapStore keeps the int and double data of a flat {@link MemChunk} (a chunk without nested chunks) in direct
+ * byte buffers, i.e. outside of the Java heap. Large relations that are only used now and then (global atoms, weights
+ * of a model that is not trained at the moment, ...) can be parked here so that the garbage collector does not need to
+ * scan and copy their arrays over and over again.
+ *
+ * <p>A direct buffer can't hold more than 2 GB, so each column is split into segments of at most {@link
+ * #SEGMENT_BYTES} bytes. A store lives only while its chunk is off heap: the chunk drops it when the data is moved
+ * back.
+ *
+ * @author Sebastian Riedel
+ */
+public final class MemOffHeapStore {
+
+  /**
+   * The maximal number of bytes of one direct buffer.
+   */
+  public static final int SEGMENT_BYTES = 1 << 30;
+
+  private IntBuffer[] ints;
+  private DoubleBuffer[] doubles;
+  private int capacity;
+  private int segmentBytes;
+
+  /**
+   * Creates a store with segments of {@link #SEGMENT_BYTES} bytes.
+   */
+  public MemOffHeapStore() {
+    this(SEGMENT_BYTES);
+  }
+
+  /**
+   * Creates a store with segments of the given size.
+   *
+   * @param segmentBytes the maximal number of bytes of one direct buffer, a multiple of 8.
+   */
+  MemOffHeapStore(int segmentBytes) {
+    this.segmentBytes = segmentBytes;
+  }
+
+  /**
+   * Copies the data of the chunk into this store and releases the heap arrays of the chunk.
+   *
+   * @param chunk a chunk without nested chunks.
+   */
+  void store(MemChunk chunk) {
+    MemDim dim = chunk.dim;
+    int[] intSegments = segmentLengths(chunk.size * dim.xInt, MemHolder.INTSIZE, segmentBytes);
+    ints = new IntBuffer[intSegments.length];
+    for (int segment = 0, offset = 0; segment < intSegments.length; offset += intSegments[segment++]) {
+      ints[segment] = allocate(intSegments[segment] * MemHolder.INTSIZE).asIntBuffer();
+      ints[segment].put(chunk.intData, offset, intSegments[segment]);
+    }
+    int[] doubleSegments = segmentLengths(chunk.size * dim.xDouble, MemHolder.DOUBLESIZE, segmentBytes);
+    doubles = new DoubleBuffer[doubleSegments.length];
+    for (int segment = 0, offset = 0; segment < doubleSegments.length; offset += doubleSegments[segment++]) {
+      doubles[segment] = allocate(doubleSegments[segment] * MemHolder.DOUBLESIZE).asDoubleBuffer();
+      doubles[segment].put(chunk.doubleData, offset, doubleSegments[segment]);
+    }
+    capacity = chunk.capacity;
+    chunk.intData = null;
+    chunk.doubleData = null;
+  }
+
+  /**
+   * Allocates new heap arrays for the chunk (with the capacity it had when it was stored) and copies the data of this
+   * store back into them.
+   *
+   * @param chunk the chunk that has been stored before.
+   */
+  void load(MemChunk chunk) {
+    MemDim dim = chunk.dim;
+    chunk.capacity = capacity;
+    if (dim.xInt > 0) {
+      chunk.intData = new int[capacity * dim.xInt];
+      int offset = 0;
+      for (IntBuffer segment : ints) {
+        segment.flip();
+        int length = segment.limit();
+        segment.get(chunk.intData, offset, length);
+        offset += length;
+      }
+    }
+    if (dim.xDouble > 0) {
+      chunk.doubleData = new double[capacity * dim.xDouble];
+      int offset = 0;
+      for (DoubleBuffer segment : doubles) {
+        segment.flip();
+        int length = segment.limit();
+        segment.get(chunk.doubleData, offset, length);
+        offset += length;
+      }
+    }
+  }
+
+  /**
+   * Splits a column into segments.
+   *
+   * @param length       the number of elements of the column.
+   * @param elementSize  the number of bytes of one element.
+   * @param segmentBytes the maximal number of bytes of one segment.
+   * @return the number of elements of each segment.
+   */
+  static int[] segmentLengths(int length, int elementSize, int segmentBytes) {
+    int perSegment = segmentBytes / elementSize;
+    int[] result = new int[(int) (((long) length + perSegment - 1) / perSegment)];
+    for (int segment = 0; segment < result.length; ++segment)
+      result[segment] = Math.min(perSegment, length - segment * perSegment);
+    return result;
+  }
+
+  //a segment never has more than segmentBytes bytes, so its size fits into an int
+  private static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * @return the number of bytes this store occupies outside of the heap.
+   */
+  public long byteSize() {
+    long size = 0;
+    if (ints != null) for (IntBuffer segment : ints) size += (long) segment.capacity() * MemHolder.INTSIZE;
+    if (doubles != null) for (DoubleBuffer segment : doubles) size += (long) segment.capacity() * MemHolder.DOUBLESIZE;
+    return size;
+  }
+
+}
@@ -1,6 +1,7 @@
 package thebeast.nodmem.mem;
 
 import java.io.PrintStream;
+import java.util.Arrays;
 
 /**
  * @author Sebastian Riedel
@@ -9,7 +10,27 @@ public final class MemSearch {
 
   private static final int CAPACITY_INCREMENTS = 200;
 
+  //building a hash table costs about as much as this many scans of the relation
+  private static final int HASH_JOIN_BUILD_SCANS = 3;
+  //relations smaller than this are always scanned
+  private static final int HASH_JOIN_MIN_SIZE = 16;
+
   public static void search(MemSearchPlan plan, MemChunk[] chunks, MemChunk variables, MemChunk dst, int dstRow) {
+    MemSearchStatistics statistics = MemSearchStatistics.get(plan);
+    if (statistics != null) {
+      long start = System.nanoTime();
+      ++statistics.calls;
+      search(plan, chunks, dst, dstRow, statistics);
+      statistics.nanos += System.nanoTime() - start;
+      statistics.rowsWritten += dst.size - dstRow;
+    } else
+      search(plan, chunks, dst, dstRow, null);
+    //hash tables only live for one search
+    if (plan.hashTables != null) Arrays.fill(plan.hashTables, null);
+  }
+
+  private static void search(MemSearchPlan plan, MemChunk[] chunks, MemChunk dst, int dstRow,
+                             MemSearchStatistics statistics) {
     for (MemChunk chunk : chunks) if(chunk.size==0) return;
     final int chunkCount = chunks.length;
     int[] currentPointers = plan.currentPointers;
@@ -22,6 +43,7 @@ public final class MemSearch {
     for (int i = 0; i < filled.length; ++i) filled[i] = false;
     boolean[] incremental = plan.incremental;
     for (int i = 0; i < incremental.length; ++i) incremental[i] = false;
+    if (plan.scanCounts != null) Arrays.fill(plan.scanCounts, 0);
 //    int[] currentPointers = new int[chunkCount];
 //    int[] currentSizes = new int[chunkCount];
 //    int[] currentRows = new int[chunkCount];
@@ -48,16 +70,40 @@ public final class MemSearch {
 
         switch (action.type) {
           case ALL:
-            incremental[currentChunk] = true;
-            currentRows[currentChunk] = 0;
-            currentSizes[currentChunk] = chunks[currentChunk].size;
+            scan(plan, chunks, currentChunk, statistics);
+            break;
+          case HASH_JOIN:
+            MemShallowMultiIndex hashTable = plan.hashTables[currentChunk];
+            if (hashTable == null) {
+              if (!isHashJoinWorthIt(plan, chunks[currentChunk], currentChunk)) {
+                ++plan.scanCounts[currentChunk];
+                scan(plan, chunks, currentChunk, statistics);
+                break;
+              }
+              hashTable = buildHashTable(chunks[currentChunk], action);
+              plan.hashTables[currentChunk] = hashTable;
+              if (statistics != null) ++statistics.hashBuilds[currentChunk];
+            }
+            MemEvaluator.evaluate(action.functions[0], chunks, currentRows, action.args, zero);
+            currentSizes[currentChunk] = hashTable.get(actionArgs, zero, action.cols, currentChunk, currentSpaces);
             currentPointers[currentChunk] = 0;
+            incremental[currentChunk] = false;
+            if (statistics != null) {
+              ++statistics.indexLookups[currentChunk];
+              statistics.rowsScanned[currentChunk] += currentSizes[currentChunk];
+            }
+            if (currentSizes[currentChunk] > 0)
+              currentRows[currentChunk] = currentSpaces[currentChunk][0];
             break;
           case MULTI_INDEX:
             MemEvaluator.evaluate(action.functions[0], chunks, currentRows, action.args, zero);
             currentSizes[currentChunk] =
                     chunks[currentChunk].indices[action.indexNr].get(actionArgs, zero, action.cols, currentChunk, currentSpaces);
             currentPointers[currentChunk] = 0;
+            if (statistics != null) {
+              ++statistics.indexLookups[currentChunk];
+              statistics.rowsScanned[currentChunk] += currentSizes[currentChunk];
+            }
             if (currentSizes[currentChunk] > 0)
               currentRows[currentChunk] = currentSpaces[currentChunk][0];
             break;
@@ -67,12 +113,17 @@ public final class MemSearch {
             MemChunkSequentialIndex index = action.sequentialIndex;
             currentSizes[currentChunk] = index.getGEQ(value, chunks[currentChunk], action.col, currentChunk, currentSpaces);
             currentPointers[currentChunk] = 0;
+            if (statistics != null) {
+              ++statistics.indexLookups[currentChunk];
+              statistics.rowsScanned[currentChunk] += currentSizes[currentChunk];
+            }
             if (currentSizes[currentChunk] > 0)
               currentRows[currentChunk] = currentSpaces[currentChunk][0];
             break;
           case VALIDATE_WRITE:
             //printRows(currentPointers, currentSpaces, currentRows, System.out);
             MemEvaluator.evaluate(action.functions[0], chunks, currentRows, valid, zero);
+            if (statistics != null) ++statistics.rowsScanned[currentChunk];
             if (valid.intData[0] == 1) {
               //System.out.println("Written");
               int oldSize = dst.size;
@@ -132,6 +183,56 @@ public final class MemSearch {
 
   }
 
+  private static void scan(MemSearchPlan plan, MemChunk[] chunks, int currentChunk, MemSearchStatistics statistics) {
+    MemChunk all = chunks[currentChunk];
+    if (all.columns != null && plan.filterCols[currentChunk] != null) {
+      //scan the filtered columns and only visit the matching rows
+      plan.currentSizes[currentChunk] = all.columns.select(all, plan.filterCols[currentChunk],
+              plan.filterValues[currentChunk], currentChunk, plan.currentSpaces);
+      plan.currentPointers[currentChunk] = 0;
+      plan.incremental[currentChunk] = false;
+      if (plan.currentSizes[currentChunk] > 0)
+        plan.currentRows[currentChunk] = plan.currentSpaces[currentChunk][0];
+    } else {
+      plan.incremental[currentChunk] = true;
+      plan.currentRows[currentChunk] = 0;
+      plan.currentSizes[currentChunk] = all.size;
+      plan.currentPointers[currentChunk] = 0;
+    }
+    if (statistics != null) {
+      ++statistics.fullScans[currentChunk];
+      statistics.rowsScanned[currentChunk] += plan.currentSizes[currentChunk];
+    }
+  }
+
+  /**
+   * Estimates how often the relation will be scanned again during this search (at least once for each remaining row
+   * of the preceding relation, and at least as often as it has been scanned so far) and compares this to the cost of
+   * building a hash table.
+   *
+   * @param plan         the plan being executed.
+   * @param chunk        the relation to join.
+   * @param currentChunk the position of the relation in the plan (at least 1).
+   * @return true iff building a hash table is expected to be cheaper than scanning the relation over and over again.
+   */
+  private static boolean isHashJoinWorthIt(MemSearchPlan plan, MemChunk chunk, int currentChunk) {
+    if (chunk.size < HASH_JOIN_MIN_SIZE) return false;
+    int outer = currentChunk - 1;
+    int remaining = plan.currentSizes[outer] - plan.currentPointers[outer];
+    return Math.max(remaining, plan.scanCounts[currentChunk]) > HASH_JOIN_BUILD_SCANS;
+  }
+
+  private static MemShallowMultiIndex buildHashTable(MemChunk chunk, MemSearchAction action) {
+    MemShallowMultiIndex table = new MemShallowMultiIndex(chunk, action.keyCols, chunk.size, action.args.dim);
+    MemVector pointer = new MemVector();
+    for (int row = 0; row < chunk.size; ++row) {
+      table.add(chunk, pointer, action.keyCols, row);
+      pointer.add(chunk.dim);
+    }
+    table.indexedSoFar = chunk.size;
+    return table;
+  }
+
   private static void printRows(int[] currentPointers, int[][] currentSpaces, int[] currentRows, PrintStream out) {
     for (int i = 0; i < currentPointers.length; ++i) {
       int[] rows = currentSpaces[i];
@@ -6,7 +6,7 @@ package thebeast.nodmem.mem;
 public final class MemSearchAction {
 
   public enum Type {
-    MULTI_INDEX, ALL, LT_SEQ, GT_SEQ, BETWEEN_SEQ, WRITE, INSERT, VALIDATE_WRITE, GEQ_SEQ
+    MULTI_INDEX, ALL, LT_SEQ, GT_SEQ, BETWEEN_SEQ, WRITE, INSERT, VALIDATE_WRITE, GEQ_SEQ, HASH_JOIN
   }
 
   final Type type;
@@ -16,6 +16,8 @@ public final class MemSearchAction {
   int indexNr;
   MemChunkSequentialIndex sequentialIndex;
   int col;
+  //the columns of the relation a hash join builds its table over
+  MemColumnSelector keyCols;
 
   public MemSearchAction(Type type, MemFunction ... functions) {
     this.type = type;
@@ -31,6 +33,20 @@ public final class MemSearchAction {
     args = new MemChunk(1,1, dim);
   }
 
+  /**
+   * Creates a hash join action: when the relation is likely to be scanned several times during one search, a hash
+   * table over the key columns is built (once per search) and probed with the values of the function. Otherwise the
+   * relation is scanned. Either way the search still needs to validate the equalities the keys come from.
+   *
+   * @param keyCols  the columns of the relation to hash.
+   * @param cols     the corresponding columns of the result of the function.
+   * @param function the function that calculates the key values from the rows of the preceding relations.
+   */
+  public MemSearchAction(MemColumnSelector keyCols, MemColumnSelector cols, MemFunction function) {
+    this(Type.HASH_JOIN, -1, cols, function);
+    this.keyCols = keyCols;
+  }
+
   public MemSearchAction(Type type, MemChunkSequentialIndex index,
                          int col,MemFunction function) {
     this.type = type;
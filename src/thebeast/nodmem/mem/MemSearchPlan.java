@@ -1,5 +1,7 @@
 package thebeast.nodmem.mem;
 
+import java.util.ArrayList;
+
 /**
  * @author Sebastian Riedel
  */
@@ -19,6 +21,17 @@ public class MemSearchPlan {
 
   boolean unify = true;
 
+  //conjuncts of the form "attribute == constant" per chunk, used to prefilter chunks with columns (see MemColumns)
+  int[][] filterCols;
+  int[][] filterValues;
+
+  //hash tables built by hash join actions during the current search, and the number of scans so far (see MemSearch)
+  MemShallowMultiIndex[] hashTables;
+  int[] scanCounts;
+
+  Object source;
+  MemSearchStatistics statistics;
+
   public MemSearchPlan(MemDim resultDim, MemSearchAction ... actions) {
     this(resultDim, true, actions);
   }
@@ -35,6 +48,13 @@ public class MemSearchPlan {
     filled = new boolean[chunkCount];
     incremental = new boolean[chunkCount];
     this.unify = unify;
+    findFilters(chunkCount);
+    for (int chunk = 0; chunk < chunkCount; ++chunk)
+      if (actions[chunk].type == MemSearchAction.Type.HASH_JOIN) {
+        hashTables = new MemShallowMultiIndex[chunkCount];
+        scanCounts = new int[chunkCount];
+        break;
+      }
   }
 
   public MemSearchPlan(MemSearchAction... actions) {
@@ -43,6 +63,56 @@ public class MemSearchPlan {
   }
 
 
+  private void findFilters(int chunkCount) {
+    filterCols = new int[chunkCount][];
+    filterValues = new int[chunkCount][];
+    MemSearchAction last = actions[chunkCount];
+    if (last.type != MemSearchAction.Type.VALIDATE_WRITE) return;
+    ArrayList<MemFunction> conjuncts = new ArrayList<MemFunction>();
+    collectConjuncts(last.functions[0], conjuncts);
+    for (int chunk = 0; chunk < chunkCount; ++chunk) {
+      if (actions[chunk].type != MemSearchAction.Type.ALL && actions[chunk].type != MemSearchAction.Type.HASH_JOIN)
+        continue;
+      ArrayList<int[]> filters = new ArrayList<int[]>();
+      for (MemFunction conjunct : conjuncts) {
+        if (conjunct.type != MemFunction.Type.INT_EQUAL) continue;
+        MemFunction lhs = conjunct.arguments[0];
+        MemFunction rhs = conjunct.arguments[1];
+        if (lhs.type == MemFunction.Type.INT_CONSTANT) {
+          MemFunction tmp = lhs;
+          lhs = rhs;
+          rhs = tmp;
+        }
+        if (lhs.type == MemFunction.Type.INT_ATTRIBUTE && lhs.chunkIndex == chunk
+                && rhs.type == MemFunction.Type.INT_CONSTANT)
+          filters.add(new int[]{lhs.attributeIndex, rhs.constantInt});
+      }
+      if (filters.size() == 0) continue;
+      filterCols[chunk] = new int[filters.size()];
+      filterValues[chunk] = new int[filters.size()];
+      for (int i = 0; i < filters.size(); ++i) {
+        filterCols[chunk][i] = filters.get(i)[0];
+        filterValues[chunk][i] = filters.get(i)[1];
+      }
+    }
+  }
+
+  private static void collectConjuncts(MemFunction function, ArrayList<MemFunction> conjuncts) {
+    if (function.type == MemFunction.Type.AND)
+      for (MemFunction arg : function.arguments) collectConjuncts(arg, conjuncts);
+    else
+      conjuncts.add(function);
+  }
+
+  /**
+   * Sets the expression this plan was compiled from (used to identify the plan in statistics).
+   *
+   * @param source the query expression of this plan.
+   */
+  public void setSource(Object source) {
+    this.source = source;
+  }
+
   public int byteSize() {
     int size = 0;
     for (MemSearchAction action : actions)
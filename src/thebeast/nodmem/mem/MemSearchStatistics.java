@@ -0,0 +1,166 @@
+package thebeast.nodmem.mem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Formatter;
+import java.util.List;
+
+/**
+ * MemSearchStatistics collects execution statistics for one search plan (i.e. for one compiled query): how often it
+ * was run, how long it took, how many rows each search action looked at, how often indices were used instead of full
+ * scans, and how many rows were written.
+ *
+ * <p>Collecting is switched off by default; when it is off {@link MemSearch} only pays for a few null checks.
+ *
+ * @author Sebastian Riedel
+ */
+public final class MemSearchStatistics {
+
+  static boolean enabled = false;
+  private static int generation = 0;
+  private static final ArrayList<MemSearchStatistics> all = new ArrayList<MemSearchStatistics>();
+
+  private final Object query;
+  private final MemSearchAction.Type[] types;
+  private final int generationCreated;
+  int calls;
+  long nanos;
+  long rowsWritten;
+  final long[] rowsScanned;
+  final long[] indexLookups;
+  final long[] fullScans;
+  final long[] hashBuilds;
+
+  private MemSearchStatistics(MemSearchPlan plan) {
+    this.query = plan.source;
+    this.generationCreated = generation;
+    types = new MemSearchAction.Type[plan.actions.length];
+    for (int i = 0; i < types.length; ++i) types[i] = plan.actions[i].type;
+    rowsScanned = new long[types.length];
+    indexLookups = new long[types.length];
+    fullScans = new long[types.length];
+    hashBuilds = new long[types.length];
+  }
+
+  /**
+   * Returns the statistics object for the given plan, or null if statistics are not collected.
+   *
+   * @param plan the plan to get the statistics for.
+   * @return the statistics object of the plan (created if necessary) or null if collecting is switched off.
+   */
+  static MemSearchStatistics get(MemSearchPlan plan) {
+    if (!enabled) return null;
+    MemSearchStatistics result = plan.statistics;
+    if (result == null || result.generationCreated != generation) {
+      result = new MemSearchStatistics(plan);
+      plan.statistics = result;
+      synchronized (all) {
+        all.add(result);
+      }
+    }
+    return result;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    MemSearchStatistics.enabled = enabled;
+  }
+
+  /**
+   * Forgets all statistics collected so far.
+   */
+  public static void reset() {
+    synchronized (all) {
+      all.clear();
+      ++generation;
+    }
+  }
+
+  /**
+   * Returns the statistics of all plans that were run since the last reset, most expensive first.
+   *
+   * @return a list of statistics sorted by total time.
+   */
+  public static List<MemSearchStatistics> getAll() {
+    ArrayList<MemSearchStatistics> result;
+    synchronized (all) {
+      result = new ArrayList<MemSearchStatistics>(all);
+    }
+    Collections.sort(result, new Comparator<MemSearchStatistics>() {
+      public int compare(MemSearchStatistics o1, MemSearchStatistics o2) {
+        return o1.nanos < o2.nanos ? 1 : o1.nanos > o2.nanos ? -1 : 0;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Prints a table with the statistics of all plans, most expensive first.
+   *
+   * @param maxQueryLength queries longer than this are cut off.
+   * @return a table with one entry per query.
+   */
+  public static String toTable(int maxQueryLength) {
+    Formatter formatter = new Formatter();
+    formatter.format("%-8s %-10s %-10s %-10s %s\n", "Calls", "Total(ms)", "Avg(us)", "Written", "Query");
+    for (MemSearchStatistics statistics : getAll()) {
+      String query = String.valueOf(statistics.query).replaceAll("\\s+", " ");
+      if (query.length() > maxQueryLength) query = query.substring(0, maxQueryLength) + "...";
+      formatter.format("%-8d %-10.3f %-10.3f %-10d %s\n", statistics.calls, statistics.nanos / 1E6,
+              statistics.calls == 0 ? 0.0 : statistics.nanos / 1E3 / statistics.calls, statistics.rowsWritten, query);
+      for (int action = 0; action < statistics.types.length; ++action) {
+        if (statistics.rowsScanned[action] == 0 && statistics.indexLookups[action] == 0
+                && statistics.fullScans[action] == 0) continue;
+        formatter.format("%-8s %-14s rows: %-10d index lookups: %-8d full scans: %-8d hash builds: %d\n", "",
+                action + ":" + statistics.types[action], statistics.rowsScanned[action],
+                statistics.indexLookups[action], statistics.fullScans[action], statistics.hashBuilds[action]);
+      }
+    }
+    return formatter.toString();
+  }
+
+  public Object getQuery() {
+    return query;
+  }
+
+  public int getCalls() {
+    return calls;
+  }
+
+  public long getNanos() {
+    return nanos;
+  }
+
+  public long getRowsWritten() {
+    return rowsWritten;
+  }
+
+  public long getRowsScanned(int action) {
+    return rowsScanned[action];
+  }
+
+  public long getIndexLookups(int action) {
+    return indexLookups[action];
+  }
+
+  public long getFullScans(int action) {
+    return fullScans[action];
+  }
+
+  public long getHashBuilds(int action) {
+    return hashBuilds[action];
+  }
+
+  public int getActionCount() {
+    return types.length;
+  }
+
+  public MemSearchAction.Type getActionType(int action) {
+    return types[action];
+  }
+
+}
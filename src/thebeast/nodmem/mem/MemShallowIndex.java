@@ -234,6 +234,61 @@ public final class MemShallowIndex {
   }
 
 
+  /**
+   * Removes the mapping of the tuple at the given row of the indexed chunk.
+   *
+   * @param row  the row whose tuple is removed (its data has to be unchanged since it was put).
+   * @param cols the columns the index was built with.
+   * @return true iff the row was found.
+   */
+  public boolean remove(int row, MemColumnSelector cols) {
+    if (capacity == 0) return false;
+    int index = keyOf(row, cols) % capacity;
+    int[] valuesAtIndex = values[index];
+    int length = keyCounts[index];
+    for (int item = 0; item < length; ++item)
+      if (valuesAtIndex[item] == row) {
+        valuesAtIndex[item] = valuesAtIndex[length - 1];
+        keys[index][item] = keys[index][length - 1];
+        keyCounts[index] = length - 1;
+        --numKeys;
+        if (length == 1) --numUsedIndices;
+        return true;
+      }
+    return false;
+  }
+
+  /**
+   * Maps the tuple at row <code>from</code> to row <code>to</code> instead.
+   *
+   * @param from the row that is currently mapped to (its data has to be unchanged since it was put).
+   * @param to   the new row.
+   * @param cols the columns the index was built with.
+   * @return true iff the row was found.
+   */
+  public boolean move(int from, int to, MemColumnSelector cols) {
+    if (capacity == 0) return false;
+    int index = keyOf(from, cols) % capacity;
+    int[] valuesAtIndex = values[index];
+    for (int item = 0; item < keyCounts[index]; ++item)
+      if (valuesAtIndex[item] == from) {
+        valuesAtIndex[item] = to;
+        return true;
+      }
+    return false;
+  }
+
+  private int keyOf(int row, MemColumnSelector cols) {
+    int key = 17;
+    for (int col : cols.intCols)
+      key = 37 * key + chunk.intData[row * dim.xInt + col];
+    for (int col : cols.doubleCols)
+      key = 37 * key + (int) chunk.doubleData[row * dim.xDouble + col];
+    for (int col : cols.chunkCols)
+      key = 37 * key + chunk.chunkData[row * dim.xChunk + col].hashCode();
+    return key < 0 ? -key : key;
+  }
+
   public int getNumKeys() {
     return numKeys;
   }
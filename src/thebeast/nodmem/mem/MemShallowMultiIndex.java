@@ -27,6 +27,8 @@ public final class MemShallowMultiIndex {
   private MemDim keyDim,chunkDim;
   private int numKeys;
   private int numUsedIndices;
+  //keys whose value lists have become empty by removals, see remove(int)
+  private int numTombstones;
   public int indexedSoFar;
 
   private static final int CAP_INCREASE_LIST = 1;
@@ -76,7 +78,12 @@ public final class MemShallowMultiIndex {
     int length = keyCounts[index];
     if (length == 0) ++numUsedIndices;
     MemVector p = new MemVector();
+    int tombstone = -1;
     for (int item = 0; item < length; ++item) {
+      if (listSizesAtIndex[item] == 0) {
+        if (tombstone == -1) tombstone = item;
+        continue;
+      }
       //test key equality
       int old = listsAtIndex[item][0];
       check:
@@ -117,6 +124,15 @@ public final class MemShallowMultiIndex {
       p.xChunk += keyDim.xChunk;
     }
     //if we have arrived here the key-value pair has not yet been put
+    if (tombstone != -1) {
+      if (listsAtIndex[tombstone].length == 0) listsAtIndex[tombstone] = new int[CAP_INCREASE_LIST];
+      listsAtIndex[tombstone][0] = row;
+      listSizesAtIndex[tombstone] = 1;
+      keysAtIndex[tombstone] = key;
+      --numTombstones;
+      ++numKeys;
+      return -1;
+    }
     //check if we need to increase the capacity
     if (length == keysAtIndex.length) {
 
@@ -170,6 +186,7 @@ public final class MemShallowMultiIndex {
     int length = keyCounts[index];
     current.set(0,0,0);
     for (int item = 0; item < length; ++item) {
+      if (listSizes[index][item] == 0) continue;
       //test key equality
       int old = lists[index][item][0];
       check:
@@ -210,6 +227,7 @@ public final class MemShallowMultiIndex {
   public void clear() {
     numKeys = 0;
     numUsedIndices = 0;
+    numTombstones = 0;
     indexedSoFar = 0;
     int i = 0;
     for (int index = 0; index < keyCounts.length; index++) {
@@ -230,6 +248,7 @@ public final class MemShallowMultiIndex {
     listSizes = new int[capacity][];
     numKeys = 0;
     numUsedIndices = 0;
+    numTombstones = 0;
     indexedSoFar = 0;
   }
 
@@ -241,6 +260,7 @@ public final class MemShallowMultiIndex {
     for (int index = 0; index < lists.length; ++index) {
       if (lists[index] != null)
         for (int keyIndex = 0; keyIndex < keyCounts[index]; ++keyIndex) {
+          if (listSizes[index][keyIndex] == 0) continue;
           p.set(lists[index][keyIndex][0], chunkDim);
           for (int valueIndex = 0; valueIndex < listSizes[index][keyIndex]; ++valueIndex) {
             helper.add(chunk, p, this.cols, lists[index][keyIndex][valueIndex]);
@@ -254,9 +274,146 @@ public final class MemShallowMultiIndex {
     this.keys = helper.keys;
     this.numUsedIndices = helper.numUsedIndices;
     this.numKeys = helper.numKeys;
+    this.numTombstones = 0;
     
   }
 
+  /**
+   * Removes a row from the value list of its key. If the list becomes empty the key stays in its cell as tombstone
+   * (there is no row left to compare tuples with) which lookups skip and the next key added to the cell reuses. Once
+   * there are more tombstones than keys the index is rehashed.
+   *
+   * @param row the row to remove (its data has to be unchanged since it was added).
+   * @return true iff the row was found.
+   */
+  public boolean remove(int row) {
+    if (capacity == 0) return false;
+    int index = keyOf(row) % capacity;
+    int item = find(index, row);
+    if (item == -1) return false;
+    int[] list = lists[index][item];
+    int size = listSizes[index][item];
+    for (int i = 0; i < size; ++i)
+      if (list[i] == row) {
+        list[i] = list[size - 1];
+        listSizes[index][item] = size - 1;
+        if (size == 1) {
+          --numKeys;
+          ++numTombstones;
+          if (numTombstones > numKeys) increaseCapacity(0);
+        }
+        return true;
+      }
+    return false;
+  }
+
+  /**
+   * Replaces a row by another row with the same tuple (e.g. because the row data was moved).
+   *
+   * @param from the row that is currently in the index (its data has to be unchanged since it was added).
+   * @param to   the row that should replace it.
+   * @return true iff the row was found.
+   */
+  public boolean move(int from, int to) {
+    if (capacity == 0) return false;
+    int index = keyOf(from) % capacity;
+    int item = find(index, from);
+    if (item == -1) return false;
+    int[] list = lists[index][item];
+    for (int i = 0; i < listSizes[index][item]; ++i)
+      if (list[i] == from) {
+        list[i] = to;
+        return true;
+      }
+    return false;
+  }
+
+  /**
+   * Adds the tuple at one row of the indexed chunk under another row number.
+   *
+   * @param from the row that contains the tuple.
+   * @param row  the row number to add.
+   */
+  public void add(int from, int row) {
+    add(chunk, new MemVector(from, chunkDim), cols, row);
+  }
+
+  private int keyOf(int row) {
+    int key = 17;
+    int offset = row * chunkDim.xInt;
+    for (int col : cols.intCols)
+      key = 37 * key + chunk.intData[offset + col];
+    offset = row * chunkDim.xDouble;
+    for (int col : cols.doubleCols)
+      key = 37 * key + (int) chunk.doubleData[offset + col];
+    return key < 0 ? -key : key;
+  }
+
+  private int find(int index, int row) {
+    if (keys[index] == null) return -1;
+    int key = keyOf(row);
+    for (int item = 0; item < keyCounts[index]; ++item) {
+      if (listSizes[index][item] == 0 || keys[index][item] != key) continue;
+      int old = lists[index][item][0];
+      if (sameTuple(old, row)) return item;
+    }
+    return -1;
+  }
+
+  private boolean sameTuple(int row1, int row2) {
+    for (int col : cols.intCols)
+      if (chunk.intData[row1 * chunkDim.xInt + col] != chunk.intData[row2 * chunkDim.xInt + col]) return false;
+    for (int col : cols.doubleCols)
+      if (chunk.doubleData[row1 * chunkDim.xDouble + col] != chunk.doubleData[row2 * chunkDim.xDouble + col])
+        return false;
+    for (int col : cols.chunkCols)
+      if (!chunk.chunkData[row1 * chunkDim.xChunk + col].equals(chunk.chunkData[row2 * chunkDim.xChunk + col]))
+        return false;
+    return true;
+  }
+
+
+  /**
+   * Replaces the content of this index with a deep copy of the content of another index over the same columns. This
+   * index stays attached to its own chunk, so both chunks need to hold the same rows (e.g. after a shallow copy).
+   *
+   * @param other the index to copy from.
+   */
+  public void copyFrom(MemShallowMultiIndex other) {
+    capacity = other.capacity;
+    numKeys = other.numKeys;
+    numUsedIndices = other.numUsedIndices;
+    numTombstones = other.numTombstones;
+    indexedSoFar = other.indexedSoFar;
+    keyCounts = other.keyCounts.clone();
+    keys = new int[capacity][];
+    lists = new int[capacity][][];
+    listSizes = new int[capacity][];
+    for (int index = 0; index < capacity; ++index) {
+      if (other.keys[index] == null) continue;
+      keys[index] = other.keys[index].clone();
+      if (other.listSizes[index] != null) listSizes[index] = other.listSizes[index].clone();
+      int[][] otherLists = other.lists[index];
+      if (otherLists == null) continue;
+      int[][] lists = new int[otherLists.length][];
+      for (int keyIndex = 0; keyIndex < otherLists.length; ++keyIndex)
+        if (otherLists[keyIndex] != null) lists[keyIndex] = otherLists[keyIndex].clone();
+      this.lists[index] = lists;
+    }
+  }
+
+  /**
+   * Rehashes the index with a capacity equal to the number of keys if the current capacity is more than twice as
+   * large. This also releases the key and value arrays of cells that have been cleared.
+   */
+  public void compactify() {
+    int target = numKeys > 0 ? numKeys : 1;
+    if (capacity > 2 * target) increaseCapacity(target - capacity);
+  }
+
+  public MemChunk getChunk() {
+    return chunk;
+  }
 
   public int getNumKeys() {
     return numKeys;
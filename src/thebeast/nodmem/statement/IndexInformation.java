@@ -96,6 +96,45 @@ public class IndexInformation {
       ((MemHashIndex) index).update();
   }
 
+  /**
+   * Lets each index share the index of the given information with the same type and attributes (if there is one).
+   * Indices without counterpart stop sharing.
+   *
+   * @param chunk      the chunk the indices of this information belong to.
+   * @param other      the index information of a variable whose data has been shallow copied.
+   * @param otherChunk the chunk that has been copied.
+   */
+  public void shareIndices(MemChunk chunk, IndexInformation other, MemChunk otherChunk) {
+    for (Map.Entry<Index, Integer> entry : index2nr.entrySet()) {
+      MemHashIndex index = (MemHashIndex) entry.getKey();
+      MemHashIndex otherIndex = (MemHashIndex) other.getIndex(index.attributes());
+      if (otherIndex != null && otherIndex.indexType() == index.indexType() &&
+              otherIndex.getCols().compareTo(index.getCols()) == 0 &&
+              otherIndex.isIndexOf(otherChunk) && (index.isShared() || index.isIndexOf(chunk)))
+        index.shallowCopy(entry.getValue(), otherIndex);
+      else
+        index.release(entry.getValue());
+    }
+  }
+
+  /**
+   * Clones all shared indices.
+   */
+  public void ownIndices() {
+    for (Map.Entry<Index, Integer> entry : index2nr.entrySet())
+      ((MemHashIndex) entry.getKey()).own(entry.getValue());
+  }
+
+  /**
+   * @return the number of index builds avoided by sharing indices (see {@link MemHashIndex#getSharedCount()}).
+   */
+  public int getSharedCount() {
+    int count = 0;
+    for (Index index : name2index.values())
+      count += ((MemHashIndex) index).getSharedCount();
+    return count;
+  }
+
   public int getIndexCount() {
     return name2index.size();
   }
@@ -0,0 +1,32 @@
+package thebeast.nodmem.statement;
+
+import thebeast.nod.expression.BoolExpression;
+import thebeast.nod.statement.Delete;
+import thebeast.nod.statement.StatementVisitor;
+import thebeast.nod.variable.RelationVariable;
+
+/**
+ * @author Sebastian Riedel
+ */
+public class MemDelete implements Delete {
+
+  private RelationVariable target;
+  private BoolExpression where;
+
+  public MemDelete(RelationVariable target, BoolExpression where) {
+    this.target = target;
+    this.where = where;
+  }
+
+  public RelationVariable target() {
+    return target;
+  }
+
+  public BoolExpression where() {
+    return where;
+  }
+
+  public void acceptStatementVisitor(StatementVisitor visitor) {
+    visitor.visitDelete(this);
+  }
+}
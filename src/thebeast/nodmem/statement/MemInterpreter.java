@@ -8,8 +8,6 @@ import thebeast.nod.value.DoubleValue;
 import thebeast.nod.value.IntValue;
 import thebeast.nod.value.RelationValue;
 import thebeast.nod.variable.*;
-import thebeast.nod.FileSink;
-import thebeast.nod.FileSource;
 import thebeast.nodmem.MemNoDServer;
 import thebeast.nodmem.expression.AbstractMemExpression;
 import thebeast.nodmem.expression.MemDoubleConstant;
@@ -22,7 +20,6 @@ import thebeast.util.Util;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.File;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.*;
@@ -44,6 +41,11 @@ public class MemInterpreter implements Interpreter, StatementVisitor {
           arrayVarReferences = new LinkedList<WeakReference<ArrayVariable>>();
   private int relVarCount = 0;
 
+  private static final int AUTO_DEFRAGMENT_INTERVAL = 5000;
+  private double autoDefragment = 0;
+  private int statementCount = 0;
+  private Thread owner = Thread.currentThread();
+
   public MemInterpreter(MemNoDServer server) {
     typeFactory = (MemTypeFactory) server.typeFactory();
     this.server = server;
@@ -51,6 +53,10 @@ public class MemInterpreter implements Interpreter, StatementVisitor {
 
   public void interpret(Statement statement) {
     statement.acceptStatementVisitor(this);
+    //other threads may read the variables we would compact, see setAutoDefragment
+    if (autoDefragment > 0 && Thread.currentThread() == owner && ++statementCount % AUTO_DEFRAGMENT_INTERVAL == 0
+            && !server.isParallel())
+      defragment(autoDefragment);
   }
 
   public BoolValue evaluateBool(BoolExpression expr) {
@@ -111,6 +117,7 @@ public class MemInterpreter implements Interpreter, StatementVisitor {
     MemRelationType type = (MemRelationType) var.type();
     var.own();
     type.loadFromRows(inputStream, var.getContainerChunk(), var.getPointer());
+    var.invalidate();
   }
 
 
@@ -177,27 +184,43 @@ public class MemInterpreter implements Interpreter, StatementVisitor {
     return memRelationVariable;
   }
 
-  public void defragment() {
-    try {
-      File tmpFile = new File("/tmp/_thebeast.defrag");
-      FileSink sink = server.createSink(tmpFile, 10000);
-      for (WeakReference<RelationVariable> ref : relVarReferences) {
-        MemRelationVariable var = (MemRelationVariable) ref.get();
-        var.own();
-        sink.write(var, true);
-        var.getContainerChunk().clear();
-      }
-      sink.close();
-      Runtime.getRuntime().gc();
-      FileSource source = server.createSource(tmpFile,10000);
-      for (WeakReference<RelationVariable> ref : relVarReferences) {
-        MemRelationVariable var = (MemRelationVariable) ref.get();
-        source.read(var);
+  public MaterializedView createMaterializedView(RelationExpression definition) {
+    MemMaterializedView view = new MemMaterializedView(server,
+            (MemRelationVariable) createRelationVariable(definition.type().heading()), definition);
+    view.refresh();
+    return view;
+  }
+
+  public int defragment() {
+    return defragment(0);
+  }
+
+  /**
+   * Compacts all (unshared) relation variables whose unused capacity exceeds the given fraction of their capacity.
+   *
+   * @param maxOverhead the fraction of unused capacity above which variables are compacted, 0 to compact all.
+   * @return the number of bytes freed.
+   */
+  private int defragment(double maxOverhead) {
+    int freed = 0;
+    for (Iterator<WeakReference<RelationVariable>> iterator = relVarReferences.iterator(); iterator.hasNext();) {
+      MemRelationVariable var = (MemRelationVariable) iterator.next().get();
+      if (var == null) {
+        iterator.remove();
+        continue;
       }
-      tmpFile.delete();
-    } catch (IOException e) {
-      e.printStackTrace();
+      if (var.isShared() || var.isOffHeap()) continue;
+      MemChunk chunk = var.getContainerChunk().chunkData[var.getPointer().xChunk];
+      if (maxOverhead > 0 && chunk.getOverhead() <= maxOverhead * chunk.capacity) continue;
+      int before = var.byteSize();
+      var.compact();
+      freed += before - var.byteSize();
     }
+    return freed;
+  }
+
+  public void setAutoDefragment(double maxOverhead) {
+    this.autoDefragment = maxOverhead;
   }
 
 
@@ -294,6 +317,10 @@ public class MemInterpreter implements Interpreter, StatementVisitor {
   }
 
 
+  public void delete(RelationVariable relationVariable, BoolExpression where) {
+    interpret(new MemDelete(relationVariable, where));
+  }
+
   public void insert(RelationVariable var, RelationExpression relation) {
     interpret(new MemInsert(var, relation));
   }
@@ -433,6 +460,18 @@ public class MemInterpreter implements Interpreter, StatementVisitor {
     memRelationVariable.invalidate();
   }
 
+  public void visitDelete(Delete delete) {
+    MemHeading heading = (MemHeading) delete.target().type().heading();
+    MemFunction where = ((AbstractMemExpression) delete.where()).compile(heading);
+    MemRelationVariable var = (MemRelationVariable) delete.target();
+    var.own();
+    MemChunk chunk = var.getContainerChunk().chunkData[var.getPointer().xChunk];
+    if (MemDeleter.delete(chunk, where))
+      var.invalidateCountIndex();
+    else
+      var.invalidate();
+  }
+
   public void visitArrayAppend(ArrayAppend arrayAppend) {
     AbstractMemExpression expr = (AbstractMemExpression) arrayAppend.expression();
     MemArrayVariable var = (MemArrayVariable) arrayAppend.variable();
@@ -479,7 +518,7 @@ public class MemInterpreter implements Interpreter, StatementVisitor {
         break;
       case NONPOSITIVE:
         MemMath.sparseAdd(var.getContainerChunk().chunkData[var.getPointer().xChunk],
-                buffer.chunkData[0], buffer.doubleData[0], indexCol, valueCol, true);
+                buffer.chunkData[0], buffer.doubleData[0], indexCol, valueCol, false);
         break;
 
     }
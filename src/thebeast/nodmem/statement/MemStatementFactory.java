@@ -48,4 +48,8 @@ public class MemStatementFactory implements StatementFactory {
     return new MemRelationUpdate(variable, null, assigns);
   }
 
+  public Delete createDelete(RelationVariable variable, BoolExpression where) {
+    return new MemDelete(variable, where);
+  }
+
 }
@@ -11,38 +11,62 @@ import thebeast.nodmem.mem.MemVector;
 import thebeast.nodmem.mem.MemDim;
 import thebeast.nodmem.value.MemCategorical;
 import thebeast.nodmem.value.AbstractMemValue;
+import thebeast.util.StringDictionary;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.io.StreamTokenizer;
 import java.io.IOException;
 
 /**
+ * The representations of a MemCategoricalType are kept in a {@link StringDictionary}, so a type with millions of
+ * constants doesn't need a String and a map entry per constant.
+ *
+ * <p>A type that allows unknowns adds each unknown constant to its dictionary when it is first seen, e.g. while several
+ * inference sessions load observations at the same time. All accesses to the dictionary of such a type are therefore
+ * synchronized on the dictionary; types without unknowns never change and are read without locking.
+ *
  * @author Sebastian Riedel
  */
 public class MemCategoricalType extends AbstractScalarType implements CategoricalType {
 
 
-  private ArrayList<String> representations;
-  private HashMap<String, Integer> indices;
+  private StringDictionary representations;
   private boolean unknowns;
 
   public MemCategoricalType(Name name, boolean unknowns, List<String> representations) {
     super(name, DataType.INT);
     setDim(1,0,0);
     //setNumIntCols(1);
-    this.representations = new ArrayList<String>(representations);
-    indices = new HashMap<String, Integer>();
-    int index = 0;
-    for (String rep : representations)
-      indices.put(rep, index++);
+    this.representations = new StringDictionary(representations);
+    this.representations.compactify();
     this.unknowns = unknowns;
   }
 
   public String representation(int index) {
     if (unknowns && index < 0) return unknownWord(index);
-    return representations.get(index);
+    if (!unknowns) return representations.get(index);
+    synchronized (representations) {
+      return representations.get(index);
+    }
+  }
+
+  public int size() {
+    return representations.size();
+  }
+
+  public int byteSize() {
+    return representations.getUsedMemory();
+  }
+
+  /**
+   * Returns the dictionary that maps the representations of this type to their indices. It must not be changed, and
+   * if this type allows unknowns it must only be accessed while synchronized on it.
+   *
+   * @return the dictionary of this type.
+   */
+  public StringDictionary getDictionary() {
+    return representations;
   }
 
   public void acceptTypeVisitor(TypeVisitor visitor) {
@@ -59,9 +83,9 @@ public class MemCategoricalType extends AbstractScalarType implements Categorica
 
   public CategoricalValue value(String representation) {
     MemChunk chunk = new MemChunk(1, 1, MemDim.INT_DIM);
-    Integer integer = indices.get(representation);
-    if (integer == null && !unknowns) throw new NoDValueNotInTypeException(this, representation);
-    chunk.intData[0] = integer == null ? unknownIndex(representation) : integer;
+    int index = index(representation);
+    if (index == -1) throw new NoDValueNotInTypeException(this, representation);
+    chunk.intData[0] = index;
     return new MemCategorical(chunk, 0, this);
   }
 
@@ -71,12 +95,11 @@ public class MemCategoricalType extends AbstractScalarType implements Categorica
 //    return rep == null ? UNKNOWN_REP : "U:" + rep;
   }
 
-  private int unknownIndex(String rep) {
-    if (!unknowns) return -1;
-    int index = representations.size();
-    representations.add(rep);
-    indices.put(rep,index);
-    return index;
+  private int id(String representation) {
+    if (!unknowns) return representations.id(representation);
+    synchronized (representations) {
+      return representations.id(representation);
+    }
   }
 
   public CategoricalValue value(int index) {
@@ -86,12 +109,21 @@ public class MemCategoricalType extends AbstractScalarType implements Categorica
   }
 
   public int index(String represenation) {
-    Integer index = indices.get(represenation);
-    return index == null ? unknownIndex(represenation) : index;
+    if (!unknowns) return representations.id(represenation);
+    synchronized (representations) {
+      return representations.add(represenation);
+    }
+  }
+
+  public int index(byte[] bytes, int offset, int length) {
+    if (!unknowns) return representations.id(bytes, offset, length);
+    synchronized (representations) {
+      return representations.add(bytes, offset, length);
+    }
   }
 
   public boolean contains(String representation) {
-    return indices.get(representation) != null; 
+    return id(representation) != -1;
   }
 
   public boolean unknowns() {
@@ -113,19 +145,19 @@ public class MemCategoricalType extends AbstractScalarType implements Categorica
   public void load(StreamTokenizer src, MemChunk dst, MemVector ptr) throws IOException {
     src.nextToken();
     String s = src.ttype == '"' || src.ttype == '\'' ? "\"" + src.sval + "\"" : src.sval;
-    Integer integer = indices.get(s);
+    int index = id(s);
     System.out.println(name + " " + s);
-    if (!unknowns && integer == null)
+    if (!unknowns && index == -1)
       throw new RuntimeException(this + " has no value " + s);
-    dst.intData[ptr.xInt] = integer == null ? -1 : integer;
+    dst.intData[ptr.xInt] = index;
   }
 
   public void load(String s, MemChunk dst, MemVector ptr) throws IOException {
-    Integer integer = indices.get(s);
+    int index = index(s);
     //System.out.println(name + " " + s);
-    if (!unknowns && integer == null)
+    if (index == -1)
       throw new RuntimeException(this + " has no value " + s);
-    dst.intData[ptr.xInt] = integer == null ? unknownIndex(s) : integer;
+    dst.intData[ptr.xInt] = index;
   }
 
 }
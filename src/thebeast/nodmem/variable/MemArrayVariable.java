@@ -5,6 +5,7 @@ import thebeast.nod.type.ArrayType;
 import thebeast.nod.value.ArrayValue;
 import thebeast.nod.variable.ArrayVariable;
 import thebeast.nod.NoDServer;
+import thebeast.nod.statement.ArraySparseAdd;
 import thebeast.nodmem.mem.MemChunk;
 import thebeast.nodmem.mem.MemVector;
 import thebeast.nodmem.mem.MemDim;
@@ -80,6 +81,31 @@ public class MemArrayVariable extends AbstractMemVariable<ArrayValue, ArrayType>
     }
    }
 
+  public void add(int[] indices, double[] values, int size, double scale, ArraySparseAdd.Sign sign) {
+    double[] data = chunk.chunkData[pointer.xChunk].doubleData;
+    switch (sign) {
+      case FREE:
+        for (int i = 0; i < size; ++i)
+          data[indices[i]] += scale * values[i];
+        break;
+      case NONNEGATIVE:
+        for (int i = 0; i < size; ++i) {
+          int index = indices[i];
+          data[index] += scale * values[i];
+          if (data[index] < 0) data[index] = 0;
+        }
+        break;
+      case NONPOSITIVE:
+        for (int i = 0; i < size; ++i) {
+          int index = indices[i];
+          data[index] += scale * values[i];
+          if (data[index] > 0) data[index] = 0;
+        }
+        break;
+    }
+    invalidate();
+  }
+
   public int nonZeroCount(double eps) {
     MemChunk memChunk = chunk.chunkData[pointer.xChunk];
     int count = 0;
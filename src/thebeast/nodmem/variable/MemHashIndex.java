@@ -23,6 +23,7 @@ public class MemHashIndex implements Index {
   private MemDim dim;
   private MemChunk chunk;
   private double maxLoadFactor = 3;
+  private int sharedCount = 0, clonedCount = 0;
 
   public MemHashIndex(MemRelationVariable variable, Type indexType, List<String> attributes) {
     this.variable = variable;
@@ -44,6 +45,7 @@ public class MemHashIndex implements Index {
 
   public void useChunk(MemChunk chunk, int indexNr){
     memIndex = chunk.indices[indexNr];
+    ownIndex = null;
     this.chunk = chunk;
     //we assume that if there are any keys we have fully indexed the table.
     //indexedSoFar = memIndex.getNumKeys() > 0 ? chunk.size : 0;
@@ -58,6 +60,8 @@ public class MemHashIndex implements Index {
   }
 
   public void invalidate(){
+    //a shared index belongs to unchanged data (see own(int))
+    if (isShared()) return;
     memIndex.indexedSoFar = 0;
     memIndex.clear();
     //memIndex.clearMemory();
@@ -132,14 +136,67 @@ public class MemHashIndex implements Index {
     return cols.compareTo(((MemHashIndex)o).cols);
   }
 
+  /**
+   * Uses the index of another variable with the same data (after a shallow copy of its chunk) instead of building
+   * this index again. The index stays shared until {@link #own(int)} or {@link #release(int)} is called.
+   *
+   * @param indexNr    the number of this index in the chunk of its variable.
+   * @param otherIndex the index to share.
+   */
   public void shallowCopy(int indexNr, MemHashIndex otherIndex) {
-    ownIndex = memIndex;
+    if (ownIndex == null) ownIndex = memIndex;
     memIndex = otherIndex.memIndex;
     chunk.indices[indexNr] = memIndex;
+    if (memIndex.indexedSoFar > 0) ++sharedCount;
   }
 
+  /**
+   * Stops sharing the index by cloning the shared index (to be called before the data of either variable changes).
+   *
+   * @param indexNr the number of this index in the chunk of its variable.
+   */
   public void own(int indexNr){
+    if (ownIndex == null) return;
+    ownIndex.copyFrom(memIndex);
+    if (ownIndex.indexedSoFar > 0) ++clonedCount;
+    release(indexNr);
+  }
+
+  /**
+   * Stops sharing the index without taking over its content (to be called when the data is replaced anyway).
+   *
+   * @param indexNr the number of this index in the chunk of its variable.
+   */
+  public void release(int indexNr){
+    if (ownIndex == null) return;
     memIndex = ownIndex;
-    chunk.indices[indexNr] = ownIndex;
+    ownIndex = null;
+    chunk.indices[indexNr] = memIndex;
+  }
+
+  /**
+   * @param chunk a chunk.
+   * @return true iff this index is an index of the given chunk (and not shared with another variable).
+   */
+  public boolean isIndexOf(MemChunk chunk) {
+    return this.chunk == chunk && memIndex.getChunk() == chunk;
+  }
+
+  public boolean isShared() {
+    return ownIndex != null;
+  }
+
+  /**
+   * @return how often this index was taken over from another variable instead of being built again.
+   */
+  public int getSharedCount() {
+    return sharedCount;
+  }
+
+  /**
+   * @return how often a shared index had to be cloned because one of the variables was changed.
+   */
+  public int getClonedCount() {
+    return clonedCount;
   }
 }
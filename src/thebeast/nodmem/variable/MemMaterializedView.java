@@ -0,0 +1,290 @@
+package thebeast.nodmem.variable;
+
+import thebeast.nod.NoDServer;
+import thebeast.nod.expression.*;
+import thebeast.nod.statement.Interpreter;
+import thebeast.nod.statement.Statement;
+import thebeast.nod.variable.MaterializedView;
+import thebeast.nod.variable.RelationVariable;
+import thebeast.nodmem.mem.*;
+import thebeast.nodmem.type.MemHeading;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A MemMaterializedView maintains the result of a relation expression incrementally. For every base variable of the
+ * definition it derives (once) a delta expression that computes the new result tuples from the new tuples of this
+ * base variable:
+ *
+ * <ul>
+ * <li>a query gets one copy per occurrence of the base variable in its from list, with the occurrence replaced by the
+ * new tuples (all other relations keep their current value);</li>
+ * <li>a restriction restricts the delta of its argument, a union unites the deltas of its arguments;</li>
+ * <li>a summary is computed over the new tuples of its (materialized) argument and merged into the view by adding up
+ * counts and sums of existing groups.</li>
+ * </ul>
+ *
+ * <p>If a base variable appears anywhere else (in conditions, select clauses, nested expressions, ...) or if it was
+ * changed in any other way than by appending tuples, the view is recomputed from scratch.
+ *
+ * @author Sebastian Riedel
+ */
+public class MemMaterializedView implements MaterializedView {
+
+  private NoDServer server;
+  private Interpreter interpreter;
+  private ExpressionFactory factory;
+  private RelationExpression definition;
+  private MemRelationVariable variable;
+
+  private ArrayList<MemRelationVariable> bases = new ArrayList<MemRelationVariable>();
+  private HashMap<MemRelationVariable, MemRelationVariable> deltaVariables =
+          new HashMap<MemRelationVariable, MemRelationVariable>();
+  private HashMap<MemRelationVariable, Statement> deltaStatements = new HashMap<MemRelationVariable, Statement>();
+  private int[] modificationCounts;
+  private int[] sizes;
+  private boolean initialized = false;
+
+  private int incrementalRefreshCount = 0;
+  private int fullRefreshCount = 0;
+
+  //only for summaries
+  private Summarize summarize;
+  private MemMaterializedView input;
+  private MemRelationVariable summaryDelta;
+  private MemColumnSelector groupCols;
+  private int[] intSumCols, doubleSumCols;
+  private MemShallowIndex groupIndex;
+  private MemChunk groupIndexChunk;
+  private int groupIndexedSoFar;
+
+  /**
+   * Creates a view for the given definition. The view is empty until {@link #refresh()} is called.
+   *
+   * @param server     the server to create variables and expressions with.
+   * @param variable   the variable to store the result in (must have the type of the definition).
+   * @param definition the expression to materialize.
+   */
+  public MemMaterializedView(NoDServer server, MemRelationVariable variable, RelationExpression definition) {
+    this.server = server;
+    this.interpreter = server.interpreter();
+    this.factory = server.expressionFactory();
+    this.variable = variable;
+    this.definition = definition;
+    if (definition instanceof Summarize)
+      setUpSummary((Summarize) definition);
+    else
+      for (RelationVariable var : RelationVariableCollector.collect(definition)) {
+        MemRelationVariable base = (MemRelationVariable) var;
+        bases.add(base);
+        MemRelationVariable delta = createDeltaVariable(base);
+        RelationExpression deltaExpression = delta(definition, base, delta);
+        if (deltaExpression != null)
+          deltaStatements.put(base, server.statementFactory().createInsert(variable, deltaExpression));
+      }
+    modificationCounts = new int[bases.size()];
+    sizes = new int[bases.size()];
+  }
+
+  private void setUpSummary(Summarize summarize) {
+    this.summarize = summarize;
+    MemRelationVariable argument;
+    if (summarize.relation() instanceof MemRelationVariable)
+      argument = (MemRelationVariable) summarize.relation();
+    else {
+      input = new MemMaterializedView(server, (MemRelationVariable)
+              interpreter.createRelationVariable(summarize.relation().type().heading()), summarize.relation());
+      argument = input.variable;
+    }
+    bases.add(argument);
+    boolean incremental = true;
+    for (ScalarExpression<?> add : summarize.add())
+      for (RelationVariable var : RelationVariableCollector.collect(add)) {
+        if (!bases.contains(var)) bases.add((MemRelationVariable) var);
+        incremental = false;
+      }
+    if (!incremental) return;
+    MemRelationVariable delta = createDeltaVariable(argument);
+    summaryDelta = (MemRelationVariable) interpreter.createRelationVariable(definition.type().heading());
+    deltaStatements.put(argument, server.statementFactory().createAssign(summaryDelta,
+            factory.createSummarize(delta, summarize.by(), summarize.specs(), summarize.as(), summarize.add())));
+    MemHeading heading = (MemHeading) definition.type().heading();
+    groupCols = new MemColumnSelector(heading.getDim());
+    ArrayList<Integer> ints = new ArrayList<Integer>();
+    ArrayList<Integer> doubles = new ArrayList<Integer>();
+    for (int i = 0; i < summarize.as().size(); ++i) {
+      MemPointer pointer = heading.pointerForAttribute(summarize.as().get(i));
+      switch (summarize.specs().get(i)) {
+        case INT_COUNT:
+        case INT_SUM:
+          ints.add(pointer.pointer);
+          groupCols.removeIntCol(pointer.pointer);
+          break;
+        default:
+          doubles.add(pointer.pointer);
+          groupCols.removeDoubleCol(pointer.pointer);
+      }
+    }
+    intSumCols = toArray(ints);
+    doubleSumCols = toArray(doubles);
+  }
+
+  private static int[] toArray(List<Integer> list) {
+    int[] result = new int[list.size()];
+    for (int i = 0; i < result.length; ++i) result[i] = list.get(i);
+    return result;
+  }
+
+  private MemRelationVariable createDeltaVariable(MemRelationVariable base) {
+    MemRelationVariable delta = (MemRelationVariable) interpreter.createRelationVariable(base.type().heading());
+    deltaVariables.put(base, delta);
+    return delta;
+  }
+
+  /**
+   * Derives the expression that computes the new tuples of the given expression when the new tuples of the base
+   * variable are stored in the delta variable.
+   *
+   * @param expr  the expression to derive the delta expression for (refers to the base variable).
+   * @param base  the base variable.
+   * @param delta the variable that will hold the new tuples of the base variable.
+   * @return the delta expression or null if no delta expression can be derived.
+   */
+  private RelationExpression delta(RelationExpression expr, MemRelationVariable base, MemRelationVariable delta) {
+    if (expr == base) return delta;
+    if (expr instanceof Query) {
+      Query query = (Query) expr;
+      if (RelationVariableCollector.collect(query.where()).contains(base) ||
+              RelationVariableCollector.collect(query.select()).contains(base)) return null;
+      ArrayList<RelationExpression> result = new ArrayList<RelationExpression>();
+      List<RelationExpression> from = query.relations();
+      for (int i = 0; i < from.size(); ++i) {
+        if (from.get(i) == base) {
+          ArrayList<RelationExpression> replaced = new ArrayList<RelationExpression>(from);
+          replaced.set(i, delta);
+          result.add(factory.createQuery(query.prefixes(), replaced, query.where(), query.select(), query.unify()));
+        } else if (RelationVariableCollector.collect(from.get(i)).contains(base)) return null;
+      }
+      return union(result);
+    } else if (expr instanceof Union) {
+      ArrayList<RelationExpression> result = new ArrayList<RelationExpression>();
+      for (RelationExpression argument : ((Union) expr).arguments()) {
+        if (!RelationVariableCollector.collect(argument).contains(base)) continue;
+        RelationExpression argumentDelta = delta(argument, base, delta);
+        if (argumentDelta == null) return null;
+        result.add(argumentDelta);
+      }
+      return union(result);
+    } else if (expr instanceof Restrict) {
+      Restrict restrict = (Restrict) expr;
+      if (RelationVariableCollector.collect(restrict.where()).contains(base)) return null;
+      RelationExpression relationDelta = delta(restrict.relation(), base, delta);
+      return relationDelta == null ? null : factory.createRestrict(relationDelta, restrict.where());
+    }
+    return null;
+  }
+
+  private RelationExpression union(List<RelationExpression> expressions) {
+    return expressions.size() == 1 ? expressions.get(0) : factory.createUnion(expressions);
+  }
+
+  public RelationVariable variable() {
+    return variable;
+  }
+
+  public RelationExpression definition() {
+    return definition;
+  }
+
+  public void refresh() {
+    if (input != null) input.refresh();
+    boolean full = !initialized;
+    ArrayList<Integer> appended = new ArrayList<Integer>();
+    for (int i = 0; i < bases.size() && !full; ++i) {
+      MemRelationVariable base = bases.get(i);
+      if (base.getModificationCount() != modificationCounts[i] || base.size() < sizes[i]) full = true;
+      else if (base.size() > sizes[i]) {
+        if (deltaStatements.get(base) == null) full = true;
+        else appended.add(i);
+      }
+    }
+    if (full) {
+      interpreter.assign(variable, definition);
+      groupIndexChunk = null;
+      ++fullRefreshCount;
+    } else if (appended.size() > 0) {
+      for (int i : appended) {
+        MemRelationVariable base = bases.get(i);
+        deltaVariables.get(base).assignRows(base, sizes[i], base.size());
+      }
+      for (int i : appended) {
+        interpreter.interpret(deltaStatements.get(bases.get(i)));
+        if (summarize != null) merge(summaryDelta.getContainerChunk().chunkData[summaryDelta.getPointer().xChunk]);
+      }
+      ++incrementalRefreshCount;
+    }
+    for (int i = 0; i < bases.size(); ++i) {
+      modificationCounts[i] = bases.get(i).getModificationCount();
+      sizes[i] = bases.get(i).size();
+    }
+    initialized = true;
+  }
+
+  /**
+   * Adds the counts and sums of the given (partial) summary to the groups of the view, or appends the group if the view
+   * has no such group yet.
+   *
+   * @param summary a chunk with the heading of the view.
+   */
+  private void merge(MemChunk summary) {
+    variable.own();
+    MemChunk target = variable.getContainerChunk().chunkData[variable.getPointer().xChunk];
+    MemDim dim = target.dim;
+    if (groupIndexChunk != target) {
+      groupIndex = new MemShallowIndex(Math.max(100, target.size), dim, target);
+      groupIndexChunk = target;
+      groupIndexedSoFar = 0;
+    }
+    if (groupIndex.getLoadFactor() > 3.0)
+      groupIndex.increaseCapacity(target.size + summary.size - groupIndex.getCapacity(), groupCols);
+    MemVector pointer = new MemVector(groupIndexedSoFar, dim);
+    for (int row = groupIndexedSoFar; row < target.size; ++row) {
+      groupIndex.put(target, pointer, groupCols, row, false);
+      pointer.add(dim);
+    }
+    boolean changed = false;
+    MemVector src = new MemVector();
+    for (int row = 0; row < summary.size; ++row, src.add(dim)) {
+      int old = groupIndex.get(summary, src, groupCols);
+      if (old == -1) {
+        if (target.size == target.capacity) target.increaseCapacity(target.size + summary.size);
+        MemVector dst = new MemVector(target.size, dim);
+        if (dim.xInt > 0) System.arraycopy(summary.intData, src.xInt, target.intData, dst.xInt, dim.xInt);
+        if (dim.xDouble > 0)
+          System.arraycopy(summary.doubleData, src.xDouble, target.doubleData, dst.xDouble, dim.xDouble);
+        if (dim.xChunk > 0)
+          MemChunk.copyChunks(summary.chunkData, src.xChunk, target.chunkData, dst.xChunk, dim.xChunk);
+        groupIndex.put(target, dst, groupCols, target.size++, false);
+      } else {
+        for (int col : intSumCols)
+          target.intData[old * dim.xInt + col] += summary.intData[src.xInt + col];
+        for (int col : doubleSumCols)
+          target.doubleData[old * dim.xDouble + col] += summary.doubleData[src.xDouble + col];
+        changed = true;
+      }
+    }
+    groupIndexedSoFar = target.size;
+    //changed tuples invalidate all indices of the view
+    if (changed) variable.invalidate();
+  }
+
+  public int getIncrementalRefreshCount() {
+    return incrementalRefreshCount;
+  }
+
+  public int getFullRefreshCount() {
+    return fullRefreshCount;
+  }
+}
@@ -28,6 +28,8 @@ public class MemRelationVariable extends AbstractMemVariable<RelationValue, Rela
   private boolean needsIndexing = false;
   protected ArrayList<MemRelationVariable> owners = new ArrayList<MemRelationVariable>();
   protected MemRelationVariable owns = null;
+  //shallow copies of one variable can be made from several threads (e.g. of the global atoms of a model)
+  private static final Object OWNERSHIP = new Object();
   private ExpressionBuilder builder;
   private TupleType tupleType;
   private static final int OVERHEAD = 3000;
@@ -37,6 +39,8 @@ public class MemRelationVariable extends AbstractMemVariable<RelationValue, Rela
   private MemColumnSelector nonCountCols;
   private int countCol;
   private int countIndexedSoFar = 0;
+  private boolean columnar = false;
+  private int modificationCount = 0;
 
   public MemRelationVariable(NoDServer server, RelationType type) {
     this(server,type, null);
@@ -99,6 +103,7 @@ public class MemRelationVariable extends AbstractMemVariable<RelationValue, Rela
   }
 
   public RelationValue value() {
+    moveOnHeap();
     //System.out.println("Chunk:" + chunk.toOriginalString());
     if (value == null ||
             chunk.chunkData[0] != ((MemRelation)value).chunk() ||
@@ -147,18 +152,22 @@ public class MemRelationVariable extends AbstractMemVariable<RelationValue, Rela
    * Own chunk exclusively.
    */
   public void own() {
-    //if this variable is owned by others let them own themselves again
-    if (owners.size() > 0) {
-      for (MemRelationVariable var : new ArrayList<MemRelationVariable>(owners)) {
-        var.own();
+    moveOnHeap();
+    synchronized (OWNERSHIP) {
+      //if this variable is owned by others let them own themselves again
+      if (owners.size() > 0) {
+        for (MemRelationVariable var : new ArrayList<MemRelationVariable>(owners)) {
+          var.own();
+        }
+        owners.clear();
+      }
+      //if this variable owns another variable let it own itself exclusively
+      if (owns != null) {
+        chunk.chunkData[pointer.xChunk].own();
+        information.ownIndices();
+        owns.removeOwner(this);
+        owns = null;
       }
-      owners.clear();
-    }
-    //if this variable owns another variable let it own itself exclusively
-    if (owns != null) {
-      chunk.chunkData[pointer.xChunk].own();
-      owns.removeOwner(this);
-      owns = null;
     }
 
 //    System.out.println("After own");
@@ -168,31 +177,26 @@ public class MemRelationVariable extends AbstractMemVariable<RelationValue, Rela
   }
 
   public boolean copy(AbstractMemVariable var) {
-    if (this == var || owns == var) return false;
-    MemRelationVariable other = (MemRelationVariable) var;
-    if (other.owns == this) return false;
-    if (owners.size() > 0) {
-      for (MemRelationVariable owner : new ArrayList<MemRelationVariable>(owners)) {
-        owner.own();
+    synchronized (OWNERSHIP) {
+      if (this == var || owns == var) return false;
+      MemRelationVariable other = (MemRelationVariable) var;
+      if (other.owns == this) return false;
+      moveOnHeap();
+      other.moveOnHeap();
+      if (owners.size() > 0) {
+        for (MemRelationVariable owner : new ArrayList<MemRelationVariable>(owners)) {
+          owner.own();
+        }
+        owners.clear();
       }
-      owners.clear();
+      if (owns != null) owns.removeOwner(this);
+      other.addOwner(this);
+      chunk.chunkData[pointer.xChunk].shallowCopy(other.chunk.chunkData[other.pointer.xChunk]);
+      //share indices with the same attributes until one of the variables changes (see own())
+      information.shareIndices(chunk.chunkData[pointer.xChunk], other.information,
+              other.chunk.chunkData[other.pointer.xChunk]);
+      owns = other;
     }
-    if (owns != null) owns.removeOwner(this);
-    other.addOwner(this);
-    chunk.chunkData[pointer.xChunk].shallowCopy(other.chunk.chunkData[other.pointer.xChunk]);
-    //todo: lets check if we can reuse some indices
-//    for (Index index: information.getIndices()){
-//      MemHashIndex hashIndex = (MemHashIndex) index;
-//      int myIndexNr = information.getIndexIdForAttributes(index.attributes());
-//      MemHashIndex otherIndex = (MemHashIndex) other.indexInformation().getIndex(index.attributes());
-//      int otherIndexNr = other.indexInformation().getIndexIdForAttributes(index.attributes());
-//      if (otherIndexNr != -1){
-//        hashIndex.shallowCopy(myIndexNr, otherIndex);
-//        //hashIndex.useChunk(index,);
-//        //hashIndex.useChunk();
-//      }
-//    }
-    owns = other;
 //    System.out.println("After copy");
 //    System.out.println(chunk.chunkData[0].toOriginalString());
     //if (value != null) System.out.println(((MemRelation)value).chunk().toOriginalString());
@@ -236,9 +240,12 @@ public class MemRelationVariable extends AbstractMemVariable<RelationValue, Rela
     MemHeading memHeading = (MemHeading) type.heading();
     MemPointer pointer = memHeading.pointerForAttribute(attribute);
     MemDim dim = memHeading.getDim();
+    moveOnHeap();
     MemChunk chunk = this.chunk.chunkData[this.pointer.xChunk];
     int[] result = new int[chunk.size];
-    if (dim.xInt == 1)
+    if (chunk.columns != null)
+      System.arraycopy(chunk.columns.getIntColumn(chunk, pointer.pointer), 0, result, 0, chunk.size);
+    else if (dim.xInt == 1)
       System.arraycopy(chunk.intData,0,result,0,chunk.size);
     else {
       int index = pointer.pointer;
@@ -255,9 +262,12 @@ public class MemRelationVariable extends AbstractMemVariable<RelationValue, Rela
     MemHeading memHeading = (MemHeading) type.heading();
     MemPointer pointer = memHeading.pointerForAttribute(attribute);
     MemDim dim = memHeading.getDim();
+    moveOnHeap();
     MemChunk chunk = this.chunk.chunkData[this.pointer.xChunk];
     double[] result = new double[chunk.size];
-    if (dim.xInt == 1)
+    if (chunk.columns != null)
+      System.arraycopy(chunk.columns.getDoubleColumn(chunk, pointer.pointer), 0, result, 0, chunk.size);
+    else if (dim.xDouble == 1)
       System.arraycopy(chunk.doubleData,0,result,0,chunk.size);
     else {
       int index = pointer.pointer;
@@ -268,6 +278,7 @@ public class MemRelationVariable extends AbstractMemVariable<RelationValue, Rela
   }
 
   public void assignByArray(int[] ints, double[] doubles) {
+    own();
     MemChunk target = chunk.chunkData[pointer.xChunk];
     int newSize = ints.length / target.dim.xInt;
     if (target.capacity < newSize) target.increaseCapacity(newSize - target.capacity);
@@ -283,26 +294,152 @@ public class MemRelationVariable extends AbstractMemVariable<RelationValue, Rela
     return size;
   }
 
+  public void ensureCapacity(int tupleCount) {
+    own();
+    chunk.chunkData[pointer.xChunk].ensureCapacity(tupleCount);
+  }
+
   public boolean hasIndex(String name) {
     return indexInformation().getIndex(name) != null;
   }
 
 
   public void invalidate() {
+    ++modificationCount;
     chunk.chunkData[pointer.xChunk].rowIndexedSoFar = 0;
     if (chunk.chunkData[pointer.xChunk].rowIndex != null) chunk.chunkData[pointer.xChunk].rowIndex.clear();
     indexInformation().invalidateIndices();
     if (countIndex != null) countIndexedSoFar = 0;
+    invalidateColumns();
   }
 
   public void invalidateNotCounting() {
+    ++modificationCount;
     chunk.chunkData[pointer.xChunk].rowIndexedSoFar = 0;
     if (chunk.chunkData[pointer.xChunk].rowIndex != null) chunk.chunkData[pointer.xChunk].rowIndex.clear();
     indexInformation().invalidateIndices();
+    invalidateColumns();
+  }
+
+  /**
+   * Invalidates the index used for counting only (e.g. after deletions that maintained all other indices).
+   */
+  public void invalidateCountIndex() {
+    ++modificationCount;
+    if (countIndex != null) {
+      countIndex.clear();
+      countIndexedSoFar = 0;
+    }
+  }
+
+  /**
+   * Returns the number of changes to this variable that were not pure appends of new tuples (assignments, updates,
+   * deletions, etc.). As long as this number stays the same, the tuples of the variable only grow at the end.
+   *
+   * @return the number of non-append changes so far.
+   */
+  public int getModificationCount() {
+    return modificationCount;
+  }
+
+  /**
+   * @return the number of tuples in this variable.
+   */
+  public int size() {
+    return chunk.chunkData[pointer.xChunk].size;
+  }
+
+  /**
+   * Replaces the tuples of this variable with a range of tuples of another variable of the same type.
+   *
+   * @param src  the variable to copy the tuples from.
+   * @param from the first row to copy.
+   * @param to   the row after the last row to copy.
+   */
+  public void assignRows(MemRelationVariable src, int from, int to) {
+    own();
+    src.moveOnHeap();
+    MemChunk source = src.chunk.chunkData[src.pointer.xChunk];
+    MemChunk target = chunk.chunkData[pointer.xChunk];
+    MemDim dim = target.dim;
+    int count = to - from;
+    if (target.capacity < count) target.increaseCapacity(count - target.capacity);
+    if (dim.xInt > 0)
+      System.arraycopy(source.intData, from * dim.xInt, target.intData, 0, count * dim.xInt);
+    if (dim.xDouble > 0)
+      System.arraycopy(source.doubleData, from * dim.xDouble, target.doubleData, 0, count * dim.xDouble);
+    if (dim.xChunk > 0)
+      MemChunk.copyChunks(source.chunkData, from * dim.xChunk, target.chunkData, 0, count * dim.xChunk);
+    target.size = count;
+    invalidate();
+  }
+
+  private void invalidateColumns() {
+    MemChunk data = chunk.chunkData[pointer.xChunk];
+    //assignments may have replaced the chunk
+    if (columnar && data.columns == null) data.columns = new MemColumns(data.dim);
+    if (data.columns != null) data.columns.invalidate();
+  }
+
+  /**
+   * @return true iff this variable shares its data with other variables (as result of shallow copies).
+   */
+  public boolean isShared() {
+    return owns != null || owners.size() > 0;
+  }
+
+  /**
+   * Compacts the chunk of this variable (see {@link MemChunk#compact()}).
+   */
+  public void compact() {
+    moveOnHeap();
+    chunk.chunkData[pointer.xChunk].compact();
+  }
+
+  public void setColumnar(boolean columnar) {
+    this.columnar = columnar;
+    moveOnHeap();
+    MemChunk data = chunk.chunkData[pointer.xChunk];
+    data.columns = columnar ? new MemColumns(data.dim) : null;
+  }
+
+  public boolean isColumnar() {
+    return columnar;
+  }
+
+  public boolean moveOffHeap() {
+    //shared arrays would stay on the heap anyway
+    return !isShared() && chunk.chunkData[pointer.xChunk].moveOffHeap();
+  }
+
+  /**
+   * Moves the data of this variable back onto the heap if it has been moved off heap. This happens automatically
+   * whenever the variable is used by the interpreter or by a compiled expression.
+   */
+  public void moveOnHeap() {
+    chunk.chunkData[pointer.xChunk].moveOnHeap();
+  }
+
+  public void prepareConcurrentReads() {
+    moveOnHeap();
+    MemChunk data = chunk.chunkData[pointer.xChunk];
+    if (data.columns != null) data.columns.update(data);
+    information.updateAll();
+    value();
+  }
+
+  public boolean isOffHeap() {
+    return chunk.chunkData[pointer.xChunk].isOffHeap();
+  }
+
+  public MemChunk getContainerChunk() {
+    moveOnHeap();
+    return chunk;
   }
 
 
   public void buildCountIndex(){
+    moveOnHeap();
     MemDim dim = ((MemRelationType) type).getDim();
     MemVector pointer = new MemVector(countIndexedSoFar, dim);
     MemChunk data = chunk.chunkData[pointer.xChunk];
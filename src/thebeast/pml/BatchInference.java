@@ -0,0 +1,289 @@
+package thebeast.pml;
+
+import thebeast.pml.corpora.Extractor;
+import thebeast.pml.corpora.TabFormatCorpus;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * BatchInference runs inference for programs that embed TheBeast. Clients submit observations (ground atoms or rows
+ * in CoNLL/tab format) into a bounded queue and get a future for each. A pool of workers, each with its own {@link
+ * InferenceSession}, drains the queue in micro batches of up to a configurable size, so a worker only waits
+ * on the queue once per batch.
+ *
+ * <p>Usage: create the object, configure the solver of all workers with {@link #setProperty(PropertyName, Object)}
+ * (and add extractors if rows are submitted), call {@link #start()}, submit requests, and finally {@link
+ * #shutdown()}.
+ *
+ * @author Sebastian Riedel
+ */
+public class BatchInference implements HasProperties {
+
+  private static final Request STOP = new Request(null, null);
+
+  private Model model;
+  private ArrayList<InferenceSession> sessions = new ArrayList<InferenceSession>();
+  private ArrayList<Thread> threads = new ArrayList<Thread>();
+  private BlockingQueue<Request> queue;
+  private int maxBatchSize;
+  private ArrayList<Extractor> extractors = new ArrayList<Extractor>();
+  private volatile boolean started = false, shutdown = false;
+
+  /**
+   * The result of a request.
+   */
+  public static class Result {
+    private GroundAtoms atoms;
+    private long queueTime, solveTime;
+    private int batchSize;
+
+    private Result(GroundAtoms atoms, long queueTime, long solveTime, int batchSize) {
+      this.atoms = atoms;
+      this.queueTime = queueTime;
+      this.solveTime = solveTime;
+      this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the solution (observation plus inferred hidden atoms).
+     */
+    public GroundAtoms getAtoms() {
+      return atoms;
+    }
+
+    /**
+     * @return the time in ms the request waited in the queue.
+     */
+    public long getQueueTime() {
+      return queueTime;
+    }
+
+    /**
+     * @return the time in ms it took to parse (if needed) and solve the request.
+     */
+    public long getSolveTime() {
+      return solveTime;
+    }
+
+    /**
+     * @return the size of the micro batch the request was processed in.
+     */
+    public int getBatchSize() {
+      return batchSize;
+    }
+  }
+
+  /**
+   * A request is a future that is completed by the worker which processes it.
+   */
+  private static class Request extends FutureTask<Result> {
+    private static final Runnable NOTHING = new Runnable() {
+      public void run() {
+      }
+    };
+
+    private GroundAtoms observation;
+    private String rows;
+    private long submitted = System.currentTimeMillis();
+
+    private Request(GroundAtoms observation, String rows) {
+      super(NOTHING, null);
+      this.observation = observation;
+      this.rows = rows;
+    }
+
+    private void complete(Result result) {
+      set(result);
+    }
+
+    private void fail(Throwable throwable) {
+      setException(throwable);
+    }
+  }
+
+  /**
+   * Creates a new batch inference service. This creates one inference session per worker and thus freezes model and
+   * weights.
+   *
+   * @param model         the model to use.
+   * @param weights       the weights to use.
+   * @param workers       the number of worker threads.
+   * @param capacity      the number of requests the queue can hold, submitting blocks while it is full.
+   * @param maxBatchSize  the maximum number of requests a worker takes from the queue at once.
+   */
+  public BatchInference(Model model, Weights weights, int workers, int capacity, int maxBatchSize) {
+    if (workers < 1 || capacity < 1 || maxBatchSize < 1)
+      throw new IllegalArgumentException("workers, capacity and maxBatchSize must be positive");
+    this.model = model;
+    this.maxBatchSize = maxBatchSize;
+    queue = new ArrayBlockingQueue<Request>(capacity);
+    for (int i = 0; i < workers; ++i)
+      sessions.add(InferenceSession.create(model, weights));
+  }
+
+  /**
+   * Configures the solvers of all workers. Must be called before {@link #start()}.
+   *
+   * @param name  the name of the solver property.
+   * @param value the value of the property.
+   */
+  public void setProperty(PropertyName name, Object value) {
+    if (started) throw new IllegalStateException("Workers have already been started");
+    for (InferenceSession session : sessions)
+      session.setProperty(name, value);
+  }
+
+  public Object getProperty(PropertyName name) {
+    return sessions.get(0).getProperty(name);
+  }
+
+  /**
+   * Adds an extractor used to turn submitted rows into ground atoms (see {@link TabFormatCorpus#addExtractor(Extractor)}).
+   * Must be called before {@link #start()}.
+   *
+   * @param extractor an extractor for the columns of submitted rows.
+   */
+  public void addExtractor(Extractor extractor) {
+    if (started) throw new IllegalStateException("Workers have already been started");
+    extractors.add(extractor);
+  }
+
+  /**
+   * Starts the worker threads.
+   */
+  public synchronized void start() {
+    if (started) return;
+    started = true;
+    for (int i = 0; i < sessions.size(); ++i) {
+      final InferenceSession session = sessions.get(i);
+      Thread thread = new Thread("thebeast-inference-" + i) {
+        public void run() {
+          work(session);
+        }
+      };
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  /**
+   * Submits an observation. Blocks while the queue is full.
+   *
+   * @param observation the observation to infer the hidden atoms for. It must not be changed until the result is
+   *                    available.
+   * @return a future for the result.
+   * @throws InterruptedException if the thread is interrupted while waiting for space in the queue.
+   */
+  public Future<Result> submit(GroundAtoms observation) throws InterruptedException {
+    return enqueue(new Request(observation, null));
+  }
+
+  /**
+   * Submits the rows of one sentence in tab format (one token per line, columns separated by tabs or spaces), which
+   * are turned into ground atoms with the extractors of this object. Blocks while the queue is full.
+   *
+   * @param rows the rows of the sentence.
+   * @return a future for the result.
+   * @throws InterruptedException if the thread is interrupted while waiting for space in the queue.
+   */
+  public Future<Result> submit(String rows) throws InterruptedException {
+    if (extractors.isEmpty()) throw new IllegalStateException("No extractors to turn rows into atoms");
+    return enqueue(new Request(null, rows));
+  }
+
+  private Future<Result> enqueue(Request request) throws InterruptedException {
+    if (!started) throw new IllegalStateException("Workers haven't been started yet");
+    if (shutdown) throw new RejectedExecutionException("Batch inference has been shut down");
+    queue.put(request);
+    return request;
+  }
+
+  /**
+   * Stops accepting requests. Workers finish the requests already in the queue and then stop.
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting for the workers.
+   */
+  public synchronized void shutdown() throws InterruptedException {
+    if (shutdown) return;
+    shutdown = true;
+    for (Thread ignored : threads) queue.put(STOP);
+    for (Thread thread : threads) thread.join();
+    //requests that were submitted while we were shutting down
+    for (Request request = queue.poll(); request != null; request = queue.poll())
+      if (request != STOP) request.fail(new RejectedExecutionException("Batch inference has been shut down"));
+  }
+
+  /**
+   * @return the number of requests waiting in the queue.
+   */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  private void work(InferenceSession session) {
+    ArrayList<Request> batch = new ArrayList<Request>(maxBatchSize);
+    try {
+      while (true) {
+        batch.clear();
+        batch.add(queue.take());
+        queue.drainTo(batch, maxBatchSize - 1);
+        int stops = 0;
+        for (Request request : batch) {
+          if (request == STOP) ++stops;
+          else if (!request.isCancelled()) process(session, request, batch.size());
+        }
+        if (stops > 0) {
+          //leave the other stop signals to the other workers
+          for (int i = 1; i < stops; ++i) queue.put(STOP);
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      //shut down
+    }
+  }
+
+  private void process(InferenceSession session, Request request, int batchSize) {
+    long start = System.currentTimeMillis();
+    try {
+      GroundAtoms observation = request.observation != null ? request.observation : parse(session, request.rows);
+      GroundAtoms solution = session.infer(observation);
+      session.bind();
+      try {
+        solution = solution.copy();
+      } finally {
+        session.unbind();
+      }
+      long end = System.currentTimeMillis();
+      request.complete(new Result(solution, start - request.submitted, end - start, batchSize));
+    } catch (Throwable e) {
+      request.fail(e);
+    }
+  }
+
+  private GroundAtoms parse(InferenceSession session, String rows) {
+    //extractors keep state while they read a line, so only one worker can use them at a time
+    synchronized (extractors) {
+      session.bind();
+      try {
+        //the corpus expects an empty line before each sentence
+        TabFormatCorpus corpus = new TabFormatCorpus(model.getSignature(), ("\n" + rows).getBytes());
+        for (Extractor extractor : extractors)
+          corpus.addExtractor(extractor);
+        Iterator<GroundAtoms> iterator = corpus.iterator();
+        if (!iterator.hasNext()) throw new IllegalArgumentException("No sentence in rows");
+        return iterator.next();
+      } finally {
+        session.unbind();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,152 @@
+package thebeast.pml;
+
+import thebeast.nod.NoDServer;
+import thebeast.nod.statement.Interpreter;
+import thebeast.nod.util.ExpressionBuilder;
+import thebeast.pml.solve.CuttingPlaneSolver;
+
+/**
+ * An InferenceSession finds the most likely hidden atoms for observations using a model and weights that are shared
+ * with other sessions. Model and weights are frozen when the first session is created for them. Each session owns its
+ * solver (and with it all scratch relations for scores, ground formulas etc.) as well as its own interpreter and
+ * expression builder. This means that N sessions can decode in N threads at the same time while there is only one copy
+ * of the weights.
+ *
+ * <p>A session itself must only be used by one thread at a time. Observations for a session should be created with
+ * {@link #createObservation(String)} so that they don't use the (not thread safe) singleton interpreter either.
+ *
+ * @author Sebastian Riedel
+ */
+public class InferenceSession implements HasProperties {
+
+  //sessions are created (and configured) one at a time because their solvers build queries with shared model objects
+  //and add indices to the shared weights and global atoms
+  private static final Object CREATION = new Object();
+
+  private Model model;
+  private Weights weights;
+  private NoDServer server;
+  private Interpreter interpreter;
+  private ExpressionBuilder builder;
+  private CuttingPlaneSolver solver;
+
+  /**
+   * Creates a new session for the given model and weights. Freezes both if they are not frozen yet, which means they
+   * can't be changed anymore.
+   *
+   * @param model   the model to decode with.
+   * @param weights the weights to decode with.
+   * @return a new session.
+   */
+  public static InferenceSession create(Model model, Weights weights) {
+    synchronized (CREATION) {
+      InferenceSession session = new InferenceSession(model, weights);
+      session.prepareSharedData();
+      return session;
+    }
+  }
+
+  private InferenceSession(Model model, Weights weights) {
+    this.model = model;
+    this.weights = weights;
+    server = TheBeast.getInstance().getNodServer();
+    interpreter = server.createInterpreter();
+    builder = new ExpressionBuilder(server);
+    bind();
+    try {
+      solver = new CuttingPlaneSolver();
+      solver.configure(model, weights);
+    } finally {
+      unbind();
+    }
+  }
+
+  /**
+   * Creates ground atoms that belong to this session and loads them from the given string.
+   *
+   * @param src ground atoms in PML data format (without "&gt;&gt;" line).
+   * @return ground atoms which can be used as observation for this session.
+   */
+  public GroundAtoms createObservation(String src) {
+    bind();
+    try {
+      GroundAtoms atoms = model.getSignature().createGroundAtoms();
+      atoms.load(src);
+      return atoms;
+    } finally {
+      unbind();
+    }
+  }
+
+  /**
+   * Finds the most likely hidden atoms for an observation.
+   *
+   * @param observation the observation (only the atoms of observed predicates are used).
+   * @return the solution. It belongs to this session and is overwritten by the next call.
+   */
+  public GroundAtoms infer(GroundAtoms observation) {
+    bind();
+    try {
+      solver.setObservation(observation);
+      solver.solve();
+      return solver.getBestAtoms();
+    } finally {
+      unbind();
+    }
+  }
+
+  /**
+   * Configures the solver of this session, see {@link CuttingPlaneSolver#setProperty(PropertyName, Object)}.
+   *
+   * @param name  the name of the property.
+   * @param value the new value.
+   */
+  public void setProperty(PropertyName name, Object value) {
+    synchronized (CREATION) {
+      bind();
+      try {
+        solver.setProperty(name, value);
+      } finally {
+        unbind();
+      }
+      prepareSharedData();
+    }
+  }
+
+  public Object getProperty(PropertyName name) {
+    return solver.getProperty(name);
+  }
+
+  /**
+   * Freezes model and weights. Configuring a solver adds lazy indices to the weights (e.g. for feature extraction) and
+   * to the global atoms, so this is also done if both are frozen already: other sessions may read these indices at the
+   * same time and must not find them half built. Must be called while holding the creation lock.
+   */
+  private void prepareSharedData() {
+    model.freeze();
+    weights.freeze();
+  }
+
+  /**
+   * Lets the current thread use the interpreter and expression builder of this session, so that variables created on
+   * the thread belong to this session. Each call must be followed by {@link #unbind()}.
+   */
+  void bind() {
+    server.bind(interpreter, builder);
+  }
+
+  /**
+   * Lets the current thread use the singleton interpreter and expression builder again.
+   */
+  void unbind() {
+    server.unbind();
+  }
+
+  public Model getModel() {
+    return model;
+  }
+
+  public Weights getWeights() {
+    return weights;
+  }
+}
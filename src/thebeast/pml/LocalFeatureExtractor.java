@@ -15,6 +15,8 @@ import thebeast.pml.formula.PredicateAtom;
 import thebeast.pml.formula.QueryGenerator;
 import thebeast.pml.function.WeightFunction;
 import thebeast.util.HashMultiMapList;
+import thebeast.util.NullProfiler;
+import thebeast.util.Profiler;
 
 import java.util.HashSet;
 
@@ -36,6 +38,10 @@ public class LocalFeatureExtractor {
   private Model model;
   private Weights weights;
   private LocalFeatures features;
+  private Profiler profiler = new NullProfiler();
+  private boolean reuseBuffers = true;
+  private long allocatedBytes = 0;
+  private int extractions = 0;
 
   private GroundAtoms atoms;
 
@@ -105,6 +111,54 @@ public class LocalFeatureExtractor {
     return weights;
   }
 
+  /**
+   * By default the extractor evaluates its queries into buffers that are kept between calls, and copies the result
+   * into the target features in one go. This way buffers only grow until they fit the largest instance seen so far,
+   * and no temporary tables are created for each instance.
+   *
+   * @param reuseBuffers false if each query should be evaluated into a fresh temporary table (the old behaviour,
+   *                     mainly useful for comparison).
+   */
+  public void setReuseBuffers(boolean reuseBuffers) {
+    this.reuseBuffers = reuseBuffers;
+  }
+
+  public boolean isReuseBuffers() {
+    return reuseBuffers;
+  }
+
+  public Profiler getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * The extractor reports the time and the table memory allocated by each extraction to the given profiler (as
+   * operation "extract local").
+   *
+   * @param profiler the profiler to use.
+   */
+  public void setProfiler(Profiler profiler) {
+    this.profiler = profiler;
+  }
+
+  /**
+   * Returns the number of bytes allocated for tables by all extractions of this extractor so far.
+   *
+   * @return bytes allocated during calls to {@link #extract(GroundAtoms, LocalFeatures)}.
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Returns the number of extractions done so far.
+   *
+   * @return the number of calls to {@link #extract(GroundAtoms, LocalFeatures)}.
+   */
+  public int getExtractionCount() {
+    return extractions;
+  }
+
   /**
    * Extracts all local features for all ground atoms.
    *
@@ -112,22 +166,33 @@ public class LocalFeatureExtractor {
    * @param features    the local features object the extractor writes its result to.
    */
   public void extract(GroundAtoms groundAtoms, LocalFeatures features) {
+    profiler.start("extract local");
+    long allocatedBefore = TheBeast.getInstance().getNodServer().getAllocatedBytes();
     atoms.load(model.getGlobalAtoms(), model.getGlobalPredicates());
     atoms.load(groundAtoms, model.getInstancePredicates());
-    //this.features.load(features);
     features.clear();
     for (UserPredicate pred : model.getHiddenPredicates()) {
-//      for (RelationAppend append : appends.get(pred))
-//        interpreter.interpret(append);
-//      for (Insert insert : inserts.get(pred))
-//        interpreter.interpret(insert);
-      for (RelationExpression expression : queries.get(pred)) {
-        //interpreter.insert(features.getRelation(pred), expression);
-        interpreter.append(features.getRelation(pred), expression);
+      if (reuseBuffers) {
+        //the appends write into our own features, their buffers and tables keep their capacity
+        RelationVariable buffer = this.features.getRelation(pred);
+        interpreter.clear(buffer);
+        for (RelationAppend append : appends.get(pred))
+          interpreter.interpret(append);
+        RelationVariable target = features.getRelation(pred);
+        target.ensureCapacity(buffer.value().size());
+        interpreter.append(target, buffer);
+      } else {
+        for (RelationExpression expression : queries.get(pred)) {
+          interpreter.append(features.getRelation(pred), expression);
+        }
       }
     }
     features.invalidate();
-    //features.load(this.features);
+    long allocated = TheBeast.getInstance().getNodServer().getAllocatedBytes() - allocatedBefore;
+    allocatedBytes += allocated;
+    ++extractions;
+    profiler.addAllocatedBytes(allocated);
+    profiler.end();
   }
 
 }
@@ -38,6 +38,8 @@ public class Model {
 
   private HashMap<String, FactorFormula> name2formula = new HashMap<String, FactorFormula>();
 
+  private boolean frozen = false;
+
   /**
    * Creates a new Model with the given signature, i.e. it only contains predicates and functions which are described in
    * the signature object.
@@ -48,6 +50,29 @@ public class Model {
     this.signature = signature;
   }
 
+  /**
+   * Freezes this model so that it can be shared by several threads (see {@link InferenceSession}): the global atoms
+   * are prepared for concurrent reads and predicates or formulas can't be added anymore. Calling this again builds
+   * indices that were added since.
+   */
+  public void freeze() {
+    GroundAtoms globalAtoms = getGlobalAtoms();
+    for (UserPredicate predicate : globalPreds)
+      globalAtoms.getGroundAtomsOf(predicate).getRelationVariable().prepareConcurrentReads();
+    frozen = true;
+  }
+
+  /**
+   * @return true iff this model has been frozen and can't be changed anymore.
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) throw new IllegalStateException("Model is frozen and can't be changed");
+  }
+
   /**
    * A hidden predicate is a predicate for which we don't have observed ground atoms. Instead, the solver is responsible
    * for inferring the true ground atoms of the given predicate.
@@ -55,6 +80,7 @@ public class Model {
    * @param predicate the predicate to be defined as hidden.
    */
   public void addHiddenPredicate(UserPredicate predicate) {
+    checkNotFrozen();
     hidden.add(predicate);
     instance.add(predicate);
     Collections.sort(hidden);
@@ -67,6 +93,7 @@ public class Model {
    * @param predicate the predicate to be defined as observed.
    */
   public void addObservedPredicate(UserPredicate predicate) {
+    checkNotFrozen();
     observed.add(predicate);
     instance.add(predicate);
     Collections.sort(observed);
@@ -80,6 +107,7 @@ public class Model {
    * @param predicate the predicate to be defined as auxilary.
    */
   public void addAuxilaryPredicate(UserPredicate predicate) {
+    checkNotFrozen();
     auxiliary.add(predicate);
     instance.add(predicate);
     Collections.sort(auxiliary);
@@ -94,6 +122,7 @@ public class Model {
    * @param predicate the predicate to be defined as global.
    */
   public void addGlobalPredicate(UserPredicate predicate) {
+    checkNotFrozen();
     if (globalAtoms != null) {
       GroundAtoms newGlobal = signature.createGroundAtoms();
       newGlobal.load(globalAtoms, getGlobalPredicates());
@@ -145,6 +174,7 @@ public class Model {
    * @param factorFormula the formula to add.
    */
   public void addFactorFormula(FactorFormula factorFormula) {
+    checkNotFrozen();
     factorFormulas.add(factorFormula);
     name2formula.put(factorFormula.getName(), factorFormula);
     if (factorFormula.isLocal()) {
@@ -11,6 +11,7 @@ import thebeast.nod.variable.Index;
 import thebeast.nod.variable.RelationVariable;
 import thebeast.nod.FileSink;
 import thebeast.nod.FileSource;
+import thebeast.util.SortedSparseVector;
 
 import java.util.LinkedList;
 import java.util.Arrays;
@@ -209,6 +210,15 @@ public class SparseVector {
     return values.getDoubleColumn("value");
   }
 
+  /**
+   * Replaces the content of the given primitive vector with the entries of this vector.
+   *
+   * @param dst the vector to load the entries into.
+   */
+  public void copyTo(SortedSparseVector dst) {
+    dst.load(getIndexArray(), getValueArray());
+  }
+
   public void clear(){
     interpreter.clear(values);
     interpreter.clear(otherValues);
@@ -73,14 +73,27 @@ public class Type {
 
 
   public List<String> getConstants() {
-    LinkedList<String> result = new LinkedList<String>();
     CategoricalType type = ((CategoricalType) nodType);
-    for (CategoricalValue value : type.values()){
-      result.add(value.representation());
-    }
+    ArrayList<String> result = new ArrayList<String>(type.size());
+    for (int i = 0; i < type.size(); ++i)
+      result.add(type.representation(i));
     return result;
   }
 
+  /**
+   * Returns the number of bytes used to store the constants of this type.
+   *
+   * @return the size of the dictionary of a categorical type, 0 for other types.
+   */
+  public int getUsedMemory() {
+    switch (typeClass) {
+      case CATEGORICAL:
+      case CATEGORICAL_UNKNOWN:
+        return ((CategoricalType) nodType).byteSize();
+    }
+    return 0;
+  }
+
   public boolean isNumeric() {
     switch (typeClass) {
       case POSITIVE_INT:
@@ -6,6 +6,7 @@ import thebeast.nod.NoDServer;
 import thebeast.nod.expression.DoubleExpression;
 import thebeast.nod.expression.Expression;
 import thebeast.nod.expression.RelationExpression;
+import thebeast.nod.statement.ArraySparseAdd;
 import thebeast.nod.statement.Interpreter;
 import thebeast.nod.type.Attribute;
 import thebeast.nod.util.ExpressionBuilder;
@@ -16,6 +17,7 @@ import thebeast.nod.variable.DoubleVariable;
 import thebeast.nod.variable.IntVariable;
 import thebeast.nod.variable.RelationVariable;
 import thebeast.pml.function.WeightFunction;
+import thebeast.util.SortedSparseVector;
 
 import java.io.*;
 import java.util.*;
@@ -37,8 +39,11 @@ public class Weights implements HasProperties {
   private ExpressionBuilder builder = new ExpressionBuilder(nodServer);
   private HashMap<WeightFunction, RelationVariable> relations = new HashMap<WeightFunction, RelationVariable>();
   private SparseVector dotProductArg;
+  private WeightsListener listener;
   private DoubleExpression dotProduct;
 
+  private boolean frozen = false;
+
   private int[] tmpIndices;
   private int[] tmpIndicesList;
   private boolean[] tmpSet;
@@ -72,6 +77,28 @@ public class Weights implements HasProperties {
 
   }
 
+  /**
+   * Freezes these weights so that they can be shared by several threads (see {@link InferenceSession}): the relations
+   * of the weight functions are prepared for concurrent reads, and all methods that change weights throw an
+   * IllegalStateException from now on. Calling this again builds indices that were added since.
+   */
+  public void freeze() {
+    for (RelationVariable relation : relations.values())
+      relation.prepareConcurrentReads();
+    frozen = true;
+  }
+
+  /**
+   * @return true iff these weights have been frozen and can't be changed anymore.
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) throw new IllegalStateException("Weights are frozen and can't be changed");
+  }
+
   /**
    * Returns the signature containing the types these Weights refer to.
    *
@@ -142,6 +169,7 @@ public class Weights implements HasProperties {
    * @throws IOException if i/o goes wrong.
    */
   public void read(FileSource source) throws IOException {
+    checkNotFrozen();
     source.read(counter);
     source.read(seenInstances);
     source.read(weights);
@@ -195,6 +223,7 @@ public class Weights implements HasProperties {
    * @param arguments      the arguments to be mapped to the weight via the weightFunction.
    */
   public void addWeight(WeightFunction weightFunction, double weight, Object... arguments) {
+    checkNotFrozen();
     RelationVariable rel = relations.get(weightFunction);
     interpreter.append(weights, builder.doubleValue(weight).array(1).getArray());
     //the index is the L column
@@ -325,9 +354,8 @@ public class Weights implements HasProperties {
    */
   public double getWeight(int featureIndex) {
     if (featureIndex >= getFeatureCount()) return 0.0;
-    DoubleVariable var = interpreter.createDoubleVariable(
-            builder.clear().expr(weights).integer(featureIndex).doubleArrayElement().getDouble());
-    return var.value().getDouble();
+    //reads the array directly, so this is safe to call from several threads
+    return weights.doubleValue(featureIndex);
   }
 
   /**
@@ -338,6 +366,8 @@ public class Weights implements HasProperties {
    * @param bound   the bound to enforce
    */
   public void enforceBound(int[] indices, boolean lower, double bound) {
+    checkNotFrozen();
+    if (listener != null) listener.weightsChanging(indices, indices.length);
     weights.enforceBound(indices, lower, bound);
   }
 
@@ -392,6 +422,7 @@ public class Weights implements HasProperties {
    * @param weights the object to load the indices and weights from.
    */
   public void load(Weights weights) {
+    checkNotFrozen();
     for (WeightFunction function : relations.keySet()) {
       RelationVariable local = relations.get(function);
       RelationVariable other = weights.getRelation(function);
@@ -403,6 +434,20 @@ public class Weights implements HasProperties {
     interpreter.assign(seenInstances, weights.seenInstances);
   }
 
+  /**
+   * Sets a listener that is notified before weights are changed by the update methods of this object. Copies of this
+   * object do not inherit the listener.
+   *
+   * @param listener the listener to notify or null if no listener should be notified.
+   */
+  public void setListener(WeightsListener listener) {
+    this.listener = listener;
+  }
+
+  public WeightsListener getListener() {
+    return listener;
+  }
+
   /**
    * Returns a deep copy of this object.
    *
@@ -432,6 +477,11 @@ public class Weights implements HasProperties {
    * @param weights the weights to add (scaled).
    */
   public void add(double scale, SparseVector weights) {
+    checkNotFrozen();
+    if (listener != null) {
+      int[] indices = weights.getIndexArray();
+      listener.weightsChanging(indices, indices.length);
+    }
     interpreter.sparseAdd(this.weights, weights.getValuesRelation(), builder.num(scale).getDouble(), "index", "value");
   }
 
@@ -445,17 +495,51 @@ public class Weights implements HasProperties {
    *                 in the same fashion.
    */
   public void add(double scale, SparseVector weights, boolean positive) {
+    checkNotFrozen();
+    if (listener != null) {
+      int[] indices = weights.getIndexArray();
+      listener.weightsChanging(indices, indices.length);
+    }
     interpreter.sparseAdd(this.weights, weights.getValuesRelation(),
             builder.num(scale).getDouble(), "index", "value", positive);
   }
 
 
+  /**
+   * Add the sparse vector to this weights
+   *
+   * @param scale  the number to scale the argument with
+   * @param vector the weights to add (scaled).
+   */
+  public void add(double scale, SortedSparseVector vector) {
+    checkNotFrozen();
+    if (listener != null) listener.weightsChanging(vector.getIndices(), vector.size());
+    weights.add(vector.getIndices(), vector.getValues(), vector.size(), scale, ArraySparseAdd.Sign.FREE);
+  }
+
+  /**
+   * Add the sparse vector to this weights
+   *
+   * @param scale    the number to scale the argument with
+   * @param vector   the weights to add (scaled).
+   * @param positive if true the resulting weights will be nonnegative (if the result of the addition is positive we
+   *                 keep this result, if not the result is set to be zero). If false weights will be made nonpositive
+   *                 in the same fashion.
+   */
+  public void add(double scale, SortedSparseVector vector, boolean positive) {
+    checkNotFrozen();
+    if (listener != null) listener.weightsChanging(vector.getIndices(), vector.size());
+    weights.add(vector.getIndices(), vector.getValues(), vector.size(), scale,
+            positive ? ArraySparseAdd.Sign.NONNEGATIVE : ArraySparseAdd.Sign.NONPOSITIVE);
+  }
+
   /**
    * Loads the weighs from an input string in PML weight format.
    *
    * @param src an input string in PML weight format.
    */
   public void load(String src) {
+    checkNotFrozen();
     try {
       load(new ByteArrayInputStream(src.getBytes()));
     } catch (IOException e) {
@@ -503,6 +587,7 @@ public class Weights implements HasProperties {
    * @throws java.io.IOException if I/O goes wrong.
    */
   public void load(InputStream is) throws IOException {
+    checkNotFrozen();
     WeightFunction weightFunction = null;
     int arity = -1;
     boolean inWeights = false;
@@ -571,6 +656,7 @@ public class Weights implements HasProperties {
   }
 
   public void clear() {
+    checkNotFrozen();
     interpreter.assign(counter, builder.num(0).getInt());
     interpreter.clear(weights);
   }
@@ -781,6 +867,8 @@ public class Weights implements HasProperties {
   }
 
   public void setAllWeights(double value) {
+    checkNotFrozen();
+    if (listener != null) listener.allWeightsChanging();
     weights.fill(value, weights.value().size());
   }
 
@@ -795,6 +883,21 @@ public class Weights implements HasProperties {
     return weights.value().dotProduct(vector.getIndexArray(), vector.getValueArray());
   }
 
+  /**
+   * Calculates dot product of the weight vector and the given sparse vector
+   *
+   * @param vector a sparse vector with indices in the range 0-#weights
+   * @return the dot product of the sparse vector and this weight vector
+   */
+  public double score(SortedSparseVector vector) {
+    int[] indices = vector.getIndices();
+    double[] values = vector.getValues();
+    double result = 0;
+    for (int i = 0; i < vector.size(); ++i)
+      result += values[i] * weights.doubleValue(indices[i]);
+    return result;
+  }
+
   public double score(FeatureVector vector) {
     double result = 0;
     result += score(vector.getLocal());
@@ -814,6 +917,7 @@ public class Weights implements HasProperties {
    * @param iterations of instances the learner processed (added over all epochs).
    */
   public void setSeenInstances(int iterations) {
+    checkNotFrozen();
     interpreter.assign(this.seenInstances, builder.num(iterations).getInt());
   }
 
@@ -0,0 +1,27 @@
+package thebeast.pml;
+
+import thebeast.util.SortedSparseVector;
+
+/**
+ * A WeightsListener is notified by a {@link Weights} object right before some of its weights are changed by one of the
+ * update methods ({@link Weights#add(double, SparseVector)}, {@link Weights#add(double, SortedSparseVector)}, {@link Weights#enforceBound(int[], boolean, double)} and
+ * {@link Weights#setAllWeights(double)}). At the time of the call the weights still have their old values.
+ *
+ * @author Sebastian Riedel
+ */
+public interface WeightsListener {
+
+  /**
+   * Called before the weights at the given indices are changed.
+   *
+   * @param indices the indices of the weights that will change (may contain duplicates).
+   * @param size    the number of valid entries in the index array.
+   */
+  void weightsChanging(int[] indices, int size);
+
+  /**
+   * Called before all weights are changed.
+   */
+  void allWeightsChanging();
+
+}
@@ -0,0 +1,532 @@
+package thebeast.pml.corpora;
+
+import thebeast.nod.type.Attribute;
+import thebeast.nod.type.CategoricalType;
+import thebeast.nod.type.DoubleType;
+import thebeast.nod.value.BoolValue;
+import thebeast.nod.value.CategoricalValue;
+import thebeast.nod.value.DoubleValue;
+import thebeast.nod.value.IntValue;
+import thebeast.nod.value.TupleValue;
+import thebeast.nod.value.Value;
+import thebeast.nod.variable.RelationVariable;
+import thebeast.pml.*;
+import thebeast.util.StringDictionary;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A ColumnarCorpus is backed by a versioned binary file in which each instance is stored as a compressed block of
+ * per-predicate int and double columns. Categorical constants are stored as ids into a dictionary per type which is
+ * kept in the file itself, so (unlike a {@link DumpedCorpus}) the file does not depend on the categorical indices of
+ * the signature that wrote it.
+ *
+ * <p>File layout:
+ * <pre>
+ * MAGIC VERSION
+ * block_0 ... block_n-1          (rawLength, compressedLength, deflated columns)
+ * trailer                        (predicate schema, type dictionaries, instance offsets)
+ * trailerOffset MAGIC
+ * </pre>
+ * Within a block each predicate contributes its row count followed by one column per argument.
+ *
+ * @author Sebastian Riedel
+ */
+public class ColumnarCorpus extends AbstractCollection<GroundAtoms> implements Corpus {
+
+  public static final int MAGIC = 0x54424343;
+  public static final int VERSION = 1;
+
+  private static final byte INT_COLUMN = 0, CATEGORICAL_COLUMN = 1, DOUBLE_COLUMN = 2;
+
+  private Signature signature;
+  private File file;
+  private long[] offsets;
+  private ArrayList<PredicateColumns> columns = new ArrayList<PredicateColumns>();
+
+  public static CorpusFactory FACTORY = new CorpusFactory() {
+    public Corpus createCorpus(Signature signature, File file) {
+      return new ColumnarCorpus(signature, file);
+    }
+  };
+
+  /**
+   * Opens a columnar corpus file and prepares the mapping from the dictionary ids in the file to the constants of the
+   * given signature.
+   *
+   * @param signature the signature to create ground atoms for.
+   * @param file      the columnar corpus file.
+   */
+  public ColumnarCorpus(Signature signature, File file) {
+    this.signature = signature;
+    this.file = file;
+    try {
+      readTrailer();
+    } catch (IOException e) {
+      throw new RuntimeException("Couldn't open columnar corpus " + file, e);
+    }
+  }
+
+  private void readTrailer() throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      raf.seek(0);
+      if (raf.readInt() != MAGIC) throw new IOException(file + " is not a columnar corpus");
+      int version = raf.readInt();
+      if (version != VERSION)
+        throw new IOException(file + " has version " + version + " but only version " + VERSION + " is supported");
+      raf.seek(raf.length() - 12);
+      long trailerOffset = raf.readLong();
+      if (raf.readInt() != MAGIC) throw new IOException(file + " is truncated");
+      raf.seek(trailerOffset);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(raf.getFD())));
+
+      //the dictionaries of all categorical types, mapped to the indices of our signature
+      HashMap<String, int[]> dictionaries = new HashMap<String, int[]>();
+      byte[] buffer = new byte[256];
+      int typeCount = in.readInt();
+      for (int t = 0; t < typeCount; ++t) {
+        String typeName = in.readUTF();
+        int constantCount = in.readInt();
+        Type type = signature.getType(typeName);
+        int[] ids = new int[constantCount];
+        for (int c = 0; c < constantCount; ++c) {
+          int length = in.readUnsignedShort();
+          if (length > buffer.length) buffer = new byte[Math.max(length, 2 * buffer.length)];
+          in.readFully(buffer, 0, length);
+          if (type != null) ids[c] = index(type, buffer, length);
+        }
+        dictionaries.put(typeName, ids);
+      }
+
+      int predicateCount = in.readInt();
+      for (int p = 0; p < predicateCount; ++p) {
+        String name = in.readUTF();
+        int arity = in.readInt();
+        String[] typeNames = new String[arity];
+        byte[] kinds = new byte[arity];
+        for (int arg = 0; arg < arity; ++arg) {
+          typeNames[arg] = in.readUTF();
+          kinds[arg] = in.readByte();
+        }
+        UserPredicate predicate = signature.getUserPredicate(name);
+        if (predicate != null && predicate.getArity() != arity)
+          throw new IOException("Predicate " + name + " has arity " + arity + " in " + file + " but " +
+                  predicate.getArity() + " in the signature");
+        columns.add(new PredicateColumns(predicate, typeNames, kinds, dictionaries));
+      }
+
+      int size = in.readInt();
+      offsets = new long[size];
+      for (int i = 0; i < size; ++i) offsets[i] = in.readLong();
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Looks up a constant of the dictionary in the file, given as the bytes written by {@link
+   * DataOutputStream#writeUTF(String)}, without creating a string for it.
+   */
+  private static int index(Type type, byte[] bytes, int length) throws IOException {
+    switch (type.getTypeClass()) {
+      case CATEGORICAL:
+      case CATEGORICAL_UNKNOWN:
+        CategoricalType nodType = (CategoricalType) type.getNodType();
+        int index;
+        if (isUTF8(bytes, length))
+          index = nodType.index(bytes, 0, length);
+        else
+          index = nodType.index(decode(bytes, length));
+        if (index == -1) throw new NotInTypeException(decode(bytes, length), type);
+        return index;
+    }
+    return 0;
+  }
+
+  /**
+   * Modified UTF-8 (as written by DataOutputStream) differs from standard UTF-8 only in how it encodes the null char
+   * and supplementary chars, which both start with bytes we check for here.
+   */
+  private static boolean isUTF8(byte[] bytes, int length) {
+    for (int i = 0; i < length; ++i)
+      if (bytes[i] == (byte) 0xc0 || bytes[i] == (byte) 0xed) return false;
+    return true;
+  }
+
+  private static String decode(byte[] bytes, int length) throws IOException {
+    ByteArrayOutputStream utf = new ByteArrayOutputStream(length + 2);
+    DataOutputStream out = new DataOutputStream(utf);
+    out.writeShort(length);
+    out.write(bytes, 0, length);
+    return new DataInputStream(new ByteArrayInputStream(utf.toByteArray())).readUTF();
+  }
+
+  public Iterator<GroundAtoms> iterator() {
+    try {
+      return new BlockIterator();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Decodes the instance with the given index using the offset table (without reading any preceeding instances).
+   *
+   * @param index the index of the instance.
+   * @return a new ground atoms object with the atoms of the instance.
+   */
+  public GroundAtoms get(int index) {
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        raf.seek(offsets[index]);
+        Decoder decoder = new Decoder();
+        GroundAtoms atoms = signature.createGroundAtoms();
+        decoder.decode(raf, atoms);
+        return atoms;
+      } finally {
+        raf.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public int size() {
+    return offsets.length;
+  }
+
+  public Signature getSignature() {
+    return signature;
+  }
+
+  public int getUsedMemory() {
+    return offsets.length * 8;
+  }
+
+  public void append(GroundAtoms atoms) {
+    throw new UnsupportedOperationException("Columnar corpora are written with a ColumnarCorpus.Writer");
+  }
+
+  /**
+   * Writes all instances of the given corpus into a columnar corpus file.
+   *
+   * @param corpus the corpus to convert (can be created by any corpus factory).
+   * @param file   the file to write to.
+   * @return the number of instances written.
+   * @throws IOException if I/O goes wrong.
+   */
+  public static int convert(Corpus corpus, File file) throws IOException {
+    return convert(corpus, file, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Writes the instances from <code>from</code> (inclusive) to <code>to</code> (exclusive) of the given corpus into a
+   * columnar corpus file.
+   *
+   * @param corpus the corpus to convert (can be created by any corpus factory).
+   * @param file   the file to write to.
+   * @param from   the first instance to write.
+   * @param to     the instance after the last instance to write.
+   * @return the number of instances written.
+   * @throws IOException if I/O goes wrong.
+   */
+  public static int convert(Corpus corpus, File file, int from, int to) throws IOException {
+    Writer writer = new Writer(corpus.getSignature(), file);
+    Iterator<GroundAtoms> iterator = corpus.iterator();
+    for (int i = 0; i < to && iterator.hasNext(); ++i) {
+      GroundAtoms atoms = iterator.next();
+      if (i >= from) writer.write(atoms);
+    }
+    writer.close();
+    return writer.getInstanceCount();
+  }
+
+  /**
+   * Stores the mapping between the columns of one predicate in the file and the layout of the relation that holds its
+   * ground atoms.
+   */
+  private class PredicateColumns {
+    private UserPredicate predicate;
+    private boolean[] isDouble;
+    private int[][] dictionaries;
+    private int[] offsetInRow;
+    private int xInt, xDouble;
+
+    private PredicateColumns(UserPredicate predicate, String[] typeNames, byte[] kinds,
+                             HashMap<String, int[]> dictionaries) throws IOException {
+      this.predicate = predicate;
+      int arity = typeNames.length;
+      isDouble = new boolean[arity];
+      this.dictionaries = new int[arity][];
+      offsetInRow = new int[arity];
+      for (int arg = 0; arg < arity; ++arg) {
+        isDouble[arg] = kinds[arg] == DOUBLE_COLUMN;
+        if (kinds[arg] == CATEGORICAL_COLUMN) {
+          this.dictionaries[arg] = dictionaries.get(typeNames[arg]);
+          //the writer stores a dictionary for every categorical type of the schema
+          if (this.dictionaries[arg] == null)
+            throw new IOException("Corrupt trailer in " + file + ": there is no dictionary for type " + typeNames[arg]);
+        }
+      }
+      if (predicate == null) return;
+      HashMap<String, Integer> name2arg = new HashMap<String, Integer>();
+      for (int arg = 0; arg < arity; ++arg) name2arg.put(predicate.getColumnName(arg), arg);
+      for (Attribute attribute : predicate.getHeading().attributes()) {
+        int arg = name2arg.get(attribute.name());
+        offsetInRow[arg] = attribute.type() instanceof DoubleType ? xDouble++ : xInt++;
+      }
+    }
+  }
+
+  /**
+   * Decodes blocks into ground atoms. Keeps its buffers across blocks so that sequential decoding doesn't need to
+   * reallocate them for each instance.
+   */
+  private class Decoder {
+    private byte[] compressed = new byte[1024];
+    private byte[] raw = new byte[1024];
+    private Inflater inflater = new Inflater();
+
+    private void decode(DataInput in, GroundAtoms atoms) throws IOException {
+      int rawLength = in.readInt();
+      int compressedLength = in.readInt();
+      if (compressed.length < compressedLength) compressed = new byte[compressedLength];
+      if (raw.length < rawLength) raw = new byte[rawLength];
+      in.readFully(compressed, 0, compressedLength);
+      inflater.reset();
+      inflater.setInput(compressed, 0, compressedLength);
+      try {
+        inflater.inflate(raw, 0, rawLength);
+      } catch (DataFormatException e) {
+        throw new IOException("Corrupt block in " + file, e);
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(raw, 0, rawLength);
+      for (PredicateColumns pred : columns) {
+        int rows = buffer.getInt();
+        int arity = pred.isDouble.length;
+        if (pred.predicate == null) {
+          for (int arg = 0; arg < arity; ++arg)
+            buffer.position(buffer.position() + rows * (pred.isDouble[arg] ? 8 : 4));
+          continue;
+        }
+        int[] ints = new int[rows * pred.xInt];
+        double[] doubles = pred.xDouble > 0 ? new double[rows * pred.xDouble] : null;
+        for (int arg = 0; arg < arity; ++arg) {
+          int offset = pred.offsetInRow[arg];
+          if (pred.isDouble[arg]) {
+            for (int row = 0, dst = offset; row < rows; ++row, dst += pred.xDouble)
+              doubles[dst] = buffer.getDouble();
+          } else {
+            int[] dictionary = pred.dictionaries[arg];
+            if (dictionary != null)
+              for (int row = 0, dst = offset; row < rows; ++row, dst += pred.xInt)
+                ints[dst] = dictionary[buffer.getInt()];
+            else
+              for (int row = 0, dst = offset; row < rows; ++row, dst += pred.xInt)
+                ints[dst] = buffer.getInt();
+          }
+        }
+        RelationVariable relation = atoms.getGroundAtomsOf(pred.predicate).getRelationVariable();
+        if (pred.xInt == 0) {
+          atoms.getGroundAtomsOf(pred.predicate).clear();
+          for (int row = 0; row < rows; ++row) {
+            Object[] args = new Object[arity];
+            for (int arg = 0; arg < arity; ++arg) args[arg] = doubles[row * pred.xDouble + pred.offsetInRow[arg]];
+            relation.addTuple(args);
+          }
+        } else
+          relation.assignByArray(ints, doubles);
+      }
+    }
+  }
+
+  private class BlockIterator implements Iterator<GroundAtoms> {
+    private DataInputStream in;
+    private int current = 0;
+    private Decoder decoder = new Decoder();
+
+    private BlockIterator() throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+      in.readInt();
+      in.readInt();
+    }
+
+    public boolean hasNext() {
+      return current < offsets.length;
+    }
+
+    public GroundAtoms next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      GroundAtoms atoms = signature.createGroundAtoms();
+      try {
+        decoder.decode(in, atoms);
+        if (++current == offsets.length) in.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return atoms;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * A Writer appends instances to a new columnar corpus file. The dictionaries and the offset table are written when the
+   * writer is closed.
+   */
+  public static class Writer {
+
+    private Signature signature;
+    private DataOutputStream out;
+    private long position;
+    private ArrayList<Long> offsets = new ArrayList<Long>();
+    private LinkedHashMap<String, StringDictionary> dictionaries = new LinkedHashMap<String, StringDictionary>();
+    private ByteArrayOutputStream rawBytes = new ByteArrayOutputStream(4096);
+    private DataOutputStream raw = new DataOutputStream(rawBytes);
+    private byte[] compressed = new byte[4096];
+    private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    public Writer(Signature signature, File file) throws IOException {
+      this.signature = signature;
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      position = 8;
+      //every categorical column needs a dictionary, even if its predicate never has any atoms
+      for (UserPredicate predicate : signature.getUserPredicates())
+        for (Type type : predicate.getArgumentTypes())
+          if (kind(type) == CATEGORICAL_COLUMN && !dictionaries.containsKey(type.getName()))
+            dictionaries.put(type.getName(), new StringDictionary());
+    }
+
+    /**
+     * Appends the given instance.
+     *
+     * @param atoms the atoms of the instance.
+     * @throws IOException if I/O goes wrong.
+     */
+    public void write(GroundAtoms atoms) throws IOException {
+      rawBytes.reset();
+      for (UserPredicate predicate : signature.getUserPredicates()) {
+        RelationVariable relation = atoms.getGroundAtomsOf(predicate).getRelationVariable();
+        int rows = relation.value().size();
+        raw.writeInt(rows);
+        List<Type> types = predicate.getArgumentTypes();
+        for (int arg = 0; arg < types.size(); ++arg) {
+          Type type = types.get(arg);
+          String attribute = predicate.getColumnName(arg);
+          for (TupleValue tuple : relation.value()) {
+            Value<?> value = tuple.element(attribute);
+            switch (type.getTypeClass()) {
+              case CATEGORICAL:
+              case CATEGORICAL_UNKNOWN:
+                raw.writeInt(id(type, ((CategoricalValue) value).representation()));
+                break;
+              case BOOL:
+                raw.writeInt(((BoolValue) value).getBool() ? 1 : 0);
+                break;
+              case INT:
+              case POSITIVE_INT:
+              case NEGATIVE_INT:
+                raw.writeInt(((IntValue) value).getInt());
+                break;
+              default:
+                raw.writeDouble(((DoubleValue) value).getDouble());
+            }
+          }
+        }
+      }
+      raw.flush();
+      deflater.reset();
+      deflater.setInput(rawBytes.toByteArray());
+      deflater.finish();
+      int compressedLength = 0;
+      while (!deflater.finished()) {
+        if (compressedLength == compressed.length) {
+          byte[] bigger = new byte[compressed.length * 2];
+          System.arraycopy(compressed, 0, bigger, 0, compressedLength);
+          compressed = bigger;
+        }
+        compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+      }
+      offsets.add(position);
+      out.writeInt(rawBytes.size());
+      out.writeInt(compressedLength);
+      out.write(compressed, 0, compressedLength);
+      position += 8 + compressedLength;
+    }
+
+    private static byte kind(Type type) {
+      switch (type.getTypeClass()) {
+        case CATEGORICAL:
+        case CATEGORICAL_UNKNOWN:
+          return CATEGORICAL_COLUMN;
+        case INT:
+        case POSITIVE_INT:
+        case NEGATIVE_INT:
+        case BOOL:
+          return INT_COLUMN;
+      }
+      return DOUBLE_COLUMN;
+    }
+
+    private int id(Type type, String constant) {
+      StringDictionary dictionary = dictionaries.get(type.getName());
+      if (dictionary == null) {
+        dictionary = new StringDictionary();
+        dictionaries.put(type.getName(), dictionary);
+      }
+      return dictionary.add(constant);
+    }
+
+    /**
+     * The number of instances written so far.
+     *
+     * @return number of written instances.
+     */
+    public int getInstanceCount() {
+      return offsets.size();
+    }
+
+    /**
+     * Writes dictionaries, schema and offset table and closes the file.
+     *
+     * @throws IOException if I/O goes wrong.
+     */
+    public void close() throws IOException {
+      long trailerOffset = position;
+      out.writeInt(dictionaries.size());
+      for (Map.Entry<String, StringDictionary> entry : dictionaries.entrySet()) {
+        out.writeUTF(entry.getKey());
+        StringDictionary dictionary = entry.getValue();
+        out.writeInt(dictionary.size());
+        for (int id = 0; id < dictionary.size(); ++id) out.writeUTF(dictionary.get(id));
+      }
+      out.writeInt(signature.getUserPredicates().size());
+      for (UserPredicate predicate : signature.getUserPredicates()) {
+        out.writeUTF(predicate.getName());
+        out.writeInt(predicate.getArity());
+        for (Type type : predicate.getArgumentTypes()) {
+          out.writeUTF(type.getName());
+          out.writeByte(kind(type));
+        }
+      }
+      out.writeInt(offsets.size());
+      for (long offset : offsets) out.writeLong(offset);
+      out.writeLong(trailerOffset);
+      out.writeInt(MAGIC);
+      out.close();
+      deflater.end();
+    }
+  }
+
+}
@@ -0,0 +1,167 @@
+package thebeast.pml.corpora;
+
+import java.io.*;
+
+/**
+ * A CorpusOffsetIndex stores the byte offset of each instance (each line starting with "&gt;&gt;") of a text corpus
+ * file. It is kept in a sidecar file next to the corpus (the corpus file name with ".offsets" appended) so the corpus
+ * only has to be scanned once. The sidecar remembers length and modification time of the corpus file and is rebuilt
+ * automatically whenever one of them changes.
+ *
+ * @author Sebastian Riedel
+ */
+public class CorpusOffsetIndex {
+
+  public static final int MAGIC = 0x5442434f;
+  public static final int VERSION = 1;
+
+  private long[] offsets;
+  private long length;
+  private long lastModified;
+
+  private CorpusOffsetIndex(long[] offsets, long length, long lastModified) {
+    this.offsets = offsets;
+    this.length = length;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * Returns the sidecar file of a corpus file.
+   *
+   * @param corpus the corpus file.
+   * @return the file the offset index of the corpus is stored in.
+   */
+  public static File getIndexFile(File corpus) {
+    return new File(corpus.getPath() + ".offsets");
+  }
+
+  /**
+   * Loads the offset index of a corpus file, or builds (and tries to save) it if there is no up-to-date index yet.
+   *
+   * @param corpus the corpus file.
+   * @return the offset index of the file.
+   * @throws IOException if the corpus can't be read.
+   */
+  public static CorpusOffsetIndex getIndex(File corpus) throws IOException {
+    File indexFile = getIndexFile(corpus);
+    if (indexFile.exists()) {
+      CorpusOffsetIndex index = load(indexFile);
+      if (index != null && index.isValidFor(corpus)) return index;
+    }
+    CorpusOffsetIndex index = build(corpus);
+    try {
+      index.save(indexFile);
+    } catch (IOException e) {
+      //we can live without the sidecar (e.g. in a read-only directory)
+      indexFile.delete();
+    }
+    return index;
+  }
+
+  /**
+   * Scans a corpus file for the beginning of instances.
+   *
+   * @param corpus the corpus file.
+   * @return a new offset index for the file.
+   * @throws IOException if the file can't be read.
+   */
+  public static CorpusOffsetIndex build(File corpus) throws IOException {
+    long lastModified = corpus.lastModified();
+    long length = corpus.length();
+    long[] offsets = new long[1024];
+    int count = 0;
+    InputStream is = new BufferedInputStream(new FileInputStream(corpus), 65536);
+    try {
+      long position = 0;
+      //lineStart: the current byte starts a line, marker: the previous byte was a '>' at the start of a line
+      boolean lineStart = true, marker = false;
+      for (int b = is.read(); b != -1; b = is.read(), ++position) {
+        if (marker && b == '>') {
+          if (count == offsets.length) {
+            long[] tmp = new long[offsets.length * 2];
+            System.arraycopy(offsets, 0, tmp, 0, count);
+            offsets = tmp;
+          }
+          offsets[count++] = position - 1;
+        }
+        marker = lineStart && b == '>';
+        lineStart = b == '\n';
+      }
+    } finally {
+      is.close();
+    }
+    long[] result = new long[count];
+    System.arraycopy(offsets, 0, result, 0, count);
+    return new CorpusOffsetIndex(result, length, lastModified);
+  }
+
+  private static CorpusOffsetIndex load(File indexFile) throws IOException {
+    DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+    try {
+      if (is.readInt() != MAGIC || is.readInt() != VERSION) return null;
+      long length = is.readLong();
+      long lastModified = is.readLong();
+      long[] offsets = new long[is.readInt()];
+      for (int i = 0; i < offsets.length; ++i) offsets[i] = is.readLong();
+      return new CorpusOffsetIndex(offsets, length, lastModified);
+    } catch (EOFException e) {
+      return null;
+    } finally {
+      is.close();
+    }
+  }
+
+  /**
+   * Writes this index to a file.
+   *
+   * @param indexFile the file to write to.
+   * @throws IOException if the file can't be written.
+   */
+  public void save(File indexFile) throws IOException {
+    DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+    try {
+      os.writeInt(MAGIC);
+      os.writeInt(VERSION);
+      os.writeLong(length);
+      os.writeLong(lastModified);
+      os.writeInt(offsets.length);
+      for (long offset : offsets) os.writeLong(offset);
+    } finally {
+      os.close();
+    }
+  }
+
+  /**
+   * Checks whether this index still describes the given file.
+   *
+   * @param corpus the corpus file.
+   * @return true iff length and modification time of the file are the ones this index was built for.
+   */
+  public boolean isValidFor(File corpus) {
+    return corpus.length() == length && corpus.lastModified() == lastModified;
+  }
+
+  /**
+   * @return the number of instances.
+   */
+  public int size() {
+    return offsets.length;
+  }
+
+  /**
+   * @param instance the index of an instance.
+   * @return the byte offset of the "&gt;&gt;" line of the instance.
+   */
+  public long getBegin(int instance) {
+    return offsets[instance];
+  }
+
+  /**
+   * @param instance the index of an instance.
+   * @return the byte offset right after the last line of the instance.
+   */
+  public long getEnd(int instance) {
+    return instance + 1 < offsets.length ? offsets[instance + 1] : length;
+  }
+
+}
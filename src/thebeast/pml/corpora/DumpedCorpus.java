@@ -143,6 +143,22 @@ public class DumpedCorpus extends AbstractCollection<GroundAtoms> implements Cor
     return activeCount;
   }
 
+  /**
+   * Opens a new source for the dump file, positioned at the first instance. Can be used to stream through the corpus
+   * independently of the iterators of this corpus.
+   *
+   * @return a file source from which {@link #size()} ground atoms can be read.
+   */
+  public FileSource createSource() {
+    try {
+      FileSource source = TheBeast.getInstance().getNodServer().createSource(file, 1024);
+      source.read(TheBeast.getInstance().getNodServer().interpreter().createIntVariable());
+      return source;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public synchronized Iterator<GroundAtoms> iterator() {
     if (iterating)
       throw new RuntimeException("Dumped Corpus can only have one active iterator at a time!");
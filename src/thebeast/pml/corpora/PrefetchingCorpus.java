@@ -0,0 +1,170 @@
+package thebeast.pml.corpora;
+
+import thebeast.nod.FileSource;
+import thebeast.pml.GroundAtoms;
+import thebeast.pml.Signature;
+import thebeast.util.Prefetcher;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * A PrefetchingCorpus wraps a corpus and reads the next instances on a background thread while the caller processes
+ * the current one. At most <code>prefetchCount</code> instances are decoded ahead of the caller.
+ *
+ * <p>For a {@link DumpedCorpus} instances are deserialized in the background into a pool of reusable ground atoms. For
+ * a {@link TextFormatCorpus} only reading and splitting of the text is done in the background; the atoms themselves
+ * are parsed on the caller thread because parsing can add constants to types with unknowns, and types are not thread
+ * safe. Other corpora are iterated as they are.
+ *
+ * <p>Note that for dumped corpora the returned ground atoms are only valid until the next call to
+ * <code>next()</code> of the iterator, so they must not be collected in a list.
+ *
+ * <p>The background threads stop by themselves once all instances have been read. If an iteration may stop earlier
+ * (e.g. because of an exception) call {@link #close()} afterwards.
+ *
+ * @author Sebastian Riedel
+ */
+public class PrefetchingCorpus extends AbstractCollection<GroundAtoms> implements Corpus {
+
+  private Corpus delegate;
+  private int prefetchCount;
+  private ArrayList<Prefetcher<?>> prefetchers = new ArrayList<Prefetcher<?>>();
+
+  /**
+   * Creates a prefetching view on the given corpus.
+   *
+   * @param delegate      the corpus to read from.
+   * @param prefetchCount the maximum number of instances to decode ahead of the caller.
+   */
+  public PrefetchingCorpus(Corpus delegate, int prefetchCount) {
+    if (prefetchCount < 1) throw new IllegalArgumentException("prefetchCount must be positive");
+    this.delegate = delegate;
+    this.prefetchCount = prefetchCount;
+  }
+
+  public Iterator<GroundAtoms> iterator() {
+    //forget the prefetchers that are done already
+    for (Iterator<Prefetcher<?>> iterator = prefetchers.iterator(); iterator.hasNext();)
+      if (iterator.next().isDone()) iterator.remove();
+    if (delegate instanceof DumpedCorpus) {
+      DumpPrefetcher prefetcher = new DumpPrefetcher((DumpedCorpus) delegate);
+      prefetchers.add(prefetcher);
+      return prefetcher;
+    }
+    if (delegate instanceof TextFormatCorpus) {
+      TextPrefetcher prefetcher = new TextPrefetcher((TextFormatCorpus) delegate);
+      prefetchers.add(prefetcher.prefetcher);
+      return prefetcher;
+    }
+    return delegate.iterator();
+  }
+
+  /**
+   * Stops the background threads of all iterators of this corpus and closes the files they read from. Iterators that
+   * haven't been consumed completely have no more elements afterwards.
+   */
+  public void close() {
+    for (Prefetcher<?> prefetcher : prefetchers)
+      prefetcher.close();
+    prefetchers.clear();
+  }
+
+  private ArrayList<GroundAtoms> createPool() {
+    //holders are created on the caller thread, the interpreter is not thread safe.
+    ArrayList<GroundAtoms> pool = new ArrayList<GroundAtoms>(prefetchCount + 1);
+    for (int i = 0; i < prefetchCount + 1; ++i)
+      pool.add(delegate.getSignature().createGroundAtoms());
+    return pool;
+  }
+
+  public int size() {
+    return delegate.size();
+  }
+
+  public Signature getSignature() {
+    return delegate.getSignature();
+  }
+
+  public int getUsedMemory() {
+    return delegate.getUsedMemory();
+  }
+
+  public void append(GroundAtoms atoms) {
+    delegate.append(atoms);
+  }
+
+  private class DumpPrefetcher extends Prefetcher<GroundAtoms> {
+    private FileSource source;
+    private int size;
+    private int read = 0;
+
+    private DumpPrefetcher(DumpedCorpus corpus) {
+      super(createPool());
+      size = corpus.size();
+      source = corpus.createSource();
+    }
+
+    protected boolean fill(GroundAtoms holder) throws Exception {
+      if (read++ == size) return false;
+      holder.read(source);
+      return true;
+    }
+
+    protected void cleanup() throws Exception {
+      source.close();
+    }
+
+    protected void release(GroundAtoms holder) {
+      //make sure no other atoms share data with the holder before it is overwritten
+      holder.clear();
+    }
+  }
+
+  private class TextPrefetcher implements Iterator<GroundAtoms> {
+    private Prefetcher<StringBuffer> prefetcher;
+
+    private TextPrefetcher(final TextFormatCorpus corpus) {
+      ArrayList<StringBuffer> buffers = new ArrayList<StringBuffer>();
+      for (int i = 0; i < prefetchCount + 1; ++i) buffers.add(new StringBuffer());
+      prefetcher = new Prefetcher<StringBuffer>(buffers) {
+        private BufferedReader reader;
+        private String line;
+
+        protected boolean fill(StringBuffer holder) throws Exception {
+          if (reader == null) {
+            reader = new BufferedReader(new InputStreamReader(corpus.createInputStream()));
+            for (line = reader.readLine(); line != null && !line.startsWith(">>"); line = reader.readLine()) ;
+          }
+          if (line == null) return false;
+          holder.setLength(0);
+          for (line = reader.readLine(); line != null && !line.startsWith(">>"); line = reader.readLine())
+            holder.append(line).append("\n");
+          return true;
+        }
+
+        protected void cleanup() throws Exception {
+          if (reader != null) reader.close();
+        }
+      };
+    }
+
+    public boolean hasNext() {
+      return prefetcher.hasNext();
+    }
+
+    public GroundAtoms next() {
+      GroundAtoms atoms = getSignature().createGroundAtoms();
+      atoms.load(prefetcher.next().toString());
+      return atoms;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
@@ -2,6 +2,7 @@ package thebeast.pml.corpora;
 
 import thebeast.pml.*;
 import thebeast.util.HashMultiMapList;
+import thebeast.util.StringDictionary;
 
 import java.io.*;
 import java.util.*;
@@ -37,7 +38,7 @@ public class TabFormatCorpus extends AbstractCollection<GroundAtoms> implements
       public String typeName;
       public boolean unknowns;
       public TokenProcessor processor;
-      public HashSet<String> tokens = new HashSet<String>();
+      public StringDictionary tokens = new StringDictionary();
 
       public TokenCollector(String typeName, boolean unknowns, TokenProcessor processor) {
         this.typeName = typeName;
@@ -81,7 +82,7 @@ public class TabFormatCorpus extends AbstractCollection<GroundAtoms> implements
         }
         for (List<TokenCollector> list : collectors.values())
           for (TokenCollector collector : list)
-            signature.createType(collector.typeName, collector.unknowns, new LinkedList<String>(collector.tokens));
+            signature.createType(collector.typeName, collector.unknowns, collector.tokens.asList());
 
       } catch (IOException e) {
         throw new RuntimeException(e);
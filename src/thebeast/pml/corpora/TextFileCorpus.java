@@ -1,8 +1,11 @@
 package thebeast.pml.corpora;
 
+import thebeast.pml.GroundAtoms;
 import thebeast.pml.Signature;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by IntelliJ IDEA. User: s0349492 Date: 12-Feb-2007 Time: 16:38:52
@@ -10,21 +13,124 @@ import java.io.*;
 public class TextFileCorpus extends TextFormatCorpus {
 
   private File file;
+  private CorpusOffsetIndex index;
+  //the range of instances this corpus covers, to == -1 means all instances of the file
+  private int from = 0, to = -1;
 
   public TextFileCorpus(Signature signature, File file) {
     super(signature);
     this.file = file;
   }
 
+  /**
+   * Creates a corpus that only contains a range of the instances of a file.
+   *
+   * @param signature the signature of the corpus.
+   * @param file      the corpus file.
+   * @param from      the first instance of the range.
+   * @param to        the instance after the last instance of the range.
+   */
+  public TextFileCorpus(Signature signature, File file, int from, int to) {
+    this(signature, file);
+    if (from < 0 || to < from) throw new IllegalArgumentException("Illegal range " + from + "-" + to);
+    this.from = from;
+    this.to = to;
+  }
+
+  /**
+   * Returns the offset index of the corpus file (which is built once and kept next to the file, see {@link
+   * CorpusOffsetIndex}).
+   *
+   * @return the offset index of the corpus file.
+   */
+  public CorpusOffsetIndex getOffsetIndex() {
+    if (index == null || !index.isValidFor(file)) {
+      try {
+        index = CorpusOffsetIndex.getIndex(file);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      if (to > index.size())
+        throw new IndexOutOfBoundsException("Corpus has only " + index.size() + " instances");
+    }
+    return index;
+  }
+
   public InputStream createInputStream() {
     try {
-      return new FileInputStream(file);
-    } catch (FileNotFoundException e) {
+      if (from == 0 && to == -1) return new FileInputStream(file);
+      if (from == to) return new ByteArrayInputStream(new byte[0]);
+      CorpusOffsetIndex index = getOffsetIndex();
+      return new RangeInputStream(file, index.getBegin(from), index.getEnd(to - 1));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public int size() {
+    if (to == -1 && !file.exists()) return 0;
+    return to == -1 ? getOffsetIndex().size() : to - from;
+  }
+
+  /**
+   * Reads a single instance without reading any of the instances before it.
+   *
+   * @param instance the index of the instance within this corpus.
+   * @return a new ground atoms object with the atoms of the instance.
+   */
+  public GroundAtoms get(int instance) {
+    if (instance < 0 || instance >= size())
+      throw new IndexOutOfBoundsException("Corpus has no instance " + instance);
+    CorpusOffsetIndex index = getOffsetIndex();
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        long begin = index.getBegin(from + instance);
+        byte[] bytes = new byte[(int) (index.getEnd(from + instance) - begin)];
+        raf.seek(begin);
+        raf.readFully(bytes);
+        String text = new String(bytes);
+        //skip the >> line
+        int newLine = text.indexOf('\n');
+        GroundAtoms atoms = getSignature().createGroundAtoms();
+        atoms.load(newLine == -1 ? "" : text.substring(newLine + 1));
+        return atoms;
+      } finally {
+        raf.close();
+      }
+    } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * Returns a corpus for a range of the instances of this corpus. It reads only the bytes of this range.
+   *
+   * @param from the first instance of the range.
+   * @param to   the instance after the last instance of the range.
+   * @return a corpus with the instances from <code>from</code> to <code>to - 1</code>.
+   */
+  public TextFileCorpus subCorpus(int from, int to) {
+    if (to > size()) throw new IndexOutOfBoundsException("Corpus has only " + size() + " instances");
+    return new TextFileCorpus(getSignature(), file, this.from + from, this.from + to);
+  }
+
+  /**
+   * Splits this corpus into consecutive parts of (almost) equal size, for example to process them in parallel.
+   *
+   * @param parts the number of parts.
+   * @return a list of corpora covering this corpus.
+   */
+  public List<TextFileCorpus> split(int parts) {
+    ArrayList<TextFileCorpus> result = new ArrayList<TextFileCorpus>(parts);
+    int size = size();
+    for (int part = 0; part < parts; ++part)
+      result.add(subCorpus(part * size / parts, (part + 1) * size / parts));
+    return result;
+  }
+
   public OutputStream getOutputStream() {
+    if (to != -1) throw new UnsupportedOperationException("Can't append to a range of a corpus file");
     try {
       return new FileOutputStream(file, true);
     } catch (FileNotFoundException e) {
@@ -36,6 +142,37 @@ public class TextFileCorpus extends TextFormatCorpus {
     return 0;
   }
 
+  /**
+   * Reads the bytes of a file between two offsets.
+   */
+  private static class RangeInputStream extends InputStream {
+    private RandomAccessFile raf;
+    private long remaining;
+
+    private RangeInputStream(File file, long begin, long end) throws IOException {
+      raf = new RandomAccessFile(file, "r");
+      raf.seek(begin);
+      remaining = end - begin;
+    }
+
+    public int read() throws IOException {
+      if (remaining <= 0) return -1;
+      --remaining;
+      return raf.read();
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) return -1;
+      int read = raf.read(b, off, (int) Math.min(len, remaining));
+      if (read > 0) remaining -= read;
+      return read;
+    }
+
+    public void close() throws IOException {
+      raf.close();
+    }
+  }
+
 
   public static class Factory implements CorpusFactory {
 
@@ -4,6 +4,7 @@ import jline.ConsoleReader;
 import jline.SimpleCompletor;
 import thebeast.nod.FileSink;
 import thebeast.nod.FileSource;
+import thebeast.nod.type.CategoricalType;
 import thebeast.pml.*;
 import thebeast.pml.corpora.*;
 import thebeast.pml.formula.*;
@@ -83,6 +84,8 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
   private SimpleCompletor completor = new SimpleCompletor("");
   private int maxTabComplete = 50;
   private boolean cacheFeatures = true;
+  private int prefetch = 0;
+  private int instancesThreads = 1;
 
   public Shell() {
     this(System.in, System.out, System.err);
@@ -505,6 +508,8 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
       }
     } else if ("scores".equals(parserPrint.name.head)) {
       out.println(scores);
+    } else if ("querystats".equals(parserPrint.name.head)) {
+      out.print(TheBeast.getInstance().getNodServer().getQueryStatistics());
     } else if ("history".equals(parserPrint.name.head)) {
       printHistory();
     } else if ("collector".equals(parserPrint.name.head)) {
@@ -557,6 +562,9 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
       out.printf("%-20s%8.3fmb\n", "Gold corpus:", corpus.getUsedMemory() / 1024 / 1024.0);
       out.printf("%-20s%8.3fmb\n", "Training instances:", instances.getUsedMemory() / 1024 / 1024.0);
       out.printf("%-20s%8.3fmb\n", "Weights:", weights.getUsedMemory() / 1024 / 1024.0);
+      long types = 0;
+      for (Type type : signature.getTypes()) types += type.getUsedMemory();
+      out.printf("%-20s%8.3fmb\n", "Type dictionaries:", types / 1024 / 1024.0);
       //out.printf("%-20s%8.3fmb\n", "Collector:", collector.getUsedMemory() / 1024 / 1024.0);
       //System.
     }
@@ -603,12 +611,18 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
 
   public void visitSaveTypes(ParserSaveTypes parserSaveTypes) {
     try {
-      PrintStream file = new PrintStream(new FileOutputStream(filename(parserSaveTypes.file)));
+      PrintStream file = new PrintStream(new BufferedOutputStream(
+              new FileOutputStream(filename(parserSaveTypes.file))));
       for (Type type : signature.getTypes())
         if (type.getTypeClass() == Type.Class.CATEGORICAL || type.getTypeClass() == Type.Class.CATEGORICAL_UNKNOWN) {
           file.print("type " + type + ": ");
           if (type.getTypeClass() == Type.Class.CATEGORICAL_UNKNOWN) file.print("... ");
-          file.print(Util.toEscapedStringWithDelimiters(type.getConstants(), ", "));
+          //write the constants one by one, big types would otherwise be copied into one huge string
+          CategoricalType nodType = (CategoricalType) type.getNodType();
+          for (int i = 0; i < nodType.size(); ++i) {
+            if (i > 0) file.print(", ");
+            file.print(Util.escape(nodType.representation(i)));
+          }
           file.println(";");
         }
       file.close();
@@ -627,11 +641,17 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
     } else {
       CorpusFactory factory = getCorpusFactory(parserLoadCorpus.factory);
       corpus = factory.createCorpus(signature, new File(filename(s)));
+      int skip = parserLoadCorpus.from;
+      //text files can jump to the range directly (using the offset index of the file)
+      if (skip != -1 && corpus instanceof TextFileCorpus) {
+        corpus = ((TextFileCorpus) corpus).subCorpus(parserLoadCorpus.from, parserLoadCorpus.to);
+        skip = 0;
+      }
       corpus = new AugmentedCorpus(model, corpus);
       if (parserLoadCorpus.from != -1) {
         Iterator<GroundAtoms> instance = corpus.iterator();
         corpus = new RandomAccessCorpus(signature, parserLoadCorpus.to - parserLoadCorpus.from);
-        for (int i = 0; i < parserLoadCorpus.from; ++i) instance.next();
+        for (int i = 0; i < skip; ++i) instance.next();
         for (int i = parserLoadCorpus.from; i < parserLoadCorpus.to; ++i) corpus.add(instance.next());
       }
     }
@@ -653,6 +673,14 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
           corpus = new DumpedCorpus(file, corpus, defaultCorpusCacheSize);
         out.println("Corpus dumped to disk (using dumped version now).");
         //iterator = corpus.iterator();
+      } else if ("columnar".equals(parserSaveCorpus.factory)) {
+        File file = new File(filename(parserSaveCorpus.file));
+        file.delete();
+        int count = parserSaveCorpus.from != -1 ?
+                ColumnarCorpus.convert(corpus, file, parserSaveCorpus.from, parserSaveCorpus.to) :
+                ColumnarCorpus.convert(corpus, file);
+        corpus = new ColumnarCorpus(signature, file);
+        out.println(count + " instances saved to columnar corpus (using columnar version now).");
       } else if ("ram".equals(parserSaveCorpus.factory)) {
         if (parserSaveCorpus.from != -1) {
           Iterator<GroundAtoms> instance = corpus.iterator();
@@ -674,7 +702,7 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
           throw new RuntimeException("Instances can only be created for the complete corpus (no range allowed).");
         } else
           instances = new TrainingInstances(file, extractor, cacheFeatures, corpus, defaultInstanceCacheSize,
-                  new DotProgressReporter(out, 5, 5, 5));
+                  new DotProgressReporter(out, 5, 5, 5), instancesThreads);
         //iterator = corpus.iterator();
         out.println(instances.size() + " instances generated.");
       } else {
@@ -707,6 +735,22 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
           throw new ShellException("Mode " + parserSave.mode + " not supported for saving " + parserSave.target);
         }
         out.println(weights.getFeatureCount() + " weights saved.");
+      } else if (parserSave.target.tail != null && "profiler".equals(parserSave.target.tail.head)) {
+        HasProperties owner;
+        if ("solver".equals(parserSave.target.head)) owner = solver;
+        else if ("learner".equals(parserSave.target.head)) owner = learner;
+        else throw new ShellException(parserSave.target.head + " has no profiler");
+        Object profiler = owner.getProperty(new PropertyName("profiler", null));
+        if (!(profiler instanceof NanoProfiler))
+          throw new ShellException("Only nano profilers can be saved, use 'set " + parserSave.target.head +
+                  ".profiler = \"nano\"'");
+        if (!"json".equals(parserSave.mode) && !"csv".equals(parserSave.mode))
+          throw new ShellException("Mode " + parserSave.mode + " not supported for saving " + parserSave.target);
+        File file = new File(filename(parserSave.file));
+        PrintStream stream = new PrintStream(file);
+        ((NanoProfiler) profiler).write(stream, parserSave.mode);
+        stream.close();
+        out.println("Profile saved to " + file + ".");
       }
     } catch (IOException e) {
       e.printStackTrace();
@@ -755,38 +799,43 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
     Counter<Integer> iterations = new Counter<Integer>();
     Solution goldSolution = new Solution(model, weights);
     Solution guessSolution = new Solution(model, weights);
-    for (GroundAtoms gold : corpus) {
-      solver.setObservation(gold);
-      if (predicateForSize != null)
-        solver.getProfiler().start(String.valueOf(gold.getGroundAtomsOf(predicateForSize).size()));
-      solver.solve();
-      if (predicateForSize != null) {
-        solver.getProfiler().end();
-        iterations.increment(gold.getGroundAtomsOf(predicateForSize).size(), solver.getIterationCount());
-      }
+    Corpus source = prefetching(corpus);
+    try {
+      for (GroundAtoms gold : source) {
+        solver.setObservation(gold);
+        if (predicateForSize != null)
+          solver.getProfiler().start(String.valueOf(gold.getGroundAtomsOf(predicateForSize).size()));
+        solver.solve();
+        if (predicateForSize != null) {
+          solver.getProfiler().end();
+          iterations.increment(gold.getGroundAtomsOf(predicateForSize).size(), solver.getIterationCount());
+        }
 
-//      for (UserPredicate pred : model.getHiddenPredicates()){
-//        System.out.println(gold.getGroundAtomsOf(pred));
-//        System.out.println(solver.getBestAtoms().getGroundAtomsOf(pred));
-//      }
-      dst.append(solver.getBestAtoms());
-      double loss = lossFunction.loss(gold, solver.getBestAtoms());
-      evaluation.evaluate(gold, solver.getBestAtoms());
-      corpusEvaluation.add(evaluation);
-      if (evalScores) {
-        goldSolution.load(gold);
-        goldSolution.updateGroundFormulas();
-        GroundFormulas formulas = new GroundFormulas(model, weights);
-        formulas.update(solver.getBestAtoms());
-        guessSolution.load(solver.getBestAtoms(), formulas);
-        double goldScore = weights.score(goldSolution.extract());
-        double guessScore = weights.score(guessSolution.extract());
-        int violations = guessSolution.getGroundFormulas().getViolationCount();
-        reporter.progressed(loss, solver.getIterationCount(), goldScore, guessScore, violations);
-      } else
-        reporter.progressed(loss, solver.getIterationCount());
+//        for (UserPredicate pred : model.getHiddenPredicates()){
+//          System.out.println(gold.getGroundAtomsOf(pred));
+//          System.out.println(solver.getBestAtoms().getGroundAtomsOf(pred));
+//        }
+        dst.append(solver.getBestAtoms());
+        double loss = lossFunction.loss(gold, solver.getBestAtoms());
+        evaluation.evaluate(gold, solver.getBestAtoms());
+        corpusEvaluation.add(evaluation);
+        if (evalScores) {
+          goldSolution.load(gold);
+          goldSolution.updateGroundFormulas();
+          GroundFormulas formulas = new GroundFormulas(model, weights);
+          formulas.update(solver.getBestAtoms());
+          guessSolution.load(solver.getBestAtoms(), formulas);
+          double goldScore = weights.score(goldSolution.extract());
+          double guessScore = weights.score(guessSolution.extract());
+          int violations = guessSolution.getGroundFormulas().getViolationCount();
+          reporter.progressed(loss, solver.getIterationCount(), goldScore, guessScore, violations);
+        } else
+          reporter.progressed(loss, solver.getIterationCount());
 
-      //System.out.println(loss);
+        //System.out.println(loss);
+      }
+    } finally {
+      close(source);
     }
     reporter.finished();
     out.print(corpusEvaluation);
@@ -887,13 +936,39 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
     }
   }
 
+  /**
+   * Wraps the corpus into a prefetching corpus if prefetching is switched on (<code>set prefetch = n</code> with
+   * n &gt; 0). The returned corpus should only be used for a single pass that does not keep references to the atoms.
+   *
+   * @param corpus the corpus to iterate over.
+   * @return the corpus itself or a prefetching view of it.
+   */
+  private Corpus prefetching(Corpus corpus) {
+    return prefetch > 0 ? new PrefetchingCorpus(corpus, prefetch) : corpus;
+  }
+
+  /**
+   * Stops the background threads of a corpus returned by {@link #prefetching(Corpus)}, in case the loop over it ended
+   * early.
+   *
+   * @param corpus the corpus returned by {@link #prefetching(Corpus)}.
+   */
+  private static void close(Corpus corpus) {
+    if (corpus instanceof PrefetchingCorpus) ((PrefetchingCorpus) corpus).close();
+  }
+
   public void visitCollect(ParserCollect parserCollect) {
     if (corpus == null)
       throw new ShellException("Need a corpus for collecting features!");
     update();
     int oldCount = weights.getFeatureCount();
     collector.setProgressReporter(new DotProgressReporter(out, 5, 5, 5));
-    collector.collect(corpus);
+    Corpus source = prefetching(corpus);
+    try {
+      collector.collect(source);
+    } finally {
+      close(source);
+    }
     //collector.collect(corpus);
     out.println("Collected " + (weights.getFeatureCount() - oldCount) + " features.");
     iterator = corpus.iterator();
@@ -919,7 +994,12 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
         int oldNumEpochs = learner.getNumEpochs();
         if (parserLearn.epochs != -1)
           learner.setNumEpochs(parserLearn.epochs);
-        learner.learn(instances);
+        instances.setPrefetchCount(prefetch);
+        try {
+          learner.learn(instances);
+        } finally {
+          instances.close();
+        }
         learner.setNumEpochs(oldNumEpochs);
       }
     } else {
@@ -972,6 +1052,18 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
       defaultCorpusCacheSize = 1024 * 1024 * (Integer) value;
     else if ("cacheFeatures".equals(parserSet.propertyName.head))
       cacheFeatures = (Boolean) value;
+    else if ("prefetch".equals(parserSet.propertyName.head))
+      prefetch = (Integer) value;
+    else if ("instancesThreads".equals(parserSet.propertyName.head))
+      instancesThreads = (Integer) value;
+    else if ("querystats".equals(parserSet.propertyName.head)) {
+      if (parserSet.propertyName.tail == null)
+        TheBeast.getInstance().getNodServer().setCollectQueryStatistics((Boolean) value);
+      else if ("reset".equals(parserSet.propertyName.tail.head) && (Boolean) value)
+        TheBeast.getInstance().getNodServer().resetQueryStatistics();
+      else
+        throw new RuntimeException("There is no property named " + parserSet.propertyName);
+    }
     else if ("solver".equals(parserSet.propertyName.head))
       solver.setProperty(toPropertyName(parserSet.propertyName.tail), value);
     else if ("weights".equals(parserSet.propertyName.head))
@@ -1307,6 +1399,7 @@ public class Shell implements ParserStatementVisitor, ParserFormulaVisitor, Pars
   private void initCorpusTools() {
     registerCorpusFactory(null, new TextFileCorpus.Factory());
     registerCorpusFactory("ram", RandomAccessCorpus.FACTORY);
+    registerCorpusFactory("columnar", ColumnarCorpus.FACTORY);
     registerCorpusFactory("malt", new MALTFactory());
     registerTypeGenerator("malt", MALTFactory.GENERATOR);
     registerCorpusFactory("conll06", new CoNLL06Factory());
@@ -0,0 +1,287 @@
+package thebeast.pml.solve;
+
+import thebeast.pml.*;
+import thebeast.pml.formula.BooleanFormula;
+import thebeast.pml.formula.CardinalityConstraint;
+import thebeast.pml.formula.Conjunction;
+import thebeast.pml.formula.FactorFormula;
+import thebeast.pml.formula.PredicateAtom;
+import thebeast.pml.solve.ilp.ILPSolverLpSolve;
+import thebeast.pml.solve.ilp.IntegerLinearProgram;
+import thebeast.pml.solve.weightedsat.MaxWalkSat;
+import thebeast.pml.solve.weightedsat.WeightedSatProblem;
+import thebeast.pml.term.DoubleConstant;
+import thebeast.pml.term.IntConstant;
+import thebeast.pml.term.Term;
+import thebeast.pml.term.Variable;
+import thebeast.util.NullProfiler;
+import thebeast.util.Profiler;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An AbstractDecoderModel solves a problem with a special purpose decoder (dynamic programming, spanning tree
+ * algorithms etc.) that is exact for a certain structure of the model, and leaves everything else to a general
+ * propositional model, the delegate.
+ *
+ * <p>The cutting plane solver starts as usual with the greedy solution and passes the ground formulas it violates
+ * on to the delegate. The first time the solver asks for a solution it gets the decoded one. If this solution does
+ * not violate any of the global formulas the decoder doesn't take into account, it is final. Otherwise (or if the
+ * decoder fails) the model hands over to the delegate, which still has the ground formulas of the greedy solution
+ * and thus continues exactly as if it had been used alone. Models with fully grounded formulas are always handled by
+ * the delegate.
+ *
+ * <p>A decoder always returns a complete structure (a label for each position, a head for each token, ...). This is
+ * only exact if the model itself has hard constraints that enforce this structure; decoders check for them in {@link
+ * #initDecoder()} and hand over to the delegate if they are missing.
+ *
+ * @author Sebastian Riedel
+ */
+public abstract class AbstractDecoderModel implements PropositionalModel {
+
+  protected PropositionalModel delegate;
+  protected Model model;
+  protected Weights weights;
+  protected Scores scores;
+  protected Profiler profiler = new NullProfiler();
+
+  private boolean decoded, fallback;
+  private int decodedCount, fallbackCount;
+
+  /**
+   * Creates a new decoder model.
+   *
+   * @param delegate the model to use for the problems the decoder can't solve on its own.
+   */
+  protected AbstractDecoderModel(PropositionalModel delegate) {
+    this.delegate = delegate;
+  }
+
+  public void configure(Model model, Weights weights) {
+    this.model = model;
+    this.weights = weights;
+    delegate.configure(model, weights);
+  }
+
+  public PropositionalModel getDelegate() {
+    return delegate;
+  }
+
+  public void setDelegate(PropositionalModel delegate) {
+    this.delegate = delegate;
+    if (model != null) delegate.configure(model, weights);
+    delegate.setProfiler(profiler);
+  }
+
+  /**
+   * @return the number of problems that have been solved by the decoder alone.
+   */
+  public int getDecodedCount() {
+    return decodedCount;
+  }
+
+  /**
+   * @return the number of problems that have been handed over to the delegate.
+   */
+  public int getFallbackCount() {
+    return fallbackCount;
+  }
+
+  /**
+   * Called whenever a new problem is set up.
+   */
+  protected abstract void initDecoder();
+
+  /**
+   * Decodes the current problem and writes the result into the solution.
+   *
+   * @param solution the solution to write to.
+   * @return false if the decoder can't solve the current problem.
+   */
+  protected abstract boolean decode(GroundAtoms solution);
+
+  /**
+   * Global formulas the decoder takes into account (soft formulas it scores) need not be checked after decoding.
+   *
+   * @param formula a global factor formula.
+   * @return true iff the decoder takes this formula into account.
+   */
+  protected boolean isDecoded(FactorFormula formula) {
+    return false;
+  }
+
+  /**
+   * @param formula a factor formula.
+   * @return true iff the formula is a hard constraint, i.e. has a weight of plus infinity.
+   */
+  protected static boolean isHard(FactorFormula formula) {
+    return formula.getWeight() instanceof DoubleConstant &&
+            ((DoubleConstant) formula.getWeight()).getValue() == Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Checks whether the formula is a hard cardinality constraint with a bound of 1 that counts atoms of the given
+   * predicate, such as <code>for Int i if word(i,_): |Tag t: word(i,_) &amp; tag(i,t)| &lt;= 1</code>. Apart from the
+   * counted atom the count may only contain observed atoms.
+   *
+   * @param formula   a factor formula.
+   * @param predicate the predicate whose atoms are counted.
+   * @param counted   the argument of the counted atom that has to be the variable of the count.
+   * @param lower     true if the constraint has to have 1 as lower bound, false if it has to have 1 as upper bound.
+   * @return the counted atom or null if the formula is no such constraint.
+   */
+  protected PredicateAtom getCountedAtom(FactorFormula formula, UserPredicate predicate, int counted, boolean lower) {
+    if (!isHard(formula) || !(formula.getFormula() instanceof CardinalityConstraint)) return null;
+    CardinalityConstraint constraint = (CardinalityConstraint) formula.getFormula();
+    Term bound = lower ? constraint.getLowerBound() : constraint.getUpperBound();
+    if (!constraint.getSign() || !(bound instanceof IntConstant) || ((IntConstant) bound).getInteger() != 1)
+      return null;
+    List<Variable> variables = constraint.getQuantification().getVariables();
+    if (variables.size() != 1) return null;
+    BooleanFormula count = constraint.getFormula();
+    List<BooleanFormula> atoms = count instanceof Conjunction ?
+            ((Conjunction) count).getArguments() : Collections.singletonList(count);
+    PredicateAtom result = null;
+    for (BooleanFormula atom : atoms) {
+      if (!(atom instanceof PredicateAtom)) return null;
+      PredicateAtom predicateAtom = (PredicateAtom) atom;
+      if (predicateAtom.getPredicate() == predicate && result == null &&
+              variables.get(0).equals(predicateAtom.getArguments().get(counted)))
+        result = predicateAtom;
+      else if (!model.getObservedPredicates().contains(predicateAtom.getPredicate())) return null;
+    }
+    return result;
+  }
+
+  public void init(Scores scores) {
+    this.scores = scores;
+    delegate.init(scores);
+    decoded = false;
+    fallback = false;
+    initDecoder();
+  }
+
+  public void buildLocalModel() {
+    //only happens if formulas are fully grounded in advance
+    fallback = true;
+    delegate.buildLocalModel();
+  }
+
+  public void solve(GroundAtoms solution) {
+    if (!fallback) {
+      profiler.start("decode");
+      boolean found = decode(solution);
+      profiler.end();
+      if (found) {
+        decoded = true;
+        ++decodedCount;
+        return;
+      }
+      fallback = true;
+      ++fallbackCount;
+    }
+    delegate.solve(solution);
+  }
+
+  public void setDeadline(long deadline) {
+    //decoders are fast enough, only the fallback needs the deadline
+    delegate.setDeadline(deadline);
+  }
+
+  public boolean isFractional() {
+    return fallback && delegate.isFractional();
+  }
+
+  public void update(GroundFormulas formulas, GroundAtoms atoms) {
+    update(formulas, atoms, model.getGlobalFactorFormulas());
+  }
+
+  public void update(GroundFormulas formulas, GroundAtoms atoms, Collection<FactorFormula> factors) {
+    //the delegate keeps the constraints found for the greedy solution in case we need it later
+    if (!decoded || fallback) {
+      delegate.update(formulas, atoms, factors);
+      return;
+    }
+    boolean violated = false;
+    for (FactorFormula formula : factors) {
+      if (isDecoded(formula)) continue;
+      if (formula.isAcyclicityConstraint())
+        violated = formulas.getCycles(formula.getAcyclicityConstraint().getPredicate()).value().size() > 0;
+      else if (!formula.isLocal())
+        violated = formulas.getNewGroundFormulas(formula).value().size() > 0;
+      if (violated) break;
+    }
+    if (violated) {
+      fallback = true;
+      ++fallbackCount;
+    }
+  }
+
+  public boolean changed() {
+    //a decoded solution without violations is final
+    return (!decoded || fallback) && delegate.changed();
+  }
+
+  public void enforceIntegerSolution() {
+    if (fallback) delegate.enforceIntegerSolution();
+  }
+
+  public void setFullyGround(FactorFormula formula, boolean fullyGround) {
+    delegate.setFullyGround(formula, fullyGround);
+  }
+
+  public int getGroundAtomCount() {
+    return delegate.getGroundAtomCount();
+  }
+
+  public int getGroundFormulaCount() {
+    return delegate.getGroundFormulaCount();
+  }
+
+  public String getPropertyString() {
+    StringBuffer result = new StringBuffer();
+    result.append(String.format("%-20s: %-20s\n", "Delegate", delegate.getClass().getName()));
+    result.append(delegate.getPropertyString());
+    return result.toString();
+  }
+
+  public void setClosure(GroundAtoms closure) {
+    delegate.setClosure(closure);
+  }
+
+  public void setProperty(PropertyName name, Object value) {
+    if ("delegate".equals(name.getHead())) {
+      if (name.isTerminal()) {
+        if ("ilp".equals(value))
+          setDelegate(new IntegerLinearProgram(new ILPSolverLpSolve()));
+        else if ("sat".equals(value))
+          setDelegate(new WeightedSatProblem(new MaxWalkSat()));
+        else
+          throw new IllegalPropertyValueException(name, value);
+      } else
+        delegate.setProperty(name.getTail(), value);
+    } else
+      delegate.setProperty(name, value);
+  }
+
+  public Object getProperty(PropertyName name) {
+    if ("delegate".equals(name.getHead()))
+      return name.isTerminal() ? delegate : delegate.getProperty(name.getTail());
+    if ("decoded".equals(name.getHead()))
+      return decodedCount;
+    if ("fallbacks".equals(name.getHead()))
+      return fallbackCount;
+    return delegate.getProperty(name);
+  }
+
+  public void setProfiler(Profiler profiler) {
+    this.profiler = profiler;
+    delegate.setProfiler(profiler);
+  }
+
+  public String toString() {
+    return "Decoded: " + decodedCount + ", fallbacks: " + fallbackCount + "\n" + delegate;
+  }
+}
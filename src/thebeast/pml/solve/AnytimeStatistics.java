@@ -0,0 +1,143 @@
+package thebeast.pml.solve;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AnytimeStatistics collects how often a {@link CuttingPlaneSolver} in anytime mode missed its deadline, by how
+ * much it overran the deadline and how the quality of its best solution developed over time in the last call.
+ *
+ * @author Sebastian Riedel
+ */
+public class AnytimeStatistics {
+
+  private int solveCount, missCount;
+  private long totalTime, totalOverrun, maxOverrun;
+  private int lastIterations;
+  private ArrayList<Point> trace = new ArrayList<Point>();
+
+  /**
+   * The quality of the best solution at some point in time during a solve call.
+   */
+  public static class Point {
+    public final long time;
+    public final int violations;
+    public final double score;
+
+    public Point(long time, int violations, double score) {
+      this.time = time;
+      this.violations = violations;
+      this.score = score;
+    }
+
+    public String toString() {
+      return String.format("%6dms %5d %10.4f", time, violations, score);
+    }
+  }
+
+  /**
+   * Clears the trace of the last call. Called at the beginning of each solve call.
+   */
+  void startSolve() {
+    trace.clear();
+  }
+
+  /**
+   * Adds a point to the trace of the current call.
+   *
+   * @param time       the time since the call started.
+   * @param violations number of violated hard constraints of the best solution so far.
+   * @param score      the score of the best solution so far.
+   */
+  void addPoint(long time, int violations, double score) {
+    trace.add(new Point(time, violations, score));
+  }
+
+  /**
+   * Records the outcome of a solve call.
+   *
+   * @param time       the time the call took.
+   * @param budget     the time the call was allowed to take.
+   * @param converged  true if the solver converged before the deadline.
+   * @param iterations the number of iterations of the call.
+   */
+  void endSolve(long time, long budget, boolean converged, int iterations) {
+    ++solveCount;
+    totalTime += time;
+    lastIterations = iterations;
+    if (!converged || time > budget) ++missCount;
+    if (time > budget) {
+      totalOverrun += time - budget;
+      if (time - budget > maxOverrun) maxOverrun = time - budget;
+    }
+  }
+
+  /**
+   * Forgets everything collected so far.
+   */
+  public void reset() {
+    solveCount = 0;
+    missCount = 0;
+    totalTime = 0;
+    totalOverrun = 0;
+    maxOverrun = 0;
+    lastIterations = 0;
+    trace.clear();
+  }
+
+  /**
+   * @return number of solve calls in anytime mode.
+   */
+  public int getSolveCount() {
+    return solveCount;
+  }
+
+  /**
+   * @return number of calls that had to stop before convergence or took longer than their budget.
+   */
+  public int getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return the largest time (in ms) a call took longer than its budget.
+   */
+  public long getMaxOverrun() {
+    return maxOverrun;
+  }
+
+  /**
+   * @return the average time (in ms) a call took longer than its budget (counting all calls).
+   */
+  public double getAverageOverrun() {
+    return solveCount == 0 ? 0 : (double) totalOverrun / solveCount;
+  }
+
+  /**
+   * @return the average time (in ms) of a call.
+   */
+  public double getAverageTime() {
+    return solveCount == 0 ? 0 : (double) totalTime / solveCount;
+  }
+
+  /**
+   * @return the quality of the best solution over time during the last call.
+   */
+  public List<Point> getTrace() {
+    return trace;
+  }
+
+  public String toString() {
+    StringBuffer result = new StringBuffer();
+    result.append(String.format("%-20s: %-5d\n", "Solves", solveCount));
+    result.append(String.format("%-20s: %-5d\n", "Deadline misses", missCount));
+    result.append(String.format("%-20s: %-5.1f\n", "Avg. time (ms)", getAverageTime()));
+    result.append(String.format("%-20s: %-5.1f\n", "Avg. overrun (ms)", getAverageOverrun()));
+    result.append(String.format("%-20s: %-5d\n", "Max. overrun (ms)", maxOverrun));
+    result.append(String.format("%-20s: %-5d\n", "Last iterations", lastIterations));
+    result.append("Last trace (time, violations, score):\n");
+    for (Point point : trace)
+      result.append(point).append("\n");
+    return result.toString();
+  }
+}
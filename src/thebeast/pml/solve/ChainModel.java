@@ -0,0 +1,421 @@
+package thebeast.pml.solve;
+
+import thebeast.nod.value.CategoricalValue;
+import thebeast.nod.value.TupleValue;
+import thebeast.pml.*;
+import thebeast.pml.formula.BooleanFormula;
+import thebeast.pml.formula.Conjunction;
+import thebeast.pml.formula.FactorFormula;
+import thebeast.pml.formula.PredicateAtom;
+import thebeast.pml.function.IntAdd;
+import thebeast.pml.function.IntMinus;
+import thebeast.pml.function.WeightFunction;
+import thebeast.pml.term.*;
+import thebeast.util.ChainDecoder;
+
+import java.util.*;
+
+/**
+ * A ChainModel decodes a hidden sequence predicate exactly with the Viterbi algorithm, using the local scores of its
+ * atoms and the weights of first-order chain formulas. Two kinds of predicates are supported:
+ *
+ * <ul>
+ * <li>tags such as <code>pos(Int i, Pos p)</code>: each position (with scores) gets exactly one label. Chain formulas
+ * look like <code>add [pos(i-1,p1) &amp; pos(i,p2)] * w(p1,p2)</code>;</li>
+ * <li>spans such as <code>chunk(Int b, Int e, Chunk c)</code>: a set of non-overlapping spans is selected with a
+ * semi-Markov Viterbi (positions between spans are not labelled). Chain formulas look like <code>add [chunk(b,m,c1)
+ * &amp; chunk(m+1,e,c2)] * w(c1,c2)</code>.</li>
+ * </ul>
+ *
+ * <p>Tags are only decoded if the model itself asks for exactly one label per position, with hard constraints such
+ * as <code>for Int i if word(i,_): |Pos p: pos(i,p)| &gt;= 1</code> and <code>... &lt;= 1</code>. Otherwise every
+ * problem is left to the delegate.
+ *
+ * <p>The condition of a chain formula (or of such a label constraint) may only contain observed atoms of the position
+ * variable such as <code>word(i,_)</code>. Such guards have to hold wherever two atoms could be chained (or wherever a
+ * position has scores), otherwise the problem is left to the delegate. The weight has to be a constant or a weight
+ * function applied to the label variables. All other global formulas are left to the cutting plane loop: if the
+ * decoded solution violates them the ChainModel hands over to its delegate (see {@link AbstractDecoderModel}). All
+ * other hidden predicates keep their greedy solution.
+ *
+ * @author Sebastian Riedel
+ */
+public class ChainModel extends AbstractDecoderModel {
+
+  private String predicateName;
+  private UserPredicate predicate;
+  private boolean spans;
+  private List<String> labels;
+  private HashMap<String, Integer> label2index = new HashMap<String, Integer>();
+  private double[][] transitions;
+  private HashSet<FactorFormula> chainFormulas = new HashSet<FactorFormula>();
+  private HashSet<FactorFormula> labelCounts = new HashSet<FactorFormula>();
+  private boolean oneLabel;
+  private HashMap<FactorFormula, List<PredicateAtom>> guards = new HashMap<FactorFormula, List<PredicateAtom>>();
+
+  /**
+   * Creates a new ChainModel.
+   *
+   * @param delegate the model to use for the problems the decoder can't solve on its own.
+   */
+  public ChainModel(PropositionalModel delegate) {
+    super(delegate);
+  }
+
+  /**
+   * Sets the name of the predicate to decode (either with arguments position and label or with arguments begin, end
+   * and label).
+   *
+   * @param predicateName the name of the sequence predicate.
+   */
+  public void setPredicate(String predicateName) {
+    this.predicateName = predicateName;
+    predicate = null;
+  }
+
+  /**
+   * @return the chain formulas found in the model (after the first problem has been set up).
+   */
+  public Set<FactorFormula> getChainFormulas() {
+    return chainFormulas;
+  }
+
+  protected boolean isDecoded(FactorFormula formula) {
+    return chainFormulas.contains(formula);
+  }
+
+  protected void initDecoder() {
+    if (predicate == null) {
+      if (predicateName == null) throw new RuntimeException("ChainModel needs a predicate");
+      predicate = model.getSignature().getUserPredicate(predicateName);
+      if (predicate == null) throw new RuntimeException("There is no predicate with name " + predicateName);
+      List<Type> types = predicate.getArgumentTypes();
+      spans = types.size() == 3;
+      if (types.size() < 2 || types.size() > 3 || types.get(types.size() - 1).getTypeClass() == Type.Class.INT)
+        throw new RuntimeException(predicateName + " is neither a tag nor a span predicate");
+      labels = types.get(types.size() - 1).getConstants();
+      label2index.clear();
+      for (String label : labels) label2index.put(label, label2index.size());
+      chainFormulas.clear();
+      guards.clear();
+      for (FactorFormula formula : model.getGlobalFactorFormulas())
+        if (isChainFormula(formula)) chainFormulas.add(formula);
+      //the decoder assigns exactly one label to each position, which is only exact if the model asks for it
+      labelCounts.clear();
+      boolean atLeastOne = false, atMostOne = false;
+      if (!spans) for (FactorFormula formula : model.getGlobalFactorFormulas()) {
+        boolean lower = isLabelCount(formula, true), upper = isLabelCount(formula, false);
+        if (lower || upper) labelCounts.add(formula);
+        atLeastOne |= lower;
+        atMostOne |= upper;
+      }
+      oneLabel = atLeastOne && atMostOne;
+    }
+    //weights change during training
+    transitions = new double[labels.size()][labels.size()];
+    for (FactorFormula formula : chainFormulas) addTransitions(formula);
+  }
+
+  /**
+   * Checks whether the formula connects two neighbouring atoms of the sequence predicate.
+   *
+   * @param formula a global formula.
+   * @return true iff the formula is a chain formula we can decode.
+   */
+  private boolean isChainFormula(FactorFormula formula) {
+    if (formula.isDeterministic()) return false;
+    if (!(formula.getFormula() instanceof Conjunction)) return false;
+    List<BooleanFormula> args = ((Conjunction) formula.getFormula()).getArguments();
+    if (args.size() != 2 || !(args.get(0) instanceof PredicateAtom) || !(args.get(1) instanceof PredicateAtom))
+      return false;
+    PredicateAtom first = (PredicateAtom) args.get(0), second = (PredicateAtom) args.get(1);
+    if (first.getPredicate() != predicate || second.getPredicate() != predicate) return false;
+    //the end of the first atom has to be right before the start of the second
+    Term end = first.getArguments().get(spans ? 1 : 0);
+    Term begin = second.getArguments().get(0);
+    Variable var = positionVariable(end);
+    if (var == null || !var.equals(positionVariable(begin)) || offset(begin) != offset(end) + 1) return false;
+    List<PredicateAtom> guard = guard(formula.getCondition(), var);
+    if (guard == null) return false;
+    HashSet<Variable> used = new HashSet<Variable>();
+    used.add(var);
+    if (spans) {
+      //the outer boundaries must be free
+      for (Term outer : new Term[]{first.getArguments().get(0), second.getArguments().get(1)})
+        if (!(outer instanceof Variable) || !used.add((Variable) outer)) return false;
+    }
+    Term label1 = first.getArguments().get(spans ? 2 : 1);
+    Term label2 = second.getArguments().get(spans ? 2 : 1);
+    for (Term label : new Term[]{label1, label2})
+      if (!(label instanceof CategoricalConstant || label instanceof Variable && !used.contains(label)))
+        return false;
+    Term weight = formula.getWeight();
+    if (weight instanceof DoubleConstant) return true;
+    if (!(weight instanceof FunctionApplication) ||
+            !(((FunctionApplication) weight).getFunction() instanceof WeightFunction)) return false;
+    for (Term arg : ((FunctionApplication) weight).getArguments())
+      if (!arg.equals(label1) && !arg.equals(label2) || !(arg instanceof Variable)) return false;
+    guards.put(formula, guard);
+    return true;
+  }
+
+  /**
+   * Checks whether the formula bounds the number of labels of each position by 1.
+   *
+   * @param formula a global formula.
+   * @param lower   true if we look for at least one label, false if we look for at most one label.
+   * @return true iff the formula is such a label constraint.
+   */
+  private boolean isLabelCount(FactorFormula formula, boolean lower) {
+    PredicateAtom atom = getCountedAtom(formula, predicate, 1, lower);
+    if (atom == null) return false;
+    Term position = atom.getArguments().get(0);
+    if (!formula.getQuantification().getVariables().contains(position)) return false;
+    List<PredicateAtom> guard = guard(formula.getCondition(), (Variable) position);
+    if (guard == null) return false;
+    guards.put(formula, guard);
+    return true;
+  }
+
+  /**
+   * @return true iff the model asks for exactly one label per position (after the first problem has been set up).
+   */
+  public boolean isOneLabel() {
+    return oneLabel;
+  }
+
+  /**
+   * Collects the atoms of a condition that only tests observed atoms at the position variable.
+   *
+   * @param condition the condition of a chain formula candidate (may be null).
+   * @param var       the position variable.
+   * @return the atoms of the condition or null if the condition is not of this form.
+   */
+  private List<PredicateAtom> guard(BooleanFormula condition, Variable var) {
+    ArrayList<PredicateAtom> result = new ArrayList<PredicateAtom>();
+    if (condition == null) return result;
+    List<BooleanFormula> atoms = condition instanceof Conjunction ?
+            ((Conjunction) condition).getArguments() : Collections.singletonList(condition);
+    for (BooleanFormula formula : atoms) {
+      if (!(formula instanceof PredicateAtom)) return null;
+      PredicateAtom atom = (PredicateAtom) formula;
+      if (!model.getObservedPredicates().contains(atom.getPredicate())) return null;
+      List<Term> args = atom.getArguments();
+      if (!var.equals(positionVariable(args.get(0)))) return null;
+      for (Term arg : args.subList(1, args.size()))
+        if (arg != DontCare.DONTCARE) return null;
+      result.add(atom);
+    }
+    return result;
+  }
+
+  /**
+   * Checks whether the conditions of the given chain formulas (or label constraints) hold wherever a chained atom may
+   * start (or wherever a position has scores).
+   *
+   * @param solution the solution (which contains the observed atoms).
+   * @param formulas chain formulas or label constraints.
+   * @param begins   the positions at which the second atom of a chain formula could start (or the positions with
+   *                 scores).
+   * @return true iff all guards hold at all these positions.
+   */
+  private boolean guardsHold(GroundAtoms solution, Collection<FactorFormula> formulas, Collection<Integer> begins) {
+    HashMap<UserPredicate, HashSet<Integer>> observed = new HashMap<UserPredicate, HashSet<Integer>>();
+    for (FactorFormula formula : formulas) {
+      int shift = 0;
+      if (chainFormulas.contains(formula))
+        shift = offset(((PredicateAtom) ((Conjunction) formula.getFormula()).getArguments().get(1))
+                .getArguments().get(0));
+      for (PredicateAtom atom : guards.get(formula)) {
+        UserPredicate pred = (UserPredicate) atom.getPredicate();
+        HashSet<Integer> positions = observed.get(pred);
+        if (positions == null) {
+          positions = new HashSet<Integer>();
+          for (GroundAtom groundAtom : solution.getGroundAtomsOf(pred))
+            positions.add(((IntConstant) groundAtom.getArguments().get(0)).getInteger());
+          observed.put(pred, positions);
+        }
+        int guardOffset = offset(atom.getArguments().get(0));
+        for (int begin : begins)
+          if (!positions.contains(begin - shift + guardOffset)) return false;
+      }
+    }
+    return true;
+  }
+
+  private static Variable positionVariable(Term term) {
+    if (term instanceof Variable) return (Variable) term;
+    if (term instanceof FunctionApplication) {
+      FunctionApplication app = (FunctionApplication) term;
+      if ((app.getFunction() instanceof IntAdd || app.getFunction() instanceof IntMinus)
+              && app.getArguments().get(0) instanceof Variable && app.getArguments().get(1) instanceof IntConstant)
+        return (Variable) app.getArguments().get(0);
+    }
+    return null;
+  }
+
+  private static int offset(Term term) {
+    if (!(term instanceof FunctionApplication)) return 0;
+    FunctionApplication app = (FunctionApplication) term;
+    int constant = ((IntConstant) app.getArguments().get(1)).getInteger();
+    return app.getFunction() instanceof IntAdd ? constant : -constant;
+  }
+
+  /**
+   * Adds the current weights of a chain formula to the transition scores.
+   *
+   * @param formula a chain formula.
+   */
+  private void addTransitions(FactorFormula formula) {
+    List<BooleanFormula> args = ((Conjunction) formula.getFormula()).getArguments();
+    Term label1 = ((PredicateAtom) args.get(0)).getArguments().get(spans ? 2 : 1);
+    Term label2 = ((PredicateAtom) args.get(1)).getArguments().get(spans ? 2 : 1);
+    HashMap<List<String>, Double> table = null;
+    List<Term> weightArgs = null;
+    if (formula.getWeight() instanceof FunctionApplication) {
+      FunctionApplication app = (FunctionApplication) formula.getWeight();
+      table = weightTable((WeightFunction) app.getFunction());
+      weightArgs = app.getArguments();
+    }
+    HashMap<Term, String> binding = new HashMap<Term, String>();
+    for (int a = 0; a < labels.size(); ++a)
+      for (int b = 0; b < labels.size(); ++b) {
+        binding.clear();
+        if (!bind(label1, labels.get(a), binding) || !bind(label2, labels.get(b), binding)) continue;
+        double weight;
+        if (table == null)
+          weight = ((DoubleConstant) formula.getWeight()).getValue();
+        else {
+          ArrayList<String> key = new ArrayList<String>(weightArgs.size());
+          for (Term arg : weightArgs) key.add(binding.get(arg));
+          Double value = table.get(key);
+          weight = value == null ? 0.0 : value;
+        }
+        transitions[a][b] += weight;
+      }
+  }
+
+  private static boolean bind(Term term, String label, HashMap<Term, String> binding) {
+    if (term instanceof CategoricalConstant) return ((CategoricalConstant) term).getName().equals(label);
+    String old = binding.get(term);
+    if (old != null) return old.equals(label);
+    binding.put(term, label);
+    return true;
+  }
+
+  private HashMap<List<String>, Double> weightTable(WeightFunction function) {
+    HashMap<List<String>, Double> result = new HashMap<List<String>, Double>();
+    String index = function.getIndexAttribute().name();
+    for (TupleValue tuple : weights.getRelation(function).value()) {
+      ArrayList<String> key = new ArrayList<String>(function.getArity());
+      for (int arg = 0; arg < function.getArity(); ++arg)
+        key.add(((CategoricalValue) tuple.element(function.getColumnName(arg))).representation());
+      result.put(key, weights.getWeight(tuple.intElement(index).getInt()));
+    }
+    return result;
+  }
+
+  protected boolean decode(GroundAtoms solution) {
+    return spans ? decodeSpans(solution) : decodeTags(solution);
+  }
+
+  private boolean decodeTags(GroundAtoms solution) {
+    if (!oneLabel) return false;
+    TreeMap<Integer, double[]> positions = new TreeMap<Integer, double[]>();
+    for (TupleValue tuple : scores.getScoreRelation(predicate).value()) {
+      Integer label = label2index.get(tuple.categoricalElement(1).representation());
+      if (label == null) continue;
+      int position = tuple.intElement(0).getInt();
+      double[] row = positions.get(position);
+      if (row == null) {
+        row = new double[labels.size()];
+        Arrays.fill(row, Double.NEGATIVE_INFINITY);
+        positions.put(position, row);
+      }
+      row[label] = tuple.doubleElement(2).getDouble();
+    }
+    ArrayList<Integer> begins = new ArrayList<Integer>();
+    for (int position : positions.keySet())
+      if (positions.containsKey(position - 1)) begins.add(position);
+    if (!guardsHold(solution, chainFormulas, begins) || !guardsHold(solution, labelCounts, positions.keySet()))
+      return false;
+    GroundAtomCollection atoms = solution.getGroundAtomsOf(predicate);
+    atoms.clear();
+    //positions without scores break the chain
+    ArrayList<double[]> run = new ArrayList<double[]>();
+    int begin = 0;
+    Iterator<Map.Entry<Integer, double[]>> iterator = positions.entrySet().iterator();
+    Map.Entry<Integer, double[]> entry = iterator.hasNext() ? iterator.next() : null;
+    while (entry != null) {
+      if (run.isEmpty()) begin = entry.getKey();
+      run.add(entry.getValue());
+      Map.Entry<Integer, double[]> next = iterator.hasNext() ? iterator.next() : null;
+      if (next == null || next.getKey() != entry.getKey() + 1) {
+        int[] result = ChainDecoder.viterbi(run.toArray(new double[run.size()][]), transitions);
+        if (result == null) return false;
+        for (int i = 0; i < result.length; ++i)
+          atoms.addGroundAtom(begin + i, labels.get(result[i]));
+        run.clear();
+      }
+      entry = next;
+    }
+    return true;
+  }
+
+  private boolean decodeSpans(GroundAtoms solution) {
+    int size = scores.getScoreRelation(predicate).value().size();
+    int[] begins = new int[size], ends = new int[size], spanLabels = new int[size];
+    double[] spanScores = new double[size];
+    int count = 0;
+    int length = 0;
+    for (TupleValue tuple : scores.getScoreRelation(predicate).value()) {
+      Integer label = label2index.get(tuple.categoricalElement(2).representation());
+      int begin = tuple.intElement(0).getInt(), end = tuple.intElement(1).getInt();
+      if (label == null || begin < 0 || end < begin) continue;
+      begins[count] = begin;
+      ends[count] = end;
+      spanLabels[count] = label;
+      spanScores[count++] = tuple.doubleElement(3).getDouble();
+      length = Math.max(length, end + 1);
+    }
+    if (count < size) {
+      begins = trim(begins, count);
+      ends = trim(ends, count);
+      spanLabels = trim(spanLabels, count);
+      double[] trimmed = new double[count];
+      System.arraycopy(spanScores, 0, trimmed, 0, count);
+      spanScores = trimmed;
+    }
+    HashSet<Integer> afterEnd = new HashSet<Integer>(), chained = new HashSet<Integer>();
+    for (int i = 0; i < count; ++i) afterEnd.add(ends[i] + 1);
+    for (int i = 0; i < count; ++i) if (afterEnd.contains(begins[i])) chained.add(begins[i]);
+    if (!guardsHold(solution, chainFormulas, chained)) return false;
+    int[] selected = ChainDecoder.semiMarkov(length, begins, ends, spanLabels, spanScores, transitions);
+    GroundAtomCollection atoms = solution.getGroundAtomsOf(predicate);
+    atoms.clear();
+    for (int span : selected)
+      atoms.addGroundAtom(begins[span], ends[span], labels.get(spanLabels[span]));
+    return true;
+  }
+
+  private static int[] trim(int[] array, int length) {
+    int[] result = new int[length];
+    System.arraycopy(array, 0, result, 0, length);
+    return result;
+  }
+
+  public String getPropertyString() {
+    StringBuffer result = new StringBuffer();
+    result.append(String.format("%-20s: %-20s\n", "Predicate", predicateName));
+    result.append(String.format("%-20s: %-20s\n", "Chain formulas", chainFormulas.size()));
+    result.append(super.getPropertyString());
+    return result.toString();
+  }
+
+  public void setProperty(PropertyName name, Object value) {
+    if ("predicate".equals(name.getHead()))
+      setPredicate((String) value);
+    else
+      super.setProperty(name, value);
+  }
+}
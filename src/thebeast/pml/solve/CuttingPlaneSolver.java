@@ -42,6 +42,14 @@ public class CuttingPlaneSolver implements Solver {
   private long timeout = Long.MAX_VALUE; //10000;
   private long timeSpent = 0;
 
+  private boolean anytime = false;
+  private AnytimeStatistics anytimeStatistics = new AnytimeStatistics();
+  private GroundAtoms anytimeAtoms;
+  private GroundFormulas anytimeFormulas, anytimeEvaluation;
+  private Solution anytimeSolution;
+  private int anytimeViolations;
+  private double anytimeScore;
+
   private int maxOrder = Integer.MAX_VALUE;
 
   private boolean printHistory = false;
@@ -132,6 +140,7 @@ public class CuttingPlaneSolver implements Solver {
     scores = new Scores(model, weights);
     atoms = model.getSignature().createGroundAtoms();
     atoms.load(model.getGlobalAtoms(), model.getGlobalPredicates());
+    anytimeAtoms = null;
     groundAll.clear();
     factor2order.clear();
     factorSets.clear();
@@ -363,6 +372,10 @@ public class CuttingPlaneSolver implements Solver {
   public void solve(int maxIterations) {
 
     long start = System.currentTimeMillis();
+    long deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : start + timeout;
+    boolean timedOut = false;
+    propositionalModel.setDeadline(anytime ? deadline : Long.MAX_VALUE);
+    if (anytime) startAnytime();
 
     formulas.init();
     firstFormulas.init();
@@ -387,6 +400,7 @@ public class CuttingPlaneSolver implements Solver {
       //update(factors);
       order = inspect();
       addCandidate(order);
+      if (anytime) updateAnytime(start);
       if (showIterations) System.out.print("+");
     } else {
       profiler.start("ground-all");
@@ -400,8 +414,10 @@ public class CuttingPlaneSolver implements Solver {
     //System.out.println(propositionalModel);
     while (propositionalModel.changed() && iteration < maxIterations && order <= maxOrder) {
       //System.out.println(iteration + " of " + maxIterations);
-      if (System.currentTimeMillis() - start > timeout) {
+      //in anytime mode we need at least one candidate to return
+      if (System.currentTimeMillis() >= deadline && (!anytime || getCandidateCount() > 0)) {
         //System.out.println("timeout");
+        timedOut = true;
         break;
       }
       profiler.start("solvemodel");
@@ -412,6 +428,7 @@ public class CuttingPlaneSolver implements Solver {
       ++iteration;
       order = inspect();
       addCandidate(order);
+      if (anytime) updateAnytime(start);
       if (enforceIntegers && !propositionalModel.changed() && propositionalModel.isFractional()) {
         propositionalModel.enforceIntegerSolution();
         ++integerEnforcements;
@@ -423,14 +440,90 @@ public class CuttingPlaneSolver implements Solver {
     done = propositionalModel.changed();
 
     if (checkScores) checkScores();
+    else if (anytime && anytimeViolations != Integer.MAX_VALUE) {
+      atoms.load(anytimeAtoms);
+      formulas.load(anytimeFormulas);
+    }
     profiler.end();
     //System.out.println("!");
     timeSpent = System.currentTimeMillis() - start;
+    if (anytime) anytimeStatistics.endSolve(timeSpent, timeout, !timedOut, iteration);
     if (printHistory) printHistory();
 
   }
 
 
+  /**
+   * Prepares the bookkeeping of the best solution for a new call in anytime mode.
+   */
+  private void startAnytime() {
+    if (anytimeAtoms == null) {
+      anytimeAtoms = model.getSignature().createGroundAtoms();
+      anytimeFormulas = new GroundFormulas(model, weights);
+      anytimeEvaluation = new GroundFormulas(model, weights);
+      anytimeSolution = new Solution(model, weights);
+    }
+    anytimeViolations = Integer.MAX_VALUE;
+    anytimeScore = Double.NEGATIVE_INFINITY;
+    anytimeStatistics.startSolve();
+  }
+
+  /**
+   * Evaluates the current solution and remembers it if it has less violations or (with the same number of
+   * violations) a higher score than the best solution so far.
+   *
+   * @param start the time the current call started.
+   */
+  private void updateAnytime(long start) {
+    profiler.start("anytime");
+    anytimeEvaluation.init();
+    anytimeEvaluation.update(atoms);
+    int violations = anytimeEvaluation.getViolationCount();
+    if (violations <= anytimeViolations) {
+      anytimeSolution.load(atoms, anytimeEvaluation);
+      double score = weights.score(anytimeSolution.extract(features));
+      if (violations < anytimeViolations || score > anytimeScore) {
+        anytimeViolations = violations;
+        anytimeScore = score;
+        anytimeAtoms.load(atoms);
+        anytimeFormulas.load(formulas);
+      }
+    }
+    anytimeStatistics.addPoint(System.currentTimeMillis() - start, anytimeViolations, anytimeScore);
+    profiler.end();
+  }
+
+  /**
+   * In anytime mode the solver passes the time left until its timeout on to the propositional model and, once it
+   * has to stop, returns the best solution (fewest violated hard constraints, then highest score) found so far
+   * instead of the last one.
+   *
+   * @return true iff the solver is in anytime mode.
+   */
+  public boolean isAnytime() {
+    return anytime;
+  }
+
+  /**
+   * In anytime mode the solver passes the time left until its timeout on to the propositional model and, once it
+   * has to stop, returns the best solution (fewest violated hard constraints, then highest score) found so far
+   * instead of the last one.
+   *
+   * @param anytime true iff the solver should run in anytime mode.
+   */
+  public void setAnytime(boolean anytime) {
+    this.anytime = anytime;
+  }
+
+  /**
+   * Returns deadline misses, overruns and the quality of the best solution over time, collected in anytime mode.
+   *
+   * @return the statistics of this solver in anytime mode.
+   */
+  public AnytimeStatistics getAnytimeStatistics() {
+    return anytimeStatistics;
+  }
+
   /**
    * @return the time in ms that solver took. 
    */
@@ -714,6 +807,10 @@ public class CuttingPlaneSolver implements Solver {
           setPropositionalModel(new IntegerLinearProgram(new ILPSolverLpSolve()));
         else if ("sat".equals(value))
           setPropositionalModel(new WeightedSatProblem(new MaxWalkSat()));
+        else if ("tree".equals(value))
+          setPropositionalModel(new SpanningTreeModel(new IntegerLinearProgram(new ILPSolverLpSolve())));
+        else if ("chain".equals(value))
+          setPropositionalModel(new ChainModel(new IntegerLinearProgram(new ILPSolverLpSolve())));
       } else
         propositionalModel.setProperty(name.getTail(), value);
 
@@ -733,6 +830,8 @@ public class CuttingPlaneSolver implements Solver {
       setMaxIterations((Integer) value);
     else if (name.getHead().equals("timeout"))
       setTimeout((Integer) value);
+    else if (name.getHead().equals("anytime"))
+      setAnytime((Boolean) value);
     else if (name.getHead().equals("maxOrder"))
       setMaxOrder((Integer) value);
     else if (name.getHead().equals("integer"))
@@ -786,6 +885,8 @@ public class CuttingPlaneSolver implements Solver {
       return PropertyName.getProperty(features, name.getTail());
     if ("profiler".equals(name.getHead()))
       return profiler;
+    if ("anytime".equals(name.getHead()))
+      return anytimeStatistics;
     return null;
   }
 
@@ -852,6 +953,7 @@ public class CuttingPlaneSolver implements Solver {
     result.append(String.format("%-20s: %-5b\n", "EnforceIntegers", enforceIntegers));
     result.append(String.format("%-20s: %-5b\n", "CheckScores", checkScores));
     result.append(String.format("%-20s: %-5d\n", "Timeout", timeout));
+    result.append(String.format("%-20s: %-5b\n", "Anytime", anytime));
     result.append(String.format("%-20s: %-5d\n", "MaxOrder", maxOrder));
     result.append(String.format("%-20s: %-5d\n", "Maxiterations", maxIterations));
     result.append(String.format("%-20s: %-20s\n", "Prop. Class", propositionalModel.getClass().getName()));
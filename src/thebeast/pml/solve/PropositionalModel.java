@@ -34,6 +34,15 @@ public interface PropositionalModel extends HasProperties, Profilable {
    */
   void solve(GroundAtoms solution);
 
+  /**
+   * Sets the time by which calls to {@link #solve(GroundAtoms)} should return. Models pass this on to their
+   * underlying solvers which then stop early with the best solution found so far.
+   *
+   * @param deadline the deadline in milliseconds (as returned by {@link System#currentTimeMillis()}),
+   *                 Long.MAX_VALUE if there is no deadline.
+   */
+  void setDeadline(long deadline);
+
   /**
    * Checks whether the last solution provided returned fractional values.
    *
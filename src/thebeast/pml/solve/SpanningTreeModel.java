@@ -0,0 +1,219 @@
+package thebeast.pml.solve;
+
+import thebeast.nod.value.TupleValue;
+import thebeast.pml.*;
+import thebeast.pml.formula.FactorFormula;
+import thebeast.pml.formula.PredicateAtom;
+import thebeast.pml.term.Term;
+import thebeast.util.SpanningTree;
+
+import java.util.*;
+
+/**
+ * A SpanningTreeModel solves problems in which a hidden link predicate (such as <code>link(Int head, Int
+ * modifier)</code> in dependency parsing) has to form a tree. Instead of letting the cutting plane solver find the
+ * tree constraints (acyclicity, one head per token, projectivity) one by one it decodes the link predicate exactly
+ * with the Chu-Liu-Edmonds algorithm (or Eisner's algorithm if the tree has to be projective) using the local scores
+ * of the link atoms. Optionally a label predicate (such as <code>dep(Int head, Int modifier, Label label)</code>) is
+ * decoded along with it: each edge gets the highest scoring label, and the edge score includes the label score. All
+ * other hidden predicates keep their greedy solution.
+ *
+ * <p>The decoded tree is only exact if the model itself asks for a tree, i.e. has a hard acyclicity constraint on
+ * the link predicate and hard constraints for at least one and at most one head per token, such as <code>for Int m if
+ * word(m,_) &amp; m &gt; 0: |Int h: word(h,_) &amp; link(h,m)| &lt;= 1</code>. Without them every problem is handed
+ * over to the delegate. The conditions of the head constraints are not checked: they have to hold for each token with
+ * scores except the root.
+ *
+ * <p>If the tree violates one of the remaining global formulas (or there is no spanning tree at all) the
+ * SpanningTreeModel hands over to its delegate (see {@link AbstractDecoderModel}).
+ *
+ * @author Sebastian Riedel
+ */
+public class SpanningTreeModel extends AbstractDecoderModel {
+
+  private String linkName = "link", labelName = null;
+  private UserPredicate link, label;
+  private boolean projective = false;
+  private int root = 0;
+  private boolean tree;
+
+  /**
+   * Creates a new SpanningTreeModel.
+   *
+   * @param delegate the model to use for the problems the tree decoder can't solve on its own.
+   */
+  public SpanningTreeModel(PropositionalModel delegate) {
+    super(delegate);
+  }
+
+  /**
+   * Sets the name of the predicate that has to form a tree (by default "link"). Its first argument is the head, the
+   * second one the modifier.
+   *
+   * @param linkName the name of the tree predicate.
+   */
+  public void setLinkPredicate(String linkName) {
+    this.linkName = linkName;
+  }
+
+  /**
+   * Sets the name of a predicate that labels the edges of the tree, with head, modifier and label as arguments. There
+   * must be exactly one label for each edge of the tree, and no label for anything else.
+   *
+   * @param labelName the name of the label predicate or null if there is none.
+   */
+  public void setLabelPredicate(String labelName) {
+    this.labelName = labelName;
+  }
+
+  public boolean isProjective() {
+    return projective;
+  }
+
+  /**
+   * @param projective true iff the tree should be decoded with Eisner's algorithm.
+   */
+  public void setProjective(boolean projective) {
+    this.projective = projective;
+  }
+
+  public int getRoot() {
+    return root;
+  }
+
+  /**
+   * @param root the vertex (token) that must not have a head.
+   */
+  public void setRoot(int root) {
+    this.root = root;
+  }
+
+  protected void initDecoder() {
+    link = model.getSignature().getUserPredicate(linkName);
+    if (link == null) throw new RuntimeException("There is no predicate with name " + linkName);
+    label = labelName == null ? null : model.getSignature().getUserPredicate(labelName);
+    if (labelName != null && label == null) throw new RuntimeException("There is no predicate with name " + labelName);
+    boolean acyclic = false, atLeastOne = false, atMostOne = false;
+    for (FactorFormula formula : model.getGlobalFactorFormulas()) {
+      if (formula.isAcyclicityConstraint() && isHard(formula))
+        acyclic |= formula.getAcyclicityConstraint().getPredicate() == link;
+      atLeastOne |= isHeadCount(formula, true);
+      atMostOne |= isHeadCount(formula, false);
+    }
+    tree = acyclic && atLeastOne && atMostOne;
+  }
+
+  /**
+   * Checks whether the formula bounds the number of heads of each modifier by 1.
+   *
+   * @param formula a global formula.
+   * @param lower   true if we look for at least one head, false if we look for at most one head.
+   * @return true iff the formula is such a head constraint.
+   */
+  private boolean isHeadCount(FactorFormula formula, boolean lower) {
+    PredicateAtom atom = getCountedAtom(formula, link, 0, lower);
+    if (atom == null) return false;
+    Term modifier = atom.getArguments().get(1);
+    return formula.getQuantification().getVariables().contains(modifier);
+  }
+
+  /**
+   * @return true iff the model has the hard constraints of a tree (after the first problem has been set up).
+   */
+  public boolean isTree() {
+    return tree;
+  }
+
+  /**
+   * Decodes the tree and writes it into the solution.
+   *
+   * @param solution the solution to write the link (and label) atoms to.
+   * @return false if the model doesn't ask for a tree or there is no spanning tree (or no projective one with the root
+   *         at the left).
+   */
+  protected boolean decode(GroundAtoms solution) {
+    if (!tree) return false;
+    HashMap<Long, Double> edges = new HashMap<Long, Double>();
+    TreeSet<Integer> vertices = new TreeSet<Integer>();
+    vertices.add(root);
+    for (TupleValue tuple : scores.getScoreRelation(link).value()) {
+      int h = tuple.intElement(0).getInt(), m = tuple.intElement(1).getInt();
+      edges.put(edge(h, m), tuple.doubleElement(2).getDouble());
+      vertices.add(h);
+      vertices.add(m);
+    }
+    HashMap<Long, Double> labelScores = new HashMap<Long, Double>();
+    HashMap<Long, String> labels = new HashMap<Long, String>();
+    if (label != null) for (TupleValue tuple : scores.getScoreRelation(label).value()) {
+      long edge = edge(tuple.intElement(0).getInt(), tuple.intElement(1).getInt());
+      double score = tuple.doubleElement(3).getDouble();
+      Double old = labelScores.get(edge);
+      if (old == null || score > old) {
+        labelScores.put(edge, score);
+        labels.put(edge, tuple.categoricalElement(2).representation());
+      }
+    }
+
+    int[] ids = new int[vertices.size()];
+    int index = 0;
+    for (int vertex : vertices) ids[index++] = vertex;
+    int n = ids.length;
+    double[][] matrix = new double[n][n];
+    for (double[] row : matrix) Arrays.fill(row, Double.NEGATIVE_INFINITY);
+    for (int h = 0; h < n; ++h)
+      for (int m = 0; m < n; ++m) {
+        long edge = edge(ids[h], ids[m]);
+        Double score = edges.get(edge);
+        if (score == null) continue;
+        if (label != null) {
+          Double labelScore = labelScores.get(edge);
+          if (labelScore == null) continue;
+          score += labelScore;
+        }
+        matrix[h][m] = score;
+      }
+    int[] heads;
+    if (projective)
+      heads = ids[0] == root ? SpanningTree.eisner(matrix) : null;
+    else
+      heads = SpanningTree.chuLiuEdmonds(matrix, Arrays.binarySearch(ids, root));
+    if (heads == null) return false;
+
+    GroundAtomCollection links = solution.getGroundAtomsOf(link);
+    GroundAtomCollection deps = label == null ? null : solution.getGroundAtomsOf(label);
+    links.clear();
+    if (deps != null) deps.clear();
+    for (int m = 0; m < n; ++m) {
+      if (heads[m] == -1) continue;
+      links.addGroundAtom(ids[heads[m]], ids[m]);
+      if (deps != null) deps.addGroundAtom(ids[heads[m]], ids[m], labels.get(edge(ids[heads[m]], ids[m])));
+    }
+    return true;
+  }
+
+  private static long edge(int head, int modifier) {
+    return ((long) head << 32) | (modifier & 0xFFFFFFFFL);
+  }
+
+  public String getPropertyString() {
+    StringBuffer result = new StringBuffer();
+    result.append(String.format("%-20s: %-20s\n", "Link", linkName));
+    result.append(String.format("%-20s: %-20s\n", "Label", labelName));
+    result.append(String.format("%-20s: %-5b\n", "Projective", projective));
+    result.append(super.getPropertyString());
+    return result.toString();
+  }
+
+  public void setProperty(PropertyName name, Object value) {
+    if ("link".equals(name.getHead()))
+      setLinkPredicate((String) value);
+    else if ("label".equals(name.getHead()))
+      setLabelPredicate((String) value);
+    else if ("projective".equals(name.getHead()))
+      setProjective((Boolean) value);
+    else if ("root".equals(name.getHead()))
+      setRoot((Integer) value);
+    else
+      super.setProperty(name, value);
+  }
+}
@@ -37,6 +37,10 @@ public class GroundMarkovNetwork implements PropositionalModel {
 
   }
 
+  public void setDeadline(long deadline) {
+
+  }
+
   public boolean isFractional() {
     return false;
   }
@@ -12,6 +12,11 @@ public interface ILPSolver extends HasProperties {
   void add(RelationVariable variables, RelationVariable constraints);
   void addIntegerConstraints(RelationVariable variables);
   RelationVariable solve();
+  /**
+   * @param deadline the time (in ms, see {@link System#currentTimeMillis()}) by which solve should return, Long.MAX_VALUE
+   *                 for no deadline.
+   */
+  void setDeadline(long deadline);
   void setVerbose(boolean verbose);
   void setProfiler(Profiler profiler);
 }
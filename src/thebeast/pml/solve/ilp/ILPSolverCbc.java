@@ -131,6 +131,10 @@ public class ILPSolverCbc implements ILPSolver {
     return orginal;
   }
 
+  public void setDeadline(long deadline) {
+    //not supported by this solver, it always runs to completion
+  }
+
   public RelationVariable solve() {
     model.resetToReferenceSolver();
     model.setLogLevel(0);
@@ -28,6 +28,7 @@ public class ILPSolverLpSolve implements ILPSolver {
   private Profiler profiler = new NullProfiler();
   private boolean writeLp = false;
   private long timeout = 1000;
+  private long deadline = Long.MAX_VALUE;
   private int bbDepthLimit = -50;//3;
   private int count = 0;
   private int bbRule;
@@ -158,6 +159,11 @@ public class ILPSolverLpSolve implements ILPSolver {
         if (bbRuleSet) solver.setBbRule(bbRule | LpSolve.NODE_GREEDYMODE | LpSolve.NODE_DYNAMICMODE
                 | LpSolve.NODE_RCOSTFIXING);
       }
+      if (deadline != Long.MAX_VALUE) {
+        //lp_solve counts in seconds and treats 0 as "no timeout"
+        long remaining = Math.max(1, (deadline - System.currentTimeMillis()) / 1000);
+        solver.setTimeout(Math.min(solver.getTimeout() > 0 ? solver.getTimeout() : Long.MAX_VALUE, remaining));
+      }
       //solver.readParams();
       if (writeLp) solver.writeLp("/tmp/debug_" + count + ".lp");
       if (writeLp) solver.writeParams("/tmp/debug_" + count + ".params", "ILPSolverLpSolve.java");
@@ -201,6 +207,10 @@ public class ILPSolverLpSolve implements ILPSolver {
     return timeout;
   }
 
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
   public void setTimeout(long timeout) {
     this.timeout = timeout;
   }
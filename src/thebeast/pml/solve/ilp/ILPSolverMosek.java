@@ -124,6 +124,10 @@ public class ILPSolverMosek implements ILPSolver {
 
   }
 
+  public void setDeadline(long deadline) {
+    //not supported by this solver, it always runs to completion
+  }
+
   public RelationVariable solve() {
     try {
       task.optimize();
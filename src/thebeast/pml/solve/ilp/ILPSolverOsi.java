@@ -100,6 +100,10 @@ public class ILPSolverOsi implements ILPSolver {
     return orginal;
   }
 
+  public void setDeadline(long deadline) {
+    //not supported by this solver, it always runs to completion
+  }
+
   public RelationVariable solve() {
     solver.setLogLevel(0);
     if (hasIntegerConstraints)
@@ -368,6 +368,10 @@ public class IntegerLinearProgram implements PropositionalModel {
     return vars;
   }
 
+  public void setDeadline(long deadline) {
+    solver.setDeadline(deadline);
+  }
+
   public void solve(GroundAtoms solution) {
     profiler.start("add to ilp");
     solver.add(newVars, newConstraints);
@@ -20,6 +20,7 @@ public class MaxProduct implements WeightedSatSolver {
   private boolean debug = false;
 
   private int maxIterations = 1000;
+  private long deadline = Long.MAX_VALUE;
   private double maxEps = 0.01;
   private int iteration;
   private boolean[] best, current;
@@ -199,7 +200,8 @@ public class MaxProduct implements WeightedSatSolver {
     bestScore = Double.NEGATIVE_INFINITY;
     for (Edge edge : edges) edge.initialize();
     double eps = Double.MAX_VALUE;
-    for (iteration = 0; iteration < maxIterations && eps > maxEps; ++iteration) {
+    for (iteration = 0; iteration < maxIterations && eps > maxEps &&
+            (iteration == 0 || System.currentTimeMillis() < deadline); ++iteration) {
       if (debug) System.out.println("Iteration:" + iteration);
       eps = Double.MIN_VALUE;
       for (Factor factor : factors)
@@ -289,6 +291,10 @@ public class MaxProduct implements WeightedSatSolver {
   }
 
 
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
   public int getIterationCount() {
     return iteration;
   }
@@ -33,6 +33,7 @@ public class MaxWalkSat implements WeightedSatSolver {
   private double target = Double.POSITIVE_INFINITY;
   private boolean pickFromUnsatisfied = true;
   private long timeOut = Long.MAX_VALUE;
+  private long deadline = Long.MAX_VALUE;
   private int calls;
   private DeltaScoredAtom deltaScoredAtom = new DeltaScoredAtom(null, 0);
   private Profiler profiler = new NullProfiler();
@@ -82,6 +83,10 @@ public class MaxWalkSat implements WeightedSatSolver {
     this.timeOut = timeOut;
   }
 
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
   class Atom {
     final ArrayList<NodeClauseRelation> clauses = new ArrayList<NodeClauseRelation>();
     boolean state;
@@ -574,10 +579,13 @@ public class MaxWalkSat implements WeightedSatSolver {
 
     bestScore = Double.NEGATIVE_INFINITY;
     long time = System.currentTimeMillis();
+    //at least one run, even if the deadline has already passed
+    long limit = Math.max(0, Math.min(timeOut, deadline - time));
     ++calls;
     //System.out.println("Solving...");
     profiler.start("solve");
-    for (int run = 0; run < maxRestarts && bestScore < target && System.currentTimeMillis() - time < timeOut; ++run) {
+    for (int run = 0; run < maxRestarts && bestScore < target &&
+            (run == 0 || System.currentTimeMillis() - time < limit); ++run) {
       if (calls == 1 && initRandom || calls > 1 && updateRandom)
         randomizeNodeStates();
       else
@@ -598,7 +606,7 @@ public class MaxWalkSat implements WeightedSatSolver {
       //System.out.println("clauseCount = " + clauseCount);
       //System.out.println("score = " + score);
       //System.out.println("Flipping..");
-      for (int flip = 0; flip < maxFlips && bestScore < target && System.currentTimeMillis() - time < timeOut; ++flip) {
+      for (int flip = 0; flip < maxFlips && bestScore < target && System.currentTimeMillis() - time < limit; ++flip) {
         MaxWalkSat.Clause clause;
         profiler.start("pick-clause");
         if (pickFromUnsatisfied) {
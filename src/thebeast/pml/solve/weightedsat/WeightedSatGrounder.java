@@ -10,6 +10,7 @@ import thebeast.nod.util.TypeBuilder;
 import thebeast.nod.variable.RelationVariable;
 import thebeast.pml.*;
 import thebeast.pml.formula.*;
+import thebeast.pml.term.Term;
 import thebeast.pml.term.Variable;
 import thebeast.pml.term.TermResolver;
 
@@ -71,6 +72,8 @@ public class WeightedSatGrounder {
                                           WeightedSatProblem wsp) {
     if (formula.isLocal())
       throw new RuntimeException("It doesn't make sense to create a grounding query for a local formula: " + formula);
+    if (formula.isAcyclicityConstraint())
+      return createCycleQuery(formula.getAcyclicityConstraint(), formulas, wsp);
 
     ExpressionBuilder builder = new ExpressionBuilder(TheBeast.getInstance().getNodServer());
     BooleanFormula booleanFormula = formula.getFormula();
@@ -141,6 +144,53 @@ public class WeightedSatGrounder {
   }
 
 
+  /**
+   * Returns a query that turns each cycle of the current solution into a deterministic clause which allows at most
+   * n-1 of the n edges of the cycle to be true. Like the clauses of cardinality constraints such a clause has a single
+   * disjunction without plain atoms.
+   *
+   * @param constraint the acyclicity constraint.
+   * @param formulas   the ground formulas that contain the cycles.
+   * @param wsp        the weighted sat problem to get (and add) the ground atom indices of the edges from.
+   * @return a query that generates a clause for each cycle.
+   */
+  private RelationExpression createCycleQuery(AcyclicityConstraint constraint, GroundFormulas formulas,
+                                              WeightedSatProblem wsp) {
+    UserPredicate predicate = constraint.getPredicate();
+    RelationVariable cycle = interpreter.createRelationVariable(predicate.getHeading());
+    cycle.setLabel("cycle");
+
+    //the edges of a cycle are atoms whose arguments are the columns of the cycle table
+    ExpressionBuilder itemsBuilder = TheBeast.getInstance().getNodServer().expressionBuilder();
+    Map<Variable, Expression> term2expr = new HashMap<Variable, Expression>();
+    LinkedList<Term> args = new LinkedList<Term>();
+    for (int arg = 0; arg < predicate.getArity(); ++arg) {
+      Variable var = new Variable(predicate.getArgumentTypes().get(arg), "cycle" + arg);
+      term2expr.put(var, itemsBuilder.attribute("cycle", predicate.getAttribute(arg)).getExpression());
+      args.add(var);
+    }
+    itemsBuilder.expr(cycle).from("cycle");
+    itemsBuilder.id("index").expr(getAtomIndex(new PredicateAtom(predicate, args), wsp, term2expr));
+    itemsBuilder.tuple(1).select().query();
+    Operator<RelationType> items = factory.createOperator("items", itemsBuilder.getRelation(), cycle);
+
+    ExpressionBuilder builder = TheBeast.getInstance().getNodServer().expressionBuilder();
+    builder.expr(formulas.getCycles(predicate)).from("cycles");
+    builder.id("weight").num(det_weight);
+    builder.id("signs").emptyArray(signArrayType).array(1);
+    builder.id("atoms").emptyArray(indexArrayType).array(1);
+    builder.id("constraints");
+    Attribute cycleAttribute = predicate.getHeadingCycle().attribute("cycle");
+    builder.id("items").expr(factory.createRelationOperatorInv(items,
+            Collections.singletonList((Expression) builder.attribute("cycles", cycleAttribute).getExpression())));
+    builder.id("disjunction").num(0);
+    builder.id("lb").num(Integer.MIN_VALUE);
+    builder.id("ub").attribute("cycles", cycleAttribute).count().num(1).intMinus();
+    builder.tuple(4).relation(1);
+    builder.tuple(4).select().query();
+    return builder.getRelation();
+  }
+
   public double getDetWeight() {
     return det_weight;
   }
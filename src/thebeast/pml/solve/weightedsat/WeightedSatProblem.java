@@ -142,6 +142,10 @@ public class WeightedSatProblem implements PropositionalModel {
 
   }
 
+  public void setDeadline(long deadline) {
+    solver.setDeadline(deadline);
+  }
+
   public void solve(GroundAtoms solution) {
     this.solution.load(solution);
     profiler.start("updatesolver");
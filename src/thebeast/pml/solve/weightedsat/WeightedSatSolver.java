@@ -16,6 +16,12 @@ public interface WeightedSatSolver extends HasProperties {
 
   boolean[] solve();
 
+  /**
+   * @param deadline the time (in ms, see {@link System#currentTimeMillis()}) by which solve should return, Long.MAX_VALUE
+   *                 for no deadline.
+   */
+  void setDeadline(long deadline);
+
   void setStates(boolean[] states);
 
   void setProfiler(Profiler profiler);
@@ -0,0 +1,488 @@
+package thebeast.pml.training;
+
+import thebeast.nod.FileSink;
+import thebeast.nod.FileSource;
+import thebeast.nod.statement.Interpreter;
+import thebeast.nod.util.ExpressionBuilder;
+import thebeast.pml.*;
+import thebeast.util.ProgressReporter;
+import thebeast.util.QuietProgressReporter;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+
+/**
+ * A DistributedLearner trains weights with iterative parameter mixing over several worker processes (JVMs) on the
+ * same machine, so the training instances of all workers together can be larger than the heap of one JVM.
+ *
+ * <p>When learning starts the training instances are split into one contiguous shard per worker, each dumped to its
+ * own file, and the workers are forked. Each worker builds the model from a PML script, loads its shard and connects
+ * to this learner over a loopback socket. Then, in each round (epoch), the current weights are broadcast to all
+ * workers (as a file in the dump format of {@link Weights#write(FileSink)}), every worker runs one epoch of an {@link
+ * OnlineLearner} over its shard starting from these weights and dumps its new weights, and the weights of all workers
+ * are mixed: the new weights are the average of the worker weights, weighted by the sizes of their shards.
+ *
+ * <p>The script must define the complete signature (types, predicates, weight functions) and model, because
+ * training instances and weights are dumped with the indices of categorical constants. For types that are generated
+ * from data this means that the script should include a types file created with <code>save types</code>.
+ *
+ * <p>Properties that are not handled by this learner itself are passed on to the online learners of all workers (in
+ * the order they were set).
+ *
+ * <p>A worker that doesn't answer within the round timeout (e.g. because it hangs) is killed and learning fails.
+ *
+ * @author Sebastian Riedel
+ */
+public class DistributedLearner implements Learner, HasProperties {
+
+  private Model model;
+  private Weights weights;
+  private File script;
+  private int workerCount = 2;
+  private int numEpochs = 1;
+  private int cacheSize = Integer.MAX_VALUE;
+  private int timeout = 60000;
+  private int roundTimeout = 3600000;
+  private String jvmOptions = "";
+  private ArrayList<String> learnerProperties = new ArrayList<String>();
+  private ProgressReporter progressReporter = new QuietProgressReporter();
+
+  /**
+   * Creates a new distributed learner.
+   *
+   * @param model   the model to train (the same model that the workers build from the script).
+   * @param weights the weights to train, all features must already be collected.
+   * @param script  a PML file that defines the signature and the model.
+   */
+  public DistributedLearner(Model model, Weights weights, File script) {
+    this.model = model;
+    this.weights = weights;
+    this.script = script;
+  }
+
+  public int getWorkerCount() {
+    return workerCount;
+  }
+
+  public void setWorkerCount(int workerCount) {
+    if (workerCount < 1) throw new IllegalArgumentException("There must be at least one worker");
+    this.workerCount = workerCount;
+  }
+
+  public int getNumEpochs() {
+    return numEpochs;
+  }
+
+  public void setNumEpochs(int numEpochs) {
+    this.numEpochs = numEpochs;
+  }
+
+  /**
+   * The number of bytes of training instances each worker keeps in memory. Instances that don't fit are streamed
+   * from the shard file in each round.
+   *
+   * @param cacheSize the number of bytes per worker.
+   */
+  public void setCacheSize(int cacheSize) {
+    this.cacheSize = cacheSize;
+  }
+
+  /**
+   * Sets the options (e.g. heap size) of the worker JVMs.
+   *
+   * @param jvmOptions JVM options separated by whitespace.
+   */
+  public void setJvmOptions(String jvmOptions) {
+    this.jvmOptions = jvmOptions;
+  }
+
+  /**
+   * Sets the time to wait for the workers to start up.
+   *
+   * @param timeout the timeout in milliseconds.
+   */
+  public void setTimeout(int timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * Sets the time to wait for a worker to load its shard or to finish a round.
+   *
+   * @param roundTimeout the timeout in milliseconds, 0 to wait forever.
+   */
+  public void setRoundTimeout(int roundTimeout) {
+    this.roundTimeout = roundTimeout;
+  }
+
+  public void setProgressReporter(ProgressReporter progressReporter) {
+    this.progressReporter = progressReporter;
+  }
+
+  /**
+   * Trains the weights of this learner with iterative parameter mixing.
+   *
+   * @param instances the training instances to use.
+   */
+  public void learn(TrainingInstances instances) {
+    File dir = null;
+    ArrayList<WorkerConnection> workers = new ArrayList<WorkerConnection>();
+    try {
+      dir = File.createTempFile("thebeast-distributed", "");
+      dir.delete();
+      if (!dir.mkdir()) throw new IOException("Couldn't create " + dir);
+      int[] sizes = writeShards(instances, dir);
+      startWorkers(dir, instances.isSaveFeatures(), workers);
+      Weights workerWeights = model.getSignature().createWeights();
+      File broadcast = new File(dir, "weights.dmp");
+      for (int epoch = 0; epoch < numEpochs; ++epoch) {
+        progressReporter.started("Round " + epoch);
+        broadcast.delete();
+        FileSink sink = TheBeast.getInstance().getNodServer().createSink(broadcast, 1024);
+        try {
+          weights.write(sink);
+        } finally {
+          sink.close();
+        }
+        for (WorkerConnection worker : workers)
+          worker.send("ROUND\t" + broadcast.getPath() + "\t" + worker.weights.getPath());
+        for (WorkerConnection worker : workers) {
+          worker.expect("DONE", roundTimeout);
+          progressReporter.progressed();
+        }
+        mix(workers, sizes, workerWeights);
+        progressReporter.finished();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Distributed learning failed", e);
+    } finally {
+      for (WorkerConnection worker : workers) worker.close();
+      if (dir != null) {
+        File[] files = dir.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        dir.delete();
+      }
+    }
+  }
+
+  /**
+   * Splits the instances into contiguous shards and dumps each shard in the format of the training instances
+   * file.
+   */
+  private int[] writeShards(TrainingInstances instances, File dir) throws IOException {
+    int size = instances.size();
+    int[] sizes = new int[workerCount];
+    FileSink[] sinks = new FileSink[workerCount];
+    ExpressionBuilder builder = TheBeast.getInstance().getNodServer().expressionBuilder();
+    Interpreter interpreter = TheBeast.getInstance().getNodServer().interpreter();
+    try {
+      for (int worker = 0; worker < workerCount; ++worker) {
+        sizes[worker] = (worker + 1) * size / workerCount - worker * size / workerCount;
+        sinks[worker] = TheBeast.getInstance().getNodServer().createSink(shardFile(dir, worker), 1024);
+        builder.num(sizes[worker]);
+        sinks[worker].write(interpreter.createIntVariable(builder.getInt()));
+      }
+      int index = 0;
+      for (TrainingInstance instance : instances) {
+        int worker = 0;
+        while ((worker + 1) * size / workerCount <= index) ++worker;
+        instance.write(sinks[worker]);
+        ++index;
+      }
+    } finally {
+      //stops the prefetching thread if writing failed halfway
+      instances.close();
+      close(sinks);
+    }
+    return sizes;
+  }
+
+  /**
+   * Closes all given sinks (null entries are skipped), even if closing one of them fails.
+   */
+  private static void close(FileSink[] sinks) throws IOException {
+    IOException error = null;
+    for (FileSink sink : sinks)
+      if (sink != null) {
+        try {
+          sink.close();
+        } catch (IOException e) {
+          if (error == null) error = e;
+        }
+      }
+    if (error != null) throw error;
+  }
+
+  private static File shardFile(File dir, int worker) {
+    return new File(dir, "shard" + worker + ".dmp");
+  }
+
+  private void startWorkers(File dir, boolean saveFeatures, ArrayList<WorkerConnection> workers)
+          throws IOException {
+    ServerSocket server = new ServerSocket(0, workerCount, InetAddress.getByName("127.0.0.1"));
+    Process[] processes = new Process[workerCount];
+    try {
+      server.setSoTimeout(timeout);
+      for (int worker = 0; worker < workerCount; ++worker) {
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (String option : jvmOptions.trim().split("\\s+"))
+          if (!option.equals("")) command.add(option);
+        command.add(Worker.class.getName());
+        command.add(script.getPath());
+        command.add(String.valueOf(server.getLocalPort()));
+        command.add(String.valueOf(worker));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        processes[worker] = builder.start();
+        forwardOutput(processes[worker], worker);
+      }
+      //workers connect in any order and introduce themselves with their number
+      WorkerConnection[] connections = new WorkerConnection[workerCount];
+      for (int i = 0; i < workerCount; ++i) {
+        Socket socket = server.accept();
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        String hello = in.readLine();
+        if (hello == null || !hello.startsWith("HELLO\t"))
+          throw new IOException("Unexpected message from worker: " + hello);
+        int worker = Integer.parseInt(hello.substring("HELLO\t".length()));
+        connections[worker] = new WorkerConnection(worker, socket, in, processes[worker],
+                new File(dir, "worker" + worker + ".dmp"));
+        workers.add(connections[worker]);
+      }
+      workers.clear();
+      for (int worker = 0; worker < workerCount; ++worker) {
+        WorkerConnection connection = connections[worker];
+        workers.add(connection);
+        for (String property : learnerProperties) connection.send("SET\t" + property);
+        connection.send("SHARD\t" + shardFile(dir, worker).getPath() + "\t" + saveFeatures + "\t" + cacheSize);
+      }
+      for (WorkerConnection worker : workers) worker.expect("READY", roundTimeout);
+    } catch (IOException e) {
+      //don't leave workers behind that never connected
+      for (Process process : processes) if (process != null) process.destroy();
+      throw e;
+    } finally {
+      server.close();
+    }
+  }
+
+  private static void forwardOutput(final Process process, final int worker) {
+    Thread thread = new Thread("thebeast-worker-output-" + worker) {
+      public void run() {
+        try {
+          BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+          for (String line = reader.readLine(); line != null; line = reader.readLine())
+            System.err.println("[worker " + worker + "] " + line);
+        } catch (IOException e) {
+          //process is gone
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Sets the weights to the average of the worker weights, weighted by the shard sizes. This is done for the plain
+   * and the last weights, and the seen instances of all workers are added up, so averaging learners continue their
+   * average in the next round.
+   */
+  private void mix(ArrayList<WorkerConnection> workers, int[] sizes, Weights workerWeights) throws IOException {
+    Interpreter interpreter = TheBeast.getInstance().getNodServer().interpreter();
+    int total = 0;
+    for (int size : sizes) total += size;
+    if (total == 0) return;
+    int seenBefore = weights.getSeenInstances();
+    int seen = seenBefore;
+    interpreter.scale(weights.getWeights(), 0.0);
+    interpreter.scale(weights.getLastWeights(), 0.0);
+    for (int worker = 0; worker < workers.size(); ++worker) {
+      if (sizes[worker] == 0) continue;
+      FileSource source = TheBeast.getInstance().getNodServer().createSource(workers.get(worker).weights, 1024);
+      try {
+        workerWeights.read(source);
+      } finally {
+        source.close();
+      }
+      double scale = sizes[worker] / (double) total;
+      interpreter.add(weights.getWeights(), workerWeights.getWeights(), scale);
+      interpreter.add(weights.getLastWeights(), workerWeights.getLastWeights(), scale);
+      seen += workerWeights.getSeenInstances() - seenBefore;
+    }
+    weights.setSeenInstances(seen);
+  }
+
+  public void setProperty(PropertyName name, Object value) {
+    if ("workers".equals(name.getHead()))
+      setWorkerCount((Integer) value);
+    else if ("numEpochs".equals(name.getHead()))
+      setNumEpochs((Integer) value);
+    else if ("cacheSize".equals(name.getHead()))
+      setCacheSize((Integer) value);
+    else if ("timeout".equals(name.getHead()))
+      setTimeout((Integer) value);
+    else if ("roundTimeout".equals(name.getHead()))
+      setRoundTimeout((Integer) value);
+    else if ("jvm".equals(name.getHead()))
+      setJvmOptions(value.toString());
+    else {
+      if (name.hasArguments())
+        throw new IllegalArgumentException("Can't pass property " + name + " with arguments to the workers");
+      learnerProperties.add(name + "\t" + value);
+    }
+  }
+
+  public Object getProperty(PropertyName name) {
+    if ("workers".equals(name.getHead()))
+      return workerCount;
+    if ("numEpochs".equals(name.getHead()))
+      return numEpochs;
+    if ("cacheSize".equals(name.getHead()))
+      return cacheSize;
+    if ("timeout".equals(name.getHead()))
+      return timeout;
+    if ("roundTimeout".equals(name.getHead()))
+      return roundTimeout;
+    if ("jvm".equals(name.getHead()))
+      return jvmOptions;
+    return null;
+  }
+
+  /**
+   * The connection to a worker process.
+   */
+  private static class WorkerConnection {
+    private int number;
+    private Socket socket;
+    private BufferedReader in;
+    private PrintWriter out;
+    private Process process;
+    //the file the worker dumps its weights to
+    private File weights;
+
+    private WorkerConnection(int number, Socket socket, BufferedReader in, Process process, File weights)
+            throws IOException {
+      this.number = number;
+      this.socket = socket;
+      this.in = in;
+      this.process = process;
+      this.weights = weights;
+      out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true);
+    }
+
+    private void send(String message) {
+      out.println(message);
+    }
+
+    /**
+     * Waits for the next message of the worker. A worker that doesn't answer in time is killed, so that closing the
+     * connection doesn't wait for it either.
+     */
+    private void expect(String message, int timeout) throws IOException {
+      String line;
+      try {
+        socket.setSoTimeout(timeout);
+        line = in.readLine();
+      } catch (SocketTimeoutException e) {
+        process.destroy();
+        throw new IOException("Worker " + number + " timed out after " + timeout + "ms waiting for " + message);
+      }
+      if (line == null) throw new IOException("Worker " + number + " died");
+      if (!line.equals(message)) throw new IOException("Worker " + number + " failed: " + line);
+    }
+
+    private void close() {
+      send("QUIT");
+      try {
+        socket.close();
+        process.waitFor();
+      } catch (Exception e) {
+        process.destroy();
+      }
+    }
+  }
+
+  /**
+   * The main class of a worker process. Arguments: the PML script, the port of the learner and the number of the
+   * worker.
+   */
+  public static class Worker {
+
+    public static void main(String[] args) throws Exception {
+      Model model = TheBeast.getInstance().loadModel(new FileInputStream(args[0]));
+      Weights weights = model.getSignature().createWeights();
+      OnlineLearner learner = new OnlineLearner(model, weights);
+      TrainingInstances shard = null;
+
+      Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(args[1]));
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+      PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true);
+      out.println("HELLO\t" + args[2]);
+      try {
+        for (String line = in.readLine(); line != null && !line.equals("QUIT"); line = in.readLine()) {
+          String[] split = line.split("\t");
+          if ("SET".equals(split[0])) {
+            learner.setProperty(toPropertyName(split[1]), toValue(split.length > 2 ? split[2] : ""));
+          } else if ("SHARD".equals(split[0])) {
+            shard = new TrainingInstances(model, new File(split[1]), Integer.parseInt(split[3]),
+                    Boolean.parseBoolean(split[2]));
+            out.println("READY");
+          } else if ("ROUND".equals(split[0])) {
+            FileSource source = TheBeast.getInstance().getNodServer().createSource(new File(split[1]), 1024);
+            try {
+              weights.read(source);
+            } finally {
+              source.close();
+            }
+            learner.setNumEpochs(1);
+            //workers must not write to the same epoch files
+            learner.setSaveAfterEpoch(false);
+            learner.learn(shard);
+            File result = new File(split[2]);
+            result.delete();
+            FileSink sink = TheBeast.getInstance().getNodServer().createSink(result, 1024);
+            try {
+              weights.write(sink);
+            } finally {
+              sink.close();
+            }
+            out.println("DONE");
+          } else
+            throw new IllegalArgumentException("Unknown message " + line);
+        }
+      } catch (Throwable e) {
+        e.printStackTrace();
+        out.println("ERROR\t" + e);
+      }
+      socket.close();
+      System.exit(0);
+    }
+
+    private static PropertyName toPropertyName(String name) {
+      int dot = name.indexOf('.');
+      if (dot == -1) return new PropertyName(name, null);
+      return new PropertyName(name.substring(0, dot), toPropertyName(name.substring(dot + 1)));
+    }
+
+    private static Object toValue(String value) {
+      if ("true".equals(value) || "false".equals(value)) return Boolean.valueOf(value);
+      try {
+        return Integer.valueOf(value);
+      } catch (NumberFormatException e) {
+        //not an integer
+      }
+      try {
+        return Double.valueOf(value);
+      } catch (NumberFormatException e) {
+        return value;
+      }
+    }
+  }
+
+}
@@ -20,9 +20,15 @@ import thebeast.util.ProgressReporter;
 import thebeast.util.QuietProgressReporter;
 import thebeast.util.Counter;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author Sebastian Riedel
@@ -54,10 +60,14 @@ public class FeatureCollector implements HasProperties {
 
   private double initialWeight;
 
+  private int threads = 1;
+  private int batchSize = 100;
+
 
   public String toString() {
     StringBuffer result = new StringBuffer();
     result.append(String.format("%-20s: %-5d\n", "Cutoff", cutoff));
+    result.append(String.format("%-20s: %-5d\n", "Threads", threads));
     return result.toString();
   }
 
@@ -155,7 +165,9 @@ public class FeatureCollector implements HasProperties {
 
     this.atoms.load(model.getGlobalAtoms(), model.getGlobalPredicates());
     progressReporter.started("Collecting Features");
-    while (corpus.hasNext()) {
+    if (threads > 1)
+      collectSharded(corpus);
+    else while (corpus.hasNext()) {
       this.atoms.load(corpus.next(), model.getInstancePredicates());
       //todo: inserts.keySet() causes randomness
       for (FactorFormula factor : inserts.keySet()) {
@@ -215,6 +227,145 @@ public class FeatureCollector implements HasProperties {
   }
 
 
+  /**
+   * Collects features with several threads. The corpus is read on the calling thread in rounds: each shard gets the
+   * next <code>batchSize</code> instances, all shards collect into their own relations in parallel, and then the
+   * shard relations are merged into the weights in corpus order (summing up counts). Hence features end up in the same
+   * order as if they were collected serially, and feature indices do not depend on the number of threads.
+   *
+   * <p>In the first round each shard processes its first instance on the calling thread. This compiles the inserts and
+   * brings the indices of the global atoms and the weights (which all shards share) up to date before the shards read
+   * them concurrently.
+   *
+   * @param corpus the corpus to collect the features from.
+   */
+  private void collectSharded(Iterator<GroundAtoms> corpus) {
+    ArrayList<Shard> shards = new ArrayList<Shard>(threads);
+    for (int i = 0; i < threads; ++i) shards.add(new Shard());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    boolean warm = false;
+    TheBeast.getInstance().getNodServer().beginParallel();
+    try {
+      while (corpus.hasNext()) {
+        //read instances on this thread, reading can add constants to types which are not thread safe
+        int used = 0;
+        for (Shard shard : shards) {
+          shard.fill(corpus);
+          if (shard.size > 0) ++used;
+        }
+        if (!warm) {
+          for (int i = 0; i < used; ++i) shards.get(i).process();
+          warm = true;
+        }
+        ArrayList<Future<Shard>> results = new ArrayList<Future<Shard>>(used);
+        for (int i = 0; i < used; ++i)
+          results.add(executor.submit(shards.get(i)));
+        for (Future<Shard> result : results) {
+          Shard shard = result.get();
+          for (WeightFunction function : shard.relations.keySet())
+            interpreter.insert(weights.getRelation(function), shard.relations.get(function));
+          shard.clear();
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Feature collection failed", e.getCause());
+    } finally {
+      executor.shutdown();
+      TheBeast.getInstance().getNodServer().endParallel();
+    }
+  }
+
+  /**
+   * A Shard collects features for a batch of instances into its own weight function relations, using its own
+   * interpreter.
+   */
+  private class Shard implements Callable<Shard> {
+    private Interpreter interpreter = TheBeast.getInstance().getNodServer().createInterpreter();
+    private GroundAtoms atoms = model.getSignature().createGroundAtoms();
+    private ArrayList<GroundAtoms> instances = new ArrayList<GroundAtoms>(batchSize);
+    private HashMap<WeightFunction, RelationVariable> relations = new HashMap<WeightFunction, RelationVariable>();
+    private ArrayList<Insert> inserts = new ArrayList<Insert>();
+    private int size, processed;
+
+    private Shard() {
+      atoms.load(model.getGlobalAtoms(), model.getGlobalPredicates());
+      QueryGenerator generator = new QueryGenerator(model, weights, atoms);
+      for (FactorFormula factor : model.getFactorFormulas()) {
+        WeightFunction function = factor.getWeightFunction();
+        if (!factor.usesWeights() || function.getArity() == 0 || collectAll.contains(function)) continue;
+        RelationExpression query = generator.generateCollectorQuery(factor, atoms, weights);
+        if (query == null) continue;
+        RelationVariable relation = relations.get(function);
+        if (relation == null) {
+          relation = interpreter.createRelationVariable(function.getIndexedHeading(),
+                  function.getCountAttribute().name());
+          relations.put(function, relation);
+        }
+        inserts.add(factory.createInsert(relation, query));
+      }
+    }
+
+    private void fill(Iterator<GroundAtoms> corpus) {
+      size = 0;
+      processed = 0;
+      while (size < batchSize && corpus.hasNext()) {
+        if (instances.size() == size) instances.add(model.getSignature().createGroundAtoms());
+        instances.get(size++).load(corpus.next(), model.getInstancePredicates());
+        progressReporter.progressed();
+      }
+    }
+
+    private void process() {
+      GroundAtoms instance = instances.get(processed++);
+      for (UserPredicate predicate : model.getInstancePredicates())
+        interpreter.assign(atoms.getGroundAtomsOf(predicate).getRelationVariable(),
+                instance.getGroundAtomsOf(predicate).getRelationVariable());
+      for (Insert insert : inserts)
+        interpreter.interpret(insert);
+    }
+
+    public Shard call() {
+      while (processed < size) process();
+      return this;
+    }
+
+    private void clear() {
+      for (RelationVariable relation : relations.values())
+        interpreter.clear(relation);
+    }
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Sets the number of threads to collect features with. With more than one thread the corpus is processed in
+   * batches of instances, see {@link #setBatchSize(int)}.
+   *
+   * @param threads the number of threads to use, 1 by default.
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+    this.threads = threads;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the number of instances each thread processes before its features are merged into the weights.
+   *
+   * @param batchSize the number of instances per thread and round.
+   */
+  public void setBatchSize(int batchSize) {
+    if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+    this.batchSize = batchSize;
+  }
+
   public ProgressReporter getProgressReporter() {
     return progressReporter;
   }
@@ -252,6 +403,10 @@ public class FeatureCollector implements HasProperties {
       setCollectAll(weightFunction, (Boolean) value);
     } else if (name.getHead().equals("init")) {
       setInitialWeight((Double) value);
+    } else if (name.getHead().equals("threads")) {
+      setThreads((Integer) value);
+    } else if (name.getHead().equals("batchSize")) {
+      setBatchSize((Integer) value);
     } else if (name.getHead().equals("cutoff")) {
       if (name.isTerminal())
         setCutoff((Integer) value);
@@ -0,0 +1,111 @@
+package thebeast.pml.training;
+
+import thebeast.nod.variable.ArrayVariable;
+import thebeast.pml.Weights;
+import thebeast.pml.WeightsListener;
+
+/**
+ * A LazyAverage maintains the (unnormalized) sum of all weight vectors seen during online learning without adding the
+ * full weight vector after each instance. For each feature it remembers the instance count at which the weight was
+ * last changed and the sum accumulated up to this point. Whenever the weights object reports that a weight is about to
+ * change the time the old value was active is added to the sum. Hence the cost per instance is proportional to the
+ * number of features the update rule touches, not to the number of features in the model.
+ *
+ * <p>The averaged vector is only computed when it is needed (see {@link #materialize(Weights)}).
+ *
+ * @author Sebastian Riedel
+ */
+public class LazyAverage implements WeightsListener {
+
+  private Weights weights;
+  private double[] sums;
+  private int[] stamps;
+  private int count;
+
+  /**
+   * Creates a lazy average for the given weights which assumes that the current weights have already been seen
+   * <code>count</code> times.
+   *
+   * @param weights the weights to average. This object has to be registered as listener of the weights.
+   * @param count   the number of instances seen so far.
+   */
+  public LazyAverage(Weights weights, int count) {
+    this.weights = weights;
+    this.count = count;
+    ArrayVariable current = weights.getWeights();
+    int size = current.value().size();
+    sums = new double[size];
+    stamps = new int[size];
+    for (int i = 0; i < size; ++i) {
+      sums[i] = count * current.doubleValue(i);
+      stamps[i] = count;
+    }
+  }
+
+  /**
+   * Records that the current weights have been seen for one more instance.
+   */
+  public void increment() {
+    ++count;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public void weightsChanging(int[] indices, int size) {
+    ArrayVariable current = weights.getWeights();
+    for (int i = 0; i < size; ++i) {
+      int index = indices[i];
+      if (index >= sums.length) grow(current.value().size());
+      int stamp = stamps[index];
+      if (stamp != count) {
+        sums[index] += (count - stamp) * current.doubleValue(index);
+        stamps[index] = count;
+      }
+    }
+  }
+
+  public void allWeightsChanging() {
+    ArrayVariable current = weights.getWeights();
+    grow(current.value().size());
+    for (int index = 0; index < sums.length; ++index) {
+      int stamp = stamps[index];
+      if (stamp != count) {
+        sums[index] += (count - stamp) * current.doubleValue(index);
+        stamps[index] = count;
+      }
+    }
+  }
+
+  private void grow(int size) {
+    if (size <= sums.length) return;
+    //features added after the averaging started have been zero so far.
+    double[] newSums = new double[size];
+    int[] newStamps = new int[size];
+    System.arraycopy(sums, 0, newSums, 0, sums.length);
+    System.arraycopy(stamps, 0, newStamps, 0, stamps.length);
+    for (int i = stamps.length; i < size; ++i) newStamps[i] = count;
+    sums = newSums;
+    stamps = newStamps;
+  }
+
+  /**
+   * Writes the average of all weight vectors seen so far into the given weights. The state of this object is not
+   * changed, so learning can continue afterwards.
+   *
+   * @param target the weights to write the average to. These need to have the same values as the averaged weights
+   *               (e.g. the averaged weights themselves or a copy).
+   */
+  public void materialize(Weights target) {
+    ArrayVariable current = target.getWeights();
+    int size = current.value().size();
+    grow(size);
+    double[] result = new double[size];
+    double scale = 1.0 / count;
+    for (int i = 0; i < size; ++i)
+      result[i] = (sums[i] + (count - stamps[i]) * current.doubleValue(i)) * scale;
+    current.setDoubleArray(result);
+  }
+
+}
@@ -6,30 +6,42 @@ import thebeast.pml.SparseVector;
 import thebeast.pml.Weights;
 import thebeast.util.Profiler;
 import thebeast.util.QP;
+import thebeast.util.SortedSparseVector;
 import thebeast.util.TreeProfiler;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  * Update weights according to (Single-best) MIRA as presented in McDonald et al. 2005.
  *
+ * <p>All vector operations are done with {@link SortedSparseVector}s and the buffers (difference vectors, Gram matrix,
+ * QP workspace) are kept between calls, so an update only allocates the arrays that are read from the feature
+ * vectors.
+ *
  * @author Sebastian Riedel
  */
 public class MiraUpdateRule implements UpdateRule {
 
   private boolean enforceSigns = true;
 
-  //private int[] mapping;
-  //private Weights weights;
-
   private int epoch = 0;
 
   private static Profiler profiler = new TreeProfiler();
-  private double[][] a;
-  private double[] b;
+
+  private SortedSparseVector goldAll = new SortedSparseVector();
+  private SortedSparseVector candidateAll = new SortedSparseVector();
+  private SortedSparseVector base = new SortedSparseVector();
+  private SortedSparseVector[] diffs = new SortedSparseVector[0];
+  private int[][] columns = new int[0][];
+  private int[] sizes = new int[0];
+  private double[][] rows = new double[0][];
+  private double[][] gram = new double[0][];
+  private double[] b = new double[0];
+  private double[] lb = new double[0], ub = new double[0];
   private double[] x;
+  private int candidateCount;
+  private QP.Workspace workspace = new QP.Workspace();
 
   public void endEpoch() {
     epoch = 0;
@@ -38,105 +50,63 @@ public class MiraUpdateRule implements UpdateRule {
 
   public void update(FeatureVector gold, List<FeatureVector> candidates, List<Double> losses, Weights weights) {
     profiler.start("build difs");
+    candidateCount = candidates.size();
+    ensureCandidates(candidateCount);
 
-    ArrayList<SparseVector> allVectors = new ArrayList<SparseVector>(candidates.size());
-    int[][] nnIndices = new int[candidates.size() + 1][];
-    int[][] npIndices = new int[candidates.size() + 1][];
-    nnIndices[0] = weights.unionIndices(gold.getFalseVector().getIndexArray(), gold.getLocalNonnegativeIndices());
-    npIndices[0] = weights.unionIndices(gold.getTrueVector().getIndexArray(), gold.getLocalNonpositiveIndices());
-    //System.out.println(Arrays.toString(gold.getLocalNonpositiveIndices()));
-    int c = 1;
+    loadAll(gold, goldAll);
+    int c = 0;
     for (FeatureVector candidate : candidates) {
-      allVectors.add(candidate.getAll());
-      if (enforceSigns) {
-        nnIndices[c] = weights.unionIndices(candidate.getFalseVector().getIndexArray(),
-                candidate.getLocalNonnegativeIndices());
-        //System.out.println(Arrays.toString(candidate.getLocalNonpositiveIndices()));
-        npIndices[c] = weights.unionIndices(candidate.getTrueVector().getIndexArray(),
-                candidate.getLocalNonpositiveIndices());
-      }
+      loadAll(candidate, candidateAll);
+      SortedSparseVector diff = diffs[c];
+      diff.set(goldAll, -1.0, candidateAll);
+      b[c] = losses.get(c) - weights.score(diff);
       ++c;
     }
-    List<SparseVector> diffVectors = weights.add(gold.getAll(), -1.0, allVectors);
-
-    //System.out.println(weights.toString(diffVectors.get(0)));
-
-    int nnCount = 0;
-    int npCount = 0;
-
-    SparseVector nnOld = null;
-    SparseVector npOld = null;
-
-    int rebasedSize = diffVectors.get(0).size();
-    int base[] = null;
-
-    if (enforceSigns) {
-      base = diffVectors.get(0).getIndexArray();
-      int[] nnAllIndices = weights.unionIndices(nnIndices);
-      int[] npAllIndices = weights.unionIndices(npIndices);
-      nnOld = weights.getSubWeights(base, nnAllIndices);
-      npOld = weights.getSubWeights(base, npAllIndices);
-      nnCount = nnAllIndices.length;
-      npCount = npAllIndices.length;
-    }
-
-    a = new double[candidates.size()][];
-    b = new double[candidates.size()];
-    double[] d = new double[candidates.size()];
-    SparseVector[] diffs = new SparseVector[candidates.size()];
-
-    for (int candidateIndex = 0; candidateIndex < candidates.size(); ++candidateIndex) {
-      SparseVector diffVector = diffVectors.get(candidateIndex);
-//      if (epoch == 0){
-//        System.out.println("Diff " + candidateIndex);
-//        System.out.println(weights.toString(diffVector));
-//      }
-
-      diffs[candidateIndex] = diffVector;
-      double diffScore = weights.dotProduct(diffVector);
-      double loss = losses.get(candidateIndex);
-      a[candidateIndex] = diffVector.getValueArray();
-      b[candidateIndex] = loss - diffScore;
-      d[candidateIndex] = diffScore;
-    }
 
     if (enforceSigns) {
-      double[] lb = new double[rebasedSize];
-      double[] ub = new double[rebasedSize];
-      for (int i = 0; i < rebasedSize; ++i) {
-        lb[i] = Double.NEGATIVE_INFINITY;
-        ub[i] = Double.POSITIVE_INFINITY;
+      //the variables of the QP are the changes of all weights that appear in any difference vector
+      base.clear();
+      for (int i = 0; i < candidateCount; ++i)
+        base.addInPlace(1.0, diffs[i]);
+      int n = base.size();
+      int[] baseIndices = base.getIndices();
+      for (int i = 0; i < candidateCount; ++i) {
+        SortedSparseVector diff = diffs[i];
+        if (columns[i].length < diff.size()) columns[i] = new int[diff.getIndices().length];
+        diff.positionsIn(baseIndices, n, columns[i]);
+        rows[i] = diff.getValues();
+        sizes[i] = diff.size();
       }
-      int[] nnRebased = nnOld.getIndexArray();
-      int[] npRebased = npOld.getIndexArray();
-      double[] nnWeights = nnOld.getValueArray();
-      double[] npWeights = npOld.getValueArray();
-      for (int i = 0; i < nnCount; ++i) {
-        lb[nnRebased[i]] = -nnWeights[i];
+      if (lb.length < n) {
+        lb = new double[baseIndices.length];
+        ub = new double[baseIndices.length];
       }
-      for (int i = 0; i < npCount; ++i) {
-        ub[npRebased[i]] = -npWeights[i];
+      for (int i = 0; i < n; ++i) {
+        lb[i] = Double.NEGATIVE_INFINITY;
+        ub[i] = Double.POSITIVE_INFINITY;
       }
-
-      x = QP.art2(a, b, lb, ub);
-      //System.out.println(Arrays.toString(a[0]));
-      //System.out.println(losses);
-      //System.out.println(Arrays.toString(b));
-      weights.add(1.0, new SparseVector(base, x));
-      //System.out.println(Arrays.toString(b));
-      //System.out.println(Arrays.toString(x));
-//      double lowest = Double.POSITIVE_INFINITY;
-//      for (int i = 0; i < rebasedSize; ++i){
-//        if (x[i] < lowest) lowest = x[i];
-//      }
-//      System.out.println(lowest);
+      //the new weights of nonnegative (nonpositive) features must stay nonnegative (nonpositive)
+      boundSigned(gold, weights, n);
+      for (FeatureVector candidate : candidates)
+        boundSigned(candidate, weights, n);
+
+      x = QP.art2(columns, rows, sizes, b, candidateCount, lb, ub, n, workspace);
+      //reuse the base vector for the update
+      System.arraycopy(x, 0, base.getValues(), 0, n);
+      profiler.end();
+      profiler.start("update");
+      weights.add(1.0, base);
+      profiler.end();
     } else {
+      for (int i = 0; i < candidateCount; ++i)
+        for (int j = 0; j <= i; ++j)
+          gram[i][j] = gram[j][i] = diffs[i].dot(diffs[j]);
       profiler.end();
       profiler.start("qp");
-      double[] alpha = QP.runHildreth(a, b);
+      double[] alpha = QP.runHildreth(gram, b, candidateCount, workspace);
       profiler.end();
       profiler.start("update");
-      for (int i = 0; i < alpha.length; ++i) {
+      for (int i = 0; i < candidateCount; ++i) {
         weights.add(alpha[i], diffs[i]);
       }
       profiler.end();
@@ -145,11 +115,57 @@ public class MiraUpdateRule implements UpdateRule {
     ++epoch;
   }
 
+  private void ensureCandidates(int count) {
+    if (diffs.length >= count) return;
+    SortedSparseVector[] newDiffs = new SortedSparseVector[count];
+    System.arraycopy(diffs, 0, newDiffs, 0, diffs.length);
+    for (int i = diffs.length; i < count; ++i) newDiffs[i] = new SortedSparseVector();
+    diffs = newDiffs;
+    int[][] newColumns = new int[count][];
+    System.arraycopy(columns, 0, newColumns, 0, columns.length);
+    for (int i = columns.length; i < count; ++i) newColumns[i] = new int[0];
+    columns = newColumns;
+    rows = new double[count][];
+    sizes = new int[count];
+    gram = new double[count][count];
+    b = new double[count];
+  }
+
+  private static void loadAll(FeatureVector vector, SortedSparseVector dst) {
+    dst.clear();
+    append(vector.getLocal(), dst);
+    append(vector.getFalseVector(), dst);
+    append(vector.getTrueVector(), dst);
+    dst.sort();
+  }
+
+  private static void append(SparseVector vector, SortedSparseVector dst) {
+    dst.append(vector.getIndexArray(), vector.getValueArray());
+  }
+
+  private void boundSigned(FeatureVector vector, Weights weights, int n) {
+    if (!enforceSigns) return;
+    int[] baseIndices = base.getIndices();
+    bound(vector.getFalseVector().getIndexArray(), baseIndices, n, weights, lb);
+    bound(vector.getLocalNonnegativeIndices(), baseIndices, n, weights, lb);
+    bound(vector.getTrueVector().getIndexArray(), baseIndices, n, weights, ub);
+    bound(vector.getLocalNonpositiveIndices(), baseIndices, n, weights, ub);
+  }
+
+  private static void bound(int[] indices, int[] baseIndices, int n, Weights weights, double[] bounds) {
+    for (int index : indices) {
+      int position = Arrays.binarySearch(baseIndices, 0, n, index);
+      //features that are not part of any difference are not changed by the update
+      if (position >= 0) bounds[position] = -weights.getWeights().doubleValue(index);
+    }
+  }
+
   public boolean testLastQPResult(){
-    for (int row = 0; row < a.length; ++row){
+    if (x == null) return true;
+    for (int row = 0; row < candidateCount; ++row){
       double dotProduct = 0;
-      for (int col = 0; col < a[row].length; ++col){
-        dotProduct += a[row][col] * x[col];
+      for (int col = 0; col < sizes[row]; ++col){
+        dotProduct += rows[row][col] * x[columns[row][col]];
       }
       System.out.println("dotProduct = " + dotProduct);
       System.out.println("b[row] = " + b[row]);
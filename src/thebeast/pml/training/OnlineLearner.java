@@ -38,6 +38,8 @@ public class OnlineLearner implements Learner, HasProperties {
   private ProgressReporter progressReporter = new QuietProgressReporter();
   private boolean averaging = true;
   private ArrayVariable average;
+  private boolean lazyAveraging = false;
+  private LazyAverage lazyAverage;
   private Interpreter interpreter = TheBeast.getInstance().getNodServer().interpreter();
   private int count;
   private Profiler profiler = new NullProfiler();
@@ -164,7 +166,11 @@ public class OnlineLearner implements Learner, HasProperties {
 
 
   private void finalizeAverage(Weights weights) {
-    if (averaging) {
+    if (averaging && lazyAverage != null) {
+      interpreter.assign(weights.getLastWeights(), weights.getWeights());
+      lazyAverage.materialize(weights);
+      weights.setSeenInstances(lazyAverage.getCount());
+    } else if (averaging) {
       //if (averaging && average != null) {
       //interpreter.scale(average, 1.0 / count);
       interpreter.assign(weights.getLastWeights(), weights.getWeights());
@@ -176,7 +182,16 @@ public class OnlineLearner implements Learner, HasProperties {
   }
 
   private void setUpAverage() {
-    if (averaging) {
+    lazyAverage = null;
+    if (averaging && lazyAveraging) {
+      count = weights.getSeenInstances();
+      if (count > 0) {
+        //the current weights are the average of count vectors, the last weights are the ones we continue from
+        lazyAverage = new LazyAverage(weights, count);
+        interpreter.assign(weights.getWeights(), weights.getLastWeights());
+      } else
+        lazyAverage = new LazyAverage(weights, 0);
+    } else if (averaging) {
       count = weights.getSeenInstances();
       if (count == 0)
         average = interpreter.createDoubleArrayVariable(weights.getFeatureCount());
@@ -214,10 +229,14 @@ public class OnlineLearner implements Learner, HasProperties {
     this.profiler = profiler;
     solver.setProfiler(profiler);
     if (solution != null) solution.setProfiler(profiler);
+    if (extractor != null) extractor.setProfiler(profiler);
   }
 
   private void updateAverage() {
-    if (averaging && average != null) {
+    if (averaging && lazyAverage != null) {
+      lazyAverage.increment();
+      ++count;
+    } else if (averaging && average != null) {
       interpreter.add(average, weights.getWeights(), 1.0);
       ++count;
     }
@@ -232,6 +251,7 @@ public class OnlineLearner implements Learner, HasProperties {
     scores = new Scores(model, weights);
     features = new LocalFeatures(model, weights);
     extractor = new LocalFeatureExtractor(model, weights);
+    extractor.setProfiler(profiler);
     evaluation = new Evaluation(model);
     updateRule = new MiraUpdateRule();
     guess = new FeatureVector();
@@ -251,20 +271,30 @@ public class OnlineLearner implements Learner, HasProperties {
     profiler.start("learn");
     progressReporter.setColumns("Loss", "F1", "Iterations", "Candidates");
     setUpAverage();
-    if (initializeWeights)
-      weights.setAllWeights(initialWeight);
-    for (int epoch = 0; epoch < numEpochs; ++epoch) {
-      profiler.start("epoch");
-      progressReporter.started("Epoch " + epoch);
-      scores.setPenalizeGoldScale(maxLossScaling ? epoch / (numEpochs - 1.0) : 1.0);
-      scores.setRewardBadScale(maxLossScaling ? epoch / (numEpochs - 1.0) : 1.0);
-      for (TrainingInstance instance : instances) {
-        if (instance.getData().getGroundAtomCount() <= maxAtomCount) learn(instance);
+    if (lazyAverage != null) weights.setListener(lazyAverage);
+    try {
+      if (initializeWeights)
+        weights.setAllWeights(initialWeight);
+      for (int epoch = 0; epoch < numEpochs; ++epoch) {
+        profiler.start("epoch");
+        progressReporter.started("Epoch " + epoch);
+        scores.setPenalizeGoldScale(maxLossScaling ? epoch / (numEpochs - 1.0) : 1.0);
+        scores.setRewardBadScale(maxLossScaling ? epoch / (numEpochs - 1.0) : 1.0);
+        try {
+          for (TrainingInstance instance : instances) {
+            if (instance.getData().getGroundAtomCount() <= maxAtomCount) learn(instance);
+          }
+        } finally {
+          instances.close();
+        }
+        updateRule.endEpoch();
+        progressReporter.finished();
+        profiler.end();
+        if (saveAfterEpoch) saveCurrentWeights(epoch);
       }
-      updateRule.endEpoch();
-      progressReporter.finished();
-      profiler.end();
-      if (saveAfterEpoch) saveCurrentWeights(epoch);
+    } finally {
+      //the caller's weights must not keep notifying the average if an epoch fails
+      weights.setListener(null);
     }
     finalizeAverage(weights);
     profiler.end();
@@ -412,6 +442,23 @@ public class OnlineLearner implements Learner, HasProperties {
     this.averaging = averaging;
   }
 
+  public boolean isLazyAveraging() {
+    return lazyAveraging;
+  }
+
+  /**
+   * If set to true (and averaging is switched on) the averaged weights are not updated after each instance. Instead,
+   * for each feature we remember when its weight was last changed and add the old value to the sum only when the
+   * update rule changes the weight. The averaged vector is calculated at the end of learning and when weights are
+   * saved after an epoch. This is a lot faster for models with many features of which only few are active per
+   * instance.
+   *
+   * @param lazyAveraging true iff lazy averaging should be used.
+   */
+  public void setLazyAveraging(boolean lazyAveraging) {
+    this.lazyAveraging = lazyAveraging;
+  }
+
 
   public boolean isPenalizeGold() {
     return penalizeGold;
@@ -467,6 +514,8 @@ public class OnlineLearner implements Learner, HasProperties {
         updateRule.setProperty(name.getTail(), value);
     } else if ("average".equals(name.getHead())) {
       setAveraging((Boolean) value);
+    } else if ("lazyAverage".equals(name.getHead())) {
+      setLazyAveraging((Boolean) value);
     } else if ("penalizeGold".equals(name.getHead())) {
       setPenalizeGold((Boolean) value);
     } else if ("rewardBad".equals(name.getHead())) {
@@ -501,6 +550,12 @@ public class OnlineLearner implements Learner, HasProperties {
         lossFunction.setProperty(name.getTail(), value);
     } else if (name.getHead().equals("profile"))
       setProfiler(((Boolean) value) ? new TreeProfiler() : new NullProfiler());
+    else if (name.getHead().equals("profiler")) {
+      if (!name.isTerminal())
+        profiler.setProperty(name.getTail(), value);
+      else
+        setProfiler(TreeProfiler.createProfiler(value.toString()));
+    }
 
   }
 
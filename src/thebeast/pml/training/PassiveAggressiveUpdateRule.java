@@ -4,6 +4,7 @@ import thebeast.pml.FeatureVector;
 import thebeast.pml.Weights;
 import thebeast.pml.SparseVector;
 import thebeast.pml.PropertyName;
+import thebeast.util.SortedSparseVector;
 
 import java.util.List;
 
@@ -19,17 +20,28 @@ public class PassiveAggressiveUpdateRule implements UpdateRule {
   public static final int PA2 = 2;
   private double C = 0.01;
 
+  private SortedSparseVector goldLocal = new SortedSparseVector();
+  private SortedSparseVector goldNN = new SortedSparseVector();
+  private SortedSparseVector goldNP = new SortedSparseVector();
+  private SortedSparseVector guessVector = new SortedSparseVector();
+  private SortedSparseVector diffLocal = new SortedSparseVector();
+  private SortedSparseVector diffNN = new SortedSparseVector();
+  private SortedSparseVector diffNP = new SortedSparseVector();
+
   public void endEpoch() {
   }
 
   public void update(FeatureVector gold, List<FeatureVector> candidates, List<Double> losses, Weights weights) {
+    gold.getLocal().copyTo(goldLocal);
+    gold.getFalseVector().copyTo(goldNN);
+    gold.getTrueVector().copyTo(goldNP);
     double goldScore = weights.score(gold);
     int index = 0;
     for (FeatureVector guess : candidates) {
-      SparseVector diffLocal = gold.getLocal().add(-1.0, guess.getLocal());
-      SparseVector diffNN = gold.getFalseVector().add(-1.0, guess.getFalseVector());
-      SparseVector diffNP = gold.getTrueVector().add(-1.0, guess.getTrueVector());
-      double sqNorm = diffLocal.norm() + diffNN.norm() + diffNP.norm();
+      setDiff(diffLocal, goldLocal, guess.getLocal());
+      setDiff(diffNN, goldNN, guess.getFalseVector());
+      setDiff(diffNP, goldNP, guess.getTrueVector());
+      double sqNorm = diffLocal.squaredNorm() + diffNN.squaredNorm() + diffNP.squaredNorm();
       sqNorm *= sqNorm;
       double loss = losses.get(index++);
       double guessScore = weights.score(guess);
@@ -64,6 +76,11 @@ public class PassiveAggressiveUpdateRule implements UpdateRule {
 
   }
 
+  private void setDiff(SortedSparseVector diff, SortedSparseVector gold, SparseVector guess) {
+    guess.copyTo(guessVector);
+    diff.set(gold, -1.0, guessVector);
+  }
+
   public void setProperty(PropertyName name, Object value) {
     if (name.getHead().equals("signs"))
       enforceSigns = (Boolean) value;
@@ -4,6 +4,7 @@ import thebeast.pml.SparseVector;
 import thebeast.pml.Weights;
 import thebeast.pml.FeatureVector;
 import thebeast.pml.PropertyName;
+import thebeast.util.SortedSparseVector;
 
 import java.util.List;
 
@@ -16,29 +17,43 @@ public class PerceptronUpdateRule implements UpdateRule {
   private double decay = 1.0;
   private boolean enforceSigns = false;
 
+  private SortedSparseVector goldLocal = new SortedSparseVector();
+  private SortedSparseVector goldNN = new SortedSparseVector();
+  private SortedSparseVector goldNP = new SortedSparseVector();
+  private SortedSparseVector guessVector = new SortedSparseVector();
+  private SortedSparseVector diff = new SortedSparseVector();
+
   public void endEpoch() {
     learningRate *= decay;
   }
 
   public void update(FeatureVector gold, List<FeatureVector> candidates, List<Double> losses, Weights weights) {
     double scale = 1.0 / candidates.size();
+    gold.getLocal().copyTo(goldLocal);
+    gold.getFalseVector().copyTo(goldNN);
+    gold.getTrueVector().copyTo(goldNP);
     for (FeatureVector guess : candidates) {
       //FeatureVector guess = candidates.get(candidates.size() - 1);
-      SparseVector diffFree = gold.getLocal().add(-scale, guess.getLocal());
-      weights.add(learningRate, diffFree);
+      setDiff(goldLocal, scale, guess.getLocal());
+      weights.add(learningRate, diff);
       if (enforceSigns) {
         weights.enforceBound(gold.getLocalNonnegativeIndices(), true, 0.0);
         weights.enforceBound(gold.getLocalNonpositiveIndices(), false, 0.0);
       }
-      SparseVector diffNN = gold.getFalseVector().add(-scale, guess.getFalseVector());
-      if (enforceSigns) weights.add(learningRate, diffNN, true);
-      else weights.add(learningRate, diffNN);
-      SparseVector diffNP = gold.getTrueVector().add(-scale, guess.getTrueVector());
-      if (enforceSigns) weights.add(learningRate, diffNP, false);
-      else weights.add(learningRate, diffNP);
+      setDiff(goldNN, scale, guess.getFalseVector());
+      if (enforceSigns) weights.add(learningRate, diff, true);
+      else weights.add(learningRate, diff);
+      setDiff(goldNP, scale, guess.getTrueVector());
+      if (enforceSigns) weights.add(learningRate, diff, false);
+      else weights.add(learningRate, diff);
     }
   }
 
+  private void setDiff(SortedSparseVector gold, double scale, SparseVector guess) {
+    guess.copyTo(guessVector);
+    diff.set(gold, -scale, guessVector);
+  }
+
   public void setProperty(PropertyName name, Object value) {
     if (name.getHead().equals("signs"))
       enforceSigns = (Boolean) value;
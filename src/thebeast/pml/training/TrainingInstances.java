@@ -7,6 +7,7 @@ import thebeast.nod.util.ExpressionBuilder;
 import thebeast.nod.variable.IntVariable;
 import thebeast.pml.*;
 import thebeast.pml.corpora.Corpus;
+import thebeast.util.Prefetcher;
 import thebeast.util.ProgressReporter;
 
 import java.io.File;
@@ -14,7 +15,14 @@ import java.io.IOException;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Stack;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This object represents a list of training instances (gold feature vector, gold solution (+observation) and local
@@ -36,10 +44,12 @@ public class TrainingInstances extends AbstractCollection<TrainingInstance> {
   private Signature signature;
   private boolean loadedFromFile;
   private boolean saveFeatures;
-  private Stack<LocalFeatures> allFeatures = new Stack<LocalFeatures>();
   private Stack<LocalFeatures> usableFeatures = new Stack<LocalFeatures>();
-  private Stack<FeatureVector> allVectors = new Stack<FeatureVector>();
   private Stack<FeatureVector> usableVectors = new Stack<FeatureVector>();
+  private int numDumps = 0;
+  private int prefetchCount = 0;
+  private ArrayList<TrainingInstance> prefetchHolders;
+  private Prefetcher<TrainingInstance> prefetcher;
 
 
   public TrainingInstances(Model model, File file, int maxByteSize, boolean saveFeatures) {
@@ -81,11 +91,49 @@ public class TrainingInstances extends AbstractCollection<TrainingInstance> {
   public TrainingInstances() {
   }
 
+  public int getPrefetchCount() {
+    return prefetchCount;
+  }
+
+  /**
+   * If the instances do not fit into memory they have to be streamed in from disk while iterating. With a positive
+   * prefetch count this happens on a background thread that reads up to <code>prefetchCount</code> instances ahead of
+   * the caller. Note that in this case the instances returned by an iterator are only valid until the next call of
+   * <code>next()</code>.
+   *
+   * @param prefetchCount the number of instances to read ahead, 0 to read instances in blocks on the caller thread.
+   */
+  public void setPrefetchCount(int prefetchCount) {
+    this.prefetchCount = prefetchCount;
+  }
+
   public TrainingInstances(File file, LocalFeatureExtractor extractor, boolean saveFeatures,
                            Corpus corpus, int maxByteSize, ProgressReporter reporter) throws IOException {
+    this(file, extractor, saveFeatures, corpus, maxByteSize, reporter, 1);
+  }
+
+  /**
+   * Generates training instances for a corpus and dumps them to a file. With more than one thread the local features
+   * and gold feature vectors are extracted by a pool of workers, each with its own extractor and solution, while the
+   * calling thread reads the corpus and writes the finished instances to the file in corpus order. Hence the file is
+   * the same for any number of threads.
+   *
+   * @param file         the file to dump the instances to.
+   * @param extractor    the extractor for local features.
+   * @param saveFeatures whether local features should be stored with each instance.
+   * @param corpus       the corpus to generate the instances for.
+   * @param maxByteSize  the number of bytes of instances to keep in memory.
+   * @param reporter     the reporter to report progress to.
+   * @param threads      the number of threads to extract instances with.
+   * @throws IOException if the instances can't be written.
+   */
+  public TrainingInstances(File file, LocalFeatureExtractor extractor, boolean saveFeatures,
+                           Corpus corpus, int maxByteSize, ProgressReporter reporter, int threads) throws IOException {
+    if (threads < 1) throw new IllegalArgumentException("threads must be positive");
     this.saveFeatures = saveFeatures;
     Signature signature = extractor.getModel().getSignature();
-    Solution solution = new Solution(extractor.getModel(), extractor.getWeights());
+    model = extractor.getModel();
+    weights = extractor.getWeights();
     FileSink fileSink = TheBeast.getInstance().getNodServer().createSink(file, 1024);
     active = new ArrayList<TrainingInstance>(10000);
     this.size = corpus.size();
@@ -94,44 +142,15 @@ public class TrainingInstances extends AbstractCollection<TrainingInstance> {
     builder.num(size);
     Interpreter interpreter = TheBeast.getInstance().getNodServer().interpreter();
     fileSink.write(interpreter.createIntVariable(builder.getInt()));
-    int numDumps = 0;
     reporter.started();
-    for (GroundAtoms atoms : corpus) {
-      int memUsage = atoms.getMemoryUsage();
-      if (byteSize + memUsage > maxByteSize) {
-        activeCount += active.size();
-        dump(fileSink);
-        ++numDumps;
-        byteSize = 0;
-      }
-      solution.load(atoms);
-      model = extractor.getModel();
-      weights = extractor.getWeights();
-      LocalFeatures features;
-      FeatureVector vector;
-      if (usableFeatures.isEmpty()){
-        features = new LocalFeatures(model, weights);
-        vector = new FeatureVector();
-        allFeatures.add(features);
-        allVectors.add(vector);
-      } else {
-        features = usableFeatures.pop();
-        vector = usableVectors.pop();
-      }
-      if (saveFeatures){
-        extractor.extract(atoms, features);
-        solution.extractInPlace(features,vector);
-      } else {
-        solution.load(atoms);
-        solution.extractInPlace(vector);
+    if (threads > 1)
+      generateParallel(fileSink, extractor, corpus, maxByteSize, reporter, threads);
+    else {
+      InstanceWorker worker = new InstanceWorker(extractor);
+      for (GroundAtoms atoms : corpus) {
+        append(worker.process(atoms, nextFeatures(), nextVector()), fileSink, maxByteSize);
+        reporter.progressed();
       }
-
-      //TrainingInstance instance = new TrainingInstance(atoms, features, solution.extract(features));
-      TrainingInstance instance = new TrainingInstance(atoms, saveFeatures ? features : null, vector);
-      active.add(instance);
-      byteSize += instance.getMemoryUsage();
-      //++size;
-      reporter.progressed();
     }
     activeCount = numDumps == 0 ? size : activeCount / numDumps;
     dump(fileSink);
@@ -144,19 +163,113 @@ public class TrainingInstances extends AbstractCollection<TrainingInstance> {
     reporter.finished();
   }
 
+  /**
+   * Extracts instances with a pool of threads. Everything that creates variables or constants (reading the corpus,
+   * creating workers, features and vectors) happens on the calling thread; the first instance is extracted here, too,
+   * so that the indices of the weights are up to date before the workers look up weights concurrently.
+   */
+  private void generateParallel(FileSink fileSink, LocalFeatureExtractor extractor, Corpus corpus,
+                                int maxByteSize, ProgressReporter reporter, int threads) throws IOException {
+    final ArrayBlockingQueue<InstanceWorker> workers = new ArrayBlockingQueue<InstanceWorker>(threads);
+    workers.add(new InstanceWorker(extractor));
+    for (int i = 1; i < threads; ++i)
+      workers.add(new InstanceWorker(new LocalFeatureExtractor(model, weights)));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    LinkedList<Future<TrainingInstance>> pending = new LinkedList<Future<TrainingInstance>>();
+    Iterator<GroundAtoms> iterator = corpus.iterator();
+    TheBeast.getInstance().getNodServer().beginParallel();
+    try {
+      if (iterator.hasNext()) {
+        append(workers.peek().process(iterator.next(), nextFeatures(), nextVector()), fileSink, maxByteSize);
+        reporter.progressed();
+      }
+      while (iterator.hasNext() || !pending.isEmpty()) {
+        while (iterator.hasNext() && pending.size() < 2 * threads) {
+          final GroundAtoms atoms = iterator.next();
+          final LocalFeatures features = nextFeatures();
+          final FeatureVector vector = nextVector();
+          pending.add(executor.submit(new Callable<TrainingInstance>() {
+            public TrainingInstance call() throws InterruptedException {
+              InstanceWorker worker = workers.take();
+              try {
+                return worker.process(atoms, features, vector);
+              } finally {
+                workers.put(worker);
+              }
+            }
+          }));
+        }
+        append(pending.removeFirst().get(), fileSink, maxByteSize);
+        reporter.progressed();
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Instance generation failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+      TheBeast.getInstance().getNodServer().endParallel();
+    }
+  }
+
+  /**
+   * An InstanceWorker extracts the local features and the gold feature vector of an instance.
+   */
+  private class InstanceWorker {
+    private LocalFeatureExtractor extractor;
+    private Solution solution;
+
+    private InstanceWorker(LocalFeatureExtractor extractor) {
+      this.extractor = extractor;
+      solution = new Solution(model, weights);
+    }
+
+    private TrainingInstance process(GroundAtoms atoms, LocalFeatures features, FeatureVector vector) {
+      solution.load(atoms);
+      if (saveFeatures) {
+        extractor.extract(atoms, features);
+        solution.extractInPlace(features, vector);
+      } else {
+        solution.extractInPlace(vector);
+      }
+      return new TrainingInstance(atoms, features, vector);
+    }
+  }
+
+  private LocalFeatures nextFeatures() {
+    if (!saveFeatures) return null;
+    return usableFeatures.isEmpty() ? new LocalFeatures(model, weights) : usableFeatures.pop();
+  }
+
+  private FeatureVector nextVector() {
+    return usableVectors.isEmpty() ? new FeatureVector() : usableVectors.pop();
+  }
+
+  private void append(TrainingInstance instance, FileSink fileSink, int maxByteSize) throws IOException {
+    int memUsage = instance.getData().getMemoryUsage();
+    if (byteSize + memUsage > maxByteSize) {
+      activeCount += active.size();
+      dump(fileSink);
+      ++numDumps;
+      byteSize = 0;
+    }
+    active.add(instance);
+    byteSize += instance.getMemoryUsage();
+  }
+
   private void dump(FileSink fileSink) throws IOException {
     for (TrainingInstance instance : active) {
       instance.write(fileSink);
     }
     //fileSink.flush();
     //clear features and make them available for reuse
-    for (LocalFeatures features : allFeatures){
-      features.clear();
-      usableFeatures.add(features);
-    }
-    for (FeatureVector vector: allVectors){
-      vector.clear();
-      usableVectors.add(vector);
+    for (TrainingInstance instance : active) {
+      if (instance.getFeatures() != null) {
+        instance.getFeatures().clear();
+        usableFeatures.add(instance.getFeatures());
+      }
+      instance.getGold().clear();
+      usableVectors.add(instance.getGold());
     }
     if (verbose) System.out.print(">");
     active.clear();
@@ -166,6 +279,10 @@ public class TrainingInstances extends AbstractCollection<TrainingInstance> {
     if (iterating)
       throw new RuntimeException("Dumped Corpus can only have one active iterator at a time!");
     iterating = true;
+    if (prefetchCount > 0 && activeCount < size) {
+      loadedFromFile = false;
+      return prefetchingIterator();
+    }
     try {
       if (!loadedFromFile) {
         fileSource = TheBeast.getInstance().getNodServer().createSource(file, 1024);
@@ -239,6 +356,62 @@ public class TrainingInstances extends AbstractCollection<TrainingInstance> {
     return null;
   }
 
+  private Iterator<TrainingInstance> prefetchingIterator() {
+    if (prefetchHolders == null || prefetchHolders.size() != prefetchCount + 1) {
+      //holders have to be created on this thread, the interpreter is not thread safe
+      prefetchHolders = new ArrayList<TrainingInstance>(prefetchCount + 1);
+      for (int i = 0; i < prefetchCount + 1; ++i)
+        prefetchHolders.add(new TrainingInstance(signature.createGroundAtoms(),
+                saveFeatures ? new LocalFeatures(model, weights) : null, new FeatureVector()));
+    }
+    final FileSource source = TheBeast.getInstance().getNodServer().createSource(file, 1024);
+    try {
+      source.read(TheBeast.getInstance().getNodServer().interpreter().createIntVariable());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    prefetcher = new Prefetcher<TrainingInstance>(prefetchHolders) {
+      int read = 0;
+      int current = 0;
+
+      protected boolean fill(TrainingInstance holder) throws Exception {
+        if (read == size) return false;
+        holder.read(source);
+        ++read;
+        return true;
+      }
+
+      protected void cleanup() throws Exception {
+        source.close();
+      }
+
+      protected void release(TrainingInstance holder) {
+        holder.getData().clear();
+        if (holder.getFeatures() != null) holder.getFeatures().clear();
+        holder.getGold().clear();
+      }
+
+      public TrainingInstance next() {
+        TrainingInstance instance = super.next();
+        if (++current == size) iterating = false;
+        return instance;
+      }
+    };
+    return prefetcher;
+  }
+
+  /**
+   * Ends the current iteration. With a positive prefetch count this stops the background thread and closes the file it
+   * reads from. Needs to be called if an iteration is abandoned before all instances were seen, otherwise no further
+   * iterator can be created.
+   */
+  public synchronized void close() {
+    if (prefetcher != null) {
+      prefetcher.close();
+      prefetcher = null;
+    }
+    iterating = false;
+  }
 
   public int size() {
     return size;
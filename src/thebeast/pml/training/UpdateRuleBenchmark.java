@@ -0,0 +1,63 @@
+package thebeast.pml.training;
+
+import thebeast.pml.FeatureVector;
+import thebeast.pml.TheBeast;
+import thebeast.pml.Weights;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Measures how many updates per second the update rules manage for 1 to 10 candidates on random feature vectors.
+ *
+ * <p>Usage: <code>UpdateRuleBenchmark [featureCount] [activeFeatures] [updates]</code>
+ *
+ * @author Sebastian Riedel
+ */
+public class UpdateRuleBenchmark {
+
+  public static void main(String[] args) {
+    int featureCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int activeCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int updates = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+    Weights weights = TheBeast.getInstance().createSignature().createWeights();
+    Random random = new Random(0);
+    FeatureVector gold = createVector(random, featureCount, activeCount);
+    ArrayList<FeatureVector> allCandidates = new ArrayList<FeatureVector>();
+    ArrayList<Double> allLosses = new ArrayList<Double>();
+    for (int i = 0; i < 10; ++i) {
+      allCandidates.add(createVector(random, featureCount, activeCount));
+      allLosses.add(1.0 + random.nextInt(10));
+    }
+
+    System.out.printf("%-12s %-4s %s\n", "Rule", "k", "updates/s");
+    for (String name : new String[]{"mira", "perceptron", "pa"}) {
+      for (int k = 1; k <= 10; ++k) {
+        UpdateRule rule = name.equals("mira") ? new MiraUpdateRule() :
+                name.equals("perceptron") ? new PerceptronUpdateRule() : new PassiveAggressiveUpdateRule();
+        weights.getWeights().setDoubleArray(new double[featureCount]);
+        ArrayList<FeatureVector> candidates = new ArrayList<FeatureVector>(allCandidates.subList(0, k));
+        ArrayList<Double> losses = new ArrayList<Double>(allLosses.subList(0, k));
+        //warm up
+        for (int i = 0; i < updates / 10; ++i) rule.update(gold, candidates, losses, weights);
+        long start = System.nanoTime();
+        for (int i = 0; i < updates; ++i) rule.update(gold, candidates, losses, weights);
+        double seconds = (System.nanoTime() - start) / 1E9;
+        System.out.printf("%-12s %-4d %.1f\n", name, k, updates / seconds);
+      }
+    }
+  }
+
+  private static FeatureVector createVector(Random random, int featureCount, int activeCount) {
+    FeatureVector result = new FeatureVector();
+    for (int i = 0; i < activeCount; ++i) {
+      int index = random.nextInt(featureCount);
+      if (i % 10 == 0) result.getFalseVector().addValue(index, 1.0);
+      else if (i % 10 == 1) result.getTrueVector().addValue(index, 1.0);
+      else result.getLocal().addValue(index, 1.0);
+    }
+    return result;
+  }
+
+}
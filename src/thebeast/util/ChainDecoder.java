@@ -0,0 +1,152 @@
+package thebeast.util;
+
+import java.util.Arrays;
+
+/**
+ * Finds the highest scoring labelling of a first-order chain, either one label per position (Viterbi) or a
+ * segmentation into non-overlapping labelled spans with unlabelled positions in between (semi-Markov Viterbi, as used
+ * for chunking). Transition scores are given as a matrix where <code>transitions[a][b]</code> is the score of label a
+ * directly followed by label b. <code>Double.NEGATIVE_INFINITY</code> marks impossible labels.
+ *
+ * @author Sebastian Riedel
+ */
+public class ChainDecoder {
+
+  private static final double NONE = Double.NEGATIVE_INFINITY;
+
+  /**
+   * Finds the best label for each position.
+   *
+   * @param scores      the score of each label at each position (scores[position][label]).
+   * @param transitions the transition scores.
+   * @return the label of each position or null if there is a position without any possible label.
+   */
+  public static int[] viterbi(double[][] scores, double[][] transitions) {
+    int n = scores.length;
+    if (n == 0) return new int[0];
+    int labelCount = transitions.length;
+    double[][] best = new double[n][labelCount];
+    int[][] previous = new int[n][labelCount];
+    System.arraycopy(scores[0], 0, best[0], 0, labelCount);
+    for (int i = 1; i < n; ++i)
+      for (int label = 0; label < labelCount; ++label) {
+        best[i][label] = NONE;
+        previous[i][label] = -1;
+        if (scores[i][label] == NONE) continue;
+        for (int last = 0; last < labelCount; ++last) {
+          if (best[i - 1][last] == NONE) continue;
+          double score = best[i - 1][last] + transitions[last][label];
+          if (previous[i][label] == -1 || score > best[i][label]) {
+            best[i][label] = score;
+            previous[i][label] = last;
+          }
+        }
+        if (previous[i][label] != -1) best[i][label] += scores[i][label];
+      }
+    int[] result = new int[n];
+    result[n - 1] = argmax(best[n - 1]);
+    if (result[n - 1] == -1) return null;
+    for (int i = n - 1; i > 0; --i)
+      result[i - 1] = previous[i][result[i]];
+    return result;
+  }
+
+  /**
+   * Finds the best set of non-overlapping spans. Transitions only apply to spans directly next to each other.
+   *
+   * @param length      the number of positions.
+   * @param begins      the first position of each candidate span.
+   * @param ends        the last position of each candidate span.
+   * @param labels      the label of each candidate span.
+   * @param scores      the score of each candidate span.
+   * @param transitions the transition scores.
+   * @return the indices of the selected spans, in the order of their positions.
+   */
+  public static int[] semiMarkov(int length, int[] begins, int[] ends, int[] labels, double[] scores,
+                                 double[][] transitions) {
+    int labelCount = transitions.length;
+    //the candidate spans by end position
+    int[][] byEnd = new int[length][];
+    int[] counts = new int[length];
+    for (int end : ends) ++counts[end];
+    for (int i = 0; i < length; ++i) byEnd[i] = new int[counts[i]];
+    for (int span = 0; span < ends.length; ++span) byEnd[ends[span]][--counts[ends[span]]] = span;
+
+    //outside[i]: best score for the first i positions if position i-1 is not part of a span
+    //inside[i][c]: best score for the first i positions if a span with label c ends at position i-1
+    double[] outside = new double[length + 1];
+    double[][] inside = new double[length + 1][labelCount];
+    int[] outsidePrevious = new int[length + 1];
+    int[][] insideSpan = new int[length + 1][labelCount];
+    int[][] insidePrevious = new int[length + 1][labelCount];
+    Arrays.fill(inside[0], NONE);
+    for (int i = 1; i <= length; ++i) {
+      int last = argmax(inside[i - 1]);
+      outsidePrevious[i] = last == -1 || outside[i - 1] >= inside[i - 1][last] ? -1 : last;
+      outside[i] = outsidePrevious[i] == -1 ? outside[i - 1] : inside[i - 1][last];
+      Arrays.fill(inside[i], NONE);
+      for (int span : byEnd[i - 1]) {
+        int b = begins[span], c = labels[span];
+        double before = outside[b];
+        int previous = -1;
+        for (int c2 = 0; c2 < labelCount; ++c2)
+          if (inside[b][c2] != NONE && inside[b][c2] + transitions[c2][c] > before) {
+            before = inside[b][c2] + transitions[c2][c];
+            previous = c2;
+          }
+        double score = before + scores[span];
+        if (score > inside[i][c]) {
+          inside[i][c] = score;
+          insideSpan[i][c] = span;
+          insidePrevious[i][c] = previous;
+        }
+      }
+    }
+
+    //backtrack
+    int[] result = new int[length];
+    int count = 0;
+    int i = length;
+    int state = argmax(inside[length]);
+    if (state != -1 && outside[length] >= inside[length][state]) state = -1;
+    while (i > 0) {
+      if (state == -1) {
+        state = outsidePrevious[i];
+        --i;
+      } else {
+        int span = insideSpan[i][state];
+        result[count++] = span;
+        state = insidePrevious[i][state];
+        i = begins[span];
+      }
+    }
+    int[] spans = new int[count];
+    for (int k = 0; k < count; ++k) spans[k] = result[count - k - 1];
+    return spans;
+  }
+
+  private static int argmax(double[] values) {
+    int result = -1;
+    for (int i = 0; i < values.length; ++i)
+      if (values[i] != NONE && (result == -1 || values[i] > values[result])) result = i;
+    return result;
+  }
+
+  /**
+   * Calculates the score of a labelling.
+   *
+   * @param scores      the score of each label at each position.
+   * @param transitions the transition scores.
+   * @param labels      the label of each position.
+   * @return the sum of all label and transition scores.
+   */
+  public static double score(double[][] scores, double[][] transitions, int[] labels) {
+    double result = 0;
+    for (int i = 0; i < labels.length; ++i) {
+      result += scores[i][labels[i]];
+      if (i > 0) result += transitions[labels[i - 1]][labels[i]];
+    }
+    return result;
+  }
+
+}
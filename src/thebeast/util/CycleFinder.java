@@ -1,13 +1,200 @@
 package thebeast.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 
 /**
+ * Finds cycles in directed graphs. For each vertex that lies on a cycle (visited in ascending order and not already
+ * part of a cycle found before) the shortest cycle through this vertex is returned.
+ *
+ * <p>The graph is stored as adjacency lists, the strongly connected components are found with Tarjan's algorithm and
+ * each cycle is extracted by a breadth first search within the component of its first vertex, so time and memory are
+ * linear in the number of edges (times the number of cycles).
+ *
  * @author Sebastian Riedel
  */
 public class CycleFinder {
 
+  private int vertexCount;
+  private int[][] successors, predecessors;
+  private int[] successorCounts, predecessorCounts;
+  private boolean[] selfLoop;
+  //the strongly connected component of each vertex
+  private int[] components;
+
+  //scratch space
+  private int[] stack, marks, distances, queue;
+  private int mark = 0;
+
+  private CycleFinder(int vertexCount) {
+    this.vertexCount = vertexCount;
+    successors = new int[vertexCount][];
+    predecessors = new int[vertexCount][];
+    successorCounts = new int[vertexCount];
+    predecessorCounts = new int[vertexCount];
+    selfLoop = new boolean[vertexCount];
+    components = new int[vertexCount];
+    stack = new int[vertexCount];
+    marks = new int[vertexCount];
+    distances = new int[vertexCount];
+    queue = new int[vertexCount];
+  }
+
+  /**
+   * Finds the vertices of cycles in the graph with the given edges.
+   *
+   * @param edges       an array of (from,to) pairs.
+   * @param vertexCount the number of vertices.
+   * @return an array of cycles, each one represented by the sequence of its vertices. For each vertex on a cycle (in
+   *         ascending order) that does not appear in a cycle returned before, the shortest cycle starting at this
+   *         vertex is returned.
+   */
   public static int[][] findCycleVertices(int[][] edges, int vertexCount) {
+    CycleFinder finder = new CycleFinder(vertexCount);
+    for (int[] edge : edges) finder.addEdge(edge[0], edge[1]);
+    finder.findComponents();
+    return finder.findCycles();
+  }
+
+  private static int[] add(int[] list, int count, int value) {
+    if (list == null) list = new int[2];
+    else if (count == list.length) {
+      int[] newList = new int[count * 2];
+      System.arraycopy(list, 0, newList, 0, count);
+      list = newList;
+    }
+    list[count] = value;
+    return list;
+  }
+
+  private void addEdge(int from, int to) {
+    for (int i = 0; i < successorCounts[from]; ++i)
+      if (successors[from][i] == to) return;
+    successors[from] = add(successors[from], successorCounts[from]++, to);
+    predecessors[to] = add(predecessors[to], predecessorCounts[to]++, from);
+    if (from == to) selfLoop[from] = true;
+  }
+
+  private int[][] findCycles() {
+    int[] componentSizes = new int[vertexCount];
+    for (int vertex = 0; vertex < vertexCount; ++vertex) ++componentSizes[components[vertex]];
+    boolean[] inCycle = new boolean[vertexCount];
+    ArrayList<int[]> cycles = new ArrayList<int[]>();
+    int[] cycle = new int[vertexCount];
+    for (int start = 0; start < vertexCount; ++start) {
+      if (inCycle[start] || !selfLoop[start] && componentSizes[components[start]] == 1) continue;
+      int found = distancesTo(start);
+      int length = 0;
+      cycle[length++] = start;
+      int next = start;
+      search:
+      while (true) {
+        int min = Integer.MAX_VALUE;
+        int best = -1;
+        for (int i = 0; i < successorCounts[next]; ++i) {
+          int vertex = successors[next][i];
+          if (vertex == start) break search;
+          if (marks[vertex] == found && distances[vertex] < min) {
+            min = distances[vertex];
+            best = vertex;
+          }
+        }
+        next = best;
+        inCycle[next] = true;
+        cycle[length++] = next;
+      }
+      int[] result = new int[length];
+      System.arraycopy(cycle, 0, result, 0, length);
+      cycles.add(result);
+    }
+    return cycles.toArray(new int[cycles.size()][]);
+  }
+
+  /**
+   * Calculates the distance of each vertex in the component of the target to the target (by a breadth first search
+   * along the reversed edges).
+   *
+   * @param target the vertex to calculate the distances to.
+   * @return the mark of the vertices whose distance has been calculated.
+   */
+  private int distancesTo(int target) {
+    int found = ++mark;
+    int component = components[target];
+    int head = 0, tail = 0;
+    queue[tail++] = target;
+    marks[target] = found;
+    distances[target] = 0;
+    while (head < tail) {
+      int vertex = queue[head++];
+      for (int i = 0; i < predecessorCounts[vertex]; ++i) {
+        int previous = predecessors[vertex][i];
+        if (marks[previous] != found && components[previous] == component) {
+          marks[previous] = found;
+          distances[previous] = distances[vertex] + 1;
+          queue[tail++] = previous;
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Tarjan's algorithm (without recursion, so long paths don't overflow the stack).
+   */
+  private void findComponents() {
+    int[] index = new int[vertexCount];
+    int[] lowLink = new int[vertexCount];
+    int[] edgePointers = new int[vertexCount];
+    boolean[] onStack = new boolean[vertexCount];
+    int[] callStack = new int[vertexCount];
+    Arrays.fill(index, -1);
+    int counter = 0, stackSize = 0;
+    for (int root = 0; root < vertexCount; ++root) {
+      if (index[root] != -1) continue;
+      int depth = 0;
+      callStack[depth++] = root;
+      index[root] = lowLink[root] = counter++;
+      stack[stackSize++] = root;
+      onStack[root] = true;
+      while (depth > 0) {
+        int vertex = callStack[depth - 1];
+        if (edgePointers[vertex] < successorCounts[vertex]) {
+          int next = successors[vertex][edgePointers[vertex]++];
+          if (index[next] == -1) {
+            index[next] = lowLink[next] = counter++;
+            stack[stackSize++] = next;
+            onStack[next] = true;
+            callStack[depth++] = next;
+          } else if (onStack[next] && index[next] < lowLink[vertex])
+            lowLink[vertex] = index[next];
+        } else {
+          --depth;
+          if (lowLink[vertex] == index[vertex]) {
+            int member;
+            do {
+              member = stack[--stackSize];
+              onStack[member] = false;
+              components[member] = vertex;
+            } while (member != vertex);
+          }
+          if (depth > 0) {
+            int parent = callStack[depth - 1];
+            if (lowLink[vertex] < lowLink[parent]) lowLink[parent] = lowLink[vertex];
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The original implementation, based on an incrementally calculated all-pairs distance matrix. It needs quadratic
+   * memory and is only kept to compare results and running times (see {@link CycleFinderBenchmark}).
+   *
+   * @param edges       an array of (from,to) pairs.
+   * @param vertexCount the number of vertices.
+   * @return the same cycles as {@link #findCycleVertices(int[][], int)}.
+   */
+  static int[][] findCycleVerticesDense(int[][] edges, int vertexCount) {
     boolean[][] connected = new boolean[vertexCount][vertexCount];
     int[][] distances = new int[vertexCount][vertexCount];
     for (int i = 0; i < vertexCount; ++i)
@@ -0,0 +1,111 @@
+package thebeast.util;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares the running times of the sparse and the dense (original) cycle finder. Graphs are random graphs with about
+ * two edges per vertex, and dependency graphs (random trees or the trees of a CoNLL file) in which every tenth head
+ * has been replaced by a random token, as in the intermediate solutions of a cutting plane run that has not yet added
+ * all acyclicity constraints.
+ *
+ * <p>Usage: <code>CycleFinderBenchmark [conll file]</code>
+ *
+ * @author Sebastian Riedel
+ */
+public class CycleFinderBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    Random random = new Random(0);
+    System.out.printf("%-22s %-10s %-12s %-12s\n", "Graphs", "Vertices", "Sparse(ms)", "Dense(ms)");
+    for (int vertexCount : new int[]{20, 50, 100, 200, 400}) {
+      ArrayList<int[][]> graphs = new ArrayList<int[][]>();
+      for (int i = 0; i < 200; ++i) graphs.add(createRandomGraph(random, vertexCount, 2 * vertexCount));
+      compare("random", graphs, vertexCount);
+    }
+    for (int length : new int[]{25, 50, 100, 200}) {
+      ArrayList<int[][]> graphs = new ArrayList<int[][]>();
+      for (int i = 0; i < 200; ++i) graphs.add(perturb(random, createRandomTree(random, length)));
+      compare("random trees", graphs, length + 1);
+    }
+    if (args.length > 0) {
+      ArrayList<int[][]> trees = readTrees(args[0]);
+      ArrayList<int[][]> graphs = new ArrayList<int[][]>();
+      int maxLength = 0;
+      for (int[][] tree : trees) {
+        graphs.add(perturb(random, tree));
+        maxLength = Math.max(maxLength, tree.length + 1);
+      }
+      compare("dependency (" + graphs.size() + ")", graphs, maxLength);
+    }
+  }
+
+  private static void compare(String name, ArrayList<int[][]> graphs, int vertexCount) {
+    //warm up
+    for (int[][] graph : graphs) {
+      CycleFinder.findCycleVertices(graph, vertexCount);
+      CycleFinder.findCycleVerticesDense(graph, vertexCount);
+    }
+    long start = System.nanoTime();
+    for (int[][] graph : graphs) CycleFinder.findCycleVertices(graph, vertexCount);
+    double sparse = (System.nanoTime() - start) / 1E6;
+    start = System.nanoTime();
+    for (int[][] graph : graphs) CycleFinder.findCycleVerticesDense(graph, vertexCount);
+    double dense = (System.nanoTime() - start) / 1E6;
+    System.out.printf("%-22s %-10d %-12.2f %-12.2f\n", name, vertexCount, sparse, dense);
+  }
+
+  private static int[][] createRandomGraph(Random random, int vertexCount, int edgeCount) {
+    int[][] edges = new int[edgeCount][];
+    for (int i = 0; i < edgeCount; ++i)
+      edges[i] = new int[]{random.nextInt(vertexCount), random.nextInt(vertexCount)};
+    return edges;
+  }
+
+  private static int[][] createRandomTree(Random random, int length) {
+    //token i attaches to a token close to it (or the root)
+    int[][] edges = new int[length][];
+    for (int token = 1; token <= length; ++token) {
+      int head = token + random.nextInt(7) - 3;
+      if (head < 0 || head > length || head == token) head = 0;
+      edges[token - 1] = new int[]{head, token};
+    }
+    return edges;
+  }
+
+  private static int[][] perturb(Random random, int[][] tree) {
+    int[][] result = new int[tree.length][];
+    for (int i = 0; i < tree.length; ++i)
+      result[i] = random.nextInt(10) == 0 ?
+              new int[]{1 + random.nextInt(tree.length), tree[i][1]} : tree[i].clone();
+    return result;
+  }
+
+  /**
+   * Reads the (head, modifier) edges of all sentences in a CoNLL file (head in column 7, 0 is the root).
+   *
+   * @param file the file to read.
+   * @return one array of edges per sentence.
+   * @throws IOException if reading fails.
+   */
+  private static ArrayList<int[][]> readTrees(String file) throws IOException {
+    ArrayList<int[][]> result = new ArrayList<int[][]>();
+    ArrayList<int[]> edges = new ArrayList<int[]>();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+      String[] columns = line.trim().split("\\s+");
+      if (columns.length < 7) {
+        if (edges.size() > 0) result.add(edges.toArray(new int[edges.size()][]));
+        edges.clear();
+      } else
+        edges.add(new int[]{Integer.parseInt(columns[6]), Integer.parseInt(columns[0])});
+    }
+    if (edges.size() > 0) result.add(edges.toArray(new int[edges.size()][]));
+    reader.close();
+    return result;
+  }
+
+}
@@ -0,0 +1,460 @@
+package thebeast.util;
+
+import thebeast.pml.PropertyName;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A hierarchical profiler with nanosecond resolution. In contrast to the {@link TreeProfiler} it
+ *
+ * <ul>
+ * <li>measures with <code>System.nanoTime()</code>,
+ * <li>finds child nodes without hashing: callers can register {@link Operation} handles once and use {@link
+ * #start(Operation)}, and {@link #start(String)} first compares names by identity (which works for string literals),
+ * <li>counts the bytes allocated by the current thread within each operation (if the JVM supports it),
+ * <li>keeps one tree per thread so it can be shared by threads that run in parallel,
+ * <li>can export its trees as JSON or CSV (see {@link #write(PrintStream, String)}).
+ * </ul>
+ *
+ * @author Sebastian Riedel
+ */
+public class NanoProfiler implements Profiler {
+
+  private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+  private ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<String, Operation>();
+  private final ArrayList<ThreadTree> trees = new ArrayList<ThreadTree>();
+  private ThreadLocal<ThreadTree> tree = new ThreadLocal<ThreadTree>() {
+    protected ThreadTree initialValue() {
+      ThreadTree result = new ThreadTree(Thread.currentThread());
+      synchronized (trees) {
+        trees.add(result);
+      }
+      return result;
+    }
+  };
+  private boolean countAllocations = isAllocationCountingSupported();
+  private int maxPrintDepth = Integer.MAX_VALUE;
+
+  /**
+   * A handle for an operation. Operations should be registered once (e.g. in a field) and then be used for {@link
+   * NanoProfiler#start(Operation)}.
+   */
+  public static final class Operation {
+    private final int id;
+    private final String name;
+
+    private Operation(int id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String toString() {
+      return name;
+    }
+  }
+
+  protected static class Node {
+    private final Operation operation;
+    private final Node parent;
+    private Node[] byId = new Node[0];
+    private ArrayList<Node> children = new ArrayList<Node>();
+    int calls;
+    long totalNanos, startedAt, allocated, allocatedAtStart, reported;
+
+    private Node(Operation operation, Node parent) {
+      this.operation = operation;
+      this.parent = parent;
+    }
+
+    private Node getChild(Operation operation) {
+      if (operation.id < byId.length && byId[operation.id] != null) return byId[operation.id];
+      if (operation.id >= byId.length) {
+        Node[] newById = new Node[operation.id + 8];
+        System.arraycopy(byId, 0, newById, 0, byId.length);
+        byId = newById;
+      }
+      Node node = new Node(operation, this);
+      byId[operation.id] = node;
+      children.add(node);
+      return node;
+    }
+
+    private Node getChild(String name) {
+      //literals are interned, so this usually succeeds without comparing characters
+      for (int i = 0; i < children.size(); ++i) {
+        Node child = children.get(i);
+        if (child.operation.name == name) return child;
+      }
+      return null;
+    }
+
+    public String getName() {
+      return operation == null ? "root" : operation.name;
+    }
+
+    public int getCalls() {
+      return calls;
+    }
+
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    public long getAllocatedBytes() {
+      return allocated;
+    }
+
+    public long getReportedBytes() {
+      return reported;
+    }
+
+    public List<Node> getChildren() {
+      return children;
+    }
+  }
+
+  private static class ThreadTree {
+    private String threadName;
+    private long threadId;
+    private Node root = new Node(null, null);
+    private Node current = root;
+    //set by reset(), the owning thread replaces its nodes when it is back at the top level
+    private volatile boolean resetPending;
+
+    private ThreadTree(Thread thread) {
+      this.threadName = thread.getName();
+      this.threadId = thread.getId();
+    }
+  }
+
+  /**
+   * Returns the handle for the operation with the given name, creating it if necessary.
+   *
+   * @param name the name of the operation.
+   * @return a handle that can be passed to {@link #start(Operation)}.
+   */
+  public Operation register(String name) {
+    Operation result = operations.get(name);
+    if (result != null) return result;
+    synchronized (operations) {
+      result = operations.get(name);
+      if (result == null) {
+        result = new Operation(operations.size(), name);
+        operations.put(name, result);
+      }
+    }
+    return result;
+  }
+
+  public void start(Operation operation) {
+    ThreadTree tree = currentTree();
+    start(tree, tree.current.getChild(operation));
+  }
+
+  public void start(String operation) {
+    ThreadTree tree = currentTree();
+    Node node = tree.current.getChild(operation);
+    if (node == null) node = tree.current.getChild(register(operation));
+    start(tree, node);
+  }
+
+  /**
+   * Returns the tree of the current thread, after applying a pending reset if the thread is at the top level.
+   */
+  private ThreadTree currentTree() {
+    ThreadTree tree = this.tree.get();
+    if (tree.resetPending && tree.current == tree.root) {
+      tree.root = new Node(null, null);
+      tree.current = tree.root;
+      tree.resetPending = false;
+    }
+    return tree;
+  }
+
+  private void start(ThreadTree tree, Node node) {
+    if (countAllocations) node.allocatedAtStart = allocatedBytes(tree.threadId);
+    tree.current = node;
+    node.startedAt = System.nanoTime();
+  }
+
+  public Profiler end() {
+    long now = System.nanoTime();
+    ThreadTree tree = this.tree.get();
+    Node node = tree.current;
+    if (node.parent == null)
+      throw new IllegalStateException("end() was called without a matching start()");
+    node.totalNanos += now - node.startedAt;
+    ++node.calls;
+    if (countAllocations) node.allocated += allocatedBytes(tree.threadId) - node.allocatedAtStart;
+    tree.current = node.parent;
+    return this;
+  }
+
+  public void addAllocatedBytes(long bytes) {
+    tree.get().current.reported += bytes;
+  }
+
+  /**
+   * Are allocations counted per operation.
+   *
+   * @return true iff the profiler measures the bytes allocated by each operation.
+   */
+  public boolean isCountAllocations() {
+    return countAllocations;
+  }
+
+  /**
+   * Switches counting of allocations on or off. Counting has a small cost for each start and end, and is only
+   * possible if the JVM supports measuring allocations per thread.
+   *
+   * @param countAllocations true if allocations should be counted.
+   */
+  public void setCountAllocations(boolean countAllocations) {
+    this.countAllocations = countAllocations && isAllocationCountingSupported();
+  }
+
+  private static boolean isAllocationCountingSupported() {
+    if (!(threadBean instanceof com.sun.management.ThreadMXBean)) return false;
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+    return bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled();
+  }
+
+  private static long allocatedBytes(long threadId) {
+    return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId);
+  }
+
+  /**
+   * Removes all measurements. The trees of other threads are only changed by these threads, so a thread that is
+   * inside an operation at the moment starts with an empty tree once it is back at the top level. Until then its
+   * measurements are not reported anymore.
+   */
+  public void reset() {
+    synchronized (trees) {
+      for (ThreadTree tree : trees)
+        tree.resetPending = true;
+    }
+    currentTree();
+  }
+
+  private List<ThreadTree> getTrees() {
+    ArrayList<ThreadTree> result = new ArrayList<ThreadTree>();
+    synchronized (trees) {
+      for (ThreadTree tree : trees)
+        if (!tree.resetPending) result.add(tree);
+    }
+    return result;
+  }
+
+  private ArrayList<Node> getQualifiedNodes(String qualifiedName) {
+    String[] names = qualifiedName.split("\\.");
+    ArrayList<Node> result = new ArrayList<Node>();
+    for (ThreadTree tree : getTrees()) {
+      Node node = tree.root;
+      for (int i = 0; i < names.length && node != null; ++i) {
+        Node child = node.getChild(names[i]);
+        if (child == null) {
+          Operation operation = operations.get(names[i]);
+          child = operation == null || operation.id >= node.byId.length ? null : node.byId[operation.id];
+        }
+        node = child;
+      }
+      if (node != null) result.add(node);
+    }
+    return result;
+  }
+
+  public double getAverageTime(String operation) {
+    double calls = getCalls(operation);
+    return calls == 0 ? 0 : getTotalNanos(operation) / 1E6 / calls;
+  }
+
+  public long getTotalTime(String operation) {
+    return getTotalNanos(operation) / 1000000;
+  }
+
+  /**
+   * Returns the total time spent in an operation, summed over all threads.
+   *
+   * @param operation the qualified name of the operation (names separated by ".").
+   * @return the time in nanoseconds.
+   */
+  public long getTotalNanos(String operation) {
+    long result = 0;
+    for (Node node : getQualifiedNodes(operation)) result += node.totalNanos;
+    return result;
+  }
+
+  /**
+   * Returns the bytes allocated within an operation, summed over all threads.
+   *
+   * @param operation the qualified name of the operation (names separated by ".").
+   * @return the number of allocated bytes, 0 if allocations are not counted.
+   */
+  public long getAllocatedBytes(String operation) {
+    long result = 0;
+    for (Node node : getQualifiedNodes(operation)) result += node.allocated;
+    return result;
+  }
+
+  public double getCalls(String operation) {
+    int result = 0;
+    for (Node node : getQualifiedNodes(operation)) result += node.calls;
+    return result;
+  }
+
+  public void setProperty(PropertyName name, Object value) {
+    if (name.getHead().equals("reset") && (Boolean) value)
+      reset();
+    else if (name.getHead().equals("maxDepth"))
+      maxPrintDepth = (Integer) value;
+    else if (name.getHead().equals("allocations"))
+      setCountAllocations((Boolean) value);
+  }
+
+  public Object getProperty(PropertyName name) {
+    if (name.getHead().equals("calls")) {
+      return getCalls(name.getTail().toString());
+    } else if (name.getHead().equals("total")) {
+      return getTotalTime(name.getTail().toString());
+    } else if (name.getHead().equals("average")) {
+      return getAverageTime(name.getTail().toString());
+    } else if (name.getHead().equals("allocated")) {
+      return getAllocatedBytes(name.getTail().toString());
+    } else if (name.getHead().equals("json")) {
+      return toJSON();
+    } else if (name.getHead().equals("csv")) {
+      return toCSV();
+    }
+    return null;
+  }
+
+  /**
+   * Writes all measurements in a machine readable format.
+   *
+   * @param out    the stream to write to.
+   * @param format either "json" or "csv".
+   */
+  public void write(PrintStream out, String format) {
+    if ("json".equals(format)) out.print(toJSON());
+    else if ("csv".equals(format)) out.print(toCSV());
+    else throw new IllegalArgumentException("Profiles can only be written as json or csv, not as " + format);
+  }
+
+  /**
+   * Returns all measurements as one JSON object with a list of threads, each having a tree of operations.
+   *
+   * @return a JSON representation of this profile.
+   */
+  public String toJSON() {
+    StringBuffer buffer = new StringBuffer();
+    buffer.append("{\"threads\":[");
+    int index = 0;
+    for (ThreadTree tree : getTrees()) {
+      if (index++ > 0) buffer.append(",");
+      buffer.append("{\"name\":").append(quoteJSON(tree.threadName));
+      buffer.append(",\"id\":").append(tree.threadId);
+      buffer.append(",\"operations\":");
+      appendJSON(buffer, tree.root.children);
+      buffer.append("}");
+    }
+    buffer.append("]}\n");
+    return buffer.toString();
+  }
+
+  private void appendJSON(StringBuffer buffer, List<Node> nodes) {
+    buffer.append("[");
+    for (int i = 0; i < nodes.size(); ++i) {
+      Node node = nodes.get(i);
+      if (i > 0) buffer.append(",");
+      buffer.append("{\"name\":").append(quoteJSON(node.getName()));
+      buffer.append(",\"calls\":").append(node.calls);
+      buffer.append(",\"totalNanos\":").append(node.totalNanos);
+      buffer.append(",\"allocatedBytes\":").append(node.allocated);
+      buffer.append(",\"reportedBytes\":").append(node.reported);
+      buffer.append(",\"children\":");
+      appendJSON(buffer, node.children);
+      buffer.append("}");
+    }
+    buffer.append("]");
+  }
+
+  private static String quoteJSON(String text) {
+    StringBuffer result = new StringBuffer("\"");
+    for (int i = 0; i < text.length(); ++i) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') result.append('\\').append(c);
+      else if (c < ' ') result.append(String.format("\\u%04x", (int) c));
+      else result.append(c);
+    }
+    return result.append("\"").toString();
+  }
+
+  /**
+   * Returns all measurements as CSV with one row per thread and operation. Operations are identified by their
+   * qualified name (names of all enclosing operations separated by ".").
+   *
+   * @return a CSV table with a header row.
+   */
+  public String toCSV() {
+    StringBuffer buffer = new StringBuffer();
+    buffer.append("thread,operation,calls,totalNanos,averageNanos,allocatedBytes,reportedBytes\n");
+    for (ThreadTree tree : getTrees())
+      appendCSV(buffer, tree.threadName, null, tree.root.children);
+    return buffer.toString();
+  }
+
+  private void appendCSV(StringBuffer buffer, String thread, String prefix, List<Node> nodes) {
+    for (Node node : nodes) {
+      String name = prefix == null ? node.getName() : prefix + "." + node.getName();
+      buffer.append(quoteCSV(thread)).append(",").append(quoteCSV(name)).append(",");
+      buffer.append(node.calls).append(",").append(node.totalNanos).append(",");
+      buffer.append(node.calls == 0 ? 0 : node.totalNanos / node.calls).append(",");
+      buffer.append(node.allocated).append(",").append(node.reported).append("\n");
+      appendCSV(buffer, thread, name, node.children);
+    }
+  }
+
+  private static String quoteCSV(String text) {
+    if (text.indexOf(',') == -1 && text.indexOf('"') == -1 && text.indexOf('\n') == -1) return text;
+    return "\"" + text.replace("\"", "\"\"") + "\"";
+  }
+
+  public String toString() {
+    StringBuffer buffer = new StringBuffer();
+    List<ThreadTree> trees = getTrees();
+    for (ThreadTree tree : trees) {
+      if (trees.size() > 1) buffer.append("thread ").append(tree.threadName).append("\n");
+      else buffer.append("root\n");
+      for (Node node : tree.root.children)
+        print(buffer, node, 3, 0);
+    }
+    return buffer.toString();
+  }
+
+  private void print(StringBuffer buffer, Node node, int indent, int depth) {
+    if (depth >= maxPrintDepth) return;
+    for (int i = 0; i < indent; ++i) buffer.append(" ");
+    Formatter formatter = new Formatter();
+    double average = node.calls == 0 ? 0 : node.totalNanos / 1E6 / node.calls;
+    if (countAllocations)
+      formatter.format("%-10s %-3.3fms %d bytes (%d calls)\n", node.getName(), average,
+              node.allocated / Math.max(node.calls, 1), node.calls);
+    else
+      formatter.format("%-10s %-3.3fms (%d calls)\n", node.getName(), average, node.calls);
+    buffer.append(formatter.toString());
+    for (Node child : node.children)
+      print(buffer, child, indent + 3, depth + 1);
+  }
+
+}
@@ -26,6 +26,10 @@ public class NullProfiler implements Profiler {
     return this;
   }
 
+  public void addAllocatedBytes(long bytes) {
+
+  }
+
 
   public String toString() {
     return "No profile available";
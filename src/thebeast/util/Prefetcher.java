@@ -0,0 +1,194 @@
+package thebeast.util;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A Prefetcher fills a fixed pool of reusable holder objects on a background thread while the caller consumes
+ * previously filled ones. The pool size bounds the memory used: once all holders are filled the background thread
+ * blocks until the caller hands one back (which happens implicitly with the next call to {@link #next()}).
+ *
+ * <p>Holders returned by {@link #next()} are only valid until the following call of {@link #next()}, until {@link
+ * #hasNext()} returns false or until the prefetcher is closed. The {@link #release(Object)} method is always called on
+ * the consumer thread so that holders can be detached from any state they share with other objects of the consumer
+ * before a background thread (of this or another prefetcher with the same holders) writes into them again.
+ *
+ * <p>Resources the background thread reads from are released in {@link #cleanup()}. The background thread is a
+ * daemon thread and stops after the last element. A consumer that stops earlier has to call {@link #close()} (best in
+ * a <code>finally</code> block), otherwise the thread and its resources stay around until the program ends.
+ *
+ * @author Sebastian Riedel
+ */
+public abstract class Prefetcher<T> implements Iterator<T> {
+
+  private BlockingQueue<T> free;
+  private BlockingQueue<Object> filled;
+  private T current;
+  private Object lookahead;
+  private Thread thread;
+  private int waits = 0;
+  private boolean closed = false;
+
+  private static final Object END = new Object();
+
+  /**
+   * Creates a prefetcher. The background thread is started with the first call of {@link #hasNext()} or {@link
+   * #next()} (and not here, because subclasses are not initialized yet).
+   *
+   * @param holders the pool of holders to fill (at least two: one for the caller, one for the background thread).
+   */
+  protected Prefetcher(List<T> holders) {
+    if (holders.size() < 2) throw new IllegalArgumentException("A prefetcher needs at least two holders");
+    free = new ArrayBlockingQueue<T>(holders.size(), false, holders);
+    filled = new ArrayBlockingQueue<Object>(holders.size() + 1);
+    thread = new Thread(new Runnable() {
+      public void run() {
+        produce();
+      }
+    }, "prefetcher");
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Fills the given holder with the next element. Called on the background thread.
+   *
+   * @param holder a holder that is not in use by the consumer.
+   * @return false if there are no more elements (the holder is then discarded).
+   * @throws Exception if anything goes wrong, the exception will be rethrown in the consumer thread.
+   */
+  protected abstract boolean fill(T holder) throws Exception;
+
+  /**
+   * Called on the consumer thread before a holder is given back to the background thread.
+   *
+   * @param holder the holder that the consumer doesn't need anymore.
+   */
+  protected void release(T holder) {
+
+  }
+
+  /**
+   * Called on the background thread when it stops, after the last element, after an error or because the prefetcher
+   * was closed. If the prefetcher is closed before the background thread was started it is called on the consumer
+   * thread.
+   *
+   * @throws Exception if the resources can't be released.
+   */
+  protected void cleanup() throws Exception {
+
+  }
+
+  private void produce() {
+    try {
+      while (true) {
+        T holder = free.take();
+        if (!fill(holder)) break;
+        filled.put(holder);
+      }
+      filled.put(END);
+    } catch (InterruptedException e) {
+      //closed by the consumer
+    } catch (Throwable t) {
+      filled.offer(t);
+    } finally {
+      try {
+        cleanup();
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private void lookahead() {
+    if (lookahead != null) return;
+    if (closed) {
+      lookahead = END;
+      return;
+    }
+    if (thread.getState() == Thread.State.NEW) thread.start();
+    try {
+      lookahead = filled.poll();
+      if (lookahead == null) {
+        ++waits;
+        lookahead = filled.take();
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public boolean hasNext() {
+    lookahead();
+    if (lookahead instanceof Throwable)
+      throw new RuntimeException("Prefetching failed", (Throwable) lookahead);
+    if (lookahead == END) releaseCurrent();
+    return lookahead != END;
+  }
+
+  @SuppressWarnings({"unchecked"})
+  public T next() {
+    if (!hasNext()) throw new NoSuchElementException();
+    releaseCurrent();
+    current = (T) lookahead;
+    lookahead = null;
+    return current;
+  }
+
+  private void releaseCurrent() {
+    if (current == null) return;
+    release(current);
+    free.add(current);
+    current = null;
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stops the background thread and waits until it has released its resources. Only needed if the consumer stops
+   * before all elements have been consumed, but harmless otherwise. After closing there are no more elements.
+   */
+  public void close() {
+    if (closed) return;
+    closed = true;
+    lookahead = END;
+    if (thread.getState() == Thread.State.NEW) {
+      try {
+        cleanup();
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+      return;
+    }
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    releaseCurrent();
+  }
+
+  /**
+   * Checks whether this prefetcher is done: all elements were read (or reading failed) or it was closed.
+   *
+   * @return true iff the background thread won't read any more elements.
+   */
+  public boolean isDone() {
+    return closed || thread.getState() == Thread.State.TERMINATED;
+  }
+
+  /**
+   * The number of times the consumer had to wait for the background thread. If this is close to the number of consumed
+   * elements, decoding (and not the consumer) is the bottleneck.
+   *
+   * @return number of times {@link #next()} or {@link #hasNext()} blocked.
+   */
+  public int getWaitCount() {
+    return waits;
+  }
+}
@@ -15,4 +15,11 @@ public interface Profiler extends HasProperties {
   double getCalls(String operation);
 
   Profiler end();
+
+  /**
+   * Attributes a number of allocated bytes to the operation that is currently running.
+   *
+   * @param bytes the number of bytes allocated within the current operation.
+   */
+  void addAllocatedBytes(long bytes);
 }
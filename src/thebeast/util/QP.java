@@ -1,5 +1,7 @@
 package thebeast.util;
 
+import java.util.Arrays;
+
 /**
  * @author Sebastian Riedel
  */
@@ -179,6 +181,205 @@ public class QP {
     return x;
   }
 
+  /**
+   * Reusable buffers for the sparse versions of the QP algorithms, so that repeated calls (e.g. one per training
+   * instance) do not allocate new arrays.
+   */
+  public static class Workspace {
+    private double[] alpha = new double[0], f = new double[0], kkt = new double[0];
+    private double[] x = new double[0], xHat = new double[0], z = new double[0], norms = new double[0];
+    private double[] lastValues = new double[0];
+    private int[] rows = new int[0];
+
+    private void ensureRows(int k) {
+      if (alpha.length >= k) return;
+      alpha = new double[k];
+      f = new double[k];
+      kkt = new double[k];
+      z = new double[k];
+      norms = new double[k];
+      rows = new int[k];
+    }
+
+    private void ensureColumns(int n) {
+      if (x.length >= n) return;
+      x = new double[n];
+      xHat = new double[n];
+    }
+  }
+
+  /**
+   * Runs the Hildreth algorithm (see {@link #runHildreth(double[][], double[])}) on a precomputed Gram matrix
+   * <code>gram[i][j] = a_i^T a_j</code>. The matrix is computed once by the caller (e.g. with sparse dot products) and
+   * then used in all iterations.
+   *
+   * @param gram      the Gram matrix of the constraint vectors (at least k x k).
+   * @param b         the right hand sides of the constraints.
+   * @param k         the number of constraints.
+   * @param workspace the buffers to use.
+   * @return the alpha multiplier for each constraint. The array belongs to the workspace and is only valid up to k
+   *         and until the next call.
+   */
+  public static double[] runHildreth(double[][] gram, double[] b, int k, Workspace workspace) {
+    int i;
+    int max_iter = 10000;
+    double eps = 0.00000001;
+    double zero = 0.000000000001;
+
+    workspace.ensureRows(k);
+    double[] alpha = workspace.alpha;
+    double[] F = workspace.f;
+    double[] kkt = workspace.kkt;
+    double max_kkt = Double.NEGATIVE_INFINITY;
+
+    int max_kkt_i = -1;
+
+    for (i = 0; i < k; i++) {
+      alpha[i] = 0.0;
+      F[i] = b[i];
+      kkt[i] = F[i];
+      if (kkt[i] > max_kkt) {
+        max_kkt = kkt[i];
+        max_kkt_i = i;
+      }
+    }
+
+    int iter = 0;
+    double diff_alpha;
+    double try_alpha;
+    double add_alpha;
+
+    while (max_kkt >= eps && iter < max_iter) {
+
+      diff_alpha = gram[max_kkt_i][max_kkt_i] <= zero ? 0.0 : F[max_kkt_i] / gram[max_kkt_i][max_kkt_i];
+      try_alpha = alpha[max_kkt_i] + diff_alpha;
+
+      if (try_alpha < 0.0)
+        add_alpha = -1.0 * alpha[max_kkt_i];
+      else
+        add_alpha = diff_alpha;
+
+      alpha[max_kkt_i] = alpha[max_kkt_i] + add_alpha;
+
+      for (i = 0; i < k; i++) {
+        F[i] -= add_alpha * gram[i][max_kkt_i];
+        kkt[i] = F[i];
+        if (alpha[i] > zero)
+          kkt[i] = Math.abs(F[i]);
+      }
+
+      max_kkt = Double.NEGATIVE_INFINITY;
+      max_kkt_i = -1;
+      for (i = 0; i < k; i++)
+        if (kkt[i] > max_kkt) {
+          max_kkt = kkt[i];
+          max_kkt_i = i;
+        }
+
+      iter++;
+    }
+
+    return alpha;
+  }
+
+  /**
+   * Sparse version of {@link #art2(double[][], double[], double[], double[])}: row i of the constraint matrix has the
+   * value <code>values[i][j]</code> at column <code>columns[i][j]</code> for all j smaller than <code>sizes[i]</code>.
+   * The projection of x onto the bounds is only done for the columns of the current row, so each iteration costs time
+   * linear in the number of non-zero entries of the row instead of the number of variables.
+   *
+   * @param columns   the columns of the non-zero entries of each row.
+   * @param values    the non-zero entries of each row.
+   * @param sizes     the number of non-zero entries of each row.
+   * @param b         the lower bounds for the constraints.
+   * @param m         the number of rows.
+   * @param lb        lower bounds for variables
+   * @param ub        upper bounds for variables
+   * @param n         the number of variables.
+   * @param workspace the buffers to use.
+   * @return an array with x. The array belongs to the workspace and is only valid up to n and until the next call.
+   */
+  public static double[] art2(int[][] columns, double[][] values, int[] sizes, double[] b, int m,
+                              double[] lb, double[] ub, int n, Workspace workspace) {
+    double eps = 0.00000001;
+    int maxIterations = 100;
+    workspace.ensureRows(m);
+    workspace.ensureColumns(n);
+    double[] x = workspace.x;
+    double[] x_hat = workspace.xHat;
+    double[] z = workspace.z;
+    double[] norms = workspace.norms;
+    int[] rows = workspace.rows;
+    //precalculate norms of rows and remove zero rows
+    int nonZeroCount = 0;
+    int maxSize = 0;
+    for (int i = 0; i < m; ++i) {
+      double norm = 0;
+      for (int j = 0; j < sizes[i]; ++j) norm += values[i][j] * values[i][j];
+      if (norm > eps || norm < -eps) {
+        norms[nonZeroCount] = norm;
+        rows[nonZeroCount++] = i;
+        if (sizes[i] > maxSize) maxSize = sizes[i];
+      }
+    }
+    Arrays.fill(x_hat, 0, n, 0.0);
+    if (nonZeroCount == 0) {
+      Arrays.fill(x, 0, n, 0.0);
+      return x;
+    }
+    m = nonZeroCount;
+    Arrays.fill(z, 0, m, 0.0);
+    if (workspace.lastValues.length < maxSize) workspace.lastValues = new double[maxSize];
+    double[] lastValues = workspace.lastValues;
+    int lastRow = -1;
+
+    double lastNorm = 0;
+    //iterate
+    for (int i = 0; i < maxIterations; ++i) {
+      int i_k = i % m;
+      int row = rows[i_k];
+      int[] rowColumns = columns[row];
+      double[] rowValues = values[row];
+      int size = sizes[row];
+      double dotProduct = 0;
+      for (int j = 0; j < size; ++j) {
+        int t = rowColumns[j];
+        double x_hat_t = x_hat[t];
+        dotProduct += rowValues[j] * (x_hat_t < lb[t] ? lb[t] : x_hat_t > ub[t] ? ub[t] : x_hat_t);
+      }
+      double quotient = (b[row] - dotProduct) / norms[i_k];
+      double z_ik = z[i_k];
+      double c = z_ik > quotient ? z_ik : quotient;
+      for (int j = 0; j < size; ++j) {
+        lastValues[j] = x_hat[rowColumns[j]];
+        x_hat[rowColumns[j]] += c * rowValues[j];
+      }
+      lastRow = row;
+      z[i_k] -= c;
+      if (i % m == m - 1) {
+        double norm = dotProduct(x_hat, x_hat, n);
+        if (Math.abs(norm - lastNorm) < eps) break;
+        lastNorm = norm;
+      }
+    }
+    //x is the projection of x_hat before the last update
+    for (int t = 0; t < n; ++t) {
+      double x_hat_t = x_hat[t];
+      x[t] = x_hat_t < lb[t] ? lb[t] : x_hat_t > ub[t] ? ub[t] : x_hat_t;
+    }
+    for (int j = 0; j < sizes[lastRow]; ++j) {
+      int t = columns[lastRow][j];
+      x[t] = lastValues[j] < lb[t] ? lb[t] : lastValues[j] > ub[t] ? ub[t] : lastValues[j];
+    }
+    return x;
+  }
+
+  private static double dotProduct(double[] x, double[] y, int n) {
+    double result = 0;
+    for (int i = 0; i < n; ++i) result += x[i] * y[i];
+    return result;
+  }
+
   public static double dotProduct(double[] x, double[] y) {
     double result = 0;
     for (int i = 0; i < x.length; ++i) result += x[i] * y[i];
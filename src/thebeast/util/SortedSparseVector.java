@@ -0,0 +1,299 @@
+package thebeast.util;
+
+/**
+ * A SortedSparseVector is a sparse vector backed by a pair of primitive arrays that are sorted by index and contain
+ * each index at most once. Dot products and additions are done by merging the index arrays, so their cost is linear
+ * in the number of non-zero entries and no temporary objects are created.
+ *
+ * <p>Vectors are meant to be reused: the backing arrays only grow, and {@link #clear()} only resets the size. Note
+ * that {@link #getIndices()} and {@link #getValues()} return the backing arrays which are only valid up to
+ * {@link #size()}.
+ *
+ * @author Sebastian Riedel
+ */
+public final class SortedSparseVector {
+
+  private int[] indices;
+  private double[] values;
+  private int size;
+
+  //scratch arrays for merges, swapped with indices/values
+  private int[] tmpIndices;
+  private double[] tmpValues;
+
+  public SortedSparseVector() {
+    this(16);
+  }
+
+  public SortedSparseVector(int capacity) {
+    indices = new int[capacity];
+    values = new double[capacity];
+    tmpIndices = new int[capacity];
+    tmpValues = new double[capacity];
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int[] getIndices() {
+    return indices;
+  }
+
+  public double[] getValues() {
+    return values;
+  }
+
+  public int getIndex(int i) {
+    return indices[i];
+  }
+
+  public double getValue(int i) {
+    return values[i];
+  }
+
+  /**
+   * Appends the given entries to this vector. The entries can be in any order and may contain duplicates; call
+   * {@link #sort()} after the last append.
+   *
+   * @param indices the indices to append.
+   * @param values  the values to append.
+   */
+  public void append(int[] indices, double[] values) {
+    ensureCapacity(size + indices.length);
+    System.arraycopy(indices, 0, this.indices, size, indices.length);
+    System.arraycopy(values, 0, this.values, size, indices.length);
+    size += indices.length;
+  }
+
+  /**
+   * Appends a single entry. See {@link #append(int[], double[])}.
+   *
+   * @param index the index of the entry.
+   * @param value the value of the entry.
+   */
+  public void append(int index, double value) {
+    ensureCapacity(size + 1);
+    indices[size] = index;
+    values[size++] = value;
+  }
+
+  /**
+   * Sorts the entries by index and sums up the values of duplicate indices.
+   */
+  public void sort() {
+    boolean sorted = true;
+    for (int i = 1; i < size && sorted; ++i)
+      sorted = indices[i - 1] < indices[i];
+    if (sorted) return;
+    sort(0, size - 1);
+    int dst = 0;
+    for (int src = 1; src < size; ++src) {
+      if (indices[src] == indices[dst])
+        values[dst] += values[src];
+      else {
+        ++dst;
+        indices[dst] = indices[src];
+        values[dst] = values[src];
+      }
+    }
+    size = dst + 1;
+  }
+
+  /**
+   * Replaces the content of this vector with the given (unsorted) entries.
+   *
+   * @param indices the indices of the entries.
+   * @param values  the values of the entries.
+   */
+  public void load(int[] indices, double[] values) {
+    size = 0;
+    append(indices, values);
+    sort();
+  }
+
+  public void load(SortedSparseVector other) {
+    ensureCapacity(other.size);
+    System.arraycopy(other.indices, 0, indices, 0, other.size);
+    System.arraycopy(other.values, 0, values, 0, other.size);
+    size = other.size;
+  }
+
+  /**
+   * Sets this vector to <code>lhs + scale * rhs</code>. Indices that appear in either argument appear in the result,
+   * even if their value cancels out to zero.
+   *
+   * @param lhs   the left hand side (must not be this vector).
+   * @param scale the scale of the right hand side.
+   * @param rhs   the right hand side (must not be this vector).
+   */
+  public void set(SortedSparseVector lhs, double scale, SortedSparseVector rhs) {
+    size = 0;
+    ensureCapacity(lhs.size + rhs.size);
+    size = merge(lhs.indices, lhs.values, lhs.size, scale, rhs.indices, rhs.values, rhs.size, indices, values);
+  }
+
+  /**
+   * Adds the scaled argument to this vector: <code>this += scale * other</code>.
+   *
+   * @param scale the scale of the argument.
+   * @param other the vector to add.
+   */
+  public void addInPlace(double scale, SortedSparseVector other) {
+    if (tmpIndices.length < size + other.size) {
+      tmpIndices = new int[(size + other.size) * 3 / 2];
+      tmpValues = new double[tmpIndices.length];
+    }
+    int newSize = merge(indices, values, size, scale, other.indices, other.values, other.size, tmpIndices, tmpValues);
+    int[] swapIndices = indices;
+    double[] swapValues = values;
+    indices = tmpIndices;
+    values = tmpValues;
+    tmpIndices = swapIndices;
+    tmpValues = swapValues;
+    size = newSize;
+  }
+
+  private static int merge(int[] lhsIndices, double[] lhsValues, int lhsSize, double scale,
+                           int[] rhsIndices, double[] rhsValues, int rhsSize, int[] dstIndices, double[] dstValues) {
+    int l = 0, r = 0, dst = 0;
+    while (l < lhsSize && r < rhsSize) {
+      int lhsIndex = lhsIndices[l];
+      int rhsIndex = rhsIndices[r];
+      if (lhsIndex < rhsIndex) {
+        dstIndices[dst] = lhsIndex;
+        dstValues[dst++] = lhsValues[l++];
+      } else if (lhsIndex > rhsIndex) {
+        dstIndices[dst] = rhsIndex;
+        dstValues[dst++] = scale * rhsValues[r++];
+      } else {
+        dstIndices[dst] = lhsIndex;
+        dstValues[dst++] = lhsValues[l++] + scale * rhsValues[r++];
+      }
+    }
+    for (; l < lhsSize; ++l) {
+      dstIndices[dst] = lhsIndices[l];
+      dstValues[dst++] = lhsValues[l];
+    }
+    for (; r < rhsSize; ++r) {
+      dstIndices[dst] = rhsIndices[r];
+      dstValues[dst++] = scale * rhsValues[r];
+    }
+    return dst;
+  }
+
+  /**
+   * Calculates the dot product with another sorted sparse vector.
+   *
+   * @param other the other vector.
+   * @return the dot product of both vectors.
+   */
+  public double dot(SortedSparseVector other) {
+    double result = 0;
+    int l = 0, r = 0;
+    while (l < size && r < other.size) {
+      int lhsIndex = indices[l];
+      int rhsIndex = other.indices[r];
+      if (lhsIndex < rhsIndex) ++l;
+      else if (lhsIndex > rhsIndex) ++r;
+      else result += values[l++] * other.values[r++];
+    }
+    return result;
+  }
+
+  /**
+   * Calculates the dot product with a dense vector.
+   *
+   * @param dense a dense vector that has an entry for each index in this vector.
+   * @return the dot product of both vectors.
+   */
+  public double dot(double[] dense) {
+    double result = 0;
+    for (int i = 0; i < size; ++i)
+      result += values[i] * dense[indices[i]];
+    return result;
+  }
+
+  /**
+   * @return the sum of the squares of all values.
+   */
+  public double squaredNorm() {
+    double result = 0;
+    for (int i = 0; i < size; ++i)
+      result += values[i] * values[i];
+    return result;
+  }
+
+  /**
+   * Finds the position of each index of this vector in the given sorted index array.
+   *
+   * @param base      a sorted index array that contains all indices of this vector.
+   * @param baseSize  the number of valid entries in the base array.
+   * @param positions the array to write the positions to (needs at least {@link #size()} entries).
+   */
+  public void positionsIn(int[] base, int baseSize, int[] positions) {
+    int b = 0;
+    for (int i = 0; i < size; ++i) {
+      while (b < baseSize && base[b] < indices[i]) ++b;
+      if (b == baseSize || base[b] != indices[i])
+        throw new IllegalArgumentException("Index " + indices[i] + " is not contained in the base");
+      positions[i] = b;
+    }
+  }
+
+  public void ensureCapacity(int capacity) {
+    if (indices.length >= capacity) return;
+    int newCapacity = Math.max(capacity, indices.length * 3 / 2);
+    int[] newIndices = new int[newCapacity];
+    double[] newValues = new double[newCapacity];
+    System.arraycopy(indices, 0, newIndices, 0, size);
+    System.arraycopy(values, 0, newValues, 0, size);
+    indices = newIndices;
+    values = newValues;
+  }
+
+  private void sort(int from, int to) {
+    while (to - from > 16) {
+      int pivot = indices[(from + to) >>> 1];
+      int i = from, j = to;
+      while (i <= j) {
+        while (indices[i] < pivot) ++i;
+        while (indices[j] > pivot) --j;
+        if (i <= j) swap(i++, j--);
+      }
+      if (j - from < to - i) {
+        sort(from, j);
+        from = i;
+      } else {
+        sort(i, to);
+        to = j;
+      }
+    }
+    for (int i = from + 1; i <= to; ++i)
+      for (int j = i; j > from && indices[j - 1] > indices[j]; --j)
+        swap(j, j - 1);
+  }
+
+  private void swap(int i, int j) {
+    int index = indices[i];
+    indices[i] = indices[j];
+    indices[j] = index;
+    double value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+
+  public String toString() {
+    StringBuffer result = new StringBuffer("[");
+    for (int i = 0; i < size; ++i) {
+      if (i > 0) result.append(", ");
+      result.append(indices[i]).append(":").append(values[i]);
+    }
+    return result.append("]").toString();
+  }
+
+}
@@ -0,0 +1,239 @@
+package thebeast.util;
+
+import java.util.Arrays;
+
+/**
+ * Finds maximum spanning trees (arborescences) of dense directed graphs, as needed for dependency parsing. Edge scores
+ * are given as a matrix where <code>scores[h][m]</code> is the score of the edge from head h to modifier m and
+ * <code>Double.NEGATIVE_INFINITY</code> marks a missing edge. Both methods return the head of each vertex (-1 for the
+ * root) or null if no spanning tree exists.
+ *
+ * <ul>
+ * <li>{@link #chuLiuEdmonds(double[][], int)} finds the best tree among all trees (non-projective parsing) in
+ * O(n^3) time;</li>
+ * <li>{@link #eisner(double[][])} finds the best projective tree (no crossing edges when the vertices are laid out in
+ * order) with the root as leftmost vertex, also in O(n^3) time.</li>
+ * </ul>
+ *
+ * @author Sebastian Riedel
+ */
+public class SpanningTree {
+
+  private static final double NONE = Double.NEGATIVE_INFINITY;
+
+  /**
+   * Finds the highest scoring spanning tree rooted at the given vertex with the Chu-Liu-Edmonds algorithm.
+   *
+   * @param scores a square matrix with the edge scores (scores[head][modifier]).
+   * @param root   the root vertex.
+   * @return the head of each vertex (-1 for the root) or null if not all vertices can be reached from the root.
+   */
+  public static int[] chuLiuEdmonds(double[][] scores, int root) {
+    if (!allReachable(scores, root)) return null;
+    return contract(scores, root);
+  }
+
+  private static boolean allReachable(double[][] scores, int root) {
+    int n = scores.length;
+    boolean[] reached = new boolean[n];
+    int[] queue = new int[n];
+    int end = 0;
+    queue[end++] = root;
+    reached[root] = true;
+    for (int begin = 0; begin < end; ++begin) {
+      int head = queue[begin];
+      for (int modifier = 0; modifier < n; ++modifier)
+        if (!reached[modifier] && modifier != head && scores[head][modifier] > NONE) {
+          reached[modifier] = true;
+          queue[end++] = modifier;
+        }
+    }
+    return end == n;
+  }
+
+  private static int[] contract(double[][] scores, int root) {
+    int n = scores.length;
+    int[] heads = new int[n];
+    //best incoming edge of each vertex
+    for (int m = 0; m < n; ++m) {
+      heads[m] = -1;
+      if (m == root) continue;
+      double best = NONE;
+      for (int h = 0; h < n; ++h)
+        if (h != m && (heads[m] == -1 || scores[h][m] > best)) {
+          best = scores[h][m];
+          heads[m] = h;
+        }
+    }
+    int[] cycle = findCycle(heads);
+    if (cycle == null) return heads;
+
+    //contract the cycle into a new vertex with the highest number
+    boolean[] inCycle = new boolean[n];
+    for (int v : cycle) inCycle[v] = true;
+    int[] old2new = new int[n];
+    int[] new2old = new int[n - cycle.length + 1];
+    int k = 0;
+    for (int v = 0; v < n; ++v)
+      if (!inCycle[v]) {
+        old2new[v] = k;
+        new2old[k++] = v;
+      }
+    int c = k;
+    double[][] contracted = new double[k + 1][k + 1];
+    for (double[] row : contracted) Arrays.fill(row, NONE);
+    int[] enter = new int[n];
+    int[] leave = new int[n];
+    for (int u = 0; u < n; ++u) {
+      if (inCycle[u]) continue;
+      for (int w = 0; w < n; ++w)
+        if (!inCycle[w] && w != u) contracted[old2new[u]][old2new[w]] = scores[u][w];
+      //entering the cycle at v breaks the cycle edge into v
+      double bestIn = NONE, bestOut = NONE;
+      enter[u] = leave[u] = -1;
+      for (int v : cycle) {
+        double in = scores[u][v] - scores[heads[v]][v];
+        if (enter[u] == -1 || in > bestIn) {
+          bestIn = in;
+          enter[u] = v;
+        }
+        if (leave[u] == -1 || scores[v][u] > bestOut) {
+          bestOut = scores[v][u];
+          leave[u] = v;
+        }
+      }
+      contracted[old2new[u]][c] = bestIn;
+      contracted[c][old2new[u]] = bestOut;
+    }
+    int[] contractedHeads = contract(contracted, old2new[root]);
+
+    //expand
+    for (int w = 0; w < n; ++w) {
+      if (inCycle[w] || w == root) continue;
+      int h = contractedHeads[old2new[w]];
+      heads[w] = h == c ? leave[w] : new2old[h];
+    }
+    int u = new2old[contractedHeads[c]];
+    heads[enter[u]] = u;
+    return heads;
+  }
+
+  private static int[] findCycle(int[] heads) {
+    int n = heads.length;
+    int[] visited = new int[n];
+    for (int start = 0; start < n; ++start) {
+      if (visited[start] != 0) continue;
+      int v = start;
+      while (v != -1 && visited[v] == 0) {
+        visited[v] = start + 1;
+        v = heads[v];
+      }
+      if (v != -1 && visited[v] == start + 1) {
+        int length = 1;
+        for (int u = heads[v]; u != v; u = heads[u]) ++length;
+        int[] cycle = new int[length];
+        cycle[0] = v;
+        for (int i = 1; i < length; ++i) cycle[i] = heads[cycle[i - 1]];
+        return cycle;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the highest scoring projective spanning tree rooted at vertex 0 with Eisner's algorithm.
+   *
+   * @param scores a square matrix with the edge scores (scores[head][modifier]).
+   * @return the head of each vertex (-1 for the root) or null if there is no projective tree.
+   */
+  public static int[] eisner(double[][] scores) {
+    int n = scores.length;
+    //[s][t][0]: head is t, [s][t][1]: head is s
+    double[][][] complete = new double[n][n][2];
+    double[][][] incomplete = new double[n][n][2];
+    int[][][] completeSplit = new int[n][n][2];
+    int[][][] incompleteSplit = new int[n][n][2];
+    for (int k = 1; k < n; ++k)
+      for (int s = 0; s + k < n; ++s) {
+        int t = s + k;
+        double best = NONE;
+        int split = s;
+        for (int r = s; r < t; ++r) {
+          double score = complete[s][r][1] + complete[r + 1][t][0];
+          if (score > best) {
+            best = score;
+            split = r;
+          }
+        }
+        //nothing may point to the root
+        incomplete[s][t][0] = s == 0 ? NONE : best + scores[t][s];
+        incomplete[s][t][1] = best + scores[s][t];
+        incompleteSplit[s][t][0] = incompleteSplit[s][t][1] = split;
+
+        best = NONE;
+        split = s;
+        for (int r = s; r < t; ++r) {
+          double score = complete[s][r][0] + incomplete[r][t][0];
+          if (score > best) {
+            best = score;
+            split = r;
+          }
+        }
+        complete[s][t][0] = best;
+        completeSplit[s][t][0] = split;
+
+        best = NONE;
+        split = t;
+        for (int r = s + 1; r <= t; ++r) {
+          double score = incomplete[s][r][1] + complete[r][t][1];
+          if (score > best) {
+            best = score;
+            split = r;
+          }
+        }
+        complete[s][t][1] = best;
+        completeSplit[s][t][1] = split;
+      }
+    if (n > 1 && complete[0][n - 1][1] == NONE) return null;
+    int[] heads = new int[n];
+    heads[0] = -1;
+    if (n > 1) backtrack(0, n - 1, 1, true, heads, completeSplit, incompleteSplit);
+    return heads;
+  }
+
+  private static void backtrack(int s, int t, int direction, boolean complete, int[] heads,
+                                int[][][] completeSplit, int[][][] incompleteSplit) {
+    if (s == t) return;
+    if (complete) {
+      int r = completeSplit[s][t][direction];
+      if (direction == 0) {
+        backtrack(s, r, 0, true, heads, completeSplit, incompleteSplit);
+        backtrack(r, t, 0, false, heads, completeSplit, incompleteSplit);
+      } else {
+        backtrack(s, r, 1, false, heads, completeSplit, incompleteSplit);
+        backtrack(r, t, 1, true, heads, completeSplit, incompleteSplit);
+      }
+    } else {
+      int r = incompleteSplit[s][t][direction];
+      if (direction == 0) heads[s] = t;
+      else heads[t] = s;
+      backtrack(s, r, 1, true, heads, completeSplit, incompleteSplit);
+      backtrack(r + 1, t, 0, true, heads, completeSplit, incompleteSplit);
+    }
+  }
+
+  /**
+   * Calculates the score of a tree.
+   *
+   * @param scores the edge scores.
+   * @param heads  the head of each vertex (-1 for the root).
+   * @return the sum of the scores of all edges in the tree.
+   */
+  public static double score(double[][] scores, int[] heads) {
+    double result = 0;
+    for (int m = 0; m < heads.length; ++m)
+      if (heads[m] != -1) result += scores[heads[m]][m];
+    return result;
+  }
+
+}
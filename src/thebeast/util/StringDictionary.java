@@ -0,0 +1,297 @@
+package thebeast.util;
+
+import java.io.UnsupportedEncodingException;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A StringDictionary maps strings to consecutive ids (in the order they were added) and back. Unlike a
+ * <code>HashMap&lt;String,Integer&gt;</code> plus a list of strings it does not keep any objects per entry: the UTF-8
+ * bytes of all strings are stored one after another in a single byte array and the hash table is an int array with
+ * open addressing. This makes it suitable for types with millions of constants (words, lemmas, prefixes etc.).
+ *
+ * <p>Strings can also be looked up by a slice of a byte array (e.g. a token in a line buffer of a corpus file) without
+ * creating a String for it.
+ *
+ * <p>Lookups may be done by several threads at the same time as long as no thread adds strings.
+ *
+ * @author Sebastian Riedel
+ */
+public class StringDictionary {
+
+  private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+    protected byte[] initialValue() {
+      return new byte[64];
+    }
+  };
+
+  //the utf-8 bytes of all strings, string i lies between offsets[i] and offsets[i+1]
+  private byte[] bytes;
+  private int[] offsets;
+  private int[] hashes;
+  //ids + 1, 0 marks an empty slot
+  private int[] table;
+  private int size;
+  private int byteCount;
+
+  /**
+   * Creates an empty dictionary.
+   */
+  public StringDictionary() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty dictionary with space for the given number of strings.
+   *
+   * @param capacity the number of strings the dictionary can hold before it needs to grow.
+   */
+  public StringDictionary(int capacity) {
+    if (capacity < 1) capacity = 1;
+    bytes = new byte[capacity * 8];
+    offsets = new int[capacity + 1];
+    hashes = new int[capacity];
+    int tableSize = 2;
+    while (tableSize < 2 * capacity) tableSize <<= 1;
+    table = new int[tableSize];
+  }
+
+  /**
+   * Creates a dictionary containing the given strings (duplicates are only added once).
+   *
+   * @param strings the strings to add.
+   */
+  public StringDictionary(List<String> strings) {
+    this(strings.size());
+    for (String string : strings) add(string);
+  }
+
+  /**
+   * Adds a string if it isn't in the dictionary yet.
+   *
+   * @param string the string to add.
+   * @return the id of the string.
+   */
+  public int add(String string) {
+    byte[] encoded = encode(string);
+    return add(encoded, 0, encodedLength(string, encoded));
+  }
+
+  /**
+   * Adds the string encoded by a slice of a byte array if it isn't in the dictionary yet.
+   *
+   * @param src    the array that contains the utf-8 encoded string.
+   * @param offset the first byte of the string.
+   * @param length the number of bytes of the string.
+   * @return the id of the string.
+   */
+  public int add(byte[] src, int offset, int length) {
+    int hash = hash(src, offset, length);
+    int slot = find(src, offset, length, hash);
+    if (table[slot] != 0) return table[slot] - 1;
+    if (size == hashes.length) {
+      grow();
+      slot = find(src, offset, length, hash);
+    }
+    if (byteCount + length > bytes.length) {
+      byte[] newBytes = new byte[Math.max(2 * bytes.length, byteCount + length)];
+      System.arraycopy(bytes, 0, newBytes, 0, byteCount);
+      bytes = newBytes;
+    }
+    System.arraycopy(src, offset, bytes, byteCount, length);
+    byteCount += length;
+    hashes[size] = hash;
+    offsets[size + 1] = byteCount;
+    table[slot] = ++size;
+    return size - 1;
+  }
+
+  /**
+   * Returns the id of a string.
+   *
+   * @param string the string to look up.
+   * @return the id of the string or -1 if the dictionary doesn't contain it.
+   */
+  public int id(String string) {
+    byte[] encoded = encode(string);
+    return id(encoded, 0, encodedLength(string, encoded));
+  }
+
+  /**
+   * Returns the id of the string encoded by a slice of a byte array.
+   *
+   * @param src    the array that contains the utf-8 encoded string.
+   * @param offset the first byte of the string.
+   * @param length the number of bytes of the string.
+   * @return the id of the string or -1 if the dictionary doesn't contain it.
+   */
+  public int id(byte[] src, int offset, int length) {
+    return table[find(src, offset, length, hash(src, offset, length))] - 1;
+  }
+
+  /**
+   * Checks whether the dictionary contains a string.
+   *
+   * @param string the string to look up.
+   * @return true iff the string has an id.
+   */
+  public boolean contains(String string) {
+    return id(string) != -1;
+  }
+
+  /**
+   * Returns the string with the given id. The string is decoded on each call.
+   *
+   * @param id the id of the string.
+   * @return the string with the given id.
+   */
+  public String get(int id) {
+    if (id < 0 || id >= size) throw new IndexOutOfBoundsException("Dictionary has no id " + id);
+    int begin = offsets[id], end = offsets[id + 1];
+    for (int i = begin; i < end; ++i)
+      if (bytes[i] < 0) {
+        try {
+          return new String(bytes, begin, end - begin, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    //plain ascii
+    char[] chars = new char[end - begin];
+    for (int i = begin; i < end; ++i) chars[i - begin] = (char) bytes[i];
+    return new String(chars);
+  }
+
+  /**
+   * @return the number of strings in this dictionary.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns a read-only list view of the strings in this dictionary, in the order of their ids.
+   *
+   * @return a list with the string of id i at position i.
+   */
+  public List<String> asList() {
+    return new AbstractList<String>() {
+      public String get(int index) {
+        return StringDictionary.this.get(index);
+      }
+
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * Releases the space reserved for further strings.
+   */
+  public void compactify() {
+    byte[] newBytes = new byte[byteCount];
+    System.arraycopy(bytes, 0, newBytes, 0, byteCount);
+    bytes = newBytes;
+    int[] newOffsets = new int[size + 1];
+    System.arraycopy(offsets, 0, newOffsets, 0, size + 1);
+    offsets = newOffsets;
+    int[] newHashes = new int[size];
+    System.arraycopy(hashes, 0, newHashes, 0, size);
+    hashes = newHashes;
+  }
+
+  /**
+   * @return the number of bytes used by this dictionary.
+   */
+  public int getUsedMemory() {
+    return bytes.length + 4 * (offsets.length + hashes.length + table.length);
+  }
+
+  /**
+   * @return the number of bytes of all strings (utf-8 encoded).
+   */
+  public int getByteCount() {
+    return byteCount;
+  }
+
+  private int find(byte[] src, int offset, int length, int hash) {
+    int mask = table.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int entry = table[slot];
+      if (entry == 0) return slot;
+      int id = entry - 1;
+      if (hashes[id] == hash && equals(id, src, offset, length)) return slot;
+    }
+  }
+
+  private boolean equals(int id, byte[] src, int offset, int length) {
+    int begin = offsets[id];
+    if (offsets[id + 1] - begin != length) return false;
+    for (int i = 0; i < length; ++i)
+      if (bytes[begin + i] != src[offset + i]) return false;
+    return true;
+  }
+
+  private void grow() {
+    int capacity = Math.max(16, 2 * hashes.length);
+    int[] newOffsets = new int[capacity + 1];
+    System.arraycopy(offsets, 0, newOffsets, 0, size + 1);
+    offsets = newOffsets;
+    int[] newHashes = new int[capacity];
+    System.arraycopy(hashes, 0, newHashes, 0, size);
+    hashes = newHashes;
+    if (table.length < 2 * capacity) {
+      int tableSize = table.length;
+      while (tableSize < 2 * capacity) tableSize <<= 1;
+      table = new int[tableSize];
+      int mask = table.length - 1;
+      for (int id = 0; id < size; ++id) {
+        int slot = hashes[id] & mask;
+        while (table[slot] != 0) slot = (slot + 1) & mask;
+        table[slot] = id + 1;
+      }
+    }
+  }
+
+  private static int hash(byte[] src, int offset, int length) {
+    int hash = 0;
+    for (int i = offset; i < offset + length; ++i)
+      hash = 31 * hash + src[i];
+    //spread the bits for the power of two table
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    return hash ^ (hash >>> 7) ^ (hash >>> 4);
+  }
+
+  /**
+   * Encodes a string into the scratch buffer of the current thread if it is plain ascii, otherwise into a new array.
+   *
+   * @param string the string to encode.
+   * @return an array that starts with the utf-8 bytes of the string.
+   */
+  private static byte[] encode(String string) {
+    int length = string.length();
+    byte[] scratch = SCRATCH.get();
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, 2 * scratch.length)];
+      SCRATCH.set(scratch);
+    }
+    for (int i = 0; i < length; ++i) {
+      char c = string.charAt(i);
+      if (c >= 0x80) {
+        try {
+          return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      scratch[i] = (byte) c;
+    }
+    return scratch;
+  }
+
+  private static int encodedLength(String string, byte[] encoded) {
+    return encoded == SCRATCH.get() ? string.length() : encoded.length;
+  }
+
+}
@@ -29,6 +29,8 @@ public class TreeProfiler implements Profiler {
       return getTotalTime(name.getTail().toString());
     } else if (name.getHead().equals("average")) {
       return getAverageTime(name.getTail().toString());
+    } else if (name.getHead().equals("allocated")) {
+      return getAllocatedBytes(name.getTail().toString());
     }
     return null;
   }
@@ -37,6 +39,7 @@ public class TreeProfiler implements Profiler {
     int calls;
     long totalTime;
     long startedAt;
+    long allocated;
     String name;
     HashMap<String, ProfileNode> children = new HashMap<String, ProfileNode>();
     int order;
@@ -103,7 +106,10 @@ public class TreeProfiler implements Profiler {
         buffer.append(name).append("\n");
       } else {
         Formatter formatter = new Formatter();
-        formatter.format("%-10s %-3.2fms (%d calls)\n", name, average(), calls);
+        if (allocated > 0)
+          formatter.format("%-10s %-3.2fms %d bytes (%d calls)\n", name, average(), allocated / Math.max(calls, 1), calls);
+        else
+          formatter.format("%-10s %-3.2fms (%d calls)\n", name, average(), calls);
         buffer.append(formatter.toString());
       }
       for (ProfileNode node : getSortedChildren()) {
@@ -147,6 +153,21 @@ public class TreeProfiler implements Profiler {
     return node.calls;
   }
 
+  /**
+   * Returns the total number of bytes that have been reported as allocated within the given operation.
+   *
+   * @param operation the qualified name of the operation.
+   * @return the sum of all bytes added with {@link #addAllocatedBytes(long)} while the operation was running.
+   */
+  public long getAllocatedBytes(String operation) {
+    ProfileNode node = root.getQualifiedNode(operation);
+    return node.allocated;
+  }
+
+  public void addAllocatedBytes(long bytes) {
+    current.allocated += bytes;
+  }
+
   public Profiler end() {
     current.totalTime += System.currentTimeMillis() - current.startedAt;
     ++current.calls;
@@ -201,6 +222,7 @@ public class TreeProfiler implements Profiler {
     if (name.equals("tree")) return new TreeProfiler();
     if (name.equals("null")) return new NullProfiler();
     if (name.equals("live")) return new LiveProfiler(System.out);
+    if (name.equals("nano")) return new NanoProfiler();
     return new NullProfiler();
   }
 
@@ -21,16 +21,25 @@ public class Util {
     int index = 0;
     for (Object obj : objects) {
       if (index++ > 0) buffer.append(delim);
-      String string = obj.toString();
-      if (string.startsWith("\"") && string.endsWith("\"")){
-        if (string.length() <= 2) string = "\" \" "; else        
-        string = "\"" + replaceQuotationMarks(string.substring(1,string.length()-1)) + "\"";
-      }
-      buffer.append(string);
+      buffer.append(escape(obj.toString()));
     }
     return buffer.toString();
   }
 
+  /**
+   * Escapes quotation marks within a quoted string so that the parser can read it again.
+   *
+   * @param string the string to escape.
+   * @return the string with quotation marks inside the outer quotes replaced, or the string itself if it isn't quoted.
+   */
+  public static String escape(String string) {
+    if (string.startsWith("\"") && string.endsWith("\"")){
+      if (string.length() <= 2) return "\" \" ";
+      return "\"" + replaceQuotationMarks(string.substring(1,string.length()-1)) + "\"";
+    }
+    return string;
+  }
+
   public static String replaceQuotationMarks(String s){
     if (s.contains("\"")){
       return s.replaceAll("[\"]", "''");
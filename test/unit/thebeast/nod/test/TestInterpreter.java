@@ -11,6 +11,7 @@ import thebeast.nod.type.RelationType;
 import thebeast.nod.type.Heading;
 import thebeast.nod.statement.RelationAppend;
 import thebeast.nod.util.TypeBuilder;
+import thebeast.nodmem.variable.MemHashIndex;
 
 import java.util.HashSet;
 import java.util.Arrays;
@@ -419,6 +420,202 @@ public class TestInterpreter extends NoDTest {
 
   }
 
+  public void testDefragment() {
+    exprBuilder.id("a").integer(1).id("b").integer(2).id("c").integer(3).tuple(3);
+    exprBuilder.id("a").integer(5).id("b").integer(2).id("c").integer(20).tuple(3);
+    exprBuilder.id("a").integer(3).id("b").integer(2).id("c").integer(1).tuple(3);
+    exprBuilder.relation(3);
+    RelationVariable relation = interpreter.createRelationVariable(exprBuilder.getRelation());
+    relation.ensureCapacity(1000);
+    interpreter.addIndex(relation, "index", Index.Type.HASH, "a");
+    int before = relation.byteSize();
+    int freed = interpreter.defragment();
+    assertTrue(freed > 0);
+    assertEquals(before - freed, relation.byteSize());
+    assertEquals(3, relation.value().size());
+
+    exprBuilder.expr(relation);
+    exprBuilder.id("a").integer(5).id("b").integer(2).tupleForIds().id("c").integer(9).tupleForIds().getPut();
+    TupleVariable t1 = interpreter.createTupleVariable(exprBuilder.getTuple());
+    assertEquals(20, t1.value().intElement(0).getInt());
+
+    exprBuilder.id("a").integer(1).id("b").integer(2).id("c").integer(3).tuple(3);
+    exprBuilder.id("a").integer(7).id("b").integer(7).id("c").integer(7).tuple(3);
+    exprBuilder.relation(2);
+    interpreter.insert(relation, exprBuilder.getRelation());
+    assertEquals(4, relation.value().size());
+    assertTrue(relation.contains(7, 7, 7));
+  }
+
+  public void testAutoDefragmentOnlyWhenSingleThreaded() throws InterruptedException {
+    exprBuilder.id("a").integer(1).id("b").integer(2).id("c").integer(3).tuple(3).relation(1);
+    final RelationVariable scratch = interpreter.createRelationVariable(exprBuilder.getRelation());
+    exprBuilder.id("a").integer(1).id("b").integer(2).id("c").integer(3).tuple(3).relation(1);
+    RelationVariable relation = interpreter.createRelationVariable(exprBuilder.getRelation());
+    relation.ensureCapacity(1000);
+    int before = relation.byteSize();
+    interpreter.setAutoDefragment(0.5);
+
+    server.beginParallel();
+    for (int i = 0; i < 5000; ++i) interpreter.clear(scratch);
+    server.endParallel();
+    assertEquals(before, relation.byteSize());
+
+    Thread other = new Thread() {
+      public void run() {
+        for (int i = 0; i < 5000; ++i) interpreter.clear(scratch);
+      }
+    };
+    other.start();
+    other.join();
+    assertEquals(before, relation.byteSize());
+
+    for (int i = 0; i < 5000; ++i) interpreter.clear(scratch);
+    assertTrue(relation.byteSize() < before);
+    assertEquals(1, relation.value().size());
+    interpreter.setAutoDefragment(0);
+  }
+
+  public void testDelete() {
+    for (int i = 0; i < 20; ++i)
+      exprBuilder.id("a").integer(i).id("b").integer(i % 4).id("c").integer(10 * i).tuple(3);
+    exprBuilder.relation(20);
+    RelationVariable relation = interpreter.createRelationVariable(exprBuilder.getRelation());
+    interpreter.addIndex(relation, "index", Index.Type.HASH, "a", "b");
+    assertEquals(190, getC(relation, 19, 3));
+    assertTrue(relation.contains(19, 3, 190));
+
+    //small deletion, indices are updated
+    interpreter.delete(relation, exprBuilder.intAttribute("b").integer(1).equality().getBool());
+    assertEquals(15, relation.value().size());
+    assertEquals(190, getC(relation, 19, 3));
+    assertFalse(relation.contains(5, 1, 50));
+    assertEquals(-1, getC(relation, 5, 1));
+    assertTrue(relation.contains(19, 3, 190));
+    assertTrue(relation.contains(18, 2, 180));
+
+    //large deletion
+    interpreter.delete(relation, exprBuilder.intAttribute("a").integer(5).intGreaterThan().getBool());
+    //(5,1,-1) has been put by the lookup above
+    assertEquals(5, relation.value().size());
+    assertEquals(-1, getC(relation, 19, 3));
+    assertEquals(40, getC(relation, 4, 0));
+    assertTrue(relation.contains(0, 0, 0));
+    assertFalse(relation.contains(18, 2, 180));
+  }
+
+  public void testMaterializedView() {
+    exprBuilder.id("a").integer(1).id("b").integer(2).tuple(2);
+    exprBuilder.id("a").integer(2).id("b").integer(3).tuple(2);
+    exprBuilder.relation(2);
+    RelationVariable var1 = interpreter.createRelationVariable(exprBuilder.getRelation());
+    exprBuilder.id("a").integer(2).id("b").integer(20).tuple(2);
+    exprBuilder.id("a").integer(3).id("b").integer(30).tuple(2);
+    exprBuilder.relation(2);
+    RelationVariable var2 = interpreter.createRelationVariable(exprBuilder.getRelation());
+
+    exprBuilder.expr(var1).from("var1").expr(var2).from("var2").
+            intAttribute("var1", "b").intAttribute("var2", "a").equality().where().
+            id("x").intAttribute("var1", "a").id("y").intAttribute("var2", "b").tuple(2).select().query();
+    RelationExpression join = exprBuilder.getRelation();
+    MaterializedView view = interpreter.createMaterializedView(join);
+    //the heading of the summary is (count, y)
+    exprBuilder.expr(join).by("y").integer(1).summarizeAs("count", Summarize.Spec.INT_COUNT);
+    MaterializedView counts = interpreter.createMaterializedView(exprBuilder.summarize().getRelation());
+    assertEquals(2, view.variable().value().size());
+    assertTrue(view.variable().contains(1, 20));
+    assertTrue(view.variable().contains(2, 30));
+    assertTrue(counts.variable().contains(1, 20));
+
+    //appends are processed incrementally
+    var1.addTuple(3, 2);
+    var2.addTuple(3, 40);
+    view.refresh();
+    counts.refresh();
+    assertEquals(1, view.getIncrementalRefreshCount());
+    assertEquals(1, counts.getIncrementalRefreshCount());
+    assertEquals(4, view.variable().value().size());
+    assertTrue(view.variable().contains(3, 20));
+    assertTrue(view.variable().contains(2, 40));
+    assertEquals(3, counts.variable().value().size());
+    assertTrue(counts.variable().contains(2, 20));
+    assertTrue(counts.variable().contains(1, 40));
+    assertEquals(interpreter.evaluateRelation(join).size(), view.variable().value().size());
+
+    //nothing changed
+    view.refresh();
+    assertEquals(1, view.getIncrementalRefreshCount());
+    assertEquals(1, view.getFullRefreshCount());
+
+    //other changes lead to full recomputation
+    interpreter.delete(var1, exprBuilder.intAttribute("a").integer(1).equality().getBool());
+    view.refresh();
+    counts.refresh();
+    assertEquals(2, view.getFullRefreshCount());
+    assertEquals(3, view.variable().value().size());
+    assertFalse(view.variable().contains(1, 20));
+    assertTrue(counts.variable().contains(1, 20));
+  }
+
+  public void testIndexSharing() {
+    for (int i = 0; i < 20; ++i)
+      exprBuilder.id("a").integer(i).id("b").integer(i % 4).id("c").integer(10 * i).tuple(3);
+    exprBuilder.relation(20);
+    RelationVariable source = interpreter.createRelationVariable(exprBuilder.getRelation());
+    interpreter.addIndex(source, "index", Index.Type.HASH, "a", "b");
+    RelationVariable copy = interpreter.createRelationVariable(source.type().heading());
+    interpreter.addIndex(copy, "index", Index.Type.HASH, "a", "b");
+    assertEquals(190, getC(source, 19, 3));
+
+    interpreter.assign(copy, source);
+    MemHashIndex index = (MemHashIndex) copy.getIndex("index");
+    assertEquals(1, index.getSharedCount());
+    assertEquals(0, index.getClonedCount());
+
+    //changing the source clones the index of the copy
+    interpreter.delete(source, exprBuilder.intAttribute("a").integer(19).equality().getBool());
+    assertEquals(1, index.getClonedCount());
+    assertEquals(-1, getC(source, 19, 3));
+    assertEquals(190, getC(copy, 19, 3));
+    assertEquals(180, getC(copy, 18, 2));
+    assertEquals(20, copy.value().size());
+  }
+
+  public void testOffHeap() {
+    for (int i = 0; i < 20; ++i)
+      exprBuilder.id("a").integer(i).id("b").integer(i % 4).id("c").integer(10 * i).tuple(3);
+    exprBuilder.relation(20);
+    RelationVariable relation = interpreter.createRelationVariable(exprBuilder.getRelation());
+    interpreter.addIndex(relation, "index", Index.Type.HASH, "a", "b");
+    exprBuilder.expr(relation).intAttribute("b").integer(1).equality().restrict();
+    RelationExpression restrict = exprBuilder.getRelation();
+    RelationVariable result = interpreter.createRelationVariable(restrict);
+    assertEquals(5, result.value().size());
+
+    assertTrue(relation.moveOffHeap());
+    assertTrue(relation.isOffHeap());
+    //the compiled restriction moves the data back
+    interpreter.assign(result, restrict);
+    assertFalse(relation.isOffHeap());
+    assertEquals(5, result.value().size());
+    assertTrue(result.contains(13, 1, 130));
+
+    assertTrue(relation.moveOffHeap());
+    assertEquals(190, getC(relation, 19, 3));
+    assertTrue(relation.moveOffHeap());
+    exprBuilder.id("a").integer(20).id("b").integer(0).id("c").integer(200).tuple(3).relation(1);
+    interpreter.insert(relation, exprBuilder.getRelation());
+    assertEquals(21, relation.value().size());
+    assertEquals(200, getC(relation, 20, 0));
+    assertEquals(10, getC(relation, 1, 1));
+  }
+
+  private int getC(RelationVariable relation, int a, int b) {
+    exprBuilder.expr(relation);
+    exprBuilder.id("a").integer(a).id("b").integer(b).tupleForIds().id("c").integer(-1).tupleForIds().getPut();
+    return interpreter.createTupleVariable(exprBuilder.getTuple()).value().intElement(0).getInt();
+  }
+
   public void testGetTwice() {
     exprBuilder.id("a").integer(1).id("b").integer(2).id("c").integer(3).tuple(3);
     exprBuilder.id("a").integer(5).id("b").integer(2).id("c").integer(20).tuple(3);
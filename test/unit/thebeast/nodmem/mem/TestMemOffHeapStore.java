@@ -0,0 +1,46 @@
+package thebeast.nodmem.mem;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * @author Sebastian Riedel
+ */
+public class TestMemOffHeapStore extends TestCase {
+
+  public void testSegmentsBeyondTwoGigabytes() {
+    //2.4 GB of ints and doubles each, more than a single direct buffer can hold
+    int[] ints = MemOffHeapStore.segmentLengths(600000000, MemHolder.INTSIZE, MemOffHeapStore.SEGMENT_BYTES);
+    assertTrue(Arrays.equals(new int[]{268435456, 268435456, 63129088}, ints));
+    int[] doubles = MemOffHeapStore.segmentLengths(300000000, MemHolder.DOUBLESIZE, MemOffHeapStore.SEGMENT_BYTES);
+    assertTrue(Arrays.equals(new int[]{134217728, 134217728, 31564544}, doubles));
+    long bytes = 0;
+    for (int length : ints) bytes += (long) length * MemHolder.INTSIZE;
+    for (int length : doubles) bytes += (long) length * MemHolder.DOUBLESIZE;
+    assertEquals(4800000000L, bytes);
+
+    assertEquals(0, MemOffHeapStore.segmentLengths(0, MemHolder.INTSIZE, MemOffHeapStore.SEGMENT_BYTES).length);
+    //the largest column a chunk can have, 16 GB of doubles
+    int[] largest = MemOffHeapStore.segmentLengths(Integer.MAX_VALUE, MemHolder.DOUBLESIZE,
+            MemOffHeapStore.SEGMENT_BYTES);
+    assertEquals(16, largest.length);
+    assertEquals(134217727, largest[15]);
+  }
+
+  public void testStoreInSeveralSegments() {
+    int[] ints = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    double[] doubles = {0.5, 1.5, 2.5, 3.5, 4.5};
+    MemChunk chunk = new MemChunk(5, ints.clone(), doubles.clone(), null);
+    //segments of 4 ints or 2 doubles
+    MemOffHeapStore store = new MemOffHeapStore(16);
+    store.store(chunk);
+    assertNull(chunk.intData);
+    assertNull(chunk.doubleData);
+    assertEquals(16 + 16 + 8 + 16 + 16 + 8, store.byteSize());
+    store.load(chunk);
+    assertTrue(Arrays.equals(ints, chunk.intData));
+    assertTrue(Arrays.equals(doubles, chunk.doubleData));
+  }
+
+}
@@ -51,6 +51,127 @@ public class TestMemSearch extends TestCase {
     //MemChunkMultiIndex index = new MemChunkMultiIndex(10,new MemColumnSelector());
   }
 
+  public void testStatistics() {
+    MemSearchAction allTable1 = new MemSearchAction(MemSearchAction.Type.ALL);
+    MemSearchAction allTable2 = new MemSearchAction(MemSearchAction.Type.ALL);
+    MemSearchPlan plan = new MemSearchPlan(MemDim.INT_DIM, allTable1, allTable2, equalSelectAttr1);
+    plan.setSource("all pairs");
+
+    MemSearchStatistics.reset();
+    MemSearch.search(plan, new MemChunk[]{table1, table2}, null, new MemChunk(4, 4, MemDim.INT_DIM), 0);
+    assertTrue(MemSearchStatistics.getAll().isEmpty());
+
+    MemSearchStatistics.setEnabled(true);
+    try {
+      for (int i = 0; i < 2; ++i)
+        MemSearch.search(plan, new MemChunk[]{table1, table2}, null, new MemChunk(4, 4, MemDim.INT_DIM), 0);
+      assertEquals(1, MemSearchStatistics.getAll().size());
+      MemSearchStatistics statistics = MemSearchStatistics.getAll().get(0);
+      assertEquals("all pairs", statistics.getQuery());
+      assertEquals(2, statistics.getCalls());
+      assertEquals(4, statistics.getRowsWritten());
+      assertEquals(2, statistics.getFullScans(0));
+      assertEquals(6, statistics.getFullScans(1));
+      assertEquals(18, statistics.getRowsScanned(2));
+      assertTrue(MemSearchStatistics.toTable(100).contains("all pairs"));
+      MemSearchStatistics.reset();
+      assertTrue(MemSearchStatistics.getAll().isEmpty());
+    } finally {
+      MemSearchStatistics.setEnabled(false);
+    }
+  }
+
+  public void testColumnarFilter() {
+    //pairs (i, i % 3)
+    MemChunk table = new MemChunk(30, 30, MemDim.INT2_DIM);
+    for (int row = 0; row < 30; ++row) {
+      table.intData[2 * row] = row;
+      table.intData[2 * row + 1] = row % 3;
+    }
+    MemPointer attr2 = new MemPointer(MemChunk.DataType.INT, 1);
+    MemFunction condition = new MemFunction(MemFunction.Type.AND, new MemChunk(2, 2, MemDim.INT_DIM),
+            new MemVector[]{new MemVector(0, 0, 0), new MemVector(1, 0, 0)},
+            new MemFunction(MemFunction.Type.INT_EQUAL, new MemFunction(0, attr2), new MemFunction(1)),
+            new MemFunction(MemFunction.Type.INT_GREATERTHAN, new MemFunction(0, attr1), new MemFunction(10)));
+    MemSearchPlan plan = new MemSearchPlan(MemDim.INT_DIM, new MemSearchAction(MemSearchAction.Type.ALL),
+            new MemSearchAction(MemSearchAction.Type.VALIDATE_WRITE, condition, attr1Select));
+
+    MemChunk rowWise = new MemChunk(0, 1, MemDim.INT_DIM);
+    MemSearch.search(plan, new MemChunk[]{table}, null, rowWise, 0);
+
+    table.columns = new MemColumns(table.dim);
+    MemChunk columnWise = new MemChunk(0, 1, MemDim.INT_DIM);
+    MemSearchStatistics.setEnabled(true);
+    try {
+      MemSearchStatistics.reset();
+      MemSearch.search(plan, new MemChunk[]{table}, null, columnWise, 0);
+      //only the rows with i % 3 == 1 are visited
+      assertEquals(10, MemSearchStatistics.get(plan).getRowsScanned(0));
+    } finally {
+      MemSearchStatistics.setEnabled(false);
+    }
+    assertEquals(6, rowWise.size);
+    assertEquals(rowWise.size, columnWise.size);
+    for (int row = 0; row < rowWise.size; ++row)
+      assertEquals(rowWise.intData[row], columnWise.intData[row]);
+
+    //changes need to be propagated to the columns
+    table.intData[2 * 13 + 1] = 0;
+    table.columns.invalidate();
+    columnWise = new MemChunk(0, 1, MemDim.INT_DIM);
+    MemSearch.search(plan, new MemChunk[]{table}, null, columnWise, 0);
+    assertEquals(5, columnWise.size);
+  }
+
+  public void testHashJoin() {
+    //pairs (i, i % 10)
+    MemChunk left = new MemChunk(100, 100, MemDim.INT2_DIM);
+    MemChunk right = new MemChunk(100, 100, MemDim.INT2_DIM);
+    for (int row = 0; row < 100; ++row) {
+      left.intData[2 * row] = row;
+      left.intData[2 * row + 1] = row % 10;
+      right.intData[2 * row] = 100 + row;
+      right.intData[2 * row + 1] = row % 10;
+    }
+    MemPointer attr2 = new MemPointer(MemChunk.DataType.INT, 1);
+    MemFunction equalAttr2 = new MemFunction(MemFunction.Type.INT_EQUAL,
+            new MemFunction(0, attr2), new MemFunction(1, attr2));
+    MemFunction key = new MemFunction(new MemChunk(1, 1, MemDim.INT_DIM),
+            new MemVector[]{new MemVector(0, 0, 0)}, new MemFunction(0, attr2));
+    MemSearchAction hashJoin = new MemSearchAction(new MemColumnSelector(new int[]{1}, new int[0], new int[0]),
+            new MemColumnSelector(1, 0, 0), key);
+    MemSearchPlan hashPlan = new MemSearchPlan(MemDim.INT_DIM, false, new MemSearchAction(MemSearchAction.Type.ALL),
+            hashJoin, new MemSearchAction(MemSearchAction.Type.VALIDATE_WRITE, equalAttr2, attr1Select));
+    MemSearchPlan nestedLoopPlan = new MemSearchPlan(MemDim.INT_DIM, false,
+            new MemSearchAction(MemSearchAction.Type.ALL), new MemSearchAction(MemSearchAction.Type.ALL),
+            new MemSearchAction(MemSearchAction.Type.VALIDATE_WRITE, equalAttr2, attr1Select));
+
+    MemChunk expected = new MemChunk(0, 1, MemDim.INT_DIM);
+    MemSearch.search(nestedLoopPlan, new MemChunk[]{left, right}, null, expected, 0);
+    MemChunk actual = new MemChunk(0, 1, MemDim.INT_DIM);
+    MemSearchStatistics.setEnabled(true);
+    try {
+      MemSearchStatistics.reset();
+      MemSearch.search(hashPlan, new MemChunk[]{left, right}, null, actual, 0);
+      MemSearchStatistics statistics = MemSearchStatistics.get(hashPlan);
+      assertEquals(1, statistics.getHashBuilds(1));
+      assertEquals(0, statistics.getFullScans(1));
+      assertEquals(1000, statistics.getRowsScanned(1));
+    } finally {
+      MemSearchStatistics.setEnabled(false);
+    }
+    assertEquals(1000, expected.size);
+    assertEquals(expected.size, actual.size);
+    for (int row = 0; row < actual.size; ++row)
+      assertEquals(expected.intData[row], actual.intData[row]);
+
+    //small relations are scanned
+    MemChunk small = new MemChunk(2, new int[]{5, 5, 6, 6}, new double[0], new MemChunk[0]);
+    actual = new MemChunk(0, 1, MemDim.INT_DIM);
+    MemSearch.search(hashPlan, new MemChunk[]{left, small}, null, actual, 0);
+    assertEquals(20, actual.size);
+  }
+
   public void testAllAction() {
 
     MemSearchAction allTable1 = new MemSearchAction(MemSearchAction.Type.ALL);
@@ -0,0 +1,288 @@
+package thebeast.pml;
+
+import junit.framework.TestCase;
+import thebeast.nod.type.CategoricalType;
+import thebeast.pml.corpora.AttributeExtractor;
+import thebeast.pml.formula.FormulaBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * @author Sebastian Riedel
+ */
+public class TestInferenceSession extends TestCase {
+  private static final String[] WORDS = {"the", "man", "likes", "a", "boat"};
+  private static final String[] TAGS = {"A", "B", "C"};
+
+  private Model model;
+  private Weights weights;
+  private ArrayList<String> sentences = new ArrayList<String>();
+
+  protected void setUp() {
+    Signature signature = TheBeast.getInstance().createSignature();
+    //unknown words are added to the type while observations are loaded
+    signature.createType("Word", true, WORDS);
+    signature.createType("Tag", false, TAGS);
+    signature.createPredicate("word", "Int", "Word");
+    UserPredicate tag = signature.createPredicate("tag", "Int", "Tag");
+    signature.createWeightFunctionByName("w_wt", "Word", "Tag");
+    signature.createWeightFunctionByName("w_tt", "Tag", "Tag");
+
+    model = signature.createModel();
+    model.addHiddenPredicate(tag);
+    model.addObservedPredicate(signature.getUserPredicate("word"));
+
+    FormulaBuilder builder = new FormulaBuilder(signature);
+
+    //for Int i, Word w, Tag t if word(i,w) add [tag(i,t)] * w_wt(w,t)
+    builder.var("Int", "i").var("Word", "w").var("Tag", "t").quantify();
+    builder.var("i").var("w").atom("word").condition();
+    builder.var("i").var("t").atom("tag").formula();
+    builder.var("w").var("t").apply("w_wt").weight();
+    model.addFactorFormula(builder.produceFactorFormula("local"));
+
+    //for Int i if word(i,_): |Tag t: tag(i,t)| >= 1
+    builder.var("Int", "i").quantify();
+    builder.var("i").dontCare().atom("word").condition();
+    builder.var("Tag", "t").quantify().var("i").var("t").atom("tag");
+    builder.cardinality();
+    builder.term(1).lowerBound().cardinalityConstraint(false).formula();
+    builder.term(Double.POSITIVE_INFINITY).weight();
+    model.addFactorFormula(builder.produceFactorFormula("atLeastOne"));
+
+    //for Int i if word(i,_): |Tag t: tag(i,t)| <= 1
+    builder.var("Int", "i").quantify();
+    builder.var("i").dontCare().atom("word").condition();
+    builder.var("Tag", "t").quantify().var("i").var("t").atom("tag");
+    builder.cardinality();
+    builder.term(1).upperBound().cardinalityConstraint(false).formula();
+    builder.term(Double.POSITIVE_INFINITY).weight();
+    model.addFactorFormula(builder.produceFactorFormula("atMostOne"));
+
+    //for Int i, Tag t1, Tag t2 if word(i,_) & word(i-1,_) add [tag(i-1,t1) & tag(i,t2)] * w_tt(t1,t2)
+    builder.var("Int", "i").var("Tag", "t1").var("Tag", "t2").quantify();
+    builder.var("i").dontCare().atom("word").var("i").term(1).minus().dontCare().atom("word").and(2).condition();
+    builder.var("i").term(1).minus().var("t1").atom("tag").var("i").var("t2").atom("tag").and(2).formula();
+    builder.var("t1").var("t2").apply("w_tt").weight();
+    model.addFactorFormula(builder.produceFactorFormula("transition"));
+
+    Random random = new Random(0);
+    weights = signature.createWeights();
+    for (String t : TAGS) {
+      for (String w : WORDS)
+        weights.addWeight("w_wt", random.nextGaussian(), w, t);
+      for (String t2 : TAGS)
+        weights.addWeight("w_tt", random.nextGaussian(), t, t2);
+    }
+
+    for (int s = 0; s < 20; ++s) {
+      StringBuffer sentence = new StringBuffer(">word\n");
+      int length = 2 + random.nextInt(5);
+      for (int i = 0; i < length; ++i)
+        sentence.append(i).append(" ").append(WORDS[random.nextInt(WORDS.length)]).append("\n");
+      sentences.add(sentence.toString());
+    }
+  }
+
+  private static InferenceSession createSession(Model model, Weights weights) {
+    InferenceSession session = InferenceSession.create(model, weights);
+    session.setProperty(new PropertyName("model", null), "chain");
+    session.setProperty(new PropertyName("model", new PropertyName("delegate", null)), "sat");
+    session.setProperty(new PropertyName("model", new PropertyName("predicate", null)), "tag");
+    return session;
+  }
+
+  private static String decode(InferenceSession session, String sentence) {
+    GroundAtoms observation = session.createObservation(sentence);
+    return tags(session.infer(observation));
+  }
+
+  private static String tags(GroundAtoms solution) {
+    GroundAtomCollection tags = solution.getGroundAtomsOf("tag");
+    StringBuffer result = new StringBuffer();
+    int length = solution.getGroundAtomsOf("word").size();
+    for (int i = 0; i < length; ++i)
+      for (String t : TAGS)
+        if (tags.containsAtom(i, t)) result.append(t);
+    assertEquals(length, tags.size());
+    return result.toString();
+  }
+
+  public void testConcurrentSessions() throws InterruptedException {
+    InferenceSession serial = createSession(model, weights);
+    assertTrue(weights.isFrozen());
+    assertTrue(model.isFrozen());
+    final ArrayList<String> expected = new ArrayList<String>();
+    for (String sentence : sentences)
+      expected.add(decode(serial, sentence));
+    assertEquals(sentences.size(), serial.getProperty(new PropertyName("model", new PropertyName("decoded", null))));
+
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; ++t) {
+      threads[t] = new Thread() {
+        public void run() {
+          try {
+            InferenceSession session = createSession(model, weights);
+            for (int pass = 0; pass < 3; ++pass)
+              for (int s = 0; s < sentences.size(); ++s)
+                assertEquals(expected.get(s), decode(session, sentences.get(s)));
+          } catch (Throwable e) {
+            errors.add(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) thread.join();
+    if (!errors.isEmpty()) {
+      errors.get(0).printStackTrace();
+      fail(errors.size() + " sessions failed: " + errors.get(0));
+    }
+  }
+
+  public void testColdConcurrentSessions() throws InterruptedException {
+    //no session has decoded (and built the lazy indices of the shared weights) before the threads start
+    final String[][] decoded = new String[4][sentences.size()];
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    Thread[] threads = new Thread[decoded.length];
+    for (int t = 0; t < threads.length; ++t) {
+      final int thread = t;
+      threads[t] = new Thread() {
+        public void run() {
+          try {
+            InferenceSession session = createSession(model, weights);
+            for (int s = 0; s < sentences.size(); ++s) {
+              decoded[thread][s] = decode(session, sentences.get(s));
+              //adds unknown words to the shared type
+              StringBuffer unseen = new StringBuffer(">word\n");
+              for (int i = 0; i < 100; ++i)
+                unseen.append(i).append(" unseen").append(thread).append("_").append(s).append("_").append(i).append("\n");
+              session.createObservation(unseen.toString());
+            }
+          } catch (Throwable e) {
+            errors.add(e);
+          }
+        }
+      };
+    }
+    for (Thread thread : threads) thread.start();
+    for (Thread thread : threads) thread.join();
+    if (!errors.isEmpty()) {
+      errors.get(0).printStackTrace();
+      fail(errors.size() + " sessions failed: " + errors.get(0));
+    }
+
+    InferenceSession serial = createSession(model, weights);
+    for (int s = 0; s < sentences.size(); ++s) {
+      String expected = decode(serial, sentences.get(s));
+      for (String[] result : decoded)
+        assertEquals(expected, result[s]);
+    }
+    CategoricalType word = (CategoricalType) model.getSignature().getType("Word").getNodType();
+    assertEquals(WORDS.length + threads.length * sentences.size() * 100, word.size());
+    for (int t = 0; t < threads.length; ++t)
+      for (int s = 0; s < sentences.size(); ++s)
+        for (int i = 0; i < 100; ++i) {
+          String unseen = "unseen" + t + "_" + s + "_" + i;
+          assertEquals(unseen, word.representation(word.index(unseen)));
+        }
+  }
+
+  public void testBatchInference() throws InterruptedException, ExecutionException {
+    InferenceSession serial = createSession(model, weights);
+    ArrayList<String> expected = new ArrayList<String>();
+    ArrayList<GroundAtoms> observations = new ArrayList<GroundAtoms>();
+    for (String sentence : sentences) {
+      expected.add(decode(serial, sentence));
+      observations.add(serial.createObservation(sentence));
+    }
+
+    BatchInference batch = createBatch(3);
+    ArrayList<Future<BatchInference.Result>> atomResults = new ArrayList<Future<BatchInference.Result>>();
+    ArrayList<Future<BatchInference.Result>> rowResults = new ArrayList<Future<BatchInference.Result>>();
+    for (int s = 0; s < sentences.size(); ++s) {
+      atomResults.add(batch.submit(observations.get(s)));
+      rowResults.add(batch.submit(rows(sentences.get(s))));
+    }
+    for (int s = 0; s < sentences.size(); ++s) {
+      BatchInference.Result result = atomResults.get(s).get();
+      assertEquals(expected.get(s), tags(result.getAtoms()));
+      assertTrue(result.getBatchSize() >= 1 && result.getBatchSize() <= 4);
+      assertTrue(result.getQueueTime() >= 0 && result.getSolveTime() >= 0);
+      assertEquals(expected.get(s), tags(rowResults.get(s).get().getAtoms()));
+    }
+    batch.shutdown();
+    try {
+      batch.submit(observations.get(0));
+      fail("Requests must be rejected after shutdown");
+    } catch (RejectedExecutionException e) {
+      //expected
+    }
+  }
+
+  public void testColdBatchInference() throws InterruptedException, ExecutionException {
+    //the workers decode the first requests before any session has warmed up the shared weights, and there are enough
+    //weights for the lazy indices to take a while
+    Random random = new Random(1);
+    for (int i = 0; i < 5000; ++i)
+      weights.addWeight("w_wt", random.nextGaussian(), "rare" + i, TAGS[i % TAGS.length]);
+    BatchInference batch = createBatch(4);
+    ArrayList<Future<BatchInference.Result>> results = new ArrayList<Future<BatchInference.Result>>();
+    ArrayList<Future<BatchInference.Result>> unseenResults = new ArrayList<Future<BatchInference.Result>>();
+    for (int s = 0; s < sentences.size(); ++s) {
+      results.add(batch.submit(rows(sentences.get(s))));
+      StringBuffer unseen = new StringBuffer();
+      for (int i = 0; i < 100; ++i)
+        unseen.append("unseen").append(s).append("_").append(i).append("\n");
+      unseenResults.add(batch.submit(unseen.toString()));
+    }
+    ArrayList<String> decoded = new ArrayList<String>();
+    for (int s = 0; s < sentences.size(); ++s) {
+      decoded.add(tags(results.get(s).get().getAtoms()));
+      assertEquals(100, unseenResults.get(s).get().getAtoms().getGroundAtomsOf("word").size());
+    }
+    batch.shutdown();
+
+    InferenceSession serial = createSession(model, weights);
+    for (int s = 0; s < sentences.size(); ++s)
+      assertEquals(decode(serial, sentences.get(s)), decoded.get(s));
+    CategoricalType word = (CategoricalType) model.getSignature().getType("Word").getNodType();
+    assertEquals(WORDS.length + 5000 + sentences.size() * 100, word.size());
+  }
+
+  private BatchInference createBatch(int workers) {
+    BatchInference batch = new BatchInference(model, weights, workers, 5, 4);
+    batch.setProperty(new PropertyName("model", null), "chain");
+    batch.setProperty(new PropertyName("model", new PropertyName("delegate", null)), "sat");
+    batch.setProperty(new PropertyName("model", new PropertyName("predicate", null)), "tag");
+    AttributeExtractor extractor = new AttributeExtractor(model.getSignature().getUserPredicate("word"), 2);
+    extractor.addLineNrArg(0);
+    extractor.addMapping(0, 1);
+    batch.addExtractor(extractor);
+    batch.start();
+    return batch;
+  }
+
+  private static String rows(String sentence) {
+    //">word\n0 the\n1 man\n" -> "the\nman\n"
+    return sentence.substring(">word\n".length()).replaceAll("\\d+ ", "");
+  }
+
+  public void testFrozenWeights() {
+    InferenceSession.create(model, weights);
+    try {
+      weights.addWeight("w_tt", 1.0, "A", "A");
+      fail("Frozen weights must not change");
+    } catch (IllegalStateException e) {
+      //expected
+    }
+  }
+
+}
@@ -1,6 +1,8 @@
 package thebeast.pml;
 
 import junit.framework.TestCase;
+import thebeast.nodmem.mem.MemChunk;
+import thebeast.nodmem.mem.MemDim;
 import thebeast.pml.fixtures.AlignmentFixtures;
 
 /**
@@ -63,4 +65,91 @@ public class TestLocalFeatureExtractor extends TestCase {
   }
 
 
+  private static Model createDistanceModel() {
+    Model model = AlignmentFixtures.createAlignmentModel();
+    AlignmentFixtures.addM1Formula(model);
+    AlignmentFixtures.addAbsoluteDistanceFormula(model, "w_absdist");
+    return model;
+  }
+
+  private static Weights createDistanceWeights(Model model) {
+    Weights weights = model.getSignature().createWeights();
+    AlignmentFixtures.setModel1Weight(weights, 0.2);
+    weights.addWeight("w_absdist", -1.0);
+    return weights;
+  }
+
+  private static GroundAtoms createSentencePair(Model model, int length) {
+    String[] words = new String[2 * length];
+    double[] probs = new double[length * length];
+    for (int i = 0; i < length; ++i) {
+      words[i] = "s" + i;
+      words[length + i] = "t" + i;
+    }
+    for (int i = 0; i < probs.length; ++i) probs[i] = 1.0 / (i + 1);
+    GroundAtoms atoms = model.getSignature().createGroundAtoms();
+    AlignmentFixtures.setSentences(atoms, length, length, words);
+    AlignmentFixtures.setModel1(atoms, length, length, probs);
+    return atoms;
+  }
+
+  public void testAllocationPerSentence() {
+    Model model = createDistanceModel();
+    Weights weights = createDistanceWeights(model);
+    int length = 15;
+    GroundAtoms atoms = createSentencePair(model, length);
+
+    UserPredicate align = model.getSignature().getUserPredicate("align");
+    int sentences = 50;
+    long[] bytesPerSentence = new long[2];
+    int[] featureCounts = new int[2];
+    for (int run = 0; run < 2; ++run) {
+      LocalFeatureExtractor extractor = new LocalFeatureExtractor(model, weights);
+      extractor.setReuseBuffers(run == 1);
+      LocalFeatures features = new LocalFeatures(model, weights);
+      //warm up: let buffers grow to their final size
+      extractor.extract(atoms, features);
+      long before = extractor.getAllocatedBytes();
+      for (int i = 0; i < sentences; ++i)
+        extractor.extract(atoms, features);
+      bytesPerSentence[run] = (extractor.getAllocatedBytes() - before) / sentences;
+      featureCounts[run] = features.getRelation(align).value().size();
+    }
+    System.out.println("Bytes per sentence (fresh tables): " + bytesPerSentence[0]);
+    System.out.println("Bytes per sentence (reused buffers): " + bytesPerSentence[1]);
+    assertEquals(2 * length * length, featureCounts[1]);
+    assertEquals(featureCounts[0], featureCounts[1]);
+    assertTrue(bytesPerSentence[1] < bytesPerSentence[0]);
+  }
+
+  public void testAllocationsOfOtherThreadsDontCount() throws InterruptedException {
+    Model model = createDistanceModel();
+    Weights weights = createDistanceWeights(model);
+    GroundAtoms atoms = createSentencePair(model, 15);
+    LocalFeatureExtractor extractor = new LocalFeatureExtractor(model, weights);
+    extractor.setReuseBuffers(true);
+    LocalFeatures features = new LocalFeatures(model, weights);
+    //warm up: let buffers grow to their final size
+    extractor.extract(atoms, features);
+    extractor.extract(atoms, features);
+    long before = extractor.getAllocatedBytes();
+    extractor.extract(atoms, features);
+    long alone = extractor.getAllocatedBytes() - before;
+
+    final MemDim dim = MemDim.create(1, 1, 0);
+    Thread allocator = new Thread() {
+      public void run() {
+        while (!isInterrupted()) new MemChunk(0, 10000, dim);
+      }
+    };
+    allocator.start();
+    before = extractor.getAllocatedBytes();
+    for (int i = 0; i < 10; ++i)
+      extractor.extract(atoms, features);
+    long concurrent = extractor.getAllocatedBytes() - before;
+    allocator.interrupt();
+    allocator.join();
+    assertEquals(10 * alone, concurrent);
+  }
+
 }
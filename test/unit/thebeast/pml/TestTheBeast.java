@@ -24,12 +24,20 @@ import thebeast.pml.solve.CuttingPlaneSolver;
 import thebeast.pml.solve.ilp.ILPSolver;
 import thebeast.pml.solve.ilp.IntegerLinearProgram;
 import thebeast.pml.solve.ilp.ILPGrounder;
+import thebeast.util.Prefetcher;
 import thebeast.util.QuietProgressReporter;
+import thebeast.util.SortedSparseVector;
 import thebeast.util.TreeProfiler;
 
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Random;
 
 /**
@@ -475,6 +483,61 @@ public class TestTheBeast extends TestCase {
     assertEquals(1.0, weights.getWeight(weightFunction1, "VBZ", "VP"));
   }
 
+  public void testSparseAddWeightWithSign() {
+    for (boolean positive : new boolean[]{true, false}) {
+      Weights weights = signature.createWeights();
+      weights.addWeight(weightFunction1, 1.0, "DT", "NP");
+      weights.addWeight(weightFunction1, -1.0, "NN", "VP");
+      weights.addWeight(weightFunction1, 0.0, "VBZ", "VP");
+      Weights sorted = weights.copy();
+
+      SparseVector vector = new SparseVector();
+      vector.addValue(0, -2.0);
+      vector.addValue(1, 2.0);
+      vector.addValue(2, 0.5);
+      weights.add(1.0, vector, positive);
+      SortedSparseVector sortedVector = new SortedSparseVector();
+      sortedVector.append(new int[]{0, 1, 2}, new double[]{-2.0, 2.0, 0.5});
+      sortedVector.sort();
+      sorted.add(1.0, sortedVector, positive);
+
+      double[] expected = positive ? new double[]{0.0, 1.0, 0.5} : new double[]{-1.0, 0.0, 0.0};
+      for (int i = 0; i < 3; ++i) {
+        assertEquals(expected[i], weights.getWeight(i));
+        assertEquals(expected[i], sorted.getWeight(i));
+      }
+    }
+  }
+
+  public void testLazyAverage() {
+    Weights weights = signature.createWeights();
+    weights.addWeight(weightFunction1, 1.5, "DT", "NP");
+    weights.addWeight(weightFunction1, -2.0, "NN", "VP");
+    weights.addWeight(weightFunction1, 4.0, "VBZ", "VP");
+    weights.addWeight(weightFunction2, 0.5, "NP");
+    LazyAverage lazy = new LazyAverage(weights, 0);
+    weights.setListener(lazy);
+    double[] dense = new double[4];
+    Random random = new Random(0);
+    for (int instance = 0; instance < 50; ++instance) {
+      SparseVector update = new SparseVector();
+      update.addValue(random.nextInt(4), random.nextDouble() - 0.5);
+      if (random.nextBoolean()) update.addValue(random.nextInt(4), random.nextDouble() - 0.5);
+      weights.add(1.0, update);
+      if (instance == 20) weights.enforceBound(new int[]{1, 2}, true, 0.0);
+      if (instance == 30) weights.setAllWeights(0.25);
+      lazy.increment();
+      for (int i = 0; i < 4; ++i) dense[i] += weights.getWeights().doubleValue(i);
+      if (instance % 10 == 9) {
+        Weights average = weights.copy();
+        lazy.materialize(average);
+        for (int i = 0; i < 4; ++i)
+          assertEquals(dense[i] / (instance + 1), average.getWeights().doubleValue(i), 1E-10);
+      }
+    }
+    weights.setListener(null);
+  }
+
   public void testSparseVectorIndices() {
     SparseVector vector1 = new SparseVector();
     vector1.addValue(0, 0.75);
@@ -665,6 +728,191 @@ public class TestTheBeast extends TestCase {
   }
 
 
+  public void testColumnarCorpus() throws IOException {
+    GroundAtoms groundAtoms = signature.createGroundAtoms();
+    GroundAtomCollection tokens = groundAtoms.getGroundAtomsOf(token);
+    tokens.addGroundAtom(0, "the", "DT");
+    tokens.addGroundAtom(1, "man", "NN");
+    tokens.addGroundAtom(2, "likes", "VBZ");
+    tokens.addGroundAtom(3, "the", "DT");
+    tokens.addGroundAtom(4, "boat", "NN");
+    GroundAtomCollection phrases = groundAtoms.getGroundAtomsOf(phrase);
+    phrases.addGroundAtom(0, 1, "NP");
+    phrases.addGroundAtom(2, 4, "VP");
+    phrases.addGroundAtom(0, 4, "S");
+
+    RandomAccessCorpus ramCorpus = new RandomAccessCorpus(signature, 20);
+    for (int i = 0; i < 20; ++i)
+      ramCorpus.add(groundAtoms);
+
+    File file = new File("tmp.columnar");
+    file.delete();
+    assertEquals(20, ColumnarCorpus.convert(ramCorpus, file));
+
+    //a signature with differently ordered constants must still decode the same atoms
+    Signature other = server.createSignature();
+    Type otherWord = other.createType("Word", true, "boat", "likes", "man", "the");
+    Type otherTag = other.createType("Tag", false, "VBZ", "NN", "JJ", "DT");
+    Type otherLabel = other.createType("Label", false, "S", "PP", "VP", "NP");
+    UserPredicate otherToken = other.createPredicate("token", Type.INT, otherWord, otherTag);
+    UserPredicate otherPhrase = other.createPredicate("phrase", Type.INT, Type.INT, otherLabel);
+
+    ColumnarCorpus corpus = new ColumnarCorpus(other, file);
+    assertEquals(20, corpus.size());
+    int count = 0;
+    for (GroundAtoms atoms : corpus) {
+      tokens = atoms.getGroundAtomsOf(otherToken);
+      phrases = atoms.getGroundAtomsOf(otherPhrase);
+      assertEquals(5, tokens.size());
+      assertEquals(3, phrases.size());
+      assertTrue(tokens.containsAtom(0, "the", "DT"));
+      assertTrue(tokens.containsAtom(1, "man", "NN"));
+      assertTrue(tokens.containsAtom(2, "likes", "VBZ"));
+      assertTrue(tokens.containsAtom(4, "boat", "NN"));
+      assertFalse(tokens.containsAtom(0, "the", "NN"));
+      assertTrue(phrases.containsAtom(2, 4, "VP"));
+      ++count;
+    }
+    assertEquals(20, count);
+    GroundAtoms last = corpus.get(19);
+    assertTrue(last.getGroundAtomsOf(otherPhrase).containsAtom(0, 4, "S"));
+    file.delete();
+  }
+
+  public void testColumnarCorpusWithEmptyPredicate() throws IOException {
+    Type chunkLabel = signature.createType("ChunkLabel", false, "B-NP", "I-NP");
+    UserPredicate chunk = signature.createPredicate("chunk", Type.INT, chunkLabel);
+    GroundAtoms groundAtoms = signature.createGroundAtoms();
+    groundAtoms.getGroundAtomsOf(token).addGroundAtom(0, "the", "DT");
+    RandomAccessCorpus ramCorpus = new RandomAccessCorpus(signature, 2);
+    ramCorpus.add(groundAtoms);
+    ramCorpus.add(groundAtoms);
+
+    File file = new File("tmp.columnar");
+    file.delete();
+    assertEquals(2, ColumnarCorpus.convert(ramCorpus, file));
+    ColumnarCorpus corpus = new ColumnarCorpus(signature, file);
+    assertEquals(2, corpus.size());
+    for (GroundAtoms atoms : corpus) {
+      assertEquals(0, atoms.getGroundAtomsOf(chunk).size());
+      assertTrue(atoms.getGroundAtomsOf(token).containsAtom(0, "the", "DT"));
+    }
+    file.delete();
+  }
+
+  public void testColumnarCorpusWithoutDictionary() throws IOException {
+    File file = new File("tmp.columnar");
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+    out.writeInt(ColumnarCorpus.MAGIC);
+    out.writeInt(ColumnarCorpus.VERSION);
+    //a trailer without dictionaries and a token predicate with categorical columns
+    out.writeInt(0);
+    out.writeInt(1);
+    out.writeUTF("token");
+    out.writeInt(3);
+    out.writeUTF("Int");
+    out.writeByte(0);
+    out.writeUTF("Word");
+    out.writeByte(1);
+    out.writeUTF("Tag");
+    out.writeByte(1);
+    out.writeInt(0);
+    out.writeLong(8);
+    out.writeInt(ColumnarCorpus.MAGIC);
+    out.close();
+    try {
+      new ColumnarCorpus(signature, file);
+      fail("a categorical column without dictionary must not be accepted");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause().getMessage().startsWith("Corrupt trailer"));
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testTextCorpusOffsetIndex() throws IOException {
+    File file = new File("tmp.atoms");
+    File indexFile = CorpusOffsetIndex.getIndexFile(file);
+    file.delete();
+    indexFile.delete();
+    TextFileCorpus corpus = new TextFileCorpus(signature, file);
+    for (int i = 0; i < 10; ++i) {
+      GroundAtoms groundAtoms = signature.createGroundAtoms();
+      GroundAtomCollection tokens = groundAtoms.getGroundAtomsOf(token);
+      for (int j = 0; j <= i; ++j)
+        tokens.addGroundAtom(j, "the", "DT");
+      corpus.append(groundAtoms);
+    }
+    assertEquals(10, corpus.size());
+    assertTrue(indexFile.exists());
+
+    for (int i = 9; i >= 0; --i) {
+      GroundAtomCollection tokens = corpus.get(i).getGroundAtomsOf(token);
+      assertEquals(i + 1, tokens.size());
+      assertTrue(tokens.containsAtom(i, "the", "DT"));
+    }
+
+    TextFileCorpus range = new TextFileCorpus(signature, file).subCorpus(3, 7);
+    assertEquals(4, range.size());
+    int count = 0;
+    for (GroundAtoms atoms : range) {
+      assertEquals(count + 4, atoms.getGroundAtomsOf(token).size());
+      ++count;
+    }
+    assertEquals(4, count);
+    assertEquals(5, range.get(1).getGroundAtomsOf(token).size());
+
+    int total = 0;
+    for (TextFileCorpus part : corpus.split(3)) {
+      for (GroundAtoms atoms : part) assertEquals(++total, atoms.getGroundAtomsOf(token).size());
+    }
+    assertEquals(10, total);
+
+    //the index has to be rebuilt when the file changes
+    corpus.append(signature.createGroundAtoms());
+    assertEquals(11, new TextFileCorpus(signature, file).size());
+    assertEquals(0, corpus.get(10).getGroundAtomsOf(token).size());
+
+    file.delete();
+    indexFile.delete();
+  }
+
+  public void testPrefetchingCorpus() throws IOException {
+    RandomAccessCorpus ramCorpus = new RandomAccessCorpus(signature, 10);
+    for (int i = 0; i < 10; ++i) {
+      GroundAtoms groundAtoms = signature.createGroundAtoms();
+      GroundAtomCollection tokens = groundAtoms.getGroundAtomsOf(token);
+      for (int j = 0; j <= i; ++j)
+        tokens.addGroundAtom(j, "the", "DT");
+      ramCorpus.add(groundAtoms);
+    }
+    File file = new File("tmp.dump");
+    file.delete();
+    DumpedCorpus dumped = new DumpedCorpus(file, ramCorpus, 100);
+
+    PrefetchingCorpus corpus = new PrefetchingCorpus(dumped, 2);
+    for (int pass = 0; pass < 2; ++pass) {
+      int count = 0;
+      for (GroundAtoms atoms : corpus) {
+        assertEquals(count + 1, atoms.getGroundAtomsOf(token).size());
+        assertTrue(atoms.getGroundAtomsOf(token).containsAtom(count, "the", "DT"));
+        ++count;
+      }
+      assertEquals(10, count);
+    }
+
+    //an abandoned iteration is stopped when the corpus is closed
+    Iterator<GroundAtoms> abandoned = corpus.iterator();
+    assertEquals(1, abandoned.next().getGroundAtomsOf(token).size());
+    corpus.close();
+    assertTrue(((Prefetcher<?>) abandoned).isDone());
+    assertFalse(abandoned.hasNext());
+    int count = 0;
+    for (GroundAtoms atoms : corpus) ++count;
+    assertEquals(10, count);
+    file.delete();
+  }
+
   public void testLoadModel() throws Exception {
     String input = "//an example;\n" +
             "type Tag: DT, NN, VBZ, JJ;" +
@@ -1497,6 +1745,80 @@ public class TestTheBeast extends TestCase {
     assertTrue(weights.getIndex(weightFunction3, "NP", "VP", "S") != -1);
   }
 
+  public void testParallelFeatureCollector() {
+    RandomAccessCorpus corpus = new RandomAccessCorpus(signature, 1);
+    String[][] sentences = {{"DT", "NN", "VBZ"}, {"NN", "VBZ", "DT"}, {"JJ", "NN"}, {"DT", "JJ", "NN", "VBZ"}};
+    String[] labels = {"NP", "VP", "S", "PP"};
+    for (int i = 0; i < 7; ++i) {
+      GroundAtoms instance = signature.createGroundAtoms();
+      String[] tags = sentences[i % sentences.length];
+      for (int t = 0; t < tags.length; ++t) {
+        instance.getGroundAtomsOf(token).addGroundAtom(t, "the", tags[t]);
+        instance.getGroundAtomsOf(phrase).addGroundAtom(t, t + i % 2, labels[(t + i) % labels.length]);
+      }
+      corpus.add(instance);
+    }
+
+    Weights serial = signature.createWeights();
+    new FeatureCollector(model, serial).collect(corpus);
+
+    Weights parallel = signature.createWeights();
+    FeatureCollector collector = new FeatureCollector(model, parallel);
+    collector.setThreads(3);
+    collector.setBatchSize(2);
+    collector.collect(corpus);
+
+    assertEquals(serial.getFeatureCount(), parallel.getFeatureCount());
+    for (WeightFunction function : new WeightFunction[]{weightFunction1, weightFunction2, weightFunction3})
+      assertEquals(serial.getRelation(function).value().toString(), parallel.getRelation(function).value().toString());
+  }
+
+  public void testParallelTrainingInstances() throws IOException {
+    RandomAccessCorpus corpus = new RandomAccessCorpus(signature, 1);
+    String[][] sentences = {{"DT", "NN", "VBZ"}, {"NN", "VBZ", "DT"}, {"JJ", "NN"}, {"DT", "JJ", "NN", "VBZ"}};
+    String[] labels = {"NP", "VP", "S", "PP"};
+    for (int i = 0; i < 40; ++i) {
+      GroundAtoms instance = signature.createGroundAtoms();
+      String[] tags = sentences[i % sentences.length];
+      for (int t = 0; t < tags.length; ++t) {
+        instance.getGroundAtomsOf(token).addGroundAtom(t, "the", tags[t]);
+        instance.getGroundAtomsOf(phrase).addGroundAtom(t, t + i % 2, labels[(t + i) % labels.length]);
+      }
+      corpus.add(instance);
+    }
+    Weights weights = signature.createWeights();
+    new FeatureCollector(model, weights).collect(corpus);
+
+    File serialFile = new File(toString() + ".serial");
+    File parallelFile = new File(toString() + ".parallel");
+    serialFile.delete();
+    parallelFile.delete();
+    //a small cache size makes sure instances are dumped several times
+    TrainingInstances serial = new TrainingInstances(serialFile, new LocalFeatureExtractor(model, weights), true,
+            corpus, 20000, new QuietProgressReporter());
+    TrainingInstances parallel = new TrainingInstances(parallelFile, new LocalFeatureExtractor(model, weights), true,
+            corpus, 20000, new QuietProgressReporter(), 4);
+    assertEquals(serial.size(), parallel.size());
+    assertTrue(Arrays.equals(readBytes(serialFile), readBytes(parallelFile)));
+
+    Iterator<TrainingInstance> iterator = serial.iterator();
+    for (TrainingInstance instance : parallel) {
+      TrainingInstance expected = iterator.next();
+      assertEquals(expected.getData().toString(), instance.getData().toString());
+      assertEquals(expected.getGold().getAll().toString(), instance.getGold().getAll().toString());
+    }
+    serialFile.delete();
+    parallelFile.delete();
+  }
+
+  private static byte[] readBytes(File file) throws IOException {
+    DataInputStream is = new DataInputStream(new FileInputStream(file));
+    byte[] result = new byte[(int) file.length()];
+    is.readFully(result);
+    is.close();
+    return result;
+  }
+
   public void testOnlineLearnerMira() throws IOException {
     GroundAtoms instance = signature.createGroundAtoms();
     GroundAtomCollection tokens = instance.getGroundAtomsOf(token);
@@ -0,0 +1,162 @@
+package thebeast.pml.solve;
+
+import junit.framework.TestCase;
+import thebeast.pml.*;
+import thebeast.pml.formula.FormulaBuilder;
+import thebeast.pml.solve.weightedsat.MaxWalkSat;
+import thebeast.pml.solve.weightedsat.WeightedSatProblem;
+
+/**
+ * @author Sebastian Riedel
+ */
+public class TestChainModel extends TestCase {
+  private static final String[] TAGS = {"A", "B", "C"};
+  private static final double[][] SCORES = {
+          {1.0, 0.5, -1.0},
+          {0.2, 0.8, 0.1},
+          {-0.5, 1.5, 1.0},
+          {0.3, 0.0, 0.4}};
+  private static final double[][] TRANSITIONS = {
+          {-1.0, 0.5, 2.0},
+          {0.0, -2.0, 1.0},
+          {1.5, 0.0, -0.5}};
+
+  private Signature signature;
+  private Model model;
+  private UserPredicate tag;
+  private GroundAtoms sentence;
+
+  protected void setUp() {
+    signature = TheBeast.getInstance().createSignature();
+    signature.createType("Word", false, "\"a\"", "\"b\"");
+    signature.createType("Tag", false, TAGS);
+    signature.createPredicate("word", "Int", "Word");
+    tag = signature.createPredicate("tag", "Int", "Tag");
+    signature.createWeightFunctionByName("w_tt", "Tag", "Tag");
+
+    model = signature.createModel();
+    model.addHiddenPredicate(tag);
+    model.addObservedPredicate(signature.getUserPredicate("word"));
+
+    FormulaBuilder builder = new FormulaBuilder(signature);
+
+    //for Int i if word(i,_): |Tag t: tag(i,t)| >= 1
+    builder.var("Int", "i").quantify();
+    builder.var("i").dontCare().atom("word").condition();
+    builder.var("Tag", "t").quantify().var("i").var("t").atom("tag");
+    builder.cardinality();
+    builder.term(1).lowerBound().cardinalityConstraint(false).formula();
+    builder.term(Double.POSITIVE_INFINITY).weight();
+    model.addFactorFormula(builder.produceFactorFormula("atLeastOne"));
+
+    //for Int i if word(i,_): |Tag t: tag(i,t)| <= 1
+    builder.var("Int", "i").quantify();
+    builder.var("i").dontCare().atom("word").condition();
+    builder.var("Tag", "t").quantify().var("i").var("t").atom("tag");
+    builder.cardinality();
+    builder.term(1).upperBound().cardinalityConstraint(false).formula();
+    builder.term(Double.POSITIVE_INFINITY).weight();
+    model.addFactorFormula(builder.produceFactorFormula("atMostOne"));
+
+    //for Int i, Tag t1, Tag t2 if word(i,_) & word(i-1,_) add [tag(i-1,t1) & tag(i,t2)] * w_tt(t1,t2)
+    builder.var("Int", "i").var("Tag", "t1").var("Tag", "t2").quantify();
+    builder.var("i").dontCare().atom("word").var("i").term(1).minus().dontCare().atom("word").and(2).condition();
+    builder.var("i").term(1).minus().var("t1").atom("tag").var("i").var("t2").atom("tag").and(2).formula();
+    builder.var("t1").var("t2").apply("w_tt").weight();
+    model.addFactorFormula(builder.produceFactorFormula("transition"));
+
+    sentence = signature.createGroundAtoms();
+    GroundAtomCollection words = sentence.getGroundAtomsOf("word");
+    for (int i = 0; i < SCORES.length; ++i)
+      words.addGroundAtom(i, i % 2 == 0 ? "\"a\"" : "\"b\"");
+  }
+
+  private CuttingPlaneSolver createSolver(ChainModel chain) {
+    Weights weights = signature.createWeights();
+    for (int a = 0; a < TAGS.length; ++a)
+      for (int b = 0; b < TAGS.length; ++b)
+        weights.addWeight("w_tt", TRANSITIONS[a][b], TAGS[a], TAGS[b]);
+    Scores scores = new Scores(model, weights);
+    for (int i = 0; i < SCORES.length; ++i)
+      for (int t = 0; t < TAGS.length; ++t)
+        scores.addScore(tag, SCORES[i][t], i, TAGS[t]);
+    chain.setPredicate("tag");
+    CuttingPlaneSolver solver = new CuttingPlaneSolver(chain);
+    solver.configure(model, weights);
+    solver.setObservation(sentence);
+    solver.setScores(scores);
+    return solver;
+  }
+
+  public void testSameAsBruteForce() {
+    ChainModel chain = new ChainModel(new WeightedSatProblem(new MaxWalkSat()));
+    CuttingPlaneSolver solver = createSolver(chain);
+    solver.solve();
+
+    assertEquals(1, chain.getChainFormulas().size());
+    assertTrue(chain.isOneLabel());
+    assertEquals(1, chain.getDecodedCount());
+    assertEquals(0, chain.getFallbackCount());
+
+    int[] expected = bruteForce(new int[SCORES.length], 0, new int[SCORES.length]);
+    GroundAtomCollection tags = solver.getBestAtoms().getGroundAtomsOf(tag);
+    assertEquals(SCORES.length, tags.size());
+    for (int i = 0; i < SCORES.length; ++i)
+      assertTrue(tags.containsAtom(i, TAGS[expected[i]]));
+  }
+
+  public void testGuardFails() {
+    //the last position has scores but no word
+    GroundAtomCollection words = sentence.getGroundAtomsOf("word");
+    words.clear();
+    for (int i = 0; i < SCORES.length - 1; ++i)
+      words.addGroundAtom(i, "\"a\"");
+    ChainModel chain = new ChainModel(new WeightedSatProblem(new MaxWalkSat()));
+    CuttingPlaneSolver solver = createSolver(chain);
+    solver.solve();
+
+    assertEquals(1, chain.getChainFormulas().size());
+    assertEquals(0, chain.getDecodedCount());
+    assertEquals(1, chain.getFallbackCount());
+  }
+
+  public void testNoAtMostOneConstraint() {
+    Model atLeastOne = signature.createModel();
+    atLeastOne.addHiddenPredicate(tag);
+    atLeastOne.addObservedPredicate(signature.getUserPredicate("word"));
+    atLeastOne.addFactorFormula(model.getFactorFormula("atLeastOne"));
+    atLeastOne.addFactorFormula(model.getFactorFormula("transition"));
+    model = atLeastOne;
+    ChainModel chain = new ChainModel(new WeightedSatProblem(new MaxWalkSat()));
+    CuttingPlaneSolver solver = createSolver(chain);
+    solver.solve();
+
+    //several tags per position are allowed, so the decoder must not be used
+    assertEquals(1, chain.getChainFormulas().size());
+    assertFalse(chain.isOneLabel());
+    assertEquals(0, chain.getDecodedCount());
+    assertEquals(1, chain.getFallbackCount());
+  }
+
+  private static double score(int[] labels) {
+    double result = 0;
+    for (int i = 0; i < labels.length; ++i) {
+      result += SCORES[i][labels[i]];
+      if (i > 0) result += TRANSITIONS[labels[i - 1]][labels[i]];
+    }
+    return result;
+  }
+
+  private static int[] bruteForce(int[] labels, int position, int[] best) {
+    if (position == labels.length) {
+      if (score(labels) > score(best)) System.arraycopy(labels, 0, best, 0, labels.length);
+      return best;
+    }
+    for (int label = 0; label < TAGS.length; ++label) {
+      labels[position] = label;
+      bruteForce(labels, position + 1, best);
+    }
+    return best;
+  }
+
+}
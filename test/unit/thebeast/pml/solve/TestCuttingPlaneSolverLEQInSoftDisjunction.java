@@ -6,6 +6,8 @@ import thebeast.pml.solve.ilp.ILPSolverLpSolve;
 import thebeast.pml.solve.ilp.IntegerLinearProgram;
 import thebeast.pml.formula.FormulaBuilder;
 import thebeast.pml.formula.FactorFormula;
+import thebeast.pml.solve.weightedsat.MaxWalkSat;
+import thebeast.pml.solve.weightedsat.WeightedSatProblem;
 
 /**
  * @author Sebastian Riedel
@@ -190,6 +192,40 @@ public class TestCuttingPlaneSolverLEQInSoftDisjunction extends TestCase {
 
   }
 
+  public void testAnytime() {
+    CuttingPlaneSolver cuttingPlaneSolver = new CuttingPlaneSolver(new WeightedSatProblem(new MaxWalkSat()));
+    cuttingPlaneSolver.configure(ballsModel, weights1);
+    cuttingPlaneSolver.setAnytime(true);
+    cuttingPlaneSolver.setObservation(ballsAtoms);
+    cuttingPlaneSolver.solve();
+
+    AnytimeStatistics statistics = cuttingPlaneSolver.getAnytimeStatistics();
+    assertEquals(1, statistics.getSolveCount());
+    assertEquals(0, statistics.getMissCount());
+    assertTrue(cuttingPlaneSolver.getIterationCount() > 1);
+    assertEquals(cuttingPlaneSolver.getCandidateCount(), statistics.getTrace().size());
+    AnytimeStatistics.Point last = null;
+    for (AnytimeStatistics.Point point : statistics.getTrace()) {
+      if (last != null) assertTrue(point.violations < last.violations ||
+              point.violations == last.violations && point.score >= last.score);
+      last = point;
+    }
+    //the returned solution is the best one
+    Solution solution = new Solution(ballsModel, weights1);
+    solution.load(cuttingPlaneSolver.getBestAtoms());
+    assertEquals(last.score, weights1.score(solution.extract(cuttingPlaneSolver.getLocalFeatures())), 1E-6);
+
+    //without any time we stop after the first solution
+    cuttingPlaneSolver.setTimeout(0);
+    cuttingPlaneSolver.setObservation(ballsAtoms);
+    cuttingPlaneSolver.solve();
+    assertEquals(2, statistics.getSolveCount());
+    assertEquals(1, statistics.getMissCount());
+    assertEquals(1, cuttingPlaneSolver.getIterationCount());
+    assertEquals(1, statistics.getTrace().size());
+    assertTrue(cuttingPlaneSolver.getBestAtoms().getGroundAtomsOf("inBag").size() > 0);
+  }
+
   /*
   public void testSolveFullyGroundAll() {
     Weights erWeights = ballsSig.createWeights();
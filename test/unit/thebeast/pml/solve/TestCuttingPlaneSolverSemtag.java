@@ -196,7 +196,7 @@ public class TestCuttingPlaneSolverSemtag extends TestCase {
     MaxWalkSat maxWalkSat = new MaxWalkSat();
     maxWalkSat.setSeed(0);
     maxWalkSat.setMaxRestarts(1);
-    maxWalkSat.setMaxFlips(100);
+    maxWalkSat.setMaxFlips(1000);
     maxWalkSat.setGreedyProbability(0.9);
     WeightedSatProblem wsp = new WeightedSatProblem(maxWalkSat);
 
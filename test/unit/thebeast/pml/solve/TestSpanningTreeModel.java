@@ -0,0 +1,154 @@
+package thebeast.pml.solve;
+
+import junit.framework.TestCase;
+import thebeast.pml.*;
+import thebeast.pml.formula.FormulaBuilder;
+import thebeast.pml.solve.weightedsat.MaxWalkSat;
+import thebeast.pml.solve.weightedsat.WeightedSatProblem;
+
+/**
+ * @author Sebastian Riedel
+ */
+public class TestSpanningTreeModel extends TestCase {
+  private Signature signature;
+  private Model model;
+  private UserPredicate link;
+  private GroundAtoms sentence;
+  private FormulaBuilder builder;
+
+  protected void setUp() {
+    signature = TheBeast.getInstance().createSignature();
+    signature.createType("Word", false, "ROOT", "\"a\"", "\"b\"", "\"c\"");
+    signature.createPredicate("word", "Int", "Word");
+    link = signature.createPredicate("link", "Int", "Int");
+
+    model = signature.createModel();
+    model.addHiddenPredicate(link);
+    model.addObservedPredicate(signature.getUserPredicate("word"));
+
+    builder = new FormulaBuilder(signature);
+
+    //for Int m if word(m,_) & 0 < m: |Int h: word(h,_) & link(h,m)| >= 1
+    builder.var("Int", "m").quantify();
+    builder.var("m").dontCare().atom("word").term(0).var("m").intLessThan().and(2).condition();
+    builder.var("Int", "h").quantify().var("h").dontCare().atom("word").var("h").var("m").atom("link").and(2);
+    builder.cardinality();
+    builder.term(1).lowerBound().cardinalityConstraint(false).formula();
+    builder.term(Double.POSITIVE_INFINITY).weight();
+    model.addFactorFormula(builder.produceFactorFormula("headGEQ1"));
+
+    //for Int m if word(m,_) & 0 < m: |Int h: word(h,_) & link(h,m)| <= 1
+    builder.var("Int", "m").quantify();
+    builder.var("m").dontCare().atom("word").term(0).var("m").intLessThan().and(2).condition();
+    builder.var("Int", "h").quantify().var("h").dontCare().atom("word").var("h").var("m").atom("link").and(2);
+    builder.cardinality();
+    builder.term(1).upperBound().cardinalityConstraint(false).formula();
+    builder.term(Double.POSITIVE_INFINITY).weight();
+    model.addFactorFormula(builder.produceFactorFormula("headLEQ1"));
+
+    model.addFactorFormula(builder.aclicity(link).formula().produceFactorFormula("acyclic"));
+
+    sentence = signature.createGroundAtoms();
+    GroundAtomCollection words = sentence.getGroundAtomsOf("word");
+    words.addGroundAtom(0, "ROOT");
+    words.addGroundAtom(1, "\"a\"");
+    words.addGroundAtom(2, "\"b\"");
+    words.addGroundAtom(3, "\"c\"");
+  }
+
+  private Scores createScores(Weights weights) {
+    Scores scores = new Scores(model, weights);
+    //the best heads of 1 and 2 form a cycle
+    scores.addScore(link, 1.0, 0, 1);
+    scores.addScore(link, 0.5, 0, 2);
+    scores.addScore(link, 0.2, 0, 3);
+    scores.addScore(link, 3.0, 1, 2);
+    scores.addScore(link, -1.0, 1, 3);
+    scores.addScore(link, 4.0, 2, 1);
+    scores.addScore(link, 2.0, 2, 3);
+    scores.addScore(link, -1.0, 3, 1);
+    scores.addScore(link, 1.0, 3, 2);
+    return scores;
+  }
+
+  private CuttingPlaneSolver createSolver(SpanningTreeModel tree, Weights weights) {
+    CuttingPlaneSolver solver = new CuttingPlaneSolver(tree);
+    solver.configure(model, weights);
+    solver.setObservation(sentence);
+    solver.setScores(createScores(weights));
+    return solver;
+  }
+
+  public void testTreeOnly() {
+    Weights weights = signature.createWeights();
+    SpanningTreeModel tree = new SpanningTreeModel(new WeightedSatProblem(new MaxWalkSat()));
+    CuttingPlaneSolver solver = createSolver(tree, weights);
+    solver.solve();
+
+    GroundAtomCollection links = solver.getBestAtoms().getGroundAtomsOf(link);
+    assertEquals(3, links.size());
+    assertTrue(links.containsAtom(0, 2));
+    assertTrue(links.containsAtom(2, 1));
+    assertTrue(links.containsAtom(2, 3));
+    assertTrue(tree.isTree());
+    assertEquals(1, tree.getDecodedCount());
+    assertEquals(0, tree.getFallbackCount());
+  }
+
+  public void testDelegateOnly() {
+    Weights weights = signature.createWeights();
+    CuttingPlaneSolver solver = new CuttingPlaneSolver(new WeightedSatProblem(new MaxWalkSat()));
+    solver.configure(model, weights);
+    solver.setObservation(sentence);
+    solver.setScores(createScores(weights));
+    solver.solve();
+
+    //the cycle of the greedy solution is grounded as a clause
+    GroundAtomCollection links = solver.getBestAtoms().getGroundAtomsOf(link);
+    assertEquals(3, links.size());
+    assertTrue(links.containsAtom(0, 2));
+    assertTrue(links.containsAtom(2, 1));
+    assertTrue(links.containsAtom(2, 3));
+    assertTrue(solver.getIterationCount() > 1);
+  }
+
+  public void testNoAcyclicityConstraint() {
+    Model heads = signature.createModel();
+    heads.addHiddenPredicate(link);
+    heads.addObservedPredicate(signature.getUserPredicate("word"));
+    heads.addFactorFormula(model.getFactorFormula("headGEQ1"));
+    heads.addFactorFormula(model.getFactorFormula("headLEQ1"));
+    model = heads;
+
+    Weights weights = signature.createWeights();
+    SpanningTreeModel tree = new SpanningTreeModel(new WeightedSatProblem(new MaxWalkSat()));
+    CuttingPlaneSolver solver = createSolver(tree, weights);
+    solver.solve();
+
+    //the cycle between 1 and 2 is allowed, so the decoder must not be used
+    assertFalse(tree.isTree());
+    assertEquals(0, tree.getDecodedCount());
+    assertEquals(1, tree.getFallbackCount());
+  }
+
+  public void testFallback() {
+    //for Int h if word(h,_): |Int m: word(m,_) & link(h,m)| <= 1
+    builder.var("Int", "h").quantify();
+    builder.var("h").dontCare().atom("word").condition();
+    builder.var("Int", "m").quantify().var("m").dontCare().atom("word").var("h").var("m").atom("link").and(2);
+    builder.cardinality();
+    builder.term(1).upperBound().cardinalityConstraint(false).formula();
+    builder.term(Double.POSITIVE_INFINITY).weight();
+    model.addFactorFormula(builder.produceFactorFormula("oneChild"));
+
+    Weights weights = signature.createWeights();
+    SpanningTreeModel tree = new SpanningTreeModel(new WeightedSatProblem(new MaxWalkSat()));
+    CuttingPlaneSolver solver = createSolver(tree, weights);
+    solver.solve();
+
+    assertEquals(1, tree.getDecodedCount());
+    assertEquals(1, tree.getFallbackCount());
+    assertTrue(solver.getIterationCount() > 2);
+  }
+
+}
@@ -0,0 +1,141 @@
+package thebeast.pml.training;
+
+import junit.framework.TestCase;
+import thebeast.pml.*;
+import thebeast.pml.corpora.RandomAccessCorpus;
+import thebeast.pml.function.WeightFunction;
+import thebeast.util.QuietProgressReporter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Runs distributed learning with real worker processes on this machine.
+ *
+ * @author Sebastian Riedel
+ */
+public class TestDistributedLearner extends TestCase {
+  private static final String[] WORDS = {"the", "man", "likes", "a", "boat"};
+  private static final String[] TAGS = {"DT", "NN", "VBZ", "DT", "NN"};
+
+  private File script, instancesFile;
+  private Model model;
+  private Weights weights;
+  private RandomAccessCorpus[] halves = new RandomAccessCorpus[2];
+  private TrainingInstances instances;
+
+  protected void setUp() throws Exception {
+    script = File.createTempFile("distributed", ".pml");
+    PrintStream out = new PrintStream(new FileOutputStream(script));
+    out.println("type Word: \"the\", \"man\", \"likes\", \"a\", \"boat\";");
+    out.println("type Tag: DT, NN, VBZ;");
+    out.println("predicate word: Int x Word;");
+    out.println("predicate tag: Int x Tag;");
+    out.println("observed: word;");
+    out.println("hidden: tag;");
+    out.println("weight w_wt: Word x Tag -> Double;");
+    out.println("factor: for Int i, Word w, Tag t if word(i,w) add [tag(i,t)] * w_wt(w,t);");
+    out.close();
+    model = TheBeast.getInstance().loadModel(new FileInputStream(script));
+    Signature signature = model.getSignature();
+
+    Random random = new Random(0);
+    RandomAccessCorpus corpus = new RandomAccessCorpus(signature, 10);
+    halves[0] = new RandomAccessCorpus(signature, 5);
+    halves[1] = new RandomAccessCorpus(signature, 5);
+    for (int s = 0; s < 10; ++s) {
+      StringBuffer words = new StringBuffer(">word\n"), tags = new StringBuffer(">tag\n");
+      int length = 3 + random.nextInt(4);
+      for (int i = 0; i < length; ++i) {
+        int w = random.nextInt(WORDS.length);
+        words.append(i).append(" \"").append(WORDS[w]).append("\"\n");
+        tags.append(i).append(" ").append(TAGS[w]).append("\n");
+      }
+      GroundAtoms atoms = signature.createGroundAtoms();
+      atoms.load(words.toString() + tags.toString());
+      corpus.add(atoms);
+      halves[s / 5].add(atoms);
+    }
+
+    weights = signature.createWeights();
+    FeatureCollector collector = new FeatureCollector(model, weights);
+    collector.setProperty(new PropertyName("all", new PropertyName("w_wt", null)), true);
+    collector.collect(corpus);
+    instancesFile = File.createTempFile("distributed", ".instances");
+    instances = createInstances(instancesFile, corpus);
+  }
+
+  protected void tearDown() {
+    script.delete();
+    instancesFile.delete();
+  }
+
+  private TrainingInstances createInstances(File file, RandomAccessCorpus corpus) throws IOException {
+    return new TrainingInstances(file, new LocalFeatureExtractor(model, weights), false, corpus,
+            Integer.MAX_VALUE, new QuietProgressReporter());
+  }
+
+  private static void configure(HasProperties learner) {
+    //decode the tag chain exactly, so that workers and local learners agree
+    learner.setProperty(new PropertyName("solver", new PropertyName("model", null)), "chain");
+    learner.setProperty(new PropertyName("solver", new PropertyName("model", new PropertyName("delegate", null))), "sat");
+    learner.setProperty(new PropertyName("solver", new PropertyName("model", new PropertyName("predicate", null))), "tag");
+    learner.setProperty(new PropertyName("update", null), "perceptron");
+    learner.setProperty(new PropertyName("average", null), false);
+  }
+
+  public void testParameterMixing() throws IOException {
+    //what each worker should do in the first round
+    Weights[] local = new Weights[2];
+    for (int half = 0; half < 2; ++half) {
+      local[half] = weights.copy();
+      OnlineLearner learner = new OnlineLearner(model, local[half]);
+      configure(learner);
+      learner.setSaveAfterEpoch(false);
+      learner.setNumEpochs(1);
+      File file = File.createTempFile("distributed", ".half");
+      learner.learn(createInstances(file, halves[half]));
+      file.delete();
+    }
+
+    Weights mixed = weights.copy();
+    DistributedLearner learner = new DistributedLearner(model, mixed, script);
+    learner.setWorkerCount(2);
+    learner.setNumEpochs(1);
+    configure(learner);
+    learner.learn(instances);
+
+    boolean changed = false;
+    for (int i = 0; i < weights.getFeatureCount(); ++i) {
+      assertEquals(0.5 * local[0].getWeight(i) + 0.5 * local[1].getWeight(i), mixed.getWeight(i), 1E-8);
+      if (mixed.getWeight(i) != weights.getWeight(i)) changed = true;
+    }
+    assertTrue(changed);
+
+    //more rounds should separate the tags of the words
+    learner.setNumEpochs(3);
+    learner.learn(instances);
+    WeightFunction w_wt = model.getSignature().getWeightFunction("w_wt");
+    assertTrue(mixed.getWeight(w_wt, "\"man\"", "NN") > mixed.getWeight(w_wt, "\"man\"", "DT"));
+    assertTrue(mixed.getWeight(w_wt, "\"likes\"", "VBZ") > mixed.getWeight(w_wt, "\"likes\"", "NN"));
+  }
+
+  public void testRoundTimeout() {
+    DistributedLearner learner = new DistributedLearner(model, weights.copy(), script);
+    learner.setWorkerCount(2);
+    configure(learner);
+    //no worker loads its shard that fast
+    learner.setRoundTimeout(1);
+    try {
+      learner.learn(instances);
+      fail("Workers that don't answer in time must fail learning");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("timed out"));
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+package thebeast.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * @author Sebastian Riedel
+ */
+public class TestChainDecoder extends TestCase {
+
+  public void testViterbiSameScoreAsBruteForce() {
+    Random random = new Random(0);
+    for (int trial = 0; trial < 100; ++trial) {
+      int n = 1 + random.nextInt(5);
+      int labelCount = 1 + random.nextInt(3);
+      double[][] scores = randomMatrix(random, n, labelCount);
+      double[][] transitions = randomMatrix(random, labelCount, labelCount);
+      int[] labels = ChainDecoder.viterbi(scores, transitions);
+      assertEquals(bruteForce(scores, transitions, new int[n], 0), ChainDecoder.score(scores, transitions, labels), 1E-9);
+    }
+  }
+
+  public void testSemiMarkovSameScoreAsBruteForce() {
+    Random random = new Random(1);
+    for (int trial = 0; trial < 100; ++trial) {
+      int length = 1 + random.nextInt(6);
+      int labelCount = 1 + random.nextInt(3);
+      double[][] transitions = randomMatrix(random, labelCount, labelCount);
+      ArrayList<int[]> spans = new ArrayList<int[]>();
+      for (int b = 0; b < length; ++b)
+        for (int e = b; e < length && e < b + 3; ++e)
+          for (int c = 0; c < labelCount; ++c)
+            if (random.nextDouble() < 0.7) spans.add(new int[]{b, e, c});
+      int[] begins = new int[spans.size()], ends = new int[spans.size()], labels = new int[spans.size()];
+      double[] scores = new double[spans.size()];
+      for (int i = 0; i < spans.size(); ++i) {
+        begins[i] = spans.get(i)[0];
+        ends[i] = spans.get(i)[1];
+        labels[i] = spans.get(i)[2];
+        scores[i] = random.nextDouble() * 10 - 5;
+      }
+      int[] selected = ChainDecoder.semiMarkov(length, begins, ends, labels, scores, transitions);
+      int last = -1;
+      for (int span : selected) {
+        assertTrue(begins[span] > last);
+        last = ends[span];
+      }
+      double expected = bruteForceSpans(begins, ends, labels, scores, transitions, 0, -1, -1);
+      assertEquals(expected, spanScore(selected, begins, ends, labels, scores, transitions), 1E-9);
+    }
+  }
+
+  private static double[][] randomMatrix(Random random, int rows, int cols) {
+    double[][] result = new double[rows][cols];
+    for (double[] row : result)
+      for (int i = 0; i < cols; ++i) row[i] = random.nextDouble() * 10 - 5;
+    return result;
+  }
+
+  private static double bruteForce(double[][] scores, double[][] transitions, int[] labels, int position) {
+    if (position == labels.length) return ChainDecoder.score(scores, transitions, labels);
+    double best = Double.NEGATIVE_INFINITY;
+    for (int label = 0; label < transitions.length; ++label) {
+      labels[position] = label;
+      best = Math.max(best, bruteForce(scores, transitions, labels, position + 1));
+    }
+    return best;
+  }
+
+  //all ways to pick non-overlapping spans in order, starting after the given end
+  private static double bruteForceSpans(int[] begins, int[] ends, int[] labels, double[] scores,
+                                        double[][] transitions, int from, int lastEnd, int lastLabel) {
+    double best = 0;
+    for (int span = 0; span < begins.length; ++span) {
+      if (begins[span] < from) continue;
+      double transition = lastLabel != -1 && begins[span] == lastEnd + 1 ? transitions[lastLabel][labels[span]] : 0;
+      best = Math.max(best, transition + scores[span] +
+              bruteForceSpans(begins, ends, labels, scores, transitions, ends[span] + 1, ends[span], labels[span]));
+    }
+    return best;
+  }
+
+  private static double spanScore(int[] selected, int[] begins, int[] ends, int[] labels, double[] scores,
+                                  double[][] transitions) {
+    double result = 0;
+    for (int i = 0; i < selected.length; ++i) {
+      result += scores[selected[i]];
+      if (i > 0 && begins[selected[i]] == ends[selected[i - 1]] + 1)
+        result += transitions[labels[selected[i - 1]]][labels[selected[i]]];
+    }
+    return result;
+  }
+
+}
@@ -4,6 +4,7 @@ import junit.framework.TestCase;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 
 /**
  * @author Sebastian Riedel
@@ -197,6 +198,21 @@ public class TestCycleFinder extends TestCase {
 
   }
 
+  public void testSameCyclesAsDense() {
+    Random random = new Random(0);
+    for (int graph = 0; graph < 200; ++graph) {
+      int vertexCount = 2 + random.nextInt(30);
+      int[][] edges = new int[random.nextInt(3 * vertexCount)][];
+      for (int i = 0; i < edges.length; ++i)
+        edges[i] = new int[]{random.nextInt(vertexCount), random.nextInt(vertexCount)};
+      int[][] expected = CycleFinder.findCycleVerticesDense(edges, vertexCount);
+      int[][] actual = CycleFinder.findCycleVertices(edges, vertexCount);
+      assertEquals(toArrayDef(edges), expected.length, actual.length);
+      for (int i = 0; i < expected.length; ++i)
+        assertTrue(toArrayDef(edges), Arrays.equals(expected[i], actual[i]));
+    }
+  }
+
   public static String toArrayDef(int[][] graph) {
     StringBuffer result = new StringBuffer("int[][] graph = new int[][]{");
     for (int[] edge : graph)
@@ -0,0 +1,82 @@
+package thebeast.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Sebastian Riedel
+ */
+public class TestNanoProfiler extends TestCase {
+
+  public void testNestedOperations() {
+    NanoProfiler profiler = new NanoProfiler();
+    NanoProfiler.Operation inner = profiler.register("inner");
+    profiler.start("outer");
+    for (int i = 0; i < 3; ++i) {
+      profiler.start(inner);
+      int[] garbage = new int[1000];
+      garbage[0] = i;
+      profiler.end();
+    }
+    profiler.start(new String("inner"));
+    profiler.end();
+    profiler.end();
+
+    assertEquals(1.0, profiler.getCalls("outer"));
+    assertEquals(4.0, profiler.getCalls("outer.inner"));
+    assertEquals(0.0, profiler.getCalls("inner"));
+    assertTrue(profiler.getTotalNanos("outer") >= profiler.getTotalNanos("outer.inner"));
+    if (profiler.isCountAllocations())
+      assertTrue(profiler.getAllocatedBytes("outer.inner") >= 3 * 4000);
+  }
+
+  public void testThreads() throws InterruptedException {
+    final NanoProfiler profiler = new NanoProfiler();
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        profiler.start("work");
+        profiler.end();
+      }
+    }, "worker");
+    profiler.start("work");
+    thread.start();
+    thread.join();
+    profiler.end();
+    assertEquals(2.0, profiler.getCalls("work"));
+    assertTrue(profiler.toJSON().contains("\"name\":\"worker\""));
+    assertTrue(profiler.toCSV().startsWith("thread,operation,calls"));
+    assertTrue(profiler.toCSV().contains("worker,work,1,"));
+  }
+
+  public void testResetWhileOtherThreadIsInside() throws InterruptedException {
+    final NanoProfiler profiler = new NanoProfiler();
+    profiler.start("outer");
+    profiler.start("inner");
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        profiler.reset();
+      }
+    });
+    thread.start();
+    thread.join();
+    assertEquals(0.0, profiler.getCalls("outer"));
+    //the operations that were running when the profiler was reset still end
+    profiler.end();
+    profiler.end();
+    assertEquals(0.0, profiler.getCalls("outer"));
+    profiler.start("outer");
+    profiler.end();
+    assertEquals(1.0, profiler.getCalls("outer"));
+    assertEquals(0.0, profiler.getCalls("outer.inner"));
+  }
+
+  public void testUnbalancedEnd() {
+    NanoProfiler profiler = new NanoProfiler();
+    try {
+      profiler.end();
+      fail("end() without start() should fail");
+    } catch (IllegalStateException e) {
+      //expected
+    }
+  }
+
+}
@@ -50,4 +50,31 @@ public class TestQP extends TestCase {
     double[] alpha = QP.runHildreth(a, b);
     System.out.println(Arrays.toString(alpha));
   }
+
+  public void testHildrethGram() {
+    double[][] a = new double[][]{{1, 1, 1}, {0, 1, 1}, {0, 0, 1}};
+    double[] b = new double[]{1, 1, -1};
+    double[][] gram = new double[3][3];
+    for (int i = 0; i < 3; ++i)
+      for (int j = 0; j < 3; ++j)
+        gram[i][j] = QP.dotProduct(a[i], a[j]);
+    double[] expected = QP.runHildreth(a, b);
+    double[] alpha = QP.runHildreth(gram, b, 3, new QP.Workspace());
+    for (int i = 0; i < 3; ++i)
+      assertEquals(expected[i], alpha[i], 1E-10);
+  }
+
+  public void testSparseArt2() {
+    double inf = Double.POSITIVE_INFINITY;
+    double[][] a = new double[][]{{1, 1, 1}, {0, 1, 1}, {0, 0, 1}};
+    double[] b = new double[]{1, 1, 1};
+    double[] lb = new double[]{1.0, -inf, -inf};
+    double[] ub = new double[]{inf, -1.0, inf};
+    int[][] columns = new int[][]{{0, 1, 2}, {1, 2}, {2}};
+    double[][] values = new double[][]{{1, 1, 1}, {1, 1}, {1}};
+    double[] expected = QP.art2(a, b, lb, ub);
+    double[] x = QP.art2(columns, values, new int[]{3, 2, 1}, b, 3, lb, ub, 3, new QP.Workspace());
+    for (int i = 0; i < 3; ++i)
+      assertEquals(expected[i], x[i], 1E-10);
+  }
 }
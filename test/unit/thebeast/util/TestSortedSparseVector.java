@@ -0,0 +1,35 @@
+package thebeast.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Sebastian Riedel
+ */
+public class TestSortedSparseVector extends TestCase {
+
+  public void testLoadSortsAndMerges() {
+    SortedSparseVector vector = new SortedSparseVector(2);
+    vector.load(new int[]{5, 1, 3, 1}, new double[]{1.0, 2.0, 3.0, 4.0});
+    assertEquals(3, vector.size());
+    assertEquals(1, vector.getIndex(0));
+    assertEquals(6.0, vector.getValue(0));
+    assertEquals(3, vector.getIndex(1));
+    assertEquals(5, vector.getIndex(2));
+  }
+
+  public void testSetAndDot() {
+    SortedSparseVector lhs = new SortedSparseVector();
+    lhs.load(new int[]{0, 2, 4}, new double[]{1.0, 2.0, 3.0});
+    SortedSparseVector rhs = new SortedSparseVector();
+    rhs.load(new int[]{2, 3}, new double[]{2.0, 1.0});
+    SortedSparseVector diff = new SortedSparseVector();
+    diff.set(lhs, -1.0, rhs);
+    assertEquals("[0:1.0, 2:0.0, 3:-1.0, 4:3.0]", diff.toString());
+    assertEquals(4.0, lhs.dot(rhs));
+    assertEquals(11.0, diff.squaredNorm());
+    diff.addInPlace(2.0, rhs);
+    assertEquals("[0:1.0, 2:4.0, 3:1.0, 4:3.0]", diff.toString());
+    assertEquals(1.0 + 4.0 + 3.0 + 12.0, diff.dot(new double[]{1, 1, 1, 3, 4}));
+  }
+
+}
@@ -0,0 +1,96 @@
+package thebeast.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Sebastian Riedel
+ */
+public class TestSpanningTree extends TestCase {
+
+  public void testChuLiuEdmondsWithCycle() {
+    //the best incoming edges of 1 and 2 form a cycle
+    double[][] scores = new double[][]{
+            {0, 5, 1},
+            {0, 0, 11},
+            {0, 10, 0},
+    };
+    int[] heads = SpanningTree.chuLiuEdmonds(scores, 0);
+    assertTrue(Arrays.equals(new int[]{-1, 0, 1}, heads));
+  }
+
+  public void testUnreachable() {
+    double none = Double.NEGATIVE_INFINITY;
+    double[][] scores = new double[][]{
+            {none, 1, none},
+            {none, none, none},
+            {none, none, none},
+    };
+    assertNull(SpanningTree.chuLiuEdmonds(scores, 0));
+    assertNull(SpanningTree.eisner(scores));
+  }
+
+  public void testSameScoresAsBruteForce() {
+    Random random = new Random(0);
+    for (int trial = 0; trial < 200; ++trial) {
+      int n = 2 + random.nextInt(5);
+      double[][] scores = new double[n][n];
+      for (double[] row : scores)
+        for (int m = 0; m < n; ++m) row[m] = random.nextDouble() * 10 - 5;
+      int[] best = new int[n];
+      int[] bestProjective = new int[n];
+      bruteForce(scores, new int[n], 1, best, bestProjective);
+
+      int[] heads = SpanningTree.chuLiuEdmonds(scores, 0);
+      assertTrue(isTree(heads));
+      assertEquals(SpanningTree.score(scores, best), SpanningTree.score(scores, heads), 1E-9);
+
+      int[] projective = SpanningTree.eisner(scores);
+      assertTrue(isTree(projective));
+      assertTrue(isProjective(projective));
+      assertEquals(SpanningTree.score(scores, bestProjective), SpanningTree.score(scores, projective), 1E-9);
+    }
+  }
+
+  private static void bruteForce(double[][] scores, int[] heads, int m, int[] best, int[] bestProjective) {
+    if (m == heads.length) {
+      heads[0] = -1;
+      if (!isTree(heads)) return;
+      double score = SpanningTree.score(scores, heads);
+      if (best[0] == 0 || score > SpanningTree.score(scores, best)) System.arraycopy(heads, 0, best, 0, heads.length);
+      if (isProjective(heads) && (bestProjective[0] == 0 || score > SpanningTree.score(scores, bestProjective)))
+        System.arraycopy(heads, 0, bestProjective, 0, heads.length);
+      return;
+    }
+    for (int h = 0; h < heads.length; ++h)
+      if (h != m) {
+        heads[m] = h;
+        bruteForce(scores, heads, m + 1, best, bestProjective);
+      }
+  }
+
+  private static boolean isTree(int[] heads) {
+    if (heads[0] != -1) return false;
+    for (int m = 1; m < heads.length; ++m) {
+      int v = m;
+      for (int steps = 0; v != 0; ++steps) {
+        if (steps == heads.length || heads[v] == -1) return false;
+        v = heads[v];
+      }
+    }
+    return true;
+  }
+
+  private static boolean isProjective(int[] heads) {
+    for (int m1 = 1; m1 < heads.length; ++m1)
+      for (int m2 = 1; m2 < heads.length; ++m2) {
+        int l1 = Math.min(heads[m1], m1), r1 = Math.max(heads[m1], m1);
+        int l2 = Math.min(heads[m2], m2), r2 = Math.max(heads[m2], m2);
+        if (l1 < l2 && l2 < r1 && r1 < r2) return false;
+      }
+    return true;
+  }
+
+}
@@ -0,0 +1,51 @@
+package thebeast.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * @author Sebastian Riedel
+ */
+public class TestStringDictionary extends TestCase {
+
+  public void testAddAndLookup() {
+    StringDictionary dictionary = new StringDictionary(Arrays.asList("the", "\"man\"", "the", "M\u00fcller", ""));
+    assertEquals(4, dictionary.size());
+    assertEquals(0, dictionary.id("the"));
+    assertEquals(1, dictionary.id("\"man\""));
+    assertEquals(2, dictionary.id("M\u00fcller"));
+    assertEquals(3, dictionary.id(""));
+    assertEquals(-1, dictionary.id("man"));
+    assertEquals("M\u00fcller", dictionary.get(2));
+    assertEquals(Arrays.asList("the", "\"man\"", "M\u00fcller", ""), dictionary.asList());
+    assertEquals(4, dictionary.add("boat"));
+    assertEquals(4, dictionary.add("boat"));
+  }
+
+  public void testByteSlices() throws Exception {
+    StringDictionary dictionary = new StringDictionary();
+    byte[] line = "the M\u00fcller likes".getBytes("UTF-8");
+    assertEquals(0, dictionary.add(line, 4, 7));
+    assertEquals("M\u00fcller", dictionary.get(0));
+    assertEquals(0, dictionary.id("M\u00fcller"));
+    assertEquals(-1, dictionary.id(line, 0, 3));
+    assertEquals(1, dictionary.add(line, 0, 3));
+    assertEquals(1, dictionary.id("the"));
+  }
+
+  public void testGrowAndCompactify() {
+    StringDictionary dictionary = new StringDictionary(1);
+    for (int i = 0; i < 10000; ++i)
+      assertEquals(i, dictionary.add("w" + i));
+    dictionary.compactify();
+    for (int i = 0; i < 10000; ++i) {
+      assertEquals(i, dictionary.id("w" + i));
+      assertEquals("w" + i, dictionary.get(i));
+    }
+    assertEquals(10000, dictionary.add("new"));
+    assertEquals(10000, dictionary.id("new"));
+    assertTrue(dictionary.getUsedMemory() >= dictionary.getByteCount());
+  }
+
+}